@@ -14,6 +14,32 @@ public final class BufferRecycler
     private final static int MIN_ENCODING_BUFFER = 4000;
 
     private final static int MIN_OUTPUT_BUFFER = 8000;
+
+    /**
+     * Maximum size of workspace buffer to retain using a hard reference: enough for
+     * encoding a few full (64k) chunks. Larger buffers (for encoding large input)
+     * are only softly referenced, so that threads do not keep holding on to
+     * the largest one they have ever needed if memory is needed elsewhere.
+     */
+    private final static int MAX_HARD_WORKSPACE_BUFFER = 4 * 0x11000;
+
+    /**
+     * Name of the system property that can be used to change default maximum size of
+     * workspace buffers retained (softly) for reuse; see {@link #DEFAULT_MAX_WORKSPACE_BUFFER}.
+     *
+     * @since 1.2.1
+     */
+    public final static String PROP_MAX_WORKSPACE_BUFFER = "com.ning.compress.maxWorkspaceBuffer";
+
+    /**
+     * Default maximum size of workspace buffers retained for reuse, unless
+     * overridden using system property {@link #PROP_MAX_WORKSPACE_BUFFER}: 16 megabytes,
+     * enough for encoding payloads of up to about 16 megabytes without allocating.
+     *
+     * @since 1.2.1
+     */
+    public final static int DEFAULT_MAX_WORKSPACE_BUFFER
+        = Integer.getInteger(PROP_MAX_WORKSPACE_BUFFER, 16 * 1024 * 1024);
     
     /**
      * This <code>ThreadLocal</code> contains a {@link java.lang.ref.SoftReference}
@@ -31,6 +57,29 @@ public final class BufferRecycler
 
     private int[] _encodingHash;
 
+    private byte[] _workspaceBuffer;
+
+    /**
+     * Workspace buffer too large to be kept in {@link #_workspaceBuffer}, if any
+     */
+    private SoftReference<byte[]> _largeWorkspaceRef;
+
+    private final int _maxWorkspaceBuffer;
+
+    public BufferRecycler() {
+        this(DEFAULT_MAX_WORKSPACE_BUFFER);
+    }
+
+    /**
+     * @param maxWorkspaceBuffer Maximum size of workspace buffers to retain for reuse
+     *   (see {@link #allocWorkspaceBuffer})
+     *
+     * @since 1.2.1
+     */
+    public BufferRecycler(int maxWorkspaceBuffer) {
+        _maxWorkspaceBuffer = maxWorkspaceBuffer;
+    }
+
     /**
      * Accessor to get thread-local recycler instance
      */
@@ -105,6 +154,55 @@ public final class BufferRecycler
         }
     }
 
+    /**
+     * Method for allocating workspace buffer for encoding all chunks of
+     * (possibly large) input into a single buffer; separate from encoding buffer,
+     * which encoders keep for their whole life-cycle.
+     *<p>
+     * Note that buffers of moderate size (up to a few chunks worth) are retained
+     * for reuse when released; larger ones (up to configured maximum size,
+     * see {@link #BufferRecycler(int)}) are only softly referenced, so that they
+     * may be garbage collected if memory is needed elsewhere.
+     *
+     * @since 1.2.1
+     */
+    public byte[] allocWorkspaceBuffer(int minSize)
+    {
+        byte[] buf = _workspaceBuffer;
+        if (buf != null && buf.length >= minSize) {
+            _workspaceBuffer = null;
+            return buf;
+        }
+        if (_largeWorkspaceRef != null) {
+            buf = _largeWorkspaceRef.get();
+            if (buf == null) { // cleared by GC
+                _largeWorkspaceRef = null;
+            } else if (buf.length >= minSize) {
+                _largeWorkspaceRef = null;
+                return buf;
+            }
+        }
+        return new byte[Math.max(minSize, MIN_OUTPUT_BUFFER)];
+    }
+
+    /**
+     * @since 1.2.1
+     */
+    public void releaseWorkspaceBuffer(byte[] buffer)
+    {
+        if (buffer == null || buffer.length > _maxWorkspaceBuffer) {
+            return;
+        }
+        if (buffer.length > MAX_HARD_WORKSPACE_BUFFER) {
+            byte[] old = (_largeWorkspaceRef == null) ? null : _largeWorkspaceRef.get();
+            if (old == null || buffer.length > old.length) {
+                _largeWorkspaceRef = new SoftReference<byte[]>(buffer);
+            }
+        } else if (_workspaceBuffer == null || buffer.length > _workspaceBuffer.length) {
+            _workspaceBuffer = buffer;
+        }
+    }
+
     /*
     ///////////////////////////////////////////////////////////////////////
     // Buffers for decoding (input)
@@ -0,0 +1,52 @@
+package com.ning.compress;
+
+import java.io.IOException;
+
+/**
+ * Abstract class that defines "push" style API for various compressors
+ * (aka encoders); counterpart of {@link Uncompressor}. Implementations are
+ * alternatives to stream based compressors (such as
+ * {@link com.ning.compress.lzf.LZFOutputStream}) in cases where "push" operation
+ * is important and/or blocking is not allowed; for example, when producing
+ * compressed content from within an event loop.
+ *<p>
+ * Compressed data is passed to a {@link DataHandler}, usually passed to
+ * constructor of the implementation. Buffers passed to handler are reused, so
+ * handler must not retain references to them after call returns.
+ *
+ * @since 1.2.1
+ */
+public abstract class Compressor
+{
+    /**
+     * Method called to feed more data to be compressed; compressed data is
+     * sent to handler as it becomes available, which typically means that
+     * some of the data is buffered until more data is fed, or until
+     * {@link #flush} or {@link #complete} is called.
+     *
+     * @return True, if caller should process and feed more data; false if
+     *   handler is not interested in more data and processing should be terminated
+     *   (and {@link #complete} should be called immediately)
+     */
+    public abstract boolean feedUncompressedData(byte[] data, int offset, int len)
+        throws IOException;
+
+    /**
+     * Method called to compress all data fed so far and send results to handler,
+     * so that it can be uncompressed without further data (for example, to
+     * send a complete message). This typically results in lower compression ratio,
+     * so it should only be called when needed.
+     *
+     * @return True, if caller should process and feed more data; false if
+     *   handler is not interested in more data and processing should be terminated
+     */
+    public abstract boolean flush() throws IOException;
+
+    /**
+     * Method called to indicate that all data to compress has already been fed.
+     * This results in remaining data being compressed and sent to handler, followed
+     * by call to {@link DataHandler#allDataHandled}; and resources used
+     * being released.
+     */
+    public abstract void complete() throws IOException;
+}
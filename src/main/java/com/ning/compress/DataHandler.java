@@ -4,7 +4,8 @@ import java.io.IOException;
 
 /**
  * Interface used by {@link Uncompressor} implementations: receives
- * uncompressed data and processes it appropriately.
+ * uncompressed data and processes it appropriately. Also used by
+ * {@link Compressor} implementations, to receive compressed data.
  */
 public interface DataHandler
 {
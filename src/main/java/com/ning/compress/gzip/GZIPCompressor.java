@@ -0,0 +1,231 @@
+package com.ning.compress.gzip;
+
+import java.io.IOException;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+import com.ning.compress.BufferRecycler;
+import com.ning.compress.Compressor;
+import com.ning.compress.DataHandler;
+
+/**
+ * {@link com.ning.compress.Compressor} implementation for compressing
+ * data using GZIP in "push" mode, in which output is not written to
+ * {@link java.io.OutputStream} but rather pushed to a {@link DataHandler}.
+ * Counterpart of {@link GZIPUncompressor}; produces same output as
+ * {@link OptimizedGZIPOutputStream}.
+ *<p>
+ * Compressed data is buffered until buffer is full (or {@link #flush} or
+ * {@link #complete} is called), to avoid passing tiny pieces to handler.
+ *
+ * @since 1.2.1
+ */
+public class GZIPCompressor extends Compressor
+{
+    /**
+     * Size of buffer compressed data is collected in, before passing to handler
+     */
+    protected final static int ENCODE_BUFFER_SIZE = 0xFFFF;
+
+    /**
+     * Length of GZIP trailer: CRC and length of uncompressed data
+     */
+    protected final static int TRAILER_LEN = 8;
+
+    /*
+    ///////////////////////////////////////////////////////////////////////
+    // Configuration, helper objects
+    ///////////////////////////////////////////////////////////////////////
+     */
+
+    /**
+     * Handler that will receive compressed data.
+     */
+    protected final DataHandler _handler;
+
+    /**
+     * Object that handles details of buffer recycling
+     */
+    protected final BufferRecycler _recycler;
+
+    protected final GZIPRecycler _gzipRecycler;
+
+    protected Deflater _deflater;
+
+    protected final CRC32 _crc;
+
+    /**
+     * Buffer that compressed data is collected in
+     */
+    protected byte[] _encodeBuffer;
+
+    /*
+    ///////////////////////////////////////////////////////////////////////
+    // Encoder state
+    ///////////////////////////////////////////////////////////////////////
+     */
+
+    /**
+     * Number of bytes of compressed data in {@link #_encodeBuffer}
+     */
+    protected int _encodedLength;
+
+    /**
+     * Flag set if {@link DataHandler} indicates that processing should be
+     * terminated.
+     */
+    protected boolean _terminated;
+
+    protected boolean _completed;
+
+    /*
+    ///////////////////////////////////////////////////////////////////////
+    // Instance creation
+    ///////////////////////////////////////////////////////////////////////
+     */
+
+    public GZIPCompressor(DataHandler h)
+    {
+        this(h, BufferRecycler.instance(), GZIPRecycler.instance());
+    }
+
+    public GZIPCompressor(DataHandler h, BufferRecycler bufferRecycler, GZIPRecycler gzipRecycler)
+    {
+        _handler = h;
+        _recycler = bufferRecycler;
+        _encodeBuffer = bufferRecycler.allocEncodingBuffer(ENCODE_BUFFER_SIZE);
+        _gzipRecycler = gzipRecycler;
+        _deflater = gzipRecycler.allocDeflater();
+        _crc = new CRC32();
+        // header is sent along with first compressed data
+        final byte[] header = OptimizedGZIPOutputStream.DEFAULT_HEADER;
+        System.arraycopy(header, 0, _encodeBuffer, 0, header.length);
+        _encodedLength = header.length;
+    }
+
+    /*
+    ///////////////////////////////////////////////////////////////////////
+    // Compressor API implementation
+    ///////////////////////////////////////////////////////////////////////
+     */
+
+    @Override
+    public boolean feedUncompressedData(byte[] data, int offset, int len) throws IOException
+    {
+        _checkNotCompleted();
+        if (_terminated) {
+            return false;
+        }
+        _crc.update(data, offset, len);
+        _deflater.setInput(data, offset, len);
+        // all input must be consumed, since deflater refers to caller's buffer
+        while (!_deflater.needsInput() && !_terminated) {
+            _deflate(Deflater.NO_FLUSH);
+        }
+        // (and must not retain reference to it in any case)
+        _deflater.setInput(_encodeBuffer, 0, 0);
+        return !_terminated;
+    }
+
+    @Override
+    public boolean flush() throws IOException
+    {
+        _checkNotCompleted();
+        if (!_terminated) {
+            // all pending data has been output once deflater leaves room in buffer
+            while (_deflate(Deflater.SYNC_FLUSH) && !_terminated) { }
+            if (!_terminated) {
+                _sendEncoded();
+            }
+        }
+        return !_terminated;
+    }
+
+    @Override
+    public void complete() throws IOException
+    {
+        if (_completed) {
+            return;
+        }
+        try {
+            if (!_terminated) {
+                _deflater.finish();
+                while (!_deflater.finished() && !_terminated) {
+                    _deflate(Deflater.NO_FLUSH);
+                }
+                if (!_terminated) {
+                    if (_encodedLength > _encodeBuffer.length - TRAILER_LEN) {
+                        _sendEncoded();
+                    }
+                    _putInt(_encodeBuffer, _encodedLength, (int) _crc.getValue());
+                    _putInt(_encodeBuffer, _encodedLength + 4, (int) _deflater.getBytesRead());
+                    _encodedLength += TRAILER_LEN;
+                    _sendEncoded();
+                }
+            }
+        } finally {
+            _completed = true;
+            Deflater d = _deflater;
+            if (d != null) {
+                _deflater = null;
+                _gzipRecycler.releaseDeflater(d);
+            }
+            byte[] b = _encodeBuffer;
+            if (b != null) {
+                _encodeBuffer = null;
+                _recycler.releaseEncodeBuffer(b);
+            }
+        }
+        _handler.allDataHandled();
+    }
+
+    /*
+    ///////////////////////////////////////////////////////////////////////
+    // Helper methods
+    ///////////////////////////////////////////////////////////////////////
+     */
+
+    /**
+     * Method for deflating into remaining space of the buffer, sending buffer
+     * to handler if it becomes full.
+     *
+     * @return True if buffer became full (and was sent); false if there is room left
+     */
+    private final boolean _deflate(int flushMode) throws IOException
+    {
+        _encodedLength += _deflater.deflate(_encodeBuffer, _encodedLength,
+                _encodeBuffer.length - _encodedLength, flushMode);
+        if (_encodedLength < _encodeBuffer.length) {
+            return false;
+        }
+        _sendEncoded();
+        return true;
+    }
+
+    private final void _sendEncoded() throws IOException
+    {
+        final int len = _encodedLength;
+        _encodedLength = 0;
+        if (len > 0 && !_handler.handleData(_encodeBuffer, 0, len)) {
+            _terminated = true;
+        }
+    }
+
+    private final void _checkNotCompleted() throws IOException
+    {
+        if (_completed) {
+            throw new IOException(getClass().getName()+" already completed");
+        }
+    }
+
+    /**
+     * Stupid GZIP, writes stuff in wrong order (not network, but x86)
+     */
+    private final static void _putInt(byte[] buf, int offset, int value)
+    {
+        buf[offset++] = (byte) (value);
+        buf[offset++] = (byte) (value >> 8);
+        buf[offset++] = (byte) (value >> 16);
+        buf[offset] = (byte) (value >> 24);
+    }
+}
@@ -2,6 +2,8 @@ package com.ning.compress.lzf;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
 
 /**
  * Decoder that handles decoding of sequence of encoded LZF chunks,
@@ -116,6 +118,101 @@ public abstract class ChunkDecoder
         return outPtr;
     }
 
+    /**
+     * Method for decompressing all remaining content of given input buffer, encoded
+     * in LZF block structure (sequence of one or more complete chunks), appending
+     * decoded content in output buffer. Positions of both buffers are advanced
+     * past consumed and appended content.
+     *<p>
+     * Buffers may be heap or direct buffers: backing arrays of heap buffers are
+     * accessed directly, and content of direct buffers using
+     * {@link #decodeBufferChunk(ByteBuffer, int, int, ByteBuffer, int, int)}
+     * (or its variant for array output), without copying.
+     * Non-compressed chunks are copied directly from input buffer to output buffer.
+     *
+     * @return Number of bytes appended in output buffer
+     *
+     * @throws LZFException If input is corrupt, or output buffer does not have enough
+     *    room for decoded content; if so, positions of buffers are not changed
+     *    (although content of output buffer may be)
+     *
+     * @since 1.2.1
+     */
+    public int decode(final ByteBuffer src, final ByteBuffer dst) throws LZFException
+    {
+        final int inEnd = src.limit();
+        final int outStart = dst.position();
+        final int outEnd = dst.limit();
+        int inPtr = src.position();
+        int outPtr = outStart;
+        int blockNr = 0;
+        // (note: position/limit setters called via `Buffer` for Java 8 compatibility)
+        while (inPtr < inEnd) {
+            // can use optional end marker
+            if (inPtr == (inEnd - 1) && src.get(inPtr) == BYTE_NULL) {
+                ++inPtr;
+                break;
+            }
+            if ((inEnd - inPtr) < HEADER_BYTES) {
+                throw new LZFException("Corrupt input data, block #"+blockNr+" (at offset "+inPtr+"): truncated block header");
+            }
+            if (src.get(inPtr) != LZFChunk.BYTE_Z || src.get(inPtr+1) != LZFChunk.BYTE_V) {
+                throw new LZFException("Corrupt input data, block #"+blockNr+" (at offset "+inPtr+"): did not start with 'ZV' signature bytes");
+            }
+            final int type = src.get(inPtr+2);
+            final int len = uint16(src, inPtr+3);
+            inPtr += HEADER_BYTES;
+            if (type == LZFChunk.BLOCK_TYPE_NON_COMPRESSED) { // uncompressed
+                if ((inPtr + len) > inEnd) {
+                    throw new LZFException("Corrupt input data, block #" + blockNr + " is incomplete");
+                }
+                if ((outPtr + len) > outEnd) {
+                    _reportBufferOverflow(dst, outPtr, len);
+                }
+                if (src.hasArray() && dst.hasArray()) {
+                    System.arraycopy(src.array(), src.arrayOffset() + inPtr,
+                            dst.array(), dst.arrayOffset() + outPtr, len);
+                } else {
+                    ByteBuffer from = src.duplicate();
+                    ((Buffer) from).limit(inPtr + len);
+                    ((Buffer) from).position(inPtr);
+                    ByteBuffer to = dst.duplicate();
+                    ((Buffer) to).position(outPtr);
+                    to.put(from);
+                }
+                outPtr += len;
+            } else if (type == LZFChunk.BLOCK_TYPE_COMPRESSED) {
+                if ((inPtr + 2 + len) > inEnd) {
+                    throw new LZFException("Corrupt input data, block #" + blockNr + " is incomplete");
+                }
+                final int uncompLen = uint16(src, inPtr);
+                inPtr += 2;
+                if ((outPtr + uncompLen) > outEnd) {
+                    _reportBufferOverflow(dst, outPtr, uncompLen);
+                }
+                if (dst.hasArray()) {
+                    final int outOffset = dst.arrayOffset() + outPtr;
+                    if (src.hasArray()) {
+                        final int inOffset = src.arrayOffset() + inPtr;
+                        decodeChunk(src.array(), inOffset, inOffset + len, dst.array(), outOffset, outOffset + uncompLen);
+                    } else {
+                        decodeBufferChunk(src, inPtr, inPtr + len, dst.array(), outOffset, outOffset + uncompLen);
+                    }
+                } else {
+                    decodeBufferChunk(src, inPtr, inPtr + len, dst, outPtr, outPtr + uncompLen);
+                }
+                outPtr += uncompLen;
+            } else { // unknown... CRC-32 would be 2, but that's not implemented by cli tool
+                throw new LZFException("Corrupt input data, block #"+blockNr+" (at offset "+inPtr+"): unrecognized block type "+(type & 0xFF));
+            }
+            inPtr += len;
+            ++blockNr;
+        }
+        ((Buffer) src).position(inPtr);
+        ((Buffer) dst).position(outPtr);
+        return outPtr - outStart;
+    }
+
     /**
      * Main decode from a stream.  Decompressed bytes are placed in the outputBuffer, inputBuffer
      * is a "scratch-area".
@@ -151,6 +248,115 @@ public abstract class ChunkDecoder
         decodeChunk(in, inPos, out, outPos, outEnd);
     }
 
+    /**
+     * Main decode method for individual chunks, when input is in a {@link ByteBuffer}
+     * (usually a direct or memory-mapped one): input is read using absolute
+     * accessors, so position and limit of the buffer are not changed, and
+     * no copy of input is made.
+     *<p>
+     * Default implementation is a straight-forward decoding loop shared by all decoders;
+     * it does not rely on any particular decoder implementation.
+     *
+     * @param in Buffer that contains compressed content (without chunk header)
+     * @param inPos Index of the first byte of compressed content in <code>in</code>
+     * @param inEnd Index after the last byte of compressed content in <code>in</code>
+     *
+     * @since 1.2.1
+     */
+    public void decodeBufferChunk(ByteBuffer in, int inPos, int inEnd, byte[] out, int outPos, int outEnd)
+        throws LZFException
+    {
+        do {
+            int ctrl = in.get(inPos++) & 255;
+            if (ctrl < LZFChunk.MAX_LITERAL) { // literal run of ctrl+1 bytes
+                final int end = inPos + ctrl;
+                while (inPos <= end) {
+                    out[outPos++] = in.get(inPos++);
+                }
+                continue;
+            }
+            // back reference
+            int len = ctrl >> 5;
+            ctrl = -((ctrl & 0x1f) << 8) - 1;
+            if (len == 7) { // 3 bytes; length of up to 264 bytes
+                len += in.get(inPos++) & 255;
+            }
+            ctrl -= in.get(inPos++) & 255;
+            len += 2;
+            // if there is no overlap (and copy is long enough), can just use arraycopy
+            if (len > 16 && (ctrl + len) <= 0) {
+                System.arraycopy(out, outPos+ctrl, out, outPos, len);
+                outPos += len;
+                continue;
+            }
+            final int end = outPos + len;
+            while (outPos < end) {
+                out[outPos] = out[outPos++ + ctrl];
+            }
+        } while (outPos < outEnd);
+
+        // sanity check to guard against corrupt data:
+        if (inPos != inEnd) {
+            throw new LZFException("Corrupt data: unexpected input amount was consumed");
+        }
+        if (outPos != outEnd) {
+            throw new LZFException("Corrupt data: overrun in decompress, input offset "+inPos+", output offset "+outPos);
+        }
+    }
+
+    /**
+     * Main decode method for individual chunks, when both input and output are in
+     * {@link ByteBuffer}s (usually direct ones): content is accessed using absolute
+     * accessors, so positions and limits of the buffers are not changed, and
+     * no copies are made.
+     *<p>
+     * Default implementation is a straight-forward decoding loop shared by all decoders,
+     * similar to that of {@link #decodeBufferChunk(ByteBuffer, int, int, byte[], int, int)}.
+     *
+     * @param in Buffer that contains compressed content (without chunk header)
+     * @param inPos Index of the first byte of compressed content in <code>in</code>
+     * @param inEnd Index after the last byte of compressed content in <code>in</code>
+     * @param out Buffer to decode content in
+     * @param outPos Index in <code>out</code> to decode content at
+     * @param outEnd Index after the last byte of decoded content in <code>out</code>
+     *
+     * @since 1.2.1
+     */
+    public void decodeBufferChunk(ByteBuffer in, int inPos, int inEnd, ByteBuffer out, int outPos, int outEnd)
+        throws LZFException
+    {
+        do {
+            int ctrl = in.get(inPos++) & 255;
+            if (ctrl < LZFChunk.MAX_LITERAL) { // literal run of ctrl+1 bytes
+                final int end = inPos + ctrl;
+                while (inPos <= end) {
+                    out.put(outPos++, in.get(inPos++));
+                }
+                continue;
+            }
+            // back reference
+            int len = ctrl >> 5;
+            ctrl = -((ctrl & 0x1f) << 8) - 1;
+            if (len == 7) { // 3 bytes; length of up to 264 bytes
+                len += in.get(inPos++) & 255;
+            }
+            ctrl -= in.get(inPos++) & 255;
+            len += 2;
+            final int end = outPos + len;
+            while (outPos < end) {
+                out.put(outPos, out.get(outPos++ + ctrl));
+            }
+        } while (outPos < outEnd);
+
+        // sanity check to guard against corrupt data:
+        if (inPos != inEnd) {
+            throw new LZFException("Corrupt data: unexpected input amount was consumed");
+        }
+        if (outPos != outEnd) {
+            throw new LZFException("Corrupt data: overrun in decompress, input offset "+inPos+", output offset "+outPos);
+        }
+    }
+
     /**
      * @return If positive number, number of bytes skipped; if -1, end-of-stream was
      *   reached; otherwise, amount of content
@@ -160,6 +366,92 @@ public abstract class ChunkDecoder
             final byte[] outputBuffer, final long maxToSkip)
         throws IOException;
 
+    /**
+     * Method for reading and decoding next chunk from given stream directly into
+     * given output buffer (at <code>outputPtr</code>), if chunk fits before
+     * <code>outputEnd</code>; or, if not, into <code>decodeBuffer</code> (at 0),
+     * which must have room for a full chunk. This lets callers avoid copying
+     * decoded content when they read big amounts at a time.
+     *<p>
+     * Non-compressed chunks are read directly into whichever buffer is used.
+     *
+     * @return If zero or positive number, number of bytes decoded into
+     *   <code>outputBuffer</code>; if -1, end-of-stream was reached; otherwise,
+     *   amount of content decoded into <code>decodeBuffer</code>
+     *   (using formula of <code>returnValue = -(decodedAmount + 1)</code>)
+     *
+     * @since 1.2.1
+     */
+    public int decodeOrBufferChunk(final InputStream is, final byte[] inputBuffer,
+            final byte[] outputBuffer, final int outputPtr, final int outputEnd,
+            final byte[] decodeBuffer)
+        throws IOException
+    {
+        int bytesRead = readHeader(is, inputBuffer);
+        if ((bytesRead < HEADER_BYTES)
+                || inputBuffer[0] != LZFChunk.BYTE_Z || inputBuffer[1] != LZFChunk.BYTE_V) {
+            if (bytesRead == 0) { // probably fine, clean EOF
+                return -1;
+            }
+            _reportCorruptHeader();
+        }
+        final int type = inputBuffer[2];
+        final int compLen = uint16(inputBuffer, 3);
+        final int room = outputEnd - outputPtr;
+        if (type == LZFChunk.BLOCK_TYPE_NON_COMPRESSED) { // uncompressed
+            if (compLen <= room) {
+                readFully(is, false, outputBuffer, outputPtr, compLen);
+                return compLen;
+            }
+            readFully(is, false, decodeBuffer, 0, compLen);
+            return -(compLen+1);
+        }
+        // compressed
+        readFully(is, true, inputBuffer, 0, 2+compLen); // first 2 bytes are uncompressed length
+        final int uncompLen = uint16(inputBuffer, 0);
+        if (uncompLen <= room) {
+            decodeChunk(inputBuffer, 2, 2+compLen, outputBuffer, outputPtr, outputPtr+uncompLen);
+            return uncompLen;
+        }
+        decodeChunk(inputBuffer, 2, 2+compLen, decodeBuffer, 0, uncompLen);
+        return -(uncompLen+1);
+    }
+
+    /**
+     * Method for reading next chunk from given stream, decoding it into given
+     * output buffer if it is compressed; but only reading header of a
+     * non-compressed chunk, leaving its payload to be read (or transferred
+     * as is) by caller.
+     *
+     * @return If zero or positive number, number of bytes decoded into
+     *   <code>outputBuffer</code>; if -1, end-of-stream was reached; otherwise,
+     *   length of non-compressed payload that follows in the stream
+     *   (using formula of <code>returnValue = -(payloadLength + 2)</code>)
+     *
+     * @since 1.2.1
+     */
+    public int decodeCompressedChunk(final InputStream is, final byte[] inputBuffer,
+            final byte[] outputBuffer)
+        throws IOException
+    {
+        int bytesRead = readHeader(is, inputBuffer);
+        if ((bytesRead < HEADER_BYTES)
+                || inputBuffer[0] != LZFChunk.BYTE_Z || inputBuffer[1] != LZFChunk.BYTE_V) {
+            if (bytesRead == 0) { // probably fine, clean EOF
+                return -1;
+            }
+            _reportCorruptHeader();
+        }
+        final int compLen = uint16(inputBuffer, 3);
+        if (inputBuffer[2] == LZFChunk.BLOCK_TYPE_NON_COMPRESSED) {
+            return -(compLen+2);
+        }
+        readFully(is, true, inputBuffer, 0, 2+compLen); // first 2 bytes are uncompressed length
+        final int uncompLen = uint16(inputBuffer, 0);
+        decodeChunk(inputBuffer, 2, 2+compLen, outputBuffer, 0, uncompLen);
+        return uncompLen;
+    }
+
     /*
     ///////////////////////////////////////////////////////////////////////
     // Public static methods
@@ -225,6 +517,10 @@ public abstract class ChunkDecoder
         return ((data[ptr] & 0xFF) << 8) + (data[ptr+1] & 0xFF);
     }    
 
+    protected final static int uint16(ByteBuffer data, int ptr) {
+        return ((data.get(ptr) & 0xFF) << 8) + (data.get(ptr+1) & 0xFF);
+    }
+
     /**
      * Helper method to forcibly load header bytes that must be read before
      * chunk can be handled.
@@ -301,4 +597,17 @@ public abstract class ChunkDecoder
         throw new LZFException("Target buffer too small ("+targetBuffer.length+"): can not copy/uncompress "
                 +dataLen+" bytes to offset "+outPtr);
     }
+
+    /**
+     * Helper method called when it is determined that the target {@link ByteBuffer}
+     * can not hold all data to copy or uncompress
+     *
+     * @since 1.2.1
+     */
+    protected void _reportBufferOverflow(ByteBuffer targetBuffer, int outPtr, int dataLen)
+        throws LZFException
+    {
+        throw new LZFException("Target buffer too small (limit "+targetBuffer.limit()+"): can not copy/uncompress "
+                +dataLen+" bytes to offset "+outPtr);
+    }
 }
@@ -14,6 +14,10 @@ package com.ning.compress.lzf;
 import java.io.Closeable;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.BufferOverflowException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
 
 import com.ning.compress.BufferRecycler;
 
@@ -52,6 +56,12 @@ public abstract class ChunkEncoder
      */
     protected static final int TAIL_LENGTH = 4;
 
+    /**
+     * Value of {@link #_skipShift} for encoders that do not use skip acceleration:
+     * count of consecutive misses shifted by this is always 0.
+     */
+    protected static final int NO_SKIP_SHIFT = 31;
+
     // // // Encoding tables etc
 
     protected final BufferRecycler _recycler;
@@ -64,6 +74,13 @@ public abstract class ChunkEncoder
     
     protected final int _hashModulo;
 
+    /**
+     * Shift applied to the count of consecutive input positions without a match,
+     * to get number of additional positions to skip over without hashing
+     * ("skip acceleration"); {@link #NO_SKIP_SHIFT} if not enabled.
+     */
+    protected final int _skipShift;
+
     /**
      * Buffer in which encoded content is stored during processing
      */
@@ -74,6 +91,29 @@ public abstract class ChunkEncoder
      */
     protected byte[] _headerBuffer;
 
+    /**
+     * Optional estimator used for checking whether content is worth trying to compress
+     *
+     * @since 1.2.1
+     */
+    protected CompressibilityEstimator _estimator;
+
+    /**
+     * Buffer used for copying content of direct {@link ByteBuffer}s to encode;
+     * lazily allocated when first needed.
+     *
+     * @since 1.2.1
+     */
+    protected byte[] _inputBuffer;
+
+    /**
+     * Buffers used for gathering writes of chunk header and payload;
+     * lazily allocated when first needed.
+     *
+     * @since 1.2.1
+     */
+    protected ByteBuffer[] _writeBuffers;
+
     /**
 	 * Uses a ThreadLocal soft-referenced BufferRecycler instance.
 	 * 
@@ -102,6 +142,7 @@ public abstract class ChunkEncoder
         _recycler = bufferRecycler;
         _hashTable = bufferRecycler.allocEncodingHash(suggestedHashLen);
         _hashModulo = _hashTable.length - 1;
+        _skipShift = NO_SKIP_SHIFT;
         // Ok, then, what's the worst case output buffer length?
         // length indicator for each 32 literals, so:
         // 21-Feb-2013, tatu: Plus we want to prepend chunk header in place:
@@ -129,16 +170,55 @@ public abstract class ChunkEncoder
         _recycler = bufferRecycler;
         _hashTable = bufferRecycler.allocEncodingHash(suggestedHashLen);
         _hashModulo = _hashTable.length - 1;
+        _skipShift = NO_SKIP_SHIFT;
         _encodeBuffer = null;
     }
 
-    private static int calcHashLen(int chunkSize)
+    /**
+     * Constructor used by encoders constructed for specific {@link CompressionLevel},
+     * which may limit size of the hash table used.
+     *
+     * @param totalLength Total encoded length; used for calculating size
+     *   of hash table to use
+     * @param bufferRecycler Buffer recycler instance, for usages where the
+     *   caller manages the recycler instances
+     * @param level Compression level that determines maximum hash table size
+     * @param allocateBuffer Whether to allocate encoding buffer (true), or
+     *   leave it unallocated, for cases where caller always passes output buffer
+     *   externally (false)
+     */
+    protected ChunkEncoder(int totalLength, BufferRecycler bufferRecycler, CompressionLevel level,
+            boolean allocateBuffer)
+    {
+        if (totalLength <= 0) {
+            throw new IllegalArgumentException("Invalid total length: " + totalLength);
+        }
+        int largestChunkLen = Math.min(totalLength, LZFChunk.MAX_CHUNK_LEN);
+        int hashLen = calcHashLen(largestChunkLen, level.getMaxHashSize());
+        _recycler = bufferRecycler;
+        _hashTable = bufferRecycler.allocEncodingHash(hashLen);
+        // Recycled table may be bigger than needed; only use the part asked for
+        _hashModulo = hashLen - 1;
+        _skipShift = (level.getSkipStrength() > 0) ? level.getSkipStrength() : NO_SKIP_SHIFT;
+        if (allocateBuffer) {
+            int bufferLen = largestChunkLen + ((largestChunkLen + 31) >> 5) + LZFChunk.MAX_HEADER_LEN;
+            _encodeBuffer = bufferRecycler.allocEncodingBuffer(bufferLen);
+        } else {
+            _encodeBuffer = null;
+        }
+    }
+
+    private static int calcHashLen(int chunkSize) {
+        return calcHashLen(chunkSize, MAX_HASH_SIZE);
+    }
+
+    private static int calcHashLen(int chunkSize, int maxHashSize)
     {
         // in general try get hash table size of 2x input size
         chunkSize += chunkSize;
         // but no larger than max size:
-        if (chunkSize >= MAX_HASH_SIZE) {
-            return MAX_HASH_SIZE;
+        if (chunkSize >= maxHashSize) {
+            return maxHashSize;
         }
         // otherwise just need to round up to nearest 2x
         int hashLen = MIN_HASH_SIZE;
@@ -171,13 +251,18 @@ public abstract class ChunkEncoder
             _hashTable = null;
             _recycler.releaseEncodingHash(ibuf);
         }
+        buf = _inputBuffer;
+        if (buf != null) {
+            _inputBuffer = null;
+            _recycler.releaseInputBuffer(buf);
+        }
     }
     /**
      * Method for compressing (or not) individual chunks
      */
     public LZFChunk encodeChunk(byte[] data, int offset, int len)
     {
-        if (len >= MIN_BLOCK_TO_COMPRESS) {
+        if (len >= MIN_BLOCK_TO_COMPRESS && _mayCompress(data, offset, len, 1.0)) {
             /* If we have non-trivial block, and can compress it by at least
              * 2 bytes (since header is 2 bytes longer), let's compress:
              */
@@ -203,7 +288,7 @@ public abstract class ChunkEncoder
     public LZFChunk encodeChunkIfCompresses(byte[] data, int offset, int inputLen,
             double maxResultRatio)
     {
-        if (inputLen >= MIN_BLOCK_TO_COMPRESS) {
+        if (inputLen >= MIN_BLOCK_TO_COMPRESS && _mayCompress(data, offset, inputLen, maxResultRatio)) {
             final int maxSize = (int) (maxResultRatio * inputLen + LZFChunk.HEADER_LEN_COMPRESSED + 0.5);
             int compLen = tryCompress(data, offset, offset+inputLen, _encodeBuffer, 0);
             if (compLen <= maxSize) {
@@ -226,7 +311,7 @@ public abstract class ChunkEncoder
     public int appendEncodedChunk(final byte[] input, final int inputPtr, final int inputLen,
             final byte[] outputBuffer, final int outputPos)
     {
-        if (inputLen >= MIN_BLOCK_TO_COMPRESS) {
+        if (inputLen >= MIN_BLOCK_TO_COMPRESS && _mayCompress(input, inputPtr, inputLen, 1.0)) {
             /* If we have non-trivial block, and can compress it by at least
              * 2 bytes (since header is 2 bytes longer), use as-is
              */
@@ -259,7 +344,7 @@ public abstract class ChunkEncoder
             final int inputPtr, final int inputLen,
             final byte[] outputBuffer, final int outputPos)
     {
-        if (inputLen >= MIN_BLOCK_TO_COMPRESS) {
+        if (inputLen >= MIN_BLOCK_TO_COMPRESS && _mayCompress(input, inputPtr, inputLen, maxResultRatio)) {
             final int compStart = outputPos + LZFChunk.HEADER_LEN_COMPRESSED;
             final int end = tryCompress(input, inputPtr, inputPtr+inputLen, outputBuffer, compStart);
             final int maxSize = (int) (maxResultRatio * inputLen + LZFChunk.HEADER_LEN_COMPRESSED + 0.5);
@@ -273,13 +358,159 @@ public abstract class ChunkEncoder
         return -1;
     }
 
+    /**
+     * Method similar to {@link #appendEncodedChunk(byte[], int, int, byte[], int)}, but
+     * for input in a {@link ByteBuffer}: content is read using absolute accessors, so
+     * position and limit of the buffer are not changed. Content of direct buffers is
+     * compressed without copying, if encoder implementation supports it
+     * (see {@link #tryCompress(ByteBuffer, int, int, byte[], int)}).
+     *
+     * @param inputPtr Index of the first byte to encode in <code>input</code>
+     *
+     * @return Offset in output buffer after appending the encoded chunk
+     *
+     * @since 1.2.1
+     */
+    public int appendEncodedChunk(final ByteBuffer input, final int inputPtr, final int inputLen,
+            final byte[] outputBuffer, final int outputPos)
+    {
+        if (input.hasArray()) {
+            return appendEncodedChunk(input.array(), input.arrayOffset() + inputPtr, inputLen,
+                    outputBuffer, outputPos);
+        }
+        final int uncompEnd = (outputPos + LZFChunk.HEADER_LEN_NOT_COMPRESSED) + inputLen;
+        final int end = appendEncodedIfCompresses(input, 1.0, inputPtr, inputLen, outputBuffer, outputPos);
+        if (end >= 0 && end < uncompEnd) { // yes, compressed by at least one byte
+            return end;
+        }
+        LZFChunk.appendNonCompressedHeader(inputLen, outputBuffer, outputPos);
+        _getBytes(input, inputPtr, outputBuffer, outputPos + LZFChunk.HEADER_LEN_NOT_COMPRESSED, inputLen);
+        return uncompEnd;
+    }
+
+    /**
+     * Method similar to {@link #appendEncodedIfCompresses(byte[], double, int, int, byte[], int)},
+     * but for input in a {@link ByteBuffer}; see
+     * {@link #appendEncodedChunk(ByteBuffer, int, int, byte[], int)} for details.
+     *
+     * @return Offset after appending compressed chunk, if compression produces compact
+     *    enough chunk; otherwise -1 to indicate that no compression resulted.
+     *
+     * @since 1.2.1
+     */
+    public int appendEncodedIfCompresses(final ByteBuffer input, double maxResultRatio,
+            final int inputPtr, final int inputLen,
+            final byte[] outputBuffer, final int outputPos)
+    {
+        if (input.hasArray()) {
+            return appendEncodedIfCompresses(input.array(), maxResultRatio, input.arrayOffset() + inputPtr,
+                    inputLen, outputBuffer, outputPos);
+        }
+        if (inputLen >= MIN_BLOCK_TO_COMPRESS) {
+            if (_estimator != null) { // estimators only handle arrays, so need a copy
+                final byte[] copy = _inputBuffer(inputLen);
+                _getBytes(input, inputPtr, copy, 0, inputLen);
+                return appendEncodedIfCompresses(copy, maxResultRatio, 0, inputLen, outputBuffer, outputPos);
+            }
+            final int compStart = outputPos + LZFChunk.HEADER_LEN_COMPRESSED;
+            final int end = tryCompress(input, inputPtr, inputPtr+inputLen, outputBuffer, compStart);
+            final int maxSize = (int) (maxResultRatio * inputLen + LZFChunk.HEADER_LEN_COMPRESSED + 0.5);
+
+            if (end <= (outputPos + maxSize)) {
+                LZFChunk.appendCompressedHeader(inputLen, end - compStart, outputBuffer, outputPos);
+                return end;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Method for encoding a single chunk from remaining content of given input
+     * buffer (all of it, or first {@link LZFChunk#MAX_CHUNK_LEN} bytes if more remains),
+     * appending encoded chunk in output buffer. Positions of both buffers are advanced
+     * past consumed and appended content; but if output buffer does not have enough room
+     * for encoded chunk, neither position is changed.
+     *<p>
+     * Buffers may be heap or direct buffers. Content of direct input buffers is compressed
+     * without copying, if encoder implementation supports it; compressed content is
+     * written directly in backing array of heap output buffer (if it has room for
+     * the workspace needed), and otherwise copied from work buffer of this encoder.
+     * Non-compressed chunks are copied from input buffer to output buffer as is.
+     *
+     * @return Number of bytes appended in output buffer; 0 if input buffer had no
+     *    remaining content
+     *
+     * @throws BufferOverflowException If output buffer does not have enough room for
+     *    encoded chunk
+     *
+     * @since 1.2.1
+     */
+    public int encodeChunk(ByteBuffer src, ByteBuffer dst)
+    {
+        final int inputLen = Math.min(src.remaining(), LZFChunk.MAX_CHUNK_LEN);
+        if (inputLen == 0) {
+            return 0;
+        }
+        final int srcPos = src.position();
+        final int workspace = LZFEncoder.estimateMaxWorkspaceSize(inputLen);
+        final int encodedLen;
+        // Can we encode directly in the output buffer? (casts for Java 8 compatibility)
+        if (dst.hasArray() && dst.remaining() >= workspace) {
+            final int outputPtr = dst.arrayOffset() + dst.position();
+            encodedLen = appendEncodedChunk(src, srcPos, inputLen, dst.array(), outputPtr) - outputPtr;
+            ((Buffer) dst).position(dst.position() + encodedLen);
+        } else {
+            byte[] encodeBuffer = _encodeBuffer;
+            if (encodeBuffer == null || encodeBuffer.length < workspace) {
+                if (encodeBuffer != null) {
+                    _recycler.releaseEncodeBuffer(encodeBuffer);
+                }
+                _encodeBuffer = encodeBuffer = _recycler.allocEncodingBuffer(workspace);
+            }
+            final int end = appendEncodedIfCompresses(src, 1.0, srcPos, inputLen, encodeBuffer, 0);
+            if (end >= 0 && end < LZFChunk.HEADER_LEN_NOT_COMPRESSED + inputLen) {
+                encodedLen = end;
+                if (encodedLen > dst.remaining()) {
+                    throw new BufferOverflowException();
+                }
+                dst.put(encodeBuffer, 0, encodedLen);
+            } else { // non-compressed: no need to copy input through work buffer
+                encodedLen = LZFChunk.HEADER_LEN_NOT_COMPRESSED + inputLen;
+                if (encodedLen > dst.remaining()) {
+                    throw new BufferOverflowException();
+                }
+                dst.put(encodeBuffer, 0, LZFChunk.appendNonCompressedHeader(inputLen, encodeBuffer, 0));
+                final ByteBuffer input = src.duplicate();
+                ((Buffer) input).limit(srcPos + inputLen);
+                dst.put(input);
+            }
+        }
+        ((Buffer) src).position(srcPos + inputLen);
+        return encodedLen;
+    }
+
     /**
      * Method for encoding individual chunk, writing it to given output stream.
      */
     public void encodeAndWriteChunk(byte[] data, int offset, int len, OutputStream out)
         throws IOException
     {
-        if (len >= MIN_BLOCK_TO_COMPRESS) {
+        writeEncodedChunk(data, offset, len, out);
+    }
+
+    /**
+     * Method for encoding individual chunk, writing it to given output stream;
+     * same as {@link #encodeAndWriteChunk(byte[], int, int, OutputStream)} except
+     * that length of the chunk written is returned.
+     *
+     * @return Number of bytes written: length of the encoded chunk, including header
+     *
+     * @since 1.2.1
+     */
+    public int writeEncodedChunk(byte[] data, int offset, int len, OutputStream out)
+        throws IOException
+    {
+        if (len >= MIN_BLOCK_TO_COMPRESS && _mayCompress(data, offset, len, 1.0)) {
             // If we have non-trivial block, and can compress it by at least
             // 2 bytes (since header is 2 bytes longer), let's compress:
             int compEnd = tryCompress(data, offset, offset+len, _encodeBuffer, LZFChunk.HEADER_LEN_COMPRESSED);
@@ -287,7 +518,7 @@ public abstract class ChunkEncoder
             if (compLen < (len-2)) { // yes, compressed block is smaller (consider header is 2 bytes longer)
                 LZFChunk.appendCompressedHeader(len, compLen, _encodeBuffer, 0);
                 out.write(_encodeBuffer, 0, compEnd);
-                return;
+                return compEnd;
             }
         }
         // Otherwise leave uncompressed:
@@ -297,6 +528,141 @@ public abstract class ChunkEncoder
         }
         LZFChunk.writeNonCompressedHeader(len, out, headerBuf);
         out.write(data, offset, len);
+        return LZFChunk.HEADER_LEN_NOT_COMPRESSED + len;
+    }
+
+    /**
+     * Method for encoding individual chunk, writing it to given channel; same as
+     * {@link #writeEncodedChunk(byte[], int, int, OutputStream)} except that
+     * non-compressed chunks are written using a single gathering write of header
+     * and input content, without copying.
+     *
+     * @return Number of bytes written: length of the encoded chunk, including header
+     *
+     * @since 1.2.1
+     */
+    public int writeEncodedChunk(byte[] data, int offset, int len, GatheringByteChannel out)
+        throws IOException
+    {
+        final ByteBuffer[] buffers = _writeBuffers();
+        if (len >= MIN_BLOCK_TO_COMPRESS && _mayCompress(data, offset, len, 1.0)) {
+            int compEnd = tryCompress(data, offset, offset+len, _encodeBuffer, LZFChunk.HEADER_LEN_COMPRESSED);
+            final int compLen = compEnd - LZFChunk.HEADER_LEN_COMPRESSED;
+            if (compLen < (len-2)) { // yes, compressed block is smaller (consider header is 2 bytes longer)
+                LZFChunk.appendCompressedHeader(len, compLen, _encodeBuffer, 0);
+                buffers[1] = ByteBuffer.wrap(_encodeBuffer, 0, compEnd);
+                LZFChunk.writeFully(out, buffers, 1, 1);
+                buffers[1] = null;
+                return compEnd;
+            }
+        }
+        final ByteBuffer header = buffers[0];
+        LZFChunk.appendNonCompressedHeader(len, header.array(), 0);
+        // (casts for Java 8 compatibility)
+        ((Buffer) header).clear();
+        ((Buffer) header).limit(LZFChunk.HEADER_LEN_NOT_COMPRESSED);
+        buffers[1] = ByteBuffer.wrap(data, offset, len);
+        LZFChunk.writeFully(out, buffers, 0, 2);
+        buffers[1] = null; // not to retain caller's buffer
+        return LZFChunk.HEADER_LEN_NOT_COMPRESSED + len;
+    }
+
+    /**
+     * Method similar to {@link #writeEncodedChunk(byte[], int, int, OutputStream)}, but
+     * for input in a {@link ByteBuffer}: content is read using absolute accessors, so
+     * position and limit of the buffer are not changed. Content of direct buffers is
+     * compressed without copying, if encoder implementation supports it; but content of
+     * non-compressed chunks has to be copied, to be written to the stream.
+     *
+     * @param offset Index of the first byte to encode in <code>data</code>
+     *
+     * @return Number of bytes written: length of the encoded chunk, including header
+     *
+     * @since 1.2.1
+     */
+    public int writeEncodedChunk(ByteBuffer data, int offset, int len, OutputStream out)
+        throws IOException
+    {
+        if (data.hasArray()) {
+            return writeEncodedChunk(data.array(), data.arrayOffset() + offset, len, out);
+        }
+        final int end = appendEncodedIfCompresses(data, 1.0, offset, len, _encodeBuffer, 0);
+        if (end >= 0 && end < LZFChunk.HEADER_LEN_NOT_COMPRESSED + len) {
+            out.write(_encodeBuffer, 0, end);
+            return end;
+        }
+        byte[] headerBuf = _headerBuffer;
+        if (headerBuf == null) {
+            _headerBuffer = headerBuf = new byte[LZFChunk.MAX_HEADER_LEN];
+        }
+        LZFChunk.writeNonCompressedHeader(len, out, headerBuf);
+        final byte[] input = _inputBuffer(len);
+        _getBytes(data, offset, input, 0, len);
+        out.write(input, 0, len);
+        return LZFChunk.HEADER_LEN_NOT_COMPRESSED + len;
+    }
+
+    /**
+     * Method similar to {@link #writeEncodedChunk(byte[], int, int, GatheringByteChannel)},
+     * but for input in a {@link ByteBuffer}: content is read using absolute accessors, so
+     * position and limit of the buffer are not changed. Content of direct buffers is
+     * compressed without copying, if encoder implementation supports it; and
+     * non-compressed chunks are written from the buffer as is.
+     *
+     * @param offset Index of the first byte to encode in <code>data</code>
+     *
+     * @return Number of bytes written: length of the encoded chunk, including header
+     *
+     * @since 1.2.1
+     */
+    public int writeEncodedChunk(ByteBuffer data, int offset, int len, GatheringByteChannel out)
+        throws IOException
+    {
+        if (data.hasArray()) {
+            return writeEncodedChunk(data.array(), data.arrayOffset() + offset, len, out);
+        }
+        final ByteBuffer[] buffers = _writeBuffers();
+        final int end = appendEncodedIfCompresses(data, 1.0, offset, len, _encodeBuffer, 0);
+        if (end >= 0 && end < LZFChunk.HEADER_LEN_NOT_COMPRESSED + len) {
+            buffers[1] = ByteBuffer.wrap(_encodeBuffer, 0, end);
+            LZFChunk.writeFully(out, buffers, 1, 1);
+            buffers[1] = null;
+            return end;
+        }
+        final ByteBuffer header = buffers[0];
+        LZFChunk.appendNonCompressedHeader(len, header.array(), 0);
+        // (casts for Java 8 compatibility)
+        ((Buffer) header).clear();
+        ((Buffer) header).limit(LZFChunk.HEADER_LEN_NOT_COMPRESSED);
+        final ByteBuffer payload = data.duplicate();
+        ((Buffer) payload).limit(offset + len);
+        ((Buffer) payload).position(offset);
+        buffers[1] = payload;
+        LZFChunk.writeFully(out, buffers, 0, 2);
+        buffers[1] = null; // not to retain caller's buffer
+        return LZFChunk.HEADER_LEN_NOT_COMPRESSED + len;
+    }
+
+    /**
+     * Method for encoding a single chunk from remaining content of given input
+     * buffer (all of it, or first {@link LZFChunk#MAX_CHUNK_LEN} bytes if more remains),
+     * writing it to given output stream. Position of input buffer is advanced
+     * past consumed content.
+     *
+     * @return Number of input bytes consumed
+     *
+     * @since 1.2.1
+     */
+    public int encodeAndWriteChunk(ByteBuffer src, OutputStream out)
+        throws IOException
+    {
+        final int len = Math.min(src.remaining(), LZFChunk.MAX_CHUNK_LEN);
+        if (len > 0) {
+            writeEncodedChunk(src, src.position(), len, out);
+            // (cast for Java 8 compatibility)
+            ((Buffer) src).position(src.position() + len);
+        }
+        return len;
     }
 
     /**
@@ -309,7 +675,7 @@ public abstract class ChunkEncoder
             OutputStream out, double resultRatio)
         throws IOException
     {
-        if (inputLen >= MIN_BLOCK_TO_COMPRESS) {
+        if (inputLen >= MIN_BLOCK_TO_COMPRESS && _mayCompress(data, offset, inputLen, resultRatio)) {
             int compEnd = tryCompress(data, offset, offset+inputLen, _encodeBuffer, LZFChunk.HEADER_LEN_COMPRESSED);
             final int maxSize = (int) (resultRatio * inputLen + LZFChunk.HEADER_LEN_COMPRESSED + 0.5);
             if (compEnd <= maxSize) { // yes, down to small enough
@@ -326,6 +692,32 @@ public abstract class ChunkEncoder
 		return _recycler;
 	}
 
+    /**
+     * Method for configuring estimator to use for checking, before trying to compress
+     * a chunk, whether it is likely to compress (enough); if not, chunk is
+     * handled as if compression was tried and did not reduce size enough
+     * (that is, stored as non-compressed chunk, or not encoded at all by
+     * "if compresses" methods).
+     * Default is to use no estimator, and always try compression.
+     *
+     * @param estimator Estimator to use; null to always try compression
+     *
+     * @return This encoder, for call chaining
+     *
+     * @since 1.2.1
+     */
+    public ChunkEncoder setCompressibilityEstimator(CompressibilityEstimator estimator) {
+        _estimator = estimator;
+        return this;
+    }
+
+    /**
+     * @since 1.2.1
+     */
+    public CompressibilityEstimator getCompressibilityEstimator() {
+        return _estimator;
+    }
+
     /*
     ///////////////////////////////////////////////////////////////////////
     // Abstract methods for sub-classes
@@ -344,12 +736,90 @@ public abstract class ChunkEncoder
      */
     protected abstract int tryCompress(byte[] in, int inPos, int inEnd, byte[] out, int outPos);
 
+    /**
+     * Method similar to {@link #tryCompress(byte[], int, int, byte[], int)}, but for
+     * input in a {@link ByteBuffer}, read using absolute accessors (so that position and
+     * limit of the buffer are not changed). Default implementation uses backing array
+     * of heap buffers, and copies content of other buffers into a work buffer;
+     * sub-classes override it to read content of direct buffers without copying.
+     *
+     * @param inPos Index of the first byte to compress in <code>in</code>
+     * @param inEnd Index after the last byte to compress in <code>in</code>
+     *
+     * @since 1.2.1
+     */
+    protected int tryCompress(ByteBuffer in, int inPos, int inEnd, byte[] out, int outPos)
+    {
+        if (in.hasArray()) {
+            final int offset = in.arrayOffset();
+            return tryCompress(in.array(), offset + inPos, offset + inEnd, out, outPos);
+        }
+        final int len = inEnd - inPos;
+        final byte[] input = _inputBuffer(len);
+        _getBytes(in, inPos, input, 0, len);
+        return tryCompress(input, 0, len, out, outPos);
+    }
+
     /*
     ///////////////////////////////////////////////////////////////////////
     // Shared helper methods
     ///////////////////////////////////////////////////////////////////////
      */
 
+    /**
+     * Helper method for accessing buffer to copy content of direct buffers
+     * to encode in; allocated if necessary.
+     */
+    protected byte[] _inputBuffer(int minSize)
+    {
+        byte[] buf = _inputBuffer;
+        if (buf == null || buf.length < minSize) {
+            if (buf != null) {
+                _recycler.releaseInputBuffer(buf);
+            }
+            // Allocate full chunk size, to avoid re-allocations for differently sized chunks
+            _inputBuffer = buf = _recycler.allocInputBuffer(Math.max(minSize, LZFChunk.MAX_CHUNK_LEN));
+        }
+        return buf;
+    }
+
+    /**
+     * Helper method for accessing buffers used for gathering writes; allocated
+     * if necessary.
+     */
+    protected ByteBuffer[] _writeBuffers()
+    {
+        ByteBuffer[] buffers = _writeBuffers;
+        if (buffers == null) {
+            byte[] headerBuf = _headerBuffer;
+            if (headerBuf == null) {
+                _headerBuffer = headerBuf = new byte[LZFChunk.MAX_HEADER_LEN];
+            }
+            _writeBuffers = buffers = new ByteBuffer[] { ByteBuffer.wrap(headerBuf), null };
+        }
+        return buffers;
+    }
+
+    /**
+     * Helper method for copying content of given buffer, starting at given index,
+     * into an array; position and limit of the buffer are not changed.
+     */
+    protected final static void _getBytes(ByteBuffer src, int srcPos, byte[] dst, int dstPos, int len)
+    {
+        final ByteBuffer from = src.duplicate();
+        // (cast for Java 8 compatibility)
+        ((Buffer) from).position(srcPos);
+        from.get(dst, dstPos, len);
+    }
+
+    /**
+     * Helper method called to check whether compression should be tried for given
+     * content, using configured {@link CompressibilityEstimator}, if any.
+     */
+    protected final boolean _mayCompress(byte[] data, int offset, int len, double maxResultRatio) {
+        return (_estimator == null) || _estimator.mayCompress(data, offset, len, maxResultRatio);
+    }
+
     protected final int hash(int h) {
         // or 184117; but this seems to give better hashing?
         return ((h * 57321) >> 9) & _hashModulo;
@@ -0,0 +1,215 @@
+/* Licensed under the Apache License, Version 2.0 (the "License"); you may not use this
+ * file except in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under
+ * the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS
+ * OF ANY KIND, either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+
+package com.ning.compress.lzf;
+
+/**
+ * Helper class that can be used to quickly estimate how well content would
+ * compress with LZF, without actually compressing it: this is done by
+ * looking for back-references (like LZF encoders do) within a few
+ * evenly spaced samples of the content.
+ * Since LZF only compresses repeated byte sequences, this gives better estimates
+ * than, say, byte frequency distribution.
+ *<p>
+ * Estimator can be used directly by caller (for example, to decide whether to
+ * compress content in the first place), or configured for {@link ChunkEncoder}
+ * (see {@link ChunkEncoder#setCompressibilityEstimator}) in which case chunks
+ * that are estimated not to compress are stored without trying compression.
+ *<p>
+ * Note that instances <b>are stateful</b> and hence <b>not thread-safe</b>.
+ *
+ * @since 1.2.1
+ */
+public class CompressibilityEstimator
+{
+    /**
+     * Default maximum number of bytes to check per sample.
+     */
+    public final static int DEFAULT_SAMPLE_LENGTH = 1024;
+
+    /**
+     * Default maximum number of samples to check.
+     */
+    public final static int DEFAULT_SAMPLE_COUNT = 4;
+
+    /**
+     * Default margin added to maximum acceptable ratio for comparisons, to avoid
+     * rejecting content that would compress just enough: estimates tend to be
+     * pessimistic, since samples only see limited amount of preceding content
+     * to match against.
+     */
+    public final static double DEFAULT_MARGIN = 0.2;
+
+    /**
+     * Content shorter than this is not estimated, but assumed to be compressible:
+     * samples would be too short to give meaningful results, and compressing short
+     * content is cheap anyway.
+     */
+    protected final static int MIN_LENGTH_TO_ESTIMATE = 256;
+
+    private final static int HASH_LEN = 1024;
+
+    private final static int MAX_OFF = 1 << 13;
+
+    private final static int MAX_REF = (1 << 8) + (1 << 3);
+
+    protected final int _sampleLength;
+
+    protected final int _sampleCount;
+
+    protected final double _margin;
+
+    /**
+     * Hash table from 3-byte sequences to their latest position; stale entries
+     * are detected by position checks, so this need not be cleared between samples
+     */
+    protected final int[] _hashTable = new int[HASH_LEN];
+
+    public CompressibilityEstimator() {
+        this(DEFAULT_SAMPLE_LENGTH, DEFAULT_SAMPLE_COUNT, DEFAULT_MARGIN);
+    }
+
+    /**
+     * @param sampleLength Maximum number of bytes to check per sample
+     * @param sampleCount Maximum number of samples to check
+     * @param margin Margin to add to maximum acceptable compression ratio when
+     *   comparing estimated ratio to it
+     */
+    public CompressibilityEstimator(int sampleLength, int sampleCount, double margin)
+    {
+        if (sampleLength < 16) {
+            throw new IllegalArgumentException("Invalid sample length: "+sampleLength);
+        }
+        if (sampleCount < 1) {
+            throw new IllegalArgumentException("Invalid sample count: "+sampleCount);
+        }
+        _sampleLength = sampleLength;
+        _sampleCount = sampleCount;
+        _margin = margin;
+    }
+
+    /*
+    ///////////////////////////////////////////////////////////////////////
+    // Public API
+    ///////////////////////////////////////////////////////////////////////
+     */
+
+    /**
+     * Method for estimating ratio of compressed to uncompressed length, if given
+     * content was compressed (not including chunk headers).
+     *
+     * @return Estimated compression ratio; values at or above 1.0 indicate that
+     *    content is not expected to compress at all
+     */
+    public double estimateRatio(byte[] data, int offset, int len)
+    {
+        if (offset < 0 || len < 0 || offset > data.length - len) {
+            throw new ArrayIndexOutOfBoundsException("Invalid offset/length: "+offset+"/"+len
+                    +" for array of length "+data.length);
+        }
+        if (len == 0) {
+            return 1.0;
+        }
+        final int sampleCount = Math.min(_sampleCount, (len + _sampleLength - 1) / _sampleLength);
+        final int sampleLength = Math.min(len / sampleCount, _sampleLength);
+        // spread samples evenly, so that first one starts at the beginning, last one ends at the end
+        final long spacing = (sampleCount == 1) ? 0L : (len - sampleLength) / (sampleCount - 1);
+        int sampled = 0;
+        int estimated = 0;
+        for (int i = 0; i < sampleCount; ++i) {
+            int start = offset + (int) (i * spacing);
+            // Preceding content (if any) is indexed first, to find matches from the beginning of sample
+            int historyStart = Math.max(offset, start - sampleLength);
+            estimated += _estimateSample(data, historyStart, start, start + sampleLength);
+            sampled += sampleLength;
+        }
+        return (double) estimated / (double) sampled;
+    }
+
+    /**
+     * Method for checking whether given content is likely to compress down to
+     * specified ratio (see {@link #estimateRatio}) or below.
+     * Content shorter than a few hundred bytes is always considered compressible.
+     *<p>
+     * Margin given at construction is added to the maximum ratio, but (for ratios
+     * below 1.0) only up to 1.0, so that content not expected to compress at all
+     * is always rejected.
+     *
+     * @param maxResultRatio Maximum acceptable ratio of compressed to uncompressed
+     *   length
+     *
+     * @return True if content is expected to compress enough (or is too short to
+     *    estimate); false if it is not
+     */
+    public boolean mayCompress(byte[] data, int offset, int len, double maxResultRatio)
+    {
+        if (len < MIN_LENGTH_TO_ESTIMATE) {
+            return true;
+        }
+        final double limit = (maxResultRatio >= 1.0) ? maxResultRatio
+                : Math.min(1.0, maxResultRatio + _margin);
+        return estimateRatio(data, offset, len) <= limit;
+    }
+
+    /*
+    ///////////////////////////////////////////////////////////////////////
+    // Internal methods
+    ///////////////////////////////////////////////////////////////////////
+     */
+
+    /**
+     * @return Estimated length of compressed sample
+     */
+    private int _estimateSample(final byte[] in, final int historyStart, final int start, final int end)
+    {
+        final int[] hashTable = _hashTable;
+        for (int i = historyStart; i < start; ++i) {
+            hashTable[_hash(in, i)] = i;
+        }
+        final int last = end - 2; // need 3 bytes for a match
+        int literals = 0; // length of current literal run
+        int compLen = 0;
+        int pos = start;
+
+        while (pos < last) {
+            final int h = _hash(in, pos);
+            final int ref = hashTable[h];
+            hashTable[h] = pos;
+            if (ref < historyStart || ref >= pos || (pos - ref) > MAX_OFF
+                    || in[ref] != in[pos] || in[ref+1] != in[pos+1] || in[ref+2] != in[pos+2]) {
+                ++literals;
+                ++pos;
+                continue;
+            }
+            compLen += _literalsLength(literals);
+            literals = 0;
+            int len = 3;
+            final int maxLen = Math.min(MAX_REF, end - pos);
+            while (len < maxLen && in[ref + len] == in[pos + len]) {
+                ++len;
+            }
+            // back-reference takes 2 bytes, or 3 if longer than 8 bytes
+            compLen += (len < 9) ? 2 : 3;
+            pos += len;
+        }
+        return compLen + _literalsLength(literals + (end - pos));
+    }
+
+    private final static int _hash(final byte[] in, final int pos) {
+        final int seen = ((in[pos] & 0xFF) << 16) + ((in[pos + 1] & 0xFF) << 8) + (in[pos + 2] & 0xFF);
+        return ((seen * 57321) >> 9) & (HASH_LEN - 1);
+    }
+
+    private final static int _literalsLength(int literals) {
+        // literal runs need one length byte per up to 32 bytes
+        return literals + ((literals + 31) >> 5);
+    }
+}
@@ -0,0 +1,107 @@
+/* Licensed under the Apache License, Version 2.0 (the "License"); you may not use this
+ * file except in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under
+ * the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS
+ * OF ANY KIND, either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+
+package com.ning.compress.lzf;
+
+/**
+ * Enumeration of compression levels that {@link ChunkEncoder}s may be
+ * constructed with (see {@link com.ning.compress.lzf.util.ChunkEncoderFactory}),
+ * to trade encoding speed against size of compressed output.
+ * All levels produce standard LZF output, decodable by any {@link ChunkDecoder}.
+ *<p>
+ * Each level defines the maximum size of the hash table used for finding
+ * matches, how many earlier positions are checked for each position
+ * (search depth), whether positions within found matches are indexed
+ * or skipped, and whether encoder skips ahead faster through content that
+ * has no matches.
+ */
+public enum CompressionLevel
+{
+    /**
+     * Level that uses smallest hash table of all levels, for best
+     * cache locality; only uses first match found, and skips ahead
+     * progressively faster through content where no matches are found.
+     */
+    FASTEST(4096, 0, false, 5),
+
+    /**
+     * Level that uses a bit smaller hash table than {@link #DEFAULT};
+     * only uses first match found, and skips ahead (less aggressively than
+     * {@link #FASTEST}) through content where no matches are found.
+     */
+    FAST(8192, 0, false, 6),
+
+    /**
+     * Default level, with same settings as used by encoders constructed without level
+     * (such as {@link com.ning.compress.lzf.util.ChunkEncoderFactory#optimalInstance()}).
+     */
+    DEFAULT(16384, 0, false, 0),
+
+    /**
+     * Level that checks up to 4 earlier positions for the longest match,
+     * and uses lazy matching.
+     */
+    HIGH(16384, 4, false, 0),
+
+    /**
+     * Level that checks up to 32 earlier positions for the longest match,
+     * uses lazy matching, and indexes all positions within matches.
+     */
+    BEST(16384, 32, true, 0)
+    ;
+
+    private final int _maxHashSize;
+
+    private final int _searchDepth;
+
+    private final boolean _indexMatches;
+
+    private final int _skipStrength;
+
+    private CompressionLevel(int maxHashSize, int searchDepth, boolean indexMatches,
+            int skipStrength) {
+        _maxHashSize = maxHashSize;
+        _searchDepth = searchDepth;
+        _indexMatches = indexMatches;
+        _skipStrength = skipStrength;
+    }
+
+    /**
+     * @return Maximum size (number of entries) of the hash table used
+     *    for finding matches
+     */
+    public int getMaxHashSize() { return _maxHashSize; }
+
+    /**
+     * @return Maximum number of earlier positions checked when looking for
+     *    the longest match; 0 means that first match found is used as is
+     */
+    public int getSearchDepth() { return _searchDepth; }
+
+    /**
+     * @return True if all positions within found matches are indexed for later
+     *    matching; false if most are skipped (which is faster)
+     */
+    public boolean indexesMatches() { return _indexMatches; }
+
+    /**
+     * Skip strength determines how quickly encoder speeds up when it does not
+     * find matches: after every <code>2^skipStrength</code> consecutive positions
+     * without a match, one more position is skipped (copied as literal without
+     * looking for a match) per step. This greatly speeds up handling of
+     * incompressible (already compressed, random) content, at the cost of
+     * missing some matches.
+     *
+     * @return Skip strength to use; 0 if skipping is not used (all positions
+     *    are checked for matches)
+     */
+    public int getSkipStrength() { return _skipStrength; }
+}
@@ -12,6 +12,8 @@
 package com.ning.compress.lzf;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
 
 /**
  * Helper class used to store LZF encoded segments (compressed and non-compressed)
@@ -146,6 +148,49 @@ public class LZFChunk
         out.write(headerBuffer, 0, HEADER_LEN_NOT_COMPRESSED);
     }
     
+    /**
+     * Helper method for finding channel to use for writing chunks to given stream
+     * using gathering writes, so that header and payload of a chunk (or multiple
+     * chunks) are written with a single call, without assembling them in a buffer:
+     * stream itself, if it is a {@link GatheringByteChannel}.
+     *<p>
+     * Note that channel of a {@link FileOutputStream} is NOT used, even though
+     * it supports gathering writes: {@link java.nio.channels.FileChannel} is
+     * interruptible, so writing through it would make stream fail with
+     * {@link java.nio.channels.ClosedByInterruptException} (and close it)
+     * if writing thread has been interrupted, unlike writing to the stream.
+     *
+     * @return Channel to write chunks to; or null if stream needs to be used
+     *
+     * @since 1.2.1
+     */
+    public static GatheringByteChannel gatheringChannel(OutputStream out)
+    {
+        if (out instanceof GatheringByteChannel) {
+            return (GatheringByteChannel) out;
+        }
+        return null;
+    }
+
+    /**
+     * Helper method for writing all remaining content of given buffers, in order,
+     * to given (blocking) channel.
+     *
+     * @since 1.2.1
+     */
+    public static void writeFully(GatheringByteChannel out, ByteBuffer[] buffers, int offset, int length)
+        throws IOException
+    {
+        final int end = offset + length;
+        while (offset < end) {
+            if (buffers[offset].hasRemaining()) {
+                out.write(buffers, offset, end - offset);
+            } else {
+                ++offset;
+            }
+        }
+    }
+
     public void setNext(LZFChunk next) { _next = next; }
 
     public LZFChunk next() { return _next; }
@@ -0,0 +1,313 @@
+package com.ning.compress.lzf;
+
+import java.io.*;
+import java.util.Arrays;
+
+/**
+ * Index of chunks of LZF encoded content, mapping uncompressed offsets to
+ * offsets of chunks within compressed content; used for random access to content
+ * (see {@link com.ning.compress.lzf.util.SeekableLZFInputStream}).
+ *<p>
+ * Index is stored separately from LZF content, usually as a "sidecar" file next to
+ * LZF file (see {@link #indexFileFor}), so that LZF content itself is unchanged and
+ * can be read by any LZF decoder. Index can be built while writing content (see
+ * {@link LZFOutputStream#setChunkIndex} and
+ * {@link com.ning.compress.lzf.util.LZFFileOutputStream#setIndexFile}), or afterwards
+ * from existing content, using {@link #build(InputStream)}.
+ *<p>
+ * Serialized form is simple: 4-byte signature ("ZVX" and format version), number of
+ * chunks as 4-byte int; followed by uncompressed and compressed (including header)
+ * lengths of each chunk, as 2 and 4-byte ints. All values are Big-Endian.
+ *
+ * @since 1.2.1
+ */
+public class LZFChunkIndex
+{
+    /**
+     * Suffix appended to name of LZF file to get name of its index file
+     */
+    public final static String FILE_SUFFIX = ".idx";
+
+    protected final static int SIGNATURE = ('Z' << 24) | ('V' << 16) | ('X' << 8) | 1;
+
+    /**
+     * Uncompressed offsets of chunks; one more entry than there are chunks,
+     * last one being total uncompressed length
+     */
+    protected long[] _uncompressedOffsets;
+
+    /**
+     * Offsets of chunks within compressed content; one more entry than there are chunks,
+     * last one being total compressed length
+     */
+    protected long[] _compressedOffsets;
+
+    protected int _chunkCount;
+
+    public LZFChunkIndex() {
+        this(16);
+    }
+
+    protected LZFChunkIndex(int capacity) {
+        _uncompressedOffsets = new long[capacity+1];
+        _compressedOffsets = new long[capacity+1];
+    }
+
+    /*
+    ///////////////////////////////////////////////////////////////////////
+    // Building
+    ///////////////////////////////////////////////////////////////////////
+     */
+
+    /**
+     * Method for adding next chunk in the index.
+     *
+     * @param uncompressedLength Length of uncompressed content of the chunk
+     * @param encodedLength Length of encoded chunk, including header
+     */
+    public void appendChunk(int uncompressedLength, int encodedLength)
+    {
+        final int count = _chunkCount;
+        if (count+1 == _uncompressedOffsets.length) {
+            final int newSize = _uncompressedOffsets.length + Math.max(16, _uncompressedOffsets.length >> 1);
+            _uncompressedOffsets = Arrays.copyOf(_uncompressedOffsets, newSize);
+            _compressedOffsets = Arrays.copyOf(_compressedOffsets, newSize);
+        }
+        _uncompressedOffsets[count+1] = _uncompressedOffsets[count] + uncompressedLength;
+        _compressedOffsets[count+1] = _compressedOffsets[count] + encodedLength;
+        _chunkCount = count+1;
+    }
+
+    /**
+     * Factory method for building index for existing LZF content, by reading
+     * through chunk headers (skipping content of chunks).
+     * Given stream is read to its end, but not closed.
+     */
+    public static LZFChunkIndex build(InputStream in) throws IOException
+    {
+        final LZFChunkIndex index = new LZFChunkIndex();
+        final byte[] header = new byte[LZFChunk.MAX_HEADER_LEN];
+        while (true) {
+            int count = _read(in, header, 0, LZFChunk.HEADER_LEN_NOT_COMPRESSED);
+            // clean end, or optional end marker?
+            if (count == 0 || (count == 1 && header[0] == 0)) {
+                break;
+            }
+            final long offset = index.getCompressedLength();
+            if (count < LZFChunk.HEADER_LEN_NOT_COMPRESSED) {
+                throw new LZFException("Corrupt input data (at offset "+offset+"): truncated block header");
+            }
+            if (header[0] != LZFChunk.BYTE_Z || header[1] != LZFChunk.BYTE_V) {
+                throw new LZFException("Corrupt input data (at offset "+offset+"): did not start with 'ZV' signature bytes");
+            }
+            int len = ((header[3] & 0xFF) << 8) | (header[4] & 0xFF);
+            final int type = header[2];
+            if (type == LZFChunk.BLOCK_TYPE_NON_COMPRESSED) {
+                _skip(in, len, offset);
+                index.appendChunk(len, LZFChunk.HEADER_LEN_NOT_COMPRESSED + len);
+            } else if (type == LZFChunk.BLOCK_TYPE_COMPRESSED) {
+                if (_read(in, header, 5, 2) < 2) {
+                    throw new LZFException("Corrupt input data (at offset "+offset+"): truncated block header");
+                }
+                final int uncompLen = ((header[5] & 0xFF) << 8) | (header[6] & 0xFF);
+                _skip(in, len, offset);
+                index.appendChunk(uncompLen, LZFChunk.HEADER_LEN_COMPRESSED + len);
+            } else {
+                throw new LZFException("Corrupt input data (at offset "+offset+"): unrecognized block type "+(type & 0xFF));
+            }
+        }
+        return index;
+    }
+
+    /*
+    ///////////////////////////////////////////////////////////////////////
+    // Accessors
+    ///////////////////////////////////////////////////////////////////////
+     */
+
+    /**
+     * @return Number of chunks in the index
+     */
+    public int size() {
+        return _chunkCount;
+    }
+
+    public long getUncompressedLength() {
+        return _uncompressedOffsets[_chunkCount];
+    }
+
+    public long getCompressedLength() {
+        return _compressedOffsets[_chunkCount];
+    }
+
+    /**
+     * @return Offset of uncompressed content of given chunk
+     */
+    public long getUncompressedOffset(int chunk) {
+        _checkChunk(chunk);
+        return _uncompressedOffsets[chunk];
+    }
+
+    /**
+     * @return Offset of given chunk (its header) within compressed content
+     */
+    public long getCompressedOffset(int chunk) {
+        _checkChunk(chunk);
+        return _compressedOffsets[chunk];
+    }
+
+    /**
+     * @return Length of uncompressed content of given chunk
+     */
+    public int getUncompressedLength(int chunk) {
+        _checkChunk(chunk);
+        return (int) (_uncompressedOffsets[chunk+1] - _uncompressedOffsets[chunk]);
+    }
+
+    /**
+     * @return Length of given encoded chunk, including header
+     */
+    public int getCompressedLength(int chunk) {
+        _checkChunk(chunk);
+        return (int) (_compressedOffsets[chunk+1] - _compressedOffsets[chunk]);
+    }
+
+    /**
+     * Method for finding chunk that contains byte at given uncompressed offset,
+     * using binary search.
+     *
+     * @return Index of chunk that contains given offset; or -1 if offset is
+     *    negative or not less than total uncompressed length
+     */
+    public int findChunk(long uncompressedOffset)
+    {
+        if (uncompressedOffset < 0L || uncompressedOffset >= getUncompressedLength()) {
+            return -1;
+        }
+        int low = 0;
+        int high = _chunkCount - 1;
+        // find the last chunk that starts at or before offset (so that empty chunks are skipped)
+        while (low < high) {
+            final int mid = (low + high + 1) >>> 1;
+            if (_uncompressedOffsets[mid] <= uncompressedOffset) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return low;
+    }
+
+    /*
+    ///////////////////////////////////////////////////////////////////////
+    // Reading, writing
+    ///////////////////////////////////////////////////////////////////////
+     */
+
+    /**
+     * Helper method for determining name of index file for given LZF file:
+     * same as that of LZF file, with {@link #FILE_SUFFIX} appended.
+     */
+    public static File indexFileFor(File lzfFile) {
+        return new File(lzfFile.getPath() + FILE_SUFFIX);
+    }
+
+    public void writeTo(OutputStream out) throws IOException
+    {
+        DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out));
+        data.writeInt(SIGNATURE);
+        data.writeInt(_chunkCount);
+        for (int i = 0; i < _chunkCount; ++i) {
+            data.writeShort(getUncompressedLength(i));
+            data.writeInt(getCompressedLength(i));
+        }
+        data.flush();
+    }
+
+    public void writeTo(File f) throws IOException
+    {
+        try (FileOutputStream out = new FileOutputStream(f)) {
+            writeTo(out);
+        }
+    }
+
+    /**
+     * Method for reading serialized index from given stream; stream is not
+     * buffered (to avoid reading past end of index), so caller may want to buffer it.
+     */
+    public static LZFChunkIndex readFrom(InputStream in) throws IOException
+    {
+        DataInputStream data = new DataInputStream(in);
+        final int sig;
+        final int count;
+        try {
+            sig = data.readInt();
+            count = data.readInt();
+        } catch (EOFException e) {
+            throw new LZFException("Invalid LZF chunk index: truncated header");
+        }
+        if (sig != SIGNATURE) {
+            throw new LZFException("Invalid LZF chunk index: unrecognized signature 0x"+Integer.toHexString(sig));
+        }
+        if (count < 0) {
+            throw new LZFException("Invalid LZF chunk index: negative chunk count ("+count+")");
+        }
+        // not trusting count for allocation, in case of corruption
+        LZFChunkIndex index = new LZFChunkIndex(Math.min(count, 0xFFFF));
+        try {
+            for (int i = 0; i < count; ++i) {
+                index.appendChunk(data.readUnsignedShort(), data.readInt());
+            }
+        } catch (EOFException e) {
+            throw new LZFException("Invalid LZF chunk index: truncated after "+index.size()+" (of "+count+") chunks");
+        }
+        return index;
+    }
+
+    public static LZFChunkIndex readFrom(File f) throws IOException
+    {
+        try (InputStream in = new BufferedInputStream(new FileInputStream(f))) {
+            return readFrom(in);
+        }
+    }
+
+    /*
+    ///////////////////////////////////////////////////////////////////////
+    // Internal methods
+    ///////////////////////////////////////////////////////////////////////
+     */
+
+    private void _checkChunk(int chunk) {
+        if (chunk < 0 || chunk >= _chunkCount) {
+            throw new IndexOutOfBoundsException("Invalid chunk index "+chunk+"; index has "+_chunkCount+" chunks");
+        }
+    }
+
+    private static int _read(InputStream in, byte[] buffer, int offset, int len) throws IOException
+    {
+        int total = 0;
+        while (total < len) {
+            int count = in.read(buffer, offset+total, len-total);
+            if (count <= 0) {
+                break;
+            }
+            total += count;
+        }
+        return total;
+    }
+
+    private static void _skip(InputStream in, int len, long offset) throws IOException
+    {
+        while (len > 0) {
+            long skipped = in.skip(len);
+            if (skipped <= 0) {
+                // `skip()` may not indicate end-of-input; verify
+                if (in.read() < 0) {
+                    throw new LZFException("Corrupt input data (at offset "+offset+"): block extends beyond end of input");
+                }
+                skipped = 1;
+            }
+            len -= (int) skipped;
+        }
+    }
+}
@@ -0,0 +1,184 @@
+package com.ning.compress.lzf;
+
+import java.io.IOException;
+
+import com.ning.compress.BufferRecycler;
+import com.ning.compress.Compressor;
+import com.ning.compress.DataHandler;
+import com.ning.compress.lzf.util.ChunkEncoderFactory;
+
+/**
+ * {@link com.ning.compress.Compressor} implementation for compressing
+ * data using LZF in "push" mode, in which output is not written to
+ * {@link java.io.OutputStream} but rather pushed to a {@link DataHandler}
+ * one chunk at a time. Counterpart of {@link LZFUncompressor}.
+ *<p>
+ * Each call to handler contains a single complete chunk. Data is buffered until
+ * a full chunk is available (or {@link #flush} is called); except that full chunks
+ * are encoded directly from caller's buffer, when no data is buffered.
+ *
+ * @since 1.2.1
+ */
+public class LZFCompressor extends Compressor
+{
+    /**
+     * Handler that will receive compressed data.
+     */
+    protected final DataHandler _handler;
+
+    /**
+     * Underlying encoder we use for chunk compression.
+     */
+    protected final ChunkEncoder _encoder;
+
+    protected final BufferRecycler _recycler;
+
+    /**
+     * Buffer for data fed, until there is enough for a full chunk.
+     */
+    protected byte[] _inputBuffer;
+
+    protected int _position;
+
+    /**
+     * Buffer that chunks are encoded in.
+     */
+    protected byte[] _encodeBuffer;
+
+    /**
+     * Flag set if {@link DataHandler} indicates that processing should be
+     * terminated.
+     */
+    protected boolean _terminated;
+
+    protected boolean _completed;
+
+    /*
+    ///////////////////////////////////////////////////////////////////////
+    // Instance creation
+    ///////////////////////////////////////////////////////////////////////
+     */
+
+    // note: encoders do not need buffers of their own, since chunks are encoded into _encodeBuffer
+
+    public LZFCompressor(DataHandler handler) {
+        this(handler, ChunkEncoderFactory.optimalNonAllocatingInstance(LZFChunk.MAX_CHUNK_LEN));
+    }
+
+    public LZFCompressor(DataHandler handler, CompressionLevel level) {
+        this(handler, ChunkEncoderFactory.optimalNonAllocatingInstance(level, LZFChunk.MAX_CHUNK_LEN));
+    }
+
+    /**
+     * @param encoder Encoder to use for chunks; since chunks are encoded into a buffer
+     *    owned by compressor, a non-allocating encoder (see
+     *    {@link ChunkEncoderFactory#optimalNonAllocatingInstance(int)}) is sufficient
+     */
+    public LZFCompressor(DataHandler handler, ChunkEncoder encoder) {
+        this(handler, encoder, encoder.getBufferRecycler());
+    }
+
+    public LZFCompressor(DataHandler handler, ChunkEncoder encoder, BufferRecycler bufferRecycler)
+    {
+        _handler = handler;
+        _encoder = encoder;
+        _recycler = bufferRecycler;
+        _inputBuffer = bufferRecycler.allocOutputBuffer(LZFChunk.MAX_CHUNK_LEN);
+        _encodeBuffer = bufferRecycler.allocEncodingBuffer(LZFEncoder.estimateMaxWorkspaceSize(LZFChunk.MAX_CHUNK_LEN));
+    }
+
+    /*
+    ///////////////////////////////////////////////////////////////////////
+    // Compressor API implementation
+    ///////////////////////////////////////////////////////////////////////
+     */
+
+    @Override
+    public boolean feedUncompressedData(byte[] data, int offset, int len) throws IOException
+    {
+        _checkNotCompleted();
+        while (len > 0 && !_terminated) {
+            // full chunks can be encoded directly, if nothing is buffered
+            if (_position == 0 && len >= LZFChunk.MAX_CHUNK_LEN) {
+                _encodeChunk(data, offset, LZFChunk.MAX_CHUNK_LEN);
+                offset += LZFChunk.MAX_CHUNK_LEN;
+                len -= LZFChunk.MAX_CHUNK_LEN;
+                continue;
+            }
+            final int amount = Math.min(len, LZFChunk.MAX_CHUNK_LEN - _position);
+            System.arraycopy(data, offset, _inputBuffer, _position, amount);
+            _position += amount;
+            offset += amount;
+            len -= amount;
+            if (_position == LZFChunk.MAX_CHUNK_LEN) {
+                _encodeBuffered();
+            }
+        }
+        return !_terminated;
+    }
+
+    @Override
+    public boolean flush() throws IOException
+    {
+        _checkNotCompleted();
+        if (_position > 0 && !_terminated) {
+            _encodeBuffered();
+        }
+        return !_terminated;
+    }
+
+    @Override
+    public void complete() throws IOException
+    {
+        if (_completed) {
+            return;
+        }
+        try {
+            if (_position > 0 && !_terminated) {
+                _encodeBuffered();
+            }
+        } finally {
+            _completed = true;
+            _encoder.close();
+            byte[] b = _inputBuffer;
+            if (b != null) {
+                _inputBuffer = null;
+                _recycler.releaseOutputBuffer(b);
+            }
+            b = _encodeBuffer;
+            if (b != null) {
+                _encodeBuffer = null;
+                _recycler.releaseEncodeBuffer(b);
+            }
+        }
+        _handler.allDataHandled();
+    }
+
+    /*
+    ///////////////////////////////////////////////////////////////////////
+    // Helper methods
+    ///////////////////////////////////////////////////////////////////////
+     */
+
+    private final void _encodeBuffered() throws IOException
+    {
+        final int len = _position;
+        _position = 0;
+        _encodeChunk(_inputBuffer, 0, len);
+    }
+
+    private final void _encodeChunk(byte[] data, int offset, int len) throws IOException
+    {
+        final int end = _encoder.appendEncodedChunk(data, offset, len, _encodeBuffer, 0);
+        if (!_handler.handleData(_encodeBuffer, 0, end)) {
+            _terminated = true;
+        }
+    }
+
+    private final void _checkNotCompleted() throws IOException
+    {
+        if (_completed) {
+            throw new IOException(getClass().getName()+" already completed");
+        }
+    }
+}
@@ -11,6 +11,13 @@
 
 package com.ning.compress.lzf;
 
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.atomic.AtomicReference;
 
 import com.ning.compress.lzf.util.ChunkDecoderFactory;
@@ -42,6 +49,11 @@ public class LZFDecoder
      */
     protected final static AtomicReference<ChunkDecoder> _safeDecoderRef = new AtomicReference<ChunkDecoder>();
 
+    /**
+     * Number of chunks decoded by a single task, with parallel decoding
+     */
+    private final static int PARALLEL_SEGMENT_CHUNKS = 16;
+
     /*
     ///////////////////////////////////////////////////////////////////////
     // Factory methods for ChunkDecoders
@@ -115,6 +127,15 @@ public class LZFDecoder
         return fastDecoder().decode(sourceBuffer, offset, length, targetBuffer);        
     }
 
+    /**
+     * @since 1.2.1
+     *
+     * @see ChunkDecoder#decode(ByteBuffer, ByteBuffer)
+     */
+    public static int decode(final ByteBuffer src, final ByteBuffer dst) throws LZFException {
+        return fastDecoder().decode(src, dst);
+    }
+
     /*
     ///////////////////////////////////////////////////////////////////////
     // Basic API, "safe" decode methods
@@ -137,4 +158,169 @@ public class LZFDecoder
             throws LZFException {
         return safeDecoder().decode(sourceBuffer, offset, length, targetBuffer);        
     }
+
+    /**
+     * @since 1.2.1
+     *
+     * @see ChunkDecoder#decode(ByteBuffer, ByteBuffer)
+     */
+    public static int safeDecode(final ByteBuffer src, final ByteBuffer dst) throws LZFException {
+        return safeDecoder().decode(src, dst);
+    }
+
+    /*
+    ///////////////////////////////////////////////////////////////////////
+    // Basic API, parallel decode methods
+    ///////////////////////////////////////////////////////////////////////
+     */
+
+    /**
+     * Method for decoding given input using multiple threads of
+     * {@link ForkJoinPool#commonPool()}; see {@link #parallelDecode(ChunkDecoder, byte[], int, int, Executor)}.
+     *
+     * @since 1.2.1
+     */
+    public static byte[] parallelDecode(final byte[] inputBuffer) throws LZFException {
+        return parallelDecode(fastDecoder(), inputBuffer, 0, inputBuffer.length, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Method for decoding given input using multiple threads of given executor;
+     * see {@link #parallelDecode(ChunkDecoder, byte[], int, int, Executor)}.
+     *
+     * @since 1.2.1
+     */
+    public static byte[] parallelDecode(final byte[] inputBuffer, Executor executor) throws LZFException {
+        return parallelDecode(fastDecoder(), inputBuffer, 0, inputBuffer.length, executor);
+    }
+
+    /**
+     * Method for decoding given input (a sequence of complete LZF chunks) using
+     * given decoder and multiple threads of given executor. Chunk headers
+     * are first scanned to find total length of decoded content, and offset of
+     * each chunk within it; after which segments of multiple chunks are decoded
+     * by separate tasks, directly into a single result array.
+     * Calling thread waits until all segments have been decoded.
+     *<p>
+     * Input that fits in a single segment is decoded by calling thread.
+     *
+     * @since 1.2.1
+     */
+    public static byte[] parallelDecode(final ChunkDecoder decoder, final byte[] inputBuffer,
+            int offset, int length, Executor executor)
+        throws LZFException
+    {
+        // first: find segment boundaries, as triplets of input start, input end, output start
+        final List<int[]> segments = new ArrayList<int[]>();
+        final int end = offset + length;
+        int ptr = offset;
+        int segmentStart = ptr;
+        int outPtr = 0, segmentOutStart = 0;
+        int blockNr = 0;
+        while (ptr < end) {
+            // can use optional end marker
+            if (ptr == (end - 1) && inputBuffer[ptr] == ChunkDecoder.BYTE_NULL) {
+                break;
+            }
+            if ((end - ptr) < LZFChunk.HEADER_LEN_NOT_COMPRESSED) {
+                throw new LZFException("Corrupt input data, block #"+blockNr+" (at offset "+ptr+"): truncated block header");
+            }
+            if (inputBuffer[ptr] != LZFChunk.BYTE_Z || inputBuffer[ptr+1] != LZFChunk.BYTE_V) {
+                throw new LZFException("Corrupt input data, block #"+blockNr+" (at offset "+ptr+"): did not start with 'ZV' signature bytes");
+            }
+            final int type = inputBuffer[ptr+2];
+            final int blockLen = ChunkDecoder.uint16(inputBuffer, ptr+3);
+            if (type == LZFChunk.BLOCK_TYPE_NON_COMPRESSED) {
+                ptr += LZFChunk.HEADER_LEN_NOT_COMPRESSED;
+                outPtr += blockLen;
+            } else if (type == LZFChunk.BLOCK_TYPE_COMPRESSED) {
+                if ((end - ptr) < LZFChunk.HEADER_LEN_COMPRESSED) {
+                    throw new LZFException("Corrupt input data, block #"+blockNr+" (at offset "+ptr+"): truncated block header");
+                }
+                outPtr += ChunkDecoder.uint16(inputBuffer, ptr+5);
+                ptr += LZFChunk.HEADER_LEN_COMPRESSED;
+            } else {
+                throw new LZFException("Corrupt input data, block #"+blockNr+" (at offset "+ptr+"): unrecognized block type "+(type & 0xFF));
+            }
+            ptr += blockLen;
+            if (ptr > end) {
+                throw new LZFException("Corrupt input data, block #"+blockNr+" is incomplete");
+            }
+            if (outPtr < 0) {
+                throw new LZFException("Decoded content too long, can not fit in a byte array");
+            }
+            if ((++blockNr % PARALLEL_SEGMENT_CHUNKS) == 0) {
+                segments.add(new int[] { segmentStart, ptr, segmentOutStart });
+                segmentStart = ptr;
+                segmentOutStart = outPtr;
+            }
+        }
+        if (ptr > segmentStart) {
+            segments.add(new int[] { segmentStart, ptr, segmentOutStart });
+        }
+        final byte[] result = new byte[outPtr];
+        if (segments.size() <= 1) {
+            if (!segments.isEmpty()) {
+                _decodeSegment(decoder, inputBuffer, offset, ptr, result, 0);
+            }
+            return result;
+        }
+        // then decode segments concurrently
+        List<CompletableFuture<Void>> tasks = new ArrayList<CompletableFuture<Void>>(segments.size());
+        for (final int[] segment : segments) {
+            tasks.add(CompletableFuture.runAsync(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        _decodeSegment(decoder, inputBuffer, segment[0], segment[1], result, segment[2]);
+                    } catch (LZFException e) {
+                        throw new CompletionException(e);
+                    }
+                }
+            }, executor));
+        }
+        for (CompletableFuture<Void> task : tasks) {
+            try {
+                task.join();
+            } catch (CompletionException e) {
+                Throwable t = e.getCause();
+                if (t instanceof LZFException) {
+                    throw (LZFException) t;
+                }
+                if (t instanceof RuntimeException) {
+                    throw (RuntimeException) t;
+                }
+                if (t instanceof Error) {
+                    throw (Error) t;
+                }
+                throw e;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Helper method for decoding a sequence of chunks (with headers already
+     * validated) at given offset of output buffer
+     */
+    private static void _decodeSegment(ChunkDecoder decoder, byte[] in, int inPtr, int inEnd,
+            byte[] out, int outPtr)
+        throws LZFException
+    {
+        while (inPtr < inEnd) {
+            final int type = in[inPtr+2];
+            final int len = ChunkDecoder.uint16(in, inPtr+3);
+            if (type == LZFChunk.BLOCK_TYPE_NON_COMPRESSED) {
+                inPtr += LZFChunk.HEADER_LEN_NOT_COMPRESSED;
+                System.arraycopy(in, inPtr, out, outPtr, len);
+                outPtr += len;
+            } else {
+                final int uncompLen = ChunkDecoder.uint16(in, inPtr+5);
+                inPtr += LZFChunk.HEADER_LEN_COMPRESSED;
+                decoder.decodeChunk(in, inPtr, inPtr + len, out, outPtr, outPtr + uncompLen);
+                outPtr += uncompLen;
+            }
+            inPtr += len;
+        }
+    }
 }
@@ -11,6 +11,17 @@
 
 package com.ning.compress.lzf;
 
+import java.io.Closeable;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Supplier;
+
 import com.ning.compress.BufferRecycler;
 import com.ning.compress.lzf.util.ChunkEncoderFactory;
 
@@ -37,6 +48,12 @@ public class LZFEncoder
     // since 1.0.4
     private final static int FULL_UNCOMP_ENCODED_CHUNK = LZFChunk.MAX_HEADER_LEN + LZFChunk.MAX_CHUNK_LEN;
 
+    /**
+     * Number of chunks encoded by a single task, with parallel encoding: big enough
+     * to amortize cost of constructing encoders and tasks.
+     */
+    private final static int PARALLEL_SEGMENT_CHUNKS = 16;
+
     // Static methods only, no point in instantiating
     private LZFEncoder() { }
 
@@ -167,6 +184,38 @@ public class LZFEncoder
         return result;
     }    
 
+    /**
+     * Method for compressing given input data using LZF encoding and
+     * block structure (compatible with lzf command line utility), using
+     * specified compression level.
+     *<p>
+     * Note that {@link ChunkEncoder} instance used is one produced by
+     * {@link ChunkEncoderFactory#optimalInstance(CompressionLevel, int)}.
+     *
+     * @since 1.2.1
+     */
+    public static byte[] encode(byte[] data, CompressionLevel level) {
+        return encode(data, 0, data.length, level);
+    }
+
+    /**
+     * Method for compressing given input data using LZF encoding and
+     * block structure (compatible with lzf command line utility), using
+     * specified compression level.
+     *<p>
+     * Note that {@link ChunkEncoder} instance used is one produced by
+     * {@link ChunkEncoderFactory#optimalInstance(CompressionLevel, int)}.
+     *
+     * @since 1.2.1
+     */
+    public static byte[] encode(byte[] data, int offset, int length, CompressionLevel level)
+    {
+        ChunkEncoder enc = ChunkEncoderFactory.optimalInstance(level, length);
+        byte[] result = encode(enc, data, offset, length);
+        enc.close(); // important for buffer reuse!
+        return result;
+    }
+
     /**
      * Compression method that uses specified {@link ChunkEncoder} for actual
      * encoding.
@@ -179,38 +228,160 @@ public class LZFEncoder
      * Method that encodes given input using provided {@link ChunkEncoder},
      * and aggregating it into a single byte array and returning that.
      *<p>
+     * Input longer than a single chunk is encoded into a recycled workspace buffer
+     * (see {@link BufferRecycler#allocWorkspaceBuffer}), from which result
+     * is copied; so that only the result array itself is allocated.
+     *<p>
      * NOTE: method does NOT call {@link ChunkEncoder#close}; caller is responsible
      * for doing that after it is done using the encoder.
      */
     public static byte[] encode(ChunkEncoder enc, byte[] data, int offset, int length)
     {
-        int left = length;
-        int chunkLen = Math.min(LZFChunk.MAX_CHUNK_LEN, left);
-        LZFChunk first = enc.encodeChunk(data, offset, chunkLen);
-        left -= chunkLen;
-        // shortcut: if it all fit in, no need to coalesce:
-        if (left < 1) {
-            return first.getData();
+        // shortcut: if it all fits in a single chunk, no need for workspace
+        if (length <= LZFChunk.MAX_CHUNK_LEN) {
+            return enc.encodeChunk(data, offset, length).getData();
         }
-        // otherwise need to get other chunks:
-        int resultBytes = first.length();
-        offset += chunkLen;
-        LZFChunk last = first;
+        final BufferRecycler recycler = enc.getBufferRecycler();
+        byte[] workspace = recycler.allocWorkspaceBuffer(estimateMaxWorkspaceSize(length));
+        try {
+            int encodedLength = appendEncoded(enc, data, offset, length, workspace, 0);
+            return Arrays.copyOf(workspace, encodedLength);
+        } finally {
+            recycler.releaseWorkspaceBuffer(workspace);
+        }
+    }
 
-        do {
-            chunkLen = Math.min(left, LZFChunk.MAX_CHUNK_LEN);
-            LZFChunk chunk = enc.encodeChunk(data, offset, chunkLen);
-            offset += chunkLen;
-            left -= chunkLen;
-            resultBytes += chunk.length();
-            last.setNext(chunk);
-            last = chunk;
-        } while (left > 0);
-        // and then coalesce returns into single contiguous byte array
+    /**
+     * Method for compressing given input data using LZF encoding and
+     * block structure, into a recycled buffer that caller can access directly
+     * (without copying) until it closes returned lease. See
+     * {@link #encodeLeased(ChunkEncoder, byte[], int, int)} for details.
+     *<p>
+     * Note that {@link ChunkEncoder} instance used is one produced by
+     * {@link ChunkEncoderFactory#optimalInstance}, which typically
+     * is "unsafe" instance if one can be used on current JVM.
+     *
+     * @since 1.2.1
+     */
+    public static EncodedLease encodeLeased(byte[] data, int offset, int length)
+    {
+        ChunkEncoder enc = ChunkEncoderFactory.optimalInstance(length);
+        EncodedLease result = encodeLeased(enc, data, offset, length);
+        enc.close(); // important for buffer reuse!
+        return result;
+    }
+
+    /**
+     * Method that encodes given input using provided {@link ChunkEncoder}
+     * into a workspace buffer from the {@link BufferRecycler} of the encoder;
+     * encoded content is accessible via returned {@link EncodedLease} until it is
+     * closed, at which point buffer is returned to the recycler for reuse.
+     *<p>
+     * Since recyclers are not thread-safe, lease should be closed by the thread
+     * that obtained it (or not at all, in which case buffer is simply not reused).
+     *<p>
+     * NOTE: method does NOT call {@link ChunkEncoder#close}; caller is responsible
+     * for doing that after it is done using the encoder.
+     *
+     * @since 1.2.1
+     */
+    public static EncodedLease encodeLeased(ChunkEncoder enc, byte[] data, int offset, int length)
+    {
+        final BufferRecycler recycler = enc.getBufferRecycler();
+        byte[] workspace = recycler.allocWorkspaceBuffer(estimateMaxWorkspaceSize(length));
+        int encodedLength;
+        try {
+            encodedLength = appendEncoded(enc, data, offset, length, workspace, 0);
+        } catch (RuntimeException e) {
+            recycler.releaseWorkspaceBuffer(workspace);
+            throw e;
+        }
+        return new EncodedLease(recycler, workspace, encodedLength);
+    }
+
+    /*
+    ///////////////////////////////////////////////////////////////////////
+    // Encoding methods, parallel
+    ///////////////////////////////////////////////////////////////////////
+     */
+
+    /**
+     * Method for compressing given input data using multiple threads of
+     * {@link ForkJoinPool#commonPool()}; see {@link #parallelEncode(byte[], int, int, CompressionLevel, Executor)}.
+     *
+     * @since 1.2.1
+     */
+    public static byte[] parallelEncode(byte[] data) {
+        return parallelEncode(data, 0, data.length, CompressionLevel.DEFAULT, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Method for compressing given input data using multiple threads of given
+     * executor; see {@link #parallelEncode(byte[], int, int, CompressionLevel, Executor)}.
+     *
+     * @since 1.2.1
+     */
+    public static byte[] parallelEncode(byte[] data, Executor executor) {
+        return parallelEncode(data, 0, data.length, CompressionLevel.DEFAULT, executor);
+    }
+
+    /**
+     * Method for compressing given input data using LZF encoding and
+     * block structure (compatible with lzf command line utility), using
+     * multiple threads of given executor. Input is split into segments of
+     * multiple chunks, each encoded by a separate task (with its own
+     * {@link ChunkEncoder}, produced by {@link ChunkEncoderFactory#optimalInstance(CompressionLevel, int)});
+     * since chunks are encoded independently of each other, result is identical
+     * to that of {@link #encode(byte[], int, int, CompressionLevel)}.
+     * Calling thread waits until all segments have been encoded.
+     *<p>
+     * Input that fits in a single segment is encoded by calling thread.
+     *
+     * @since 1.2.1
+     */
+    public static byte[] parallelEncode(final byte[] data, int offset, int length,
+            final CompressionLevel level, Executor executor)
+    {
+        final int segmentLength = PARALLEL_SEGMENT_CHUNKS * LZFChunk.MAX_CHUNK_LEN;
+        if (length <= segmentLength) {
+            return encode(data, offset, length, level);
+        }
+        final int segmentCount = (int) (((long) length + segmentLength - 1) / segmentLength);
+        List<CompletableFuture<byte[]>> segments = new ArrayList<CompletableFuture<byte[]>>(segmentCount);
+        final int end = offset + length;
+        for (int i = 0; i < segmentCount; ++i, offset += segmentLength) {
+            final int segmentOffset = offset;
+            final int len = Math.min(segmentLength, end - offset);
+            segments.add(CompletableFuture.supplyAsync(new Supplier<byte[]>() {
+                @Override
+                public byte[] get() {
+                    return encode(data, segmentOffset, len, level);
+                }
+            }, executor));
+        }
+        // and then coalesce segments into single contiguous byte array
+        byte[][] encoded = new byte[segmentCount][];
+        int resultBytes = 0;
+        for (int i = 0; i < segmentCount; ++i) {
+            try {
+                encoded[i] = segments.get(i).join();
+            } catch (CompletionException e) {
+                Throwable t = e.getCause();
+                if (t instanceof RuntimeException) {
+                    throw (RuntimeException) t;
+                }
+                if (t instanceof Error) {
+                    throw (Error) t;
+                }
+                throw e;
+            }
+            resultBytes += encoded[i].length;
+        }
         byte[] result = new byte[resultBytes];
         int ptr = 0;
-        for (; first != null; first = first.next()) {
-            ptr = first.copyTo(result, ptr);
+        for (byte[] segment : encoded) {
+            System.arraycopy(segment, 0, result, ptr, segment.length);
+            ptr += segment.length;
         }
         return result;
     }
@@ -281,6 +452,23 @@ public class LZFEncoder
         return len;
     }
 
+    /**
+     * Alternate version that accepts pre-allocated output buffer, and uses
+     * specified compression level.
+     *<p>
+     * Note that {@link ChunkEncoder} instance used is one produced by
+     * {@link ChunkEncoderFactory#optimalNonAllocatingInstance(CompressionLevel, int)}.
+     *
+     * @since 1.2.1
+     */
+    public static int appendEncoded(byte[] input, int inputPtr, int inputLength,
+            byte[] outputBuffer, int outputPtr, CompressionLevel level) {
+        ChunkEncoder enc = ChunkEncoderFactory.optimalNonAllocatingInstance(level, inputLength);
+        int len = appendEncoded(enc, input, inputPtr, inputLength, outputBuffer, outputPtr);
+        enc.close();
+        return len;
+    }
+
 	/**
      * Alternate version that accepts pre-allocated output buffer.
      */
@@ -306,4 +494,141 @@ public class LZFEncoder
         } while (left > 0);
         return outputPtr;
     }
+
+    /*
+    ///////////////////////////////////////////////////////////////////////
+    // Encoding methods, ByteBuffers
+    ///////////////////////////////////////////////////////////////////////
+     */
+
+    /**
+     * Method for compressing all remaining content of given input buffer, appending
+     * resulting sequence of chunks in output buffer; positions of buffers are advanced
+     * accordingly. Buffers may be heap or direct buffers.
+     * Output buffer should have room for at least
+     * {@link #estimateMaxWorkspaceSize} bytes (for amount of input), to
+     * avoid {@link java.nio.BufferOverflowException}.
+     *<p>
+     * Note that {@link ChunkEncoder} instance used is one produced by
+     * {@link ChunkEncoderFactory#optimalNonAllocatingInstance}, which typically
+     * is "unsafe" instance if one can be used on current JVM.
+     *
+     * @return Number of bytes appended in output buffer
+     *
+     * @since 1.2.1
+     */
+    public static int encode(ByteBuffer src, ByteBuffer dst) {
+        ChunkEncoder enc = ChunkEncoderFactory.optimalNonAllocatingInstance(src.remaining());
+        int len = encode(enc, src, dst);
+        enc.close();
+        return len;
+    }
+
+    /**
+     * Method for compressing all remaining content of given input buffer, appending
+     * resulting sequence of chunks in output buffer, using "safe" {@link ChunkEncoder}
+     * (as produced by {@link ChunkEncoderFactory#safeInstance}).
+     *
+     * @return Number of bytes appended in output buffer
+     *
+     * @since 1.2.1
+     */
+    public static int safeEncode(ByteBuffer src, ByteBuffer dst) {
+        ChunkEncoder enc = ChunkEncoderFactory.safeNonAllocatingInstance(src.remaining());
+        int len = encode(enc, src, dst);
+        enc.close();
+        return len;
+    }
+
+    /**
+     * Method for compressing all remaining content of given input buffer using
+     * provided {@link ChunkEncoder}, appending resulting sequence of chunks in output
+     * buffer. If output buffer runs out of room, chunks appended so far
+     * (and input consumed for them) remain, and
+     * {@link java.nio.BufferOverflowException} is thrown.
+     *<p>
+     * NOTE: method does NOT call {@link ChunkEncoder#close}; caller is responsible
+     * for doing that after it is done using the encoder.
+     *
+     * @return Number of bytes appended in output buffer
+     *
+     * @since 1.2.1
+     */
+    public static int encode(ChunkEncoder enc, ByteBuffer src, ByteBuffer dst)
+    {
+        int total = 0;
+        while (src.hasRemaining()) {
+            total += enc.encodeChunk(src, dst);
+        }
+        return total;
+    }
+
+    /*
+    ///////////////////////////////////////////////////////////////////////
+    // Helper classes
+    ///////////////////////////////////////////////////////////////////////
+     */
+
+    /**
+     * Encoded content in a recycled buffer, as returned by
+     * {@link LZFEncoder#encodeLeased}: content is the first {@link #getLength()}
+     * bytes of {@link #getBuffer()}, and is only valid until lease is closed.
+     *
+     * @since 1.2.1
+     */
+    public final static class EncodedLease implements Closeable
+    {
+        private final BufferRecycler _recycler;
+
+        private byte[] _buffer;
+
+        private final int _length;
+
+        EncodedLease(BufferRecycler recycler, byte[] buffer, int length) {
+            _recycler = recycler;
+            _buffer = buffer;
+            _length = length;
+        }
+
+        /**
+         * @return Buffer that contains encoded content (starting at offset 0);
+         *    usually longer than content
+         *
+         * @throws IllegalStateException If lease has been closed
+         */
+        public byte[] getBuffer() {
+            if (_buffer == null) {
+                throw new IllegalStateException("Lease already closed");
+            }
+            return _buffer;
+        }
+
+        /**
+         * @return Length of encoded content
+         */
+        public int getLength() {
+            return _length;
+        }
+
+        /**
+         * Method for getting a copy of encoded content, exactly sized;
+         * remains valid after lease has been closed.
+         */
+        public byte[] toByteArray() {
+            return Arrays.copyOf(getBuffer(), _length);
+        }
+
+        /**
+         * Method for returning buffer to the recycler; after this, buffer
+         * must not be accessed. Calling this method more than once has no effect.
+         */
+        @Override
+        public void close() {
+            byte[] buf = _buffer;
+            if (buf != null) {
+                _buffer = null;
+                _recycler.releaseWorkspaceBuffer(buf);
+            }
+        }
+    }
 }
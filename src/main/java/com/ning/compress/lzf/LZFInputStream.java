@@ -3,6 +3,8 @@ package com.ning.compress.lzf;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
 
 import com.ning.compress.BufferRecycler;
 import com.ning.compress.lzf.util.ChunkDecoderFactory;
@@ -190,30 +192,39 @@ public class LZFInputStream extends InputStream
         if (length < 1) {
             return 0;
         }
-        if (!readyBuffer()) {
-            return -1;
-        }
-        // First let's read however much data we happen to have...
-        int chunkLength = Math.min(_bufferLength - _bufferPosition, length);
-        System.arraycopy(_decodedBytes, _bufferPosition, buffer, offset, chunkLength);
-        _bufferPosition += chunkLength;
-
-        if (chunkLength == length || !_cfgFullReads) {
-            return chunkLength;
-        }
-        // Need more data, then
-        int totalRead = chunkLength;
-        do {
-            offset += chunkLength;
-            if (!readyBuffer()) {
+        int totalRead = 0;
+        while (true) {
+            if (_bufferPosition < _bufferLength) {
+                // First let's read however much data we happen to have...
+                int chunkLength = Math.min(_bufferLength - _bufferPosition, length - totalRead);
+                System.arraycopy(_decodedBytes, _bufferPosition, buffer, offset + totalRead, chunkLength);
+                _bufferPosition += chunkLength;
+                totalRead += chunkLength;
+            } else {
+                if (_inputStreamClosed) {
+                    break;
+                }
+                // then whole chunks directly into caller's buffer, if they fit; partial via our buffer
+                int amount = _decoder.decodeOrBufferChunk(_inputStream, _inputBuffer,
+                        buffer, offset + totalRead, offset + length, _decodedBytes);
+                if (amount == -1) { // EOF; but return what we got first, if anything
+                    if (totalRead == 0) {
+                        close();
+                    }
+                    break;
+                }
+                if (amount < 0) { // did not fit, copied on next round
+                    _bufferLength = -(amount+1);
+                    _bufferPosition = 0;
+                    continue;
+                }
+                totalRead += amount;
+            }
+            if (totalRead == length || (totalRead > 0 && !_cfgFullReads)) {
                 break;
             }
-            chunkLength = Math.min(_bufferLength - _bufferPosition, (length - totalRead));
-            System.arraycopy(_decodedBytes, _bufferPosition, buffer, offset, chunkLength);
-            _bufferPosition += chunkLength;
-            totalRead += chunkLength;
-        } while (totalRead < length);
-        return totalRead;
+        }
+        return (totalRead == 0) ? -1 : totalRead;
     }
     
     @Override
@@ -327,13 +338,62 @@ public class LZFInputStream extends InputStream
      */
     public int readAndWrite(OutputStream out) throws IOException
     {
-        int total = 0;
+        return (int) transferTo(out);
+    }
 
-        while (readyBuffer()) {
-            int avail = _bufferLength - _bufferPosition;
-            out.write(_decodedBytes, _bufferPosition, avail);
-            _bufferPosition += avail; // to ensure it looks like we consumed it all
-            total += avail;
+    /**
+     * Method that will read and uncompress all remaining data, and write it
+     * using given {@link OutputStream}: compressed chunks are decoded into a
+     * single reused buffer, and content of non-compressed chunks is read directly
+     * into it, so content is never copied between buffers.
+     * Stream is closed once end of input is reached.
+     *
+     * @return Number of bytes written (uncompressed)
+     *
+     * @since 1.2.1
+     */
+    public long transferTo(OutputStream out) throws IOException
+    {
+        long total = 0L;
+        if (_bufferPosition < _bufferLength) { // first, whatever we have buffered
+            out.write(_decodedBytes, _bufferPosition, _bufferLength - _bufferPosition);
+            total += _bufferLength - _bufferPosition;
+            _bufferPosition = _bufferLength = 0;
+        }
+        while (!_inputStreamClosed) {
+            int len = _decoder.decodeChunk(_inputStream, _inputBuffer, _decodedBytes);
+            if (len < 0) {
+                close();
+                break;
+            }
+            out.write(_decodedBytes, 0, len);
+            total += len;
+        }
+        return total;
+    }
+
+    /**
+     * Method that will read and uncompress all remaining data, and write it
+     * to given (blocking) channel; see {@link #transferTo(OutputStream)} for details.
+     *
+     * @return Number of bytes written (uncompressed)
+     *
+     * @since 1.2.1
+     */
+    public long transferTo(WritableByteChannel out) throws IOException
+    {
+        long total = 0L;
+        if (_bufferPosition < _bufferLength) {
+            total += _writeFully(out, ByteBuffer.wrap(_decodedBytes, _bufferPosition, _bufferLength - _bufferPosition));
+            _bufferPosition = _bufferLength = 0;
+        }
+        while (!_inputStreamClosed) {
+            int len = _decoder.decodeChunk(_inputStream, _inputBuffer, _decodedBytes);
+            if (len < 0) {
+                close();
+                break;
+            }
+            total += _writeFully(out, ByteBuffer.wrap(_decodedBytes, 0, len));
         }
         return total;
     }
@@ -344,6 +404,15 @@ public class LZFInputStream extends InputStream
     ///////////////////////////////////////////////////////////////////////
      */
 
+    private static int _writeFully(WritableByteChannel out, ByteBuffer bb) throws IOException
+    {
+        final int len = bb.remaining();
+        while (bb.hasRemaining()) {
+            out.write(bb);
+        }
+        return len;
+    }
+
     /**
      * Fill the uncompressed bytes buffer by reading the underlying inputStream.
      * 
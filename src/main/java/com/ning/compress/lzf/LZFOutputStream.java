@@ -4,10 +4,12 @@ import java.io.FilterOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.Buffer;
 import java.nio.ByteBuffer;
 import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
 import java.nio.channels.FileChannel.MapMode;
+import java.nio.channels.GatheringByteChannel;
 import java.nio.channels.WritableByteChannel;
 
 import com.ning.compress.BufferRecycler;
@@ -50,6 +52,21 @@ public class LZFOutputStream extends FilterOutputStream implements WritableByteC
      */
     protected boolean _outputStreamClosed;
 
+    /**
+     * Index to add written chunks to, if any.
+     *
+     * @since 1.2.1
+     */
+    protected LZFChunkIndex _chunkIndex;
+
+    /**
+     * Channel of the underlying stream, if any, for writing chunks using gathering
+     * writes (see {@link LZFChunk#gatheringChannel}).
+     *
+     * @since 1.2.1
+     */
+    protected final GatheringByteChannel _channel;
+
     /*
     ///////////////////////////////////////////////////////////////////////
     // Construction, configuration
@@ -61,6 +78,17 @@ public class LZFOutputStream extends FilterOutputStream implements WritableByteC
         this(ChunkEncoderFactory.optimalInstance(DEFAULT_OUTPUT_BUFFER_SIZE), outputStream);
     }
 
+    /**
+     * @param outputStream Underlying stream to write compressed content to
+     * @param level Compression level to use
+     *
+     * @since 1.2.1
+     */
+    public LZFOutputStream(final OutputStream outputStream, final CompressionLevel level)
+    {
+        this(ChunkEncoderFactory.optimalInstance(level, DEFAULT_OUTPUT_BUFFER_SIZE), outputStream);
+    }
+
     public LZFOutputStream(final ChunkEncoder encoder, final OutputStream outputStream)
     {
         this(encoder, outputStream, DEFAULT_OUTPUT_BUFFER_SIZE, encoder._recycler);
@@ -87,6 +115,7 @@ public class LZFOutputStream extends FilterOutputStream implements WritableByteC
         _recycler = bufferRecycler;
         _outputBuffer = bufferRecycler.allocOutputBuffer(bufferSize);
         _outputStreamClosed = false;
+        _channel = LZFChunk.gatheringChannel(outputStream);
     }
 
     /**
@@ -98,6 +127,20 @@ public class LZFOutputStream extends FilterOutputStream implements WritableByteC
         return this;
     }
 
+    /**
+     * Method for specifying index to add all chunks written to, for
+     * random access to content. Should be called before writing any content,
+     * since offsets are relative to the first chunk written after the call.
+     *
+     * @param index Index to add chunks to; or null to stop indexing
+     *
+     * @since 1.2.1
+     */
+    public LZFOutputStream setChunkIndex(LZFChunkIndex index) {
+        _chunkIndex = index;
+        return this;
+    }
+
     /*
     ///////////////////////////////////////////////////////////////////////
     // OutputStream impl
@@ -123,7 +166,7 @@ public class LZFOutputStream extends FilterOutputStream implements WritableByteC
 
         // simple case first: empty _outputBuffer and "big" input buffer: write first full blocks, if any, without copying
         while (_position == 0 && length >= BUFFER_LEN) {
-            _encoder.encodeAndWriteChunk(buffer, offset, BUFFER_LEN, out);
+            writeChunk(buffer, offset, BUFFER_LEN);
             offset += BUFFER_LEN;
             length -= BUFFER_LEN;
         }
@@ -144,7 +187,7 @@ public class LZFOutputStream extends FilterOutputStream implements WritableByteC
 
         // then write intermediate full blocks, if any, without copying:
         while (length >= BUFFER_LEN) {
-            _encoder.encodeAndWriteChunk(buffer, offset, BUFFER_LEN, out);
+            writeChunk(buffer, offset, BUFFER_LEN);
             offset += BUFFER_LEN;
             length -= BUFFER_LEN;
         }
@@ -177,17 +220,12 @@ public class LZFOutputStream extends FilterOutputStream implements WritableByteC
             return r;
         }
         writeCompressedBlock(); // will flush _outputBuffer
-        if (src.hasArray()) {
-            // direct compression from backing array
-            write(src.array(), src.arrayOffset(), src.limit() - src.arrayOffset());
-        } else {
-            // need to copy to heap array first
-            while (src.hasRemaining()) {
-                int toRead = Math.min(src.remaining(), _outputBuffer.length);
-                src.get(_outputBuffer, 0, toRead);
-                _position = toRead;
-                writeCompressedBlock();
-            }
+        // then encode directly from the buffer (backing array, or content of direct buffer)
+        while (src.hasRemaining()) {
+            final int len = Math.min(src.remaining(), LZFChunk.MAX_CHUNK_LEN);
+            writeChunk(src, src.position(), len);
+            // (cast for Java 8 compatibility)
+            ((Buffer) src).position(src.position() + len);
         }
         return r;
     }
@@ -249,6 +287,15 @@ public class LZFOutputStream extends FilterOutputStream implements WritableByteC
         return _cfgFinishBlockOnFlush;
     }
 
+    /**
+     * @return Index chunks are added to, if any
+     *
+     * @since 1.2.1
+     */
+    public LZFChunkIndex getChunkIndex() {
+        return _chunkIndex;
+    }
+
     /**
      * Method that can be used to force completion of the current block,
      * which means that all buffered data will be compressed into an
@@ -282,12 +329,43 @@ public class LZFOutputStream extends FilterOutputStream implements WritableByteC
 
         while (left > 0) {
             int chunkLen = Math.min(LZFChunk.MAX_CHUNK_LEN, left);
-            _encoder.encodeAndWriteChunk(_outputBuffer, offset, chunkLen, out);
+            writeChunk(_outputBuffer, offset, chunkLen);
             offset += chunkLen;
             left -= chunkLen;
         }
     }
 
+    /**
+     * Compress and write given chunk to the OutputStream, adding it to the
+     * chunk index if one is used
+     *
+     * @since 1.2.1
+     */
+    protected void writeChunk(byte[] buffer, int offset, int len) throws IOException
+    {
+        final int encodedLen = (_channel == null) ? _encoder.writeEncodedChunk(buffer, offset, len, out)
+                : _encoder.writeEncodedChunk(buffer, offset, len, _channel);
+        if (_chunkIndex != null) {
+            _chunkIndex.appendChunk(len, encodedLen);
+        }
+    }
+
+    /**
+     * Compress and write given chunk from given buffer (heap or direct one)
+     * to the OutputStream, adding it to the chunk index if one is used;
+     * position of the buffer is not changed.
+     *
+     * @since 1.2.1
+     */
+    protected void writeChunk(ByteBuffer buffer, int offset, int len) throws IOException
+    {
+        final int encodedLen = (_channel == null) ? _encoder.writeEncodedChunk(buffer, offset, len, out)
+                : _encoder.writeEncodedChunk(buffer, offset, len, _channel);
+        if (_chunkIndex != null) {
+            _chunkIndex.appendChunk(len, encodedLen);
+        }
+    }
+
     protected void checkNotClosed() throws IOException
     {
         if (_outputStreamClosed) {
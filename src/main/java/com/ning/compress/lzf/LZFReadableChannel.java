@@ -0,0 +1,259 @@
+package com.ning.compress.lzf;
+
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ReadableByteChannel;
+
+import com.ning.compress.BufferRecycler;
+import com.ning.compress.lzf.util.ChunkDecoderFactory;
+
+/**
+ * Decorator {@link ReadableByteChannel} implementation used for reading compressed data
+ * from underlying (blocking) channel and uncompressing it on the fly, such that reads
+ * return uncompressed data. Its counterpart is {@link LZFWritableChannel}.
+ *<p>
+ * Content is read into a direct buffer; compressed chunks are decoded from there
+ * (after bulk copy into an array) directly into buffer of caller, if it is
+ * a heap buffer with enough room for the whole chunk.
+ * Non-compressed chunks are similarly read directly into buffer of caller, if
+ * they fit.
+ *
+ * @see LZFWritableChannel
+ * @see LZFInputStream
+ *
+ * @since 1.2.1
+ */
+public class LZFReadableChannel implements ReadableByteChannel
+{
+    protected final ChunkDecoder _decoder;
+
+    protected final BufferRecycler _recycler;
+
+    protected final ReadableByteChannel _channel;
+
+    /**
+     * Direct buffer that chunks are read into
+     */
+    protected final ByteBuffer _inputBuffer;
+
+    /**
+     * Buffer that compressed content is copied to for decoding, as array-based
+     * decoders are considerably faster than ones accessing buffers
+     */
+    protected byte[] _inputBytes;
+
+    /**
+     * Buffer that chunks are decoded into, when they can not be decoded
+     * directly into buffer of caller
+     */
+    protected byte[] _decodedBytes;
+
+    protected final ByteBuffer _decodedView;
+
+    /**
+     * Content of the current chunk not yet returned to caller (either
+     * {@link #_decodedView} or {@link #_inputBuffer}), if any
+     */
+    protected ByteBuffer _pending;
+
+    protected boolean _closed;
+
+    /**
+     * Number of chunks read so far, for error messages
+     */
+    protected int _chunkCount;
+
+    /*
+    ///////////////////////////////////////////////////////////////////////
+    // Construction
+    ///////////////////////////////////////////////////////////////////////
+     */
+
+    public LZFReadableChannel(final ReadableByteChannel channel)
+    {
+        this(ChunkDecoderFactory.optimalInstance(), channel);
+    }
+
+    public LZFReadableChannel(final ChunkDecoder decoder, final ReadableByteChannel channel)
+    {
+        this(decoder, channel, BufferRecycler.instance());
+    }
+
+    public LZFReadableChannel(final ChunkDecoder decoder, final ReadableByteChannel channel,
+            final BufferRecycler bufferRecycler)
+    {
+        _decoder = decoder;
+        _channel = channel;
+        _recycler = bufferRecycler;
+        _inputBuffer = ByteBuffer.allocateDirect(LZFChunk.MAX_HEADER_LEN + LZFChunk.MAX_CHUNK_LEN);
+        _inputBytes = bufferRecycler.allocInputBuffer(LZFChunk.MAX_CHUNK_LEN);
+        _decodedBytes = bufferRecycler.allocDecodeBuffer(LZFChunk.MAX_CHUNK_LEN);
+        _decodedView = ByteBuffer.wrap(_decodedBytes);
+    }
+
+    /*
+    ///////////////////////////////////////////////////////////////////////
+    // ReadableByteChannel impl
+    ///////////////////////////////////////////////////////////////////////
+     */
+
+    @Override
+    public synchronized int read(final ByteBuffer dst) throws IOException
+    {
+        if (_closed) {
+            throw new ClosedChannelException();
+        }
+        if (!dst.hasRemaining()) {
+            return 0;
+        }
+        while (_pending == null || !_pending.hasRemaining()) {
+            _pending = null;
+            final int count = readChunk(dst);
+            if (count != 0) { // either EOF, or decoded directly into buffer of caller
+                return count;
+            }
+        }
+        final ByteBuffer pending = _pending;
+        final int count = Math.min(pending.remaining(), dst.remaining());
+        final int limit = pending.limit();
+        // (casts for Java 8 compatibility)
+        ((Buffer) pending).limit(pending.position() + count);
+        dst.put(pending);
+        ((Buffer) pending).limit(limit);
+        return count;
+    }
+
+    @Override
+    public boolean isOpen() {
+        return !_closed;
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        if (!_closed) {
+            _closed = true;
+            _pending = null;
+            byte[] buf = _inputBytes;
+            if (buf != null) {
+                _inputBytes = null;
+                _recycler.releaseInputBuffer(buf);
+            }
+            buf = _decodedBytes;
+            if (buf != null) {
+                _decodedBytes = null;
+                _recycler.releaseDecodeBuffer(buf);
+            }
+            _channel.close();
+        }
+    }
+
+    /*
+    ///////////////////////////////////////////////////////////////////////
+    // Additional public methods
+    ///////////////////////////////////////////////////////////////////////
+     */
+
+    /**
+     * Method that can be used to find underlying {@link ReadableByteChannel} that
+     * we read from to get LZF encoded data to decode.
+     */
+    public ReadableByteChannel getUnderlyingChannel() {
+        return _channel;
+    }
+
+    /*
+    ///////////////////////////////////////////////////////////////////////
+    // Internal methods
+    ///////////////////////////////////////////////////////////////////////
+     */
+
+    /**
+     * Method for reading and decoding the next chunk: directly into given buffer,
+     * if possible; otherwise into an internal buffer, set as {@link #_pending}.
+     *
+     * @return Number of bytes decoded into given buffer, if any; 0 if content
+     *    was decoded into an internal buffer (or chunk was empty); -1 for end of input.
+     */
+    protected int readChunk(final ByteBuffer dst) throws IOException
+    {
+        final ByteBuffer in = _inputBuffer;
+        ((Buffer) in).clear();
+        ((Buffer) in).limit(LZFChunk.HEADER_LEN_NOT_COMPRESSED);
+        if (!readFully(in, true)) {
+            return -1;
+        }
+        ++_chunkCount;
+        if (in.get(0) != LZFChunk.BYTE_Z || in.get(1) != LZFChunk.BYTE_V) {
+            throw new LZFException("Corrupt input data, block #"+_chunkCount+": did not start with 'ZV' signature bytes");
+        }
+        final int type = in.get(2);
+        final int len = ChunkDecoder.uint16(in, 3);
+        if (type == LZFChunk.BLOCK_TYPE_NON_COMPRESSED) {
+            if (len <= dst.remaining()) { // can read directly into buffer of caller
+                final int limit = dst.limit();
+                ((Buffer) dst).limit(dst.position() + len);
+                try {
+                    readFully(dst, false);
+                } finally {
+                    ((Buffer) dst).limit(limit);
+                }
+                return len;
+            }
+            ((Buffer) in).clear();
+            ((Buffer) in).limit(len);
+            readFully(in, false);
+            ((Buffer) in).flip();
+            _pending = in;
+            return 0;
+        }
+        if (type != LZFChunk.BLOCK_TYPE_COMPRESSED) {
+            throw new LZFException("Corrupt input data, block #"+_chunkCount+": unrecognized block type "+(type & 0xFF));
+        }
+        ((Buffer) in).limit(LZFChunk.HEADER_LEN_COMPRESSED);
+        readFully(in, false);
+        final int uncompLen = ChunkDecoder.uint16(in, 5);
+        ((Buffer) in).clear();
+        ((Buffer) in).limit(len);
+        readFully(in, false);
+        ((Buffer) in).flip();
+        in.get(_inputBytes, 0, len);
+        if (dst.hasArray() && uncompLen <= dst.remaining()) {
+            final int pos = dst.position();
+            final int outPtr = dst.arrayOffset() + pos;
+            _decoder.decodeChunk(_inputBytes, 0, len, dst.array(), outPtr, outPtr + uncompLen);
+            ((Buffer) dst).position(pos + uncompLen);
+            return uncompLen;
+        }
+        _decoder.decodeChunk(_inputBytes, 0, len, _decodedBytes, 0, uncompLen);
+        final ByteBuffer view = _decodedView;
+        ((Buffer) view).clear();
+        ((Buffer) view).limit(uncompLen);
+        _pending = view;
+        return 0;
+    }
+
+    /**
+     * Method for filling given buffer up to its limit.
+     *
+     * @param eofOk Whether end of input before any content was read is acceptable
+     *
+     * @return True if buffer was filled; false if end of input was reached
+     *    right away (and <code>eofOk</code> was true)
+     */
+    protected boolean readFully(final ByteBuffer bb, final boolean eofOk) throws IOException
+    {
+        final int start = bb.position();
+        while (bb.hasRemaining()) {
+            if (_channel.read(bb) < 0) {
+                if (eofOk && bb.position() == start) {
+                    return false;
+                }
+                throw new LZFException("Corrupt input data, block #"+_chunkCount+" is incomplete");
+            }
+        }
+        return true;
+    }
+}
@@ -139,7 +139,8 @@ public class LZFUncompressor extends Uncompressor
     {
         final int end = offset + len;
         
-        while (offset < end) {
+        // (and once handler indicates it wants no more content, ignore the rest)
+        while (offset < end && !_terminated) {
             byte b = comp[offset++];
 
             switch (_state) {
@@ -328,7 +329,9 @@ public class LZFUncompressor extends Uncompressor
             _decodeBuffer = _recycler.allocDecodeBuffer(LZFChunk.MAX_CHUNK_LEN);
         }
         _decoder.decodeChunk(src, srcOffset, srcOffset + len, _decodeBuffer, 0, _uncompressedLength);
-        _handler.handleData(_decodeBuffer, 0, _uncompressedLength);
+        if (!_handler.handleData(_decodeBuffer, 0, _uncompressedLength)) {
+            _terminated = true;
+        }
     }
 
     /*
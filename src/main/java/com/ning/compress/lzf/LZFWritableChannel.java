@@ -0,0 +1,301 @@
+package com.ning.compress.lzf;
+
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.WritableByteChannel;
+
+import com.ning.compress.BufferRecycler;
+import com.ning.compress.lzf.util.ChunkEncoderFactory;
+
+/**
+ * Decorator {@link WritableByteChannel} implementation that will compress
+ * content using LZF compression algorithm, writing it to underlying
+ * (blocking) channel. Its counterpart is {@link LZFReadableChannel}.
+ *<p>
+ * Encoded chunks are written from a direct buffer; except for non-compressed chunks
+ * that come directly from buffer of caller (whenever a full chunk is available),
+ * which are written along with their header using a gathering write (if underlying
+ * channel is a {@link GatheringByteChannel}), without copying.
+ *
+ * @see LZFReadableChannel
+ * @see LZFOutputStream
+ *
+ * @since 1.2.1
+ */
+public class LZFWritableChannel implements WritableByteChannel
+{
+    protected final ChunkEncoder _encoder;
+
+    protected final BufferRecycler _recycler;
+
+    protected final WritableByteChannel _channel;
+
+    /**
+     * Buffer for uncompressed content of the current (partial) chunk
+     */
+    protected byte[] _inputBuffer;
+
+    protected int _position = 0;
+
+    /**
+     * Buffer that chunks are encoded in
+     */
+    protected byte[] _encodeBuffer;
+
+    /**
+     * Direct buffer that encoded chunks are written from
+     */
+    protected final ByteBuffer _outputBuffer;
+
+    /**
+     * Direct buffer for header of non-compressed chunks written from buffer of caller
+     */
+    protected final ByteBuffer _headerBuffer;
+
+    private final byte[] _headerBytes = new byte[LZFChunk.HEADER_LEN_NOT_COMPRESSED];
+
+    protected boolean _closed;
+
+    /*
+    ///////////////////////////////////////////////////////////////////////
+    // Construction
+    ///////////////////////////////////////////////////////////////////////
+     */
+
+    // note: encoders do not need buffers of their own, since chunks are encoded into _encodeBuffer
+
+    public LZFWritableChannel(final WritableByteChannel channel)
+    {
+        this(ChunkEncoderFactory.optimalNonAllocatingInstance(LZFChunk.MAX_CHUNK_LEN), channel);
+    }
+
+    /**
+     * @param channel Underlying channel to write compressed content to
+     * @param level Compression level to use
+     */
+    public LZFWritableChannel(final WritableByteChannel channel, final CompressionLevel level)
+    {
+        this(ChunkEncoderFactory.optimalNonAllocatingInstance(level, LZFChunk.MAX_CHUNK_LEN), channel);
+    }
+
+    /**
+     * @param encoder Encoder to use for chunks; since chunks are encoded into a buffer
+     *    owned by channel, a non-allocating encoder (see
+     *    {@link ChunkEncoderFactory#optimalNonAllocatingInstance(int)}) is sufficient
+     * @param channel Underlying channel to write compressed content to
+     */
+    public LZFWritableChannel(final ChunkEncoder encoder, final WritableByteChannel channel)
+    {
+        this(encoder, channel, encoder.getBufferRecycler());
+    }
+
+    public LZFWritableChannel(final ChunkEncoder encoder, final WritableByteChannel channel,
+            final BufferRecycler bufferRecycler)
+    {
+        _encoder = encoder;
+        _channel = channel;
+        _recycler = bufferRecycler;
+        _inputBuffer = bufferRecycler.allocOutputBuffer(LZFChunk.MAX_CHUNK_LEN);
+        _encodeBuffer = bufferRecycler.allocEncodingBuffer(LZFEncoder.estimateMaxWorkspaceSize(LZFChunk.MAX_CHUNK_LEN));
+        // encoded chunk is only used if it is smaller than non-compressed one
+        _outputBuffer = ByteBuffer.allocateDirect(LZFChunk.HEADER_LEN_NOT_COMPRESSED + LZFChunk.MAX_CHUNK_LEN);
+        _headerBuffer = ByteBuffer.allocateDirect(LZFChunk.HEADER_LEN_NOT_COMPRESSED);
+    }
+
+    /*
+    ///////////////////////////////////////////////////////////////////////
+    // WritableByteChannel impl
+    ///////////////////////////////////////////////////////////////////////
+     */
+
+    @Override
+    public synchronized int write(final ByteBuffer src) throws IOException
+    {
+        checkNotClosed();
+        final int r = src.remaining();
+        // first, complete the current chunk, if any
+        if (_position > 0) {
+            final int len = Math.min(src.remaining(), LZFChunk.MAX_CHUNK_LEN - _position);
+            src.get(_inputBuffer, _position, len);
+            _position += len;
+            if (_position < LZFChunk.MAX_CHUNK_LEN) {
+                return r;
+            }
+            writeBufferedChunk();
+        }
+        // then full chunks directly from buffer of caller
+        while (src.remaining() >= LZFChunk.MAX_CHUNK_LEN) {
+            writeChunk(src, LZFChunk.MAX_CHUNK_LEN);
+        }
+        // and buffer the rest
+        final int len = src.remaining();
+        if (len > 0) {
+            src.get(_inputBuffer, 0, len);
+            _position = len;
+        }
+        return r;
+    }
+
+    @Override
+    public boolean isOpen() {
+        return !_closed;
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        if (!_closed) {
+            try {
+                if (_position > 0) {
+                    writeBufferedChunk();
+                }
+            } finally {
+                _closed = true;
+                _encoder.close();
+                byte[] buf = _inputBuffer;
+                if (buf != null) {
+                    _inputBuffer = null;
+                    _recycler.releaseOutputBuffer(buf);
+                }
+                buf = _encodeBuffer;
+                if (buf != null) {
+                    _encodeBuffer = null;
+                    _recycler.releaseEncodeBuffer(buf);
+                }
+                _channel.close();
+            }
+        }
+    }
+
+    /*
+    ///////////////////////////////////////////////////////////////////////
+    // Additional public methods
+    ///////////////////////////////////////////////////////////////////////
+     */
+
+    /**
+     * Method that can be used to find underlying {@link WritableByteChannel} that
+     * we write encoded LZF encoded data into, after compressing it.
+     */
+    public WritableByteChannel getUnderlyingChannel() {
+        return _channel;
+    }
+
+    /**
+     * Method that can be used to force completion of the current chunk,
+     * which means that all buffered data will be compressed and written
+     * to underlying channel. This typically results in lower compression ratio
+     * as larger chunks compress better.
+     */
+    public synchronized LZFWritableChannel finishBlock() throws IOException
+    {
+        checkNotClosed();
+        if (_position > 0) {
+            writeBufferedChunk();
+        }
+        return this;
+    }
+
+    /*
+    ///////////////////////////////////////////////////////////////////////
+    // Internal methods
+    ///////////////////////////////////////////////////////////////////////
+     */
+
+    /**
+     * Compress and write the current (buffered) chunk
+     */
+    protected void writeBufferedChunk() throws IOException
+    {
+        final int len = _position;
+        _position = 0;
+        if (!writeIfCompresses(_inputBuffer, 0, len)) {
+            final ByteBuffer out = _outputBuffer;
+            // (casts for Java 8 compatibility)
+            ((Buffer) out).clear();
+            out.put(_headerBytes, 0, LZFChunk.appendNonCompressedHeader(len, _headerBytes, 0));
+            out.put(_inputBuffer, 0, len);
+            ((Buffer) out).flip();
+            writeFully(out);
+        }
+    }
+
+    /**
+     * Compress and write a chunk of given length from given buffer (content of
+     * direct buffers is compressed in place, if encoder supports it); if it does not
+     * compress, it is written as is, without copying.
+     */
+    protected void writeChunk(final ByteBuffer src, final int len) throws IOException
+    {
+        final int pos = src.position();
+        final int end = _encoder.appendEncodedIfCompresses(src, 1.0, pos, len, _encodeBuffer, 0);
+        if (!writeIfCompressed(end, len)) {
+            final ByteBuffer header = _headerBuffer;
+            ((Buffer) header).clear();
+            header.put(_headerBytes, 0, LZFChunk.appendNonCompressedHeader(len, _headerBytes, 0));
+            ((Buffer) header).flip();
+            final ByteBuffer payload = src.duplicate();
+            ((Buffer) payload).limit(pos + len);
+            if (_channel instanceof GatheringByteChannel) {
+                final ByteBuffer[] buffers = new ByteBuffer[] { header, payload };
+                final GatheringByteChannel channel = (GatheringByteChannel) _channel;
+                while (payload.hasRemaining()) {
+                    channel.write(buffers);
+                }
+            } else {
+                writeFully(header);
+                writeFully(payload);
+            }
+        }
+        ((Buffer) src).position(pos + len);
+    }
+
+    /**
+     * @return True if chunk was compressed and written; false if it does not compress
+     *    (in which case nothing was written)
+     */
+    protected boolean writeIfCompresses(byte[] input, int inputPtr, int len) throws IOException
+    {
+        return writeIfCompressed(_encoder.appendEncodedIfCompresses(input, 1.0, inputPtr, len, _encodeBuffer, 0),
+                len);
+    }
+
+    /**
+     * Helper method for writing chunk encoded in {@link #_encodeBuffer}, if it was
+     * compressed to be smaller than non-compressed chunk would be.
+     *
+     * @param end End offset of encoded chunk; -1 if it was not compressed
+     *
+     * @return True if chunk was written; false if not
+     */
+    private boolean writeIfCompressed(int end, int len) throws IOException
+    {
+        // only use if smaller than non-compressed chunk
+        if (end < 0 || end >= LZFChunk.HEADER_LEN_NOT_COMPRESSED + len) {
+            return false;
+        }
+        final ByteBuffer out = _outputBuffer;
+        ((Buffer) out).clear();
+        out.put(_encodeBuffer, 0, end);
+        ((Buffer) out).flip();
+        writeFully(out);
+        return true;
+    }
+
+    protected void writeFully(ByteBuffer bb) throws IOException
+    {
+        while (bb.hasRemaining()) {
+            _channel.write(bb);
+        }
+    }
+
+    protected void checkNotClosed() throws IOException
+    {
+        if (_closed) {
+            throw new ClosedChannelException();
+        }
+    }
+}
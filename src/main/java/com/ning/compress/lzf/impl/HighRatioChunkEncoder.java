@@ -0,0 +1,325 @@
+package com.ning.compress.lzf.impl;
+
+import com.ning.compress.BufferRecycler;
+import com.ning.compress.lzf.ChunkEncoder;
+import com.ning.compress.lzf.CompressionLevel;
+import com.ning.compress.lzf.LZFChunk;
+
+/**
+ * {@link ChunkEncoder} implementation that trades encoding speed for better
+ * compression ratio. Instead of using the first candidate found with hash lookup,
+ * it keeps short hash chains of earlier positions with the same hash, and picks
+ * the longest match among them; it also uses one-step lazy matching, so that
+ * a match is deferred by one byte if the match that starts at the next byte
+ * is longer.
+ *<p>
+ * Output is standard LZF, decodable by any {@link com.ning.compress.lzf.ChunkDecoder};
+ * encoding is typically 2-3 times slower than with {@link VanillaChunkEncoder}.
+ */
+public class HighRatioChunkEncoder
+    extends ChunkEncoder
+{
+    /**
+     * Maximum number of earlier positions checked for each position, unless
+     * explicitly specified.
+     */
+    public final static int DEFAULT_MAX_CHAIN_LENGTH = 16;
+
+    // Chains only need to cover the back-reference window
+    private final static int CHAIN_MASK = MAX_OFF - 1;
+
+    /**
+     * Maximum number of earlier positions to check when looking for the
+     * longest match.
+     */
+    protected final int _maxChainLength;
+
+    /**
+     * Whether all positions within matches are added in hash chains (true),
+     * or just the last two (false)
+     */
+    protected final boolean _indexMatches;
+
+    /**
+     * Table that links each position (modulo window size) to the preceding
+     * position with the same hash value.
+     */
+    protected final int[] _chainTable;
+
+    /**
+     * @param totalLength Total encoded length; used for calculating size
+     *   of hash table to use
+     */
+    public HighRatioChunkEncoder(int totalLength) {
+        this(totalLength, DEFAULT_MAX_CHAIN_LENGTH);
+    }
+
+    /**
+     * @param totalLength Total encoded length; used for calculating size
+     *   of hash table to use
+     * @param maxChainLength Maximum number of earlier positions to check for
+     *   each input position
+     */
+    public HighRatioChunkEncoder(int totalLength, int maxChainLength) {
+        super(totalLength);
+        _maxChainLength = _verifyChainLength(maxChainLength);
+        _indexMatches = true;
+        _chainTable = new int[MAX_OFF];
+    }
+
+    /**
+     * Alternate constructor used when we want to avoid allocation encoding
+     * buffer, in cases where caller wants full control over allocations.
+     */
+    protected HighRatioChunkEncoder(int totalLength, boolean bogus) {
+        super(totalLength, bogus);
+        _maxChainLength = DEFAULT_MAX_CHAIN_LENGTH;
+        _indexMatches = true;
+        _chainTable = new int[MAX_OFF];
+    }
+
+    /**
+     * @param totalLength Total encoded length; used for calculating size
+     *   of hash table to use
+	 * @param bufferRecycler The BufferRecycler instance
+     */
+    public HighRatioChunkEncoder(int totalLength, BufferRecycler bufferRecycler) {
+        this(totalLength, bufferRecycler, DEFAULT_MAX_CHAIN_LENGTH);
+    }
+
+    /**
+     * @param totalLength Total encoded length; used for calculating size
+     *   of hash table to use
+	 * @param bufferRecycler The BufferRecycler instance
+     * @param maxChainLength Maximum number of earlier positions to check for
+     *   each input position
+     */
+    public HighRatioChunkEncoder(int totalLength, BufferRecycler bufferRecycler, int maxChainLength) {
+        super(totalLength, bufferRecycler);
+        _maxChainLength = _verifyChainLength(maxChainLength);
+        _indexMatches = true;
+        _chainTable = new int[MAX_OFF];
+    }
+
+    /**
+     * Alternate constructor used when we want to avoid allocation encoding
+     * buffer, in cases where caller wants full control over allocations.
+     */
+    protected HighRatioChunkEncoder(int totalLength, BufferRecycler bufferRecycler, boolean bogus) {
+        super(totalLength, bufferRecycler, bogus);
+        _maxChainLength = DEFAULT_MAX_CHAIN_LENGTH;
+        _indexMatches = true;
+        _chainTable = new int[MAX_OFF];
+    }
+
+    /**
+     * Constructor used for encoders of specific {@link CompressionLevel}.
+     *
+     * @param totalLength Total encoded length; used for calculating size
+     *   of hash table to use
+     * @param bufferRecycler The BufferRecycler instance
+     * @param level Compression level that determines maximum hash table size,
+     *   search depth and whether positions within matches are indexed
+     * @param allocateBuffer Whether to allocate encoding buffer (true) or
+     *   not (false), latter for cases where caller always passes output buffer
+     */
+    public HighRatioChunkEncoder(int totalLength, BufferRecycler bufferRecycler, CompressionLevel level,
+            boolean allocateBuffer) {
+        super(totalLength, bufferRecycler, level, allocateBuffer);
+        _maxChainLength = _verifyChainLength(level.getSearchDepth());
+        _indexMatches = level.indexesMatches();
+        _chainTable = new int[MAX_OFF];
+    }
+
+    public static HighRatioChunkEncoder nonAllocatingEncoder(int totalLength) {
+        return new HighRatioChunkEncoder(totalLength, true);
+    }
+
+    public static HighRatioChunkEncoder nonAllocatingEncoder(int totalLength, BufferRecycler bufferRecycler) {
+        return new HighRatioChunkEncoder(totalLength, bufferRecycler, true);
+    }
+
+    private static int _verifyChainLength(int maxChainLength) {
+        if (maxChainLength < 1) {
+            throw new IllegalArgumentException("Invalid maximum chain length: "+maxChainLength);
+        }
+        return maxChainLength;
+    }
+
+    /*
+    ///////////////////////////////////////////////////////////////////////
+    // Abstract method implementations
+    ///////////////////////////////////////////////////////////////////////
+     */
+
+    /**
+     * Main workhorse method that will try to compress given chunk, and return
+     * end position (offset to byte after last included byte)
+     *
+     * @return Output pointer after handling content, such that <code>result - originalOutPost</code>
+     *    is the actual length of compressed chunk (without header)
+     */
+    @Override
+    protected int tryCompress(byte[] in, int inPos, int inEnd, byte[] out, int outPos)
+    {
+        ++outPos; // To leave one byte for literal-length indicator
+        int literals = 0;
+        inEnd -= TAIL_LENGTH;
+        final int firstPos = inPos; // so that we won't have back references across block boundary
+        // Match found for the current position by lazy evaluation, if any; -1 if none yet
+        int pending = -1;
+
+        while (inPos < inEnd) {
+            int match = (pending < 0) ? _findMatch(in, inPos, firstPos, inEnd) : pending;
+            pending = -1;
+            if (match == 0) {
+                out[outPos++] = in[inPos++];
+                literals++;
+                if (literals == LZFChunk.MAX_LITERAL) {
+                    out[outPos - 33] = (byte) 31; // <= out[outPos - literals - 1] = MAX_LITERAL_MINUS_1;
+                    literals = 0;
+                    outPos++; // To leave one byte for literal-length indicator
+                }
+                continue;
+            }
+            int matchLen = match >>> 16;
+            // One-step lazy matching: would match starting at the next byte be longer?
+            int indexed = inPos + 1;
+            if (indexed < inEnd && matchLen < MAX_REF) {
+                int next = _findMatch(in, indexed, firstPos, inEnd);
+                ++indexed;
+                if ((next >>> 16) > matchLen) { // yes: current byte becomes a literal
+                    pending = next;
+                    out[outPos++] = in[inPos++];
+                    literals++;
+                    if (literals == LZFChunk.MAX_LITERAL) {
+                        out[outPos - 33] = (byte) 31;
+                        literals = 0;
+                        outPos++;
+                    }
+                    continue;
+                }
+            }
+            if (literals == 0) {
+                outPos--; // We do not need literal length indicator, go back
+            } else {
+                out[outPos - literals - 1] = (byte) (literals - 1);
+                literals = 0;
+            }
+            int len = matchLen - 2;
+            int off = (match & 0xFFFF) - 1;
+            if (len < 7) {
+                out[outPos++] = (byte) ((off >> 8) + (len << 5));
+            } else {
+                out[outPos++] = (byte) ((off >> 8) + (7 << 5));
+                out[outPos++] = (byte) (len - 7);
+            }
+            out[outPos++] = (byte) off;
+            outPos++;
+            inPos += matchLen;
+            final int indexEnd = Math.min(inPos, inEnd);
+            // Either index all positions within the match, for better matches later on;
+            // or, like faster encoders, just the last two
+            if (!_indexMatches) {
+                indexed = Math.max(indexed, indexEnd - 2);
+            }
+            for (; indexed < indexEnd; ++indexed) {
+                _insert(in, indexed);
+            }
+        }
+        // Should never happen but verify:
+        if (inPos > inEnd + TAIL_LENGTH) {
+            throw new IllegalStateException("Internal error: consumed input past end, `inPos` > "+(inEnd + TAIL_LENGTH));
+        }
+        return _handleTail(in, inPos, inEnd+TAIL_LENGTH, out, outPos, literals);
+    }
+
+    private final int _handleTail(byte[] in, int inPos, int inEnd, byte[] out, int outPos,
+            int literals)
+    {
+        while (inPos < inEnd) {
+            out[outPos++] = in[inPos++];
+            literals++;
+            if (literals == LZFChunk.MAX_LITERAL) {
+                out[outPos - literals - 1] = (byte) (literals - 1);
+                literals = 0;
+                outPos++;
+            }
+        }
+        out[outPos - literals - 1] = (byte) (literals - 1);
+        if (literals == 0) {
+            outPos--;
+        }
+        return outPos;
+    }
+
+    /*
+    ///////////////////////////////////////////////////////////////////////
+    // Internal methods
+    ///////////////////////////////////////////////////////////////////////
+     */
+
+    /**
+     * Method that adds given position in hash chains, and finds the longest
+     * match for it among earlier positions with the same hash.
+     *
+     * @return Match found, as <code>(length &lt;&lt; 16) | offset</code>; or 0 if
+     *   no match of at least 3 bytes was found
+     */
+    private final int _findMatch(final byte[] in, final int inPos, final int firstPos, final int inEnd)
+    {
+        final int h = hash(_triplet(in, inPos));
+        int ref = _hashTable[h];
+        _hashTable[h] = inPos;
+        _chainTable[inPos & CHAIN_MASK] = ref;
+
+        // Leave last 2 bytes of the input out, same as other encoders
+        final int maxLen = Math.min(MAX_REF, inEnd - inPos + 2);
+        int bestLen = 2;
+        int bestOff = 0;
+
+        for (int chain = _maxChainLength; chain > 0; --chain) {
+            // Stale entries may point anywhere: must be within current block and window
+            if (ref >= inPos || ref < firstPos) {
+                break;
+            }
+            final int off = inPos - ref;
+            if (off > MAX_OFF) {
+                break;
+            }
+            // Quick check first: byte just past the best match must match, as well as the first 3
+            if (in[ref + bestLen] == in[inPos + bestLen]
+                    && in[ref] == in[inPos] && in[ref+1] == in[inPos+1] && in[ref+2] == in[inPos+2]) {
+                int len = 3;
+                while (len < maxLen && in[ref + len] == in[inPos + len]) {
+                    len++;
+                }
+                if (len > bestLen) {
+                    bestLen = len;
+                    bestOff = off;
+                    if (len == maxLen) {
+                        break;
+                    }
+                }
+            }
+            // Chain links must point strictly backwards; anything else is stale
+            final int next = _chainTable[ref & CHAIN_MASK];
+            if (next >= ref) {
+                break;
+            }
+            ref = next;
+        }
+        return (bestOff == 0) ? 0 : ((bestLen << 16) | bestOff);
+    }
+
+    private final void _insert(final byte[] in, final int inPos)
+    {
+        final int h = hash(_triplet(in, inPos));
+        _chainTable[inPos & CHAIN_MASK] = _hashTable[h];
+        _hashTable[h] = inPos;
+    }
+
+    private final static int _triplet(final byte[] in, final int inPos) {
+        return ((in[inPos] & 0xFF) << 16) + ((in[inPos + 1] & 0xFF) << 8) + (in[inPos + 2] & 0xFF);
+    }
+}
@@ -0,0 +1,255 @@
+package com.ning.compress.lzf.impl;
+
+import java.util.Arrays;
+
+import com.ning.compress.BufferRecycler;
+import com.ning.compress.lzf.ChunkEncoder;
+import com.ning.compress.lzf.LZFChunk;
+
+/**
+ * {@link ChunkEncoder} implementation optimized for encoding lots of small
+ * (from hundreds of bytes to a few kilobytes) inputs with the same encoder.
+ * Instead of always using the whole hash table, the part of it used is sized
+ * separately for each chunk, based on its length; so small inputs only touch
+ * a few cache lines.
+ * Hash table entries are tagged with "generation" of the chunk they were added
+ * for (and contain offsets relative to start of the chunk), so that entries
+ * left over from earlier chunks are simply ignored, without needing to clear
+ * the table between chunks.
+ *<p>
+ * This helps most when there are many encoders in use (or other
+ * processing between encoding), so that hash tables do not stay in CPU caches;
+ * for full-sized (64k) chunks other encoders are usually faster.
+ *<p>
+ * Output is standard LZF, decodable by any {@link com.ning.compress.lzf.ChunkDecoder};
+ * for content longer than a few kilobytes it is similar to that of
+ * {@link VanillaChunkEncoder}.
+ */
+public class TaggedHashChunkEncoder
+    extends ChunkEncoder
+{
+    /**
+     * Minimum number of hash table entries to use, even for shortest inputs
+     */
+    protected final static int MIN_TAGGED_HASH_SIZE = 64;
+
+    /**
+     * Generation of the chunk being encoded, stored in upper 16 bits of
+     * hash table entries; lower 16 bits contain offset from start of the chunk.
+     * Starts from 1 as cleared entries are 0.
+     */
+    protected int _generation;
+
+    /**
+     * @param totalLength Total encoded length; used for calculating maximum size
+     *   of hash table to use
+     */
+    public TaggedHashChunkEncoder(int totalLength) {
+        super(totalLength);
+        _clearHash();
+    }
+
+    /**
+     * Alternate constructor used when we want to avoid allocation encoding
+     * buffer, in cases where caller wants full control over allocations.
+     */
+    protected TaggedHashChunkEncoder(int totalLength, boolean bogus) {
+        super(totalLength, bogus);
+        _clearHash();
+    }
+
+    /**
+     * @param totalLength Total encoded length; used for calculating maximum size
+     *   of hash table to use
+     * @param bufferRecycler The BufferRecycler instance
+     */
+    public TaggedHashChunkEncoder(int totalLength, BufferRecycler bufferRecycler) {
+        super(totalLength, bufferRecycler);
+        _clearHash();
+    }
+
+    /**
+     * Alternate constructor used when we want to avoid allocation encoding
+     * buffer, in cases where caller wants full control over allocations.
+     */
+    protected TaggedHashChunkEncoder(int totalLength, BufferRecycler bufferRecycler, boolean bogus) {
+        super(totalLength, bufferRecycler, bogus);
+        _clearHash();
+    }
+
+    public static TaggedHashChunkEncoder nonAllocatingEncoder(int totalLength) {
+        return new TaggedHashChunkEncoder(totalLength, true);
+    }
+
+    public static TaggedHashChunkEncoder nonAllocatingEncoder(int totalLength, BufferRecycler bufferRecycler) {
+        return new TaggedHashChunkEncoder(totalLength, bufferRecycler, true);
+    }
+
+    /*
+    ///////////////////////////////////////////////////////////////////////
+    // Abstract method implementations
+    ///////////////////////////////////////////////////////////////////////
+     */
+
+    /**
+     * Main workhorse method that will try to compress given chunk, and return
+     * end position (offset to byte after last included byte)
+     *
+     * @return Output pointer after handling content, such that <code>result - originalOutPost</code>
+     *    is the actual length of compressed chunk (without header)
+     */
+    @Override
+    protected int tryCompress(byte[] in, int inPos, int inEnd, byte[] out, int outPos)
+    {
+        if ((inEnd - inPos) > LZFChunk.MAX_CHUNK_LEN) { // offsets must fit in 16 bits
+            throw new IllegalArgumentException("Chunk too long: "+(inEnd - inPos)+" bytes");
+        }
+        final int[] hashTable = _hashTable;
+        final int hashShift = _hashShift(inEnd - inPos);
+        ++outPos; // To leave one byte for literal-length indicator
+        int seen = first(in, inPos); // past 4 bytes we have seen... (last one is LSB)
+        int literals = 0;
+        inEnd -= TAIL_LENGTH;
+        final int firstPos = inPos; // so that we won't have back references across block boundary
+        // Entries are stored as `(generation << 16) + (inPos - firstPos)`; simplified by
+        // precalculating difference between entry and position:
+        final int posToEntry = (_nextGeneration() << 16) - firstPos;
+
+        while (inPos < inEnd) {
+            byte p2 = in[inPos + 2];
+            // next
+            seen = (seen << 8) + (p2 & 255);
+            int off = _hash(seen, hashShift);
+            // Entries of other generations map to positions outside current chunk
+            int ref = hashTable[off] - posToEntry;
+            hashTable[off] = inPos + posToEntry;
+
+            // First expected common case: no back-ref (for whatever reason)
+            if (ref >= inPos // can't refer forward (i.e. leftovers)
+                    || (ref < firstPos) // or to previous chunk
+                    || (off = inPos - ref) > MAX_OFF
+                    || in[ref+2] != p2 // must match hash
+                    || in[ref+1] != (byte) (seen >> 8)
+                    || in[ref] != (byte) (seen >> 16)) {
+                out[outPos++] = in[inPos++];
+                literals++;
+                if (literals == LZFChunk.MAX_LITERAL) {
+                    out[outPos - 33] = (byte) 31; // <= out[outPos - literals - 1] = MAX_LITERAL_MINUS_1;
+                    literals = 0;
+                    outPos++; // To leave one byte for literal-length indicator
+                }
+                continue;
+            }
+            // match
+            int maxLen = inEnd - inPos + 2;
+            if (maxLen > MAX_REF) {
+                maxLen = MAX_REF;
+            }
+            if (literals == 0) {
+                outPos--; // We do not need literal length indicator, go back
+            } else {
+                out[outPos - literals - 1] = (byte) (literals - 1);
+                literals = 0;
+            }
+            int len = 3;
+            // find match length
+            while (len < maxLen && in[ref + len] == in[inPos + len]) {
+                len++;
+            }
+            len -= 2;
+            --off; // was off by one earlier
+            if (len < 7) {
+                out[outPos++] = (byte) ((off >> 8) + (len << 5));
+            } else {
+                out[outPos++] = (byte) ((off >> 8) + (7 << 5));
+                out[outPos++] = (byte) (len - 7);
+            }
+            out[outPos++] = (byte) off;
+            outPos++;
+            inPos += len;
+            seen = first(in, inPos);
+            seen = (seen << 8) + (in[inPos + 2] & 255);
+            hashTable[_hash(seen, hashShift)] = inPos + posToEntry;
+            ++inPos;
+            seen = (seen << 8) + (in[inPos + 2] & 255);
+            hashTable[_hash(seen, hashShift)] = inPos + posToEntry;
+            ++inPos;
+        }
+        // Should never happen but verify:
+        if (inPos > inEnd + TAIL_LENGTH) {
+            throw new IllegalStateException("Internal error: consumed input past end, `inPos` > "+(inEnd + TAIL_LENGTH));
+        }
+        return _handleTail(in, inPos, inEnd+TAIL_LENGTH, out, outPos, literals);
+    }
+
+    private final int _handleTail(byte[] in, int inPos, int inEnd, byte[] out, int outPos,
+            int literals)
+    {
+        while (inPos < inEnd) {
+            out[outPos++] = in[inPos++];
+            literals++;
+            if (literals == LZFChunk.MAX_LITERAL) {
+                out[outPos - literals - 1] = (byte) (literals - 1);
+                literals = 0;
+                outPos++;
+            }
+        }
+        out[outPos - literals - 1] = (byte) (literals - 1);
+        if (literals == 0) {
+            outPos--;
+        }
+        return outPos;
+    }
+
+    /*
+    ///////////////////////////////////////////////////////////////////////
+    // Internal methods
+    ///////////////////////////////////////////////////////////////////////
+     */
+
+    /**
+     * Method for calculating size of the part of hash table to use for
+     * chunk of given length: about one entry per input byte, but within
+     * bounds of minimum size and actual table size.
+     *
+     * @return Shift to use for hash values, to get index within the part
+     *    of hash table to use
+     */
+    private final int _hashShift(int chunkLen) {
+        final int maxLen = Math.min(Math.max(chunkLen, MIN_TAGGED_HASH_SIZE), _hashModulo + 1);
+        // number of bits needed for indexes, to cover at least `maxLen` entries (but not more than table has)
+        int bits = 32 - Integer.numberOfLeadingZeros(maxLen - 1);
+        if ((1 << bits) > (_hashModulo + 1)) {
+            --bits;
+        }
+        return 32 - bits;
+    }
+
+    private final int _nextGeneration() {
+        int gen = (_generation + 1) & 0xFFFF;
+        if (gen == 0) { // wrapped around; need to get rid of old entries after all
+            _clearHash();
+            gen = 1;
+        }
+        _generation = gen;
+        return gen;
+    }
+
+    private final void _clearHash() {
+        // Recycled tables may contain anything, so need to be cleared initially
+        Arrays.fill(_hashTable, 0);
+        _generation = 0;
+    }
+
+    /**
+     * Unlike with other encoders, hash value is taken from the highest bits of the product,
+     * so that it is well distributed even for small tables
+     */
+    private final static int _hash(int h, int shift) {
+        return ((h & 0xFFFFFF) * 0x9E3779B1) >>> shift;
+    }
+
+    private final int first(byte[] in, int inPos) {
+        return (in[inPos] << 8) + (in[inPos + 1] & 0xFF);
+    }
+}
@@ -3,6 +3,9 @@ package com.ning.compress.lzf.impl;
 import java.io.IOException;
 import java.io.InputStream;
 import java.lang.reflect.Field;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ReadOnlyBufferException;
 
 import sun.misc.Unsafe;
 
@@ -17,6 +20,9 @@ import com.ning.compress.lzf.*;
  * and is all-around great source for optimization tips and tricks.
  * Big thanks also to LZ4-java developers, whose stellar performance made
  * me go back and see what more I can do to optimize this code!
+ *<p>
+ * Content of direct {@link ByteBuffer}s is decoded in place, accessed by
+ * its memory address (after checking that ranges to access are within buffers).
  */
 @SuppressWarnings("restriction")
 public class UnsafeChunkDecoder extends ChunkDecoder
@@ -34,6 +40,22 @@ public class UnsafeChunkDecoder extends ChunkDecoder
     }
 
     private static final long BYTE_ARRAY_OFFSET = unsafe.arrayBaseOffset(byte[].class);
+
+    /**
+     * Offset of the field of {@link Buffer} that contains memory address of
+     * direct buffers; -1 if not found, in which case default (non-Unsafe)
+     * implementations are used for decoding content of direct buffers.
+     */
+    private static final long BUFFER_ADDRESS_OFFSET;
+    static {
+        long offset;
+        try {
+            offset = unsafe.objectFieldOffset(Buffer.class.getDeclaredField("address"));
+        } catch (Exception e) {
+            offset = -1L;
+        }
+        BUFFER_ADDRESS_OFFSET = offset;
+    }
 //    private static final long SHORT_ARRAY_OFFSET = unsafe.arrayBaseOffset(short[].class);
 //    private static final long SHORT_ARRAY_STRIDE = unsafe.arrayIndexScale(short[].class);
     
@@ -154,6 +176,121 @@ public class UnsafeChunkDecoder extends ChunkDecoder
         }
     }
 
+    /**
+     * Overridden to decode content of direct buffers without copying it.
+     */
+    @Override
+    public void decodeBufferChunk(ByteBuffer in, int inPos, int inEnd, byte[] out, int outPos, int outEnd)
+        throws LZFException
+    {
+        if (in.hasArray()) {
+            final int offset = in.arrayOffset();
+            decodeChunk(in.array(), offset + inPos, offset + inEnd, out, outPos, outEnd);
+        } else {
+            decodeBufferChunk(in, inPos, inEnd, ByteBuffer.wrap(out), outPos, outEnd);
+        }
+    }
+
+    /**
+     * Overridden to decode content of direct buffers without copying it:
+     * same as {@link #decodeChunk(byte[], int, int, byte[], int, int)}, except that
+     * content of buffers is accessed using their memory addresses (or backing arrays).
+     */
+    @Override
+    public final void decodeBufferChunk(ByteBuffer in, int inPos, int inEnd, ByteBuffer out, int outPos, int outEnd)
+        throws LZFException
+    {
+        if (!_canAccess(in) || !_canAccess(out)) {
+            super.decodeBufferChunk(in, inPos, inEnd, out, outPos, outEnd);
+            return;
+        }
+        // Sanity checks; otherwise if any of the arguments are invalid `Unsafe` might corrupt memory
+        checkBufferIndices(in, inPos, inEnd);
+        checkBufferIndices(out, outPos, outEnd);
+        if (out.isReadOnly()) {
+            throw new ReadOnlyBufferException();
+        }
+        final Object inBase = _base(in);
+        final long inOffset = _offset(in);
+        final Object outBase = _base(out);
+        final long outOffset = _offset(out);
+
+        final int outPosStart = outPos;
+
+        // We need to take care of end condition, leave last 32 bytes out
+        final int inputEnd32 = inEnd - 32;
+        final int outputEnd8 = outEnd - 8;
+        final int outputEnd32 = outEnd - 32;
+
+        main_loop:
+        do {
+            int ctrl = in.get(inPos++) & 255;
+            while (ctrl < LZFChunk.MAX_LITERAL) { // literal run(s)
+                if (outPos > outputEnd32 || inPos > inputEnd32) {
+                    for (int i = 0; i <= ctrl; ++i) {
+                        out.put(outPos+i, in.get(inPos+i));
+                    }
+                } else {
+                    copyUpTo32(inBase, inOffset + inPos, outBase, outOffset + outPos, ctrl);
+                }
+                ++ctrl;
+                inPos += ctrl;
+                outPos += ctrl;
+                if (outPos >= outEnd) {
+                    break main_loop;
+                }
+                ctrl = in.get(inPos++) & 255;
+            }
+            // back reference
+            int len = ctrl >> 5;
+            ctrl = -((ctrl & 0x1f) << 8) - 1;
+            // short back reference? 2 bytes; run lengths of 2 - 8 bytes
+            if (len < 7) {
+                ctrl -= in.get(inPos++) & 255;
+                if (ctrl < -7 && outPos < outputEnd8) { // non-overlapping? can use efficient bulk copy
+                    if (outPos + ctrl < outPosStart) {
+                        throw new LZFException("Invalid back reference");
+                    }
+                    final long rawOffset = outOffset + outPos;
+                    unsafe.putLong(outBase, rawOffset, unsafe.getLong(outBase, rawOffset + ctrl));
+                    outPos += len+2;
+                    continue;
+                }
+                // otherwise, byte-by-byte
+                outPos = copyOverlapping(out, outPos, ctrl, len+2);
+                continue;
+            }
+            // long back reference: 3 bytes, length of up to 264 bytes
+            len = (in.get(inPos++) & 255) + 9;
+            ctrl -= in.get(inPos++) & 255;
+            // First: ovelapping case can't use default handling, off line.
+            if ((ctrl > -9) || (outPos > outputEnd32)) {
+                outPos = copyOverlapping(out, outPos, ctrl, len);
+                continue;
+            }
+            // but non-overlapping is simple
+            if (outPos + ctrl < outPosStart) {
+                throw new LZFException("Invalid back reference");
+            }
+            if (len <= 32) {
+                copyUpTo32(outBase, outOffset + outPos + ctrl, outBase, outOffset + outPos, len-1);
+            } else if ((outPos + len) > outputEnd32) {
+                copyOverlapping(out, outPos, ctrl, len);
+            } else {
+                copyLong(outBase, outOffset + outPos + ctrl, outOffset + outPos, len);
+            }
+            outPos += len;
+        } while (outPos < outEnd);
+
+        // sanity check to guard against corrupt data:
+        if (inPos != inEnd) {
+            throw new LZFException("Corrupt data: unexpected input amount was consumed");
+        }
+        if (outPos != outEnd) {
+            throw new LZFException("Corrupt data: overrun in decompress, input offset "+inPos+", output offset "+outPos);
+        }
+    }
+
     @Override
     public int skipOrDecodeChunk(final InputStream is, final byte[] inputBuffer,
             final byte[] outputBuffer, final long maxToSkip)
@@ -207,6 +344,31 @@ public class UnsafeChunkDecoder extends ChunkDecoder
         }
     }
 
+    private static void checkBufferIndices(ByteBuffer buffer, int start, int end) {
+        if (start < 0 || end < start || end > buffer.limit()) {
+            throw new IndexOutOfBoundsException();
+        }
+    }
+
+    /**
+     * @return True if content of given buffer can be accessed using {@link Unsafe}:
+     *    either it has backing array, or it is a direct buffer (with known address)
+     */
+    private static boolean _canAccess(ByteBuffer buffer) {
+        return buffer.hasArray() || (buffer.isDirect() && BUFFER_ADDRESS_OFFSET >= 0L);
+    }
+
+    private static Object _base(ByteBuffer buffer) {
+        return buffer.hasArray() ? buffer.array() : null;
+    }
+
+    private static long _offset(ByteBuffer buffer) {
+        if (buffer.hasArray()) {
+            return BYTE_ARRAY_OFFSET + buffer.arrayOffset();
+        }
+        return unsafe.getLong(buffer, BUFFER_ADDRESS_OFFSET);
+    }
+
     private final int copyOverlappingShort(final byte[] out, int outPos, final int offset, int len)
     {
         out[outPos] = out[outPos++ + offset];
@@ -338,4 +500,47 @@ public class UnsafeChunkDecoder extends ChunkDecoder
     		buffer[outputIndex++] = buffer[inputIndex++];
     	}
     }
+
+    private final static int copyOverlapping(final ByteBuffer out, int outPos, final int offset, int len)
+    {
+        for (final int end = outPos + len; outPos < end; ++outPos) {
+            out.put(outPos, out.get(outPos + offset));
+        }
+        return outPos;
+    }
+
+    private final static void copyUpTo32(Object inBase, long inPtr, Object outBase, long outPtr, int lengthMinusOne)
+    {
+        unsafe.putLong(outBase, outPtr, unsafe.getLong(inBase, inPtr));
+        if (lengthMinusOne > 7) {
+            inPtr += 8;
+            outPtr += 8;
+            unsafe.putLong(outBase, outPtr, unsafe.getLong(inBase, inPtr));
+            if (lengthMinusOne > 15) {
+                inPtr += 8;
+                outPtr += 8;
+                unsafe.putLong(outBase, outPtr, unsafe.getLong(inBase, inPtr));
+                if (lengthMinusOne > 23) {
+                    inPtr += 8;
+                    outPtr += 8;
+                    unsafe.putLong(outBase, outPtr, unsafe.getLong(inBase, inPtr));
+                }
+            }
+        }
+    }
+
+    private final static void copyLong(Object base, long inPtr, long outPtr, int length)
+    {
+        while (length >= 8) {
+            unsafe.putLong(base, outPtr, unsafe.getLong(base, inPtr));
+            inPtr += 8;
+            outPtr += 8;
+            length -= 8;
+        }
+        if (length > 4) {
+            unsafe.putLong(base, outPtr, unsafe.getLong(base, inPtr));
+        } else if (length > 0) {
+            unsafe.putInt(base, outPtr, unsafe.getInt(base, inPtr));
+        }
+    }
 }
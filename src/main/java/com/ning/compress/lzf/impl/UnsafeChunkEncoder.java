@@ -2,16 +2,22 @@ package com.ning.compress.lzf.impl;
 
 import com.ning.compress.BufferRecycler;
 import java.lang.reflect.Field;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
 
 import sun.misc.Unsafe;
 
 import com.ning.compress.lzf.ChunkEncoder;
+import com.ning.compress.lzf.CompressionLevel;
 import com.ning.compress.lzf.LZFChunk;
 
 /**
  * {@link ChunkEncoder} implementation that handles actual encoding of individual chunks,
  * using Sun's <code>sun.misc.Unsafe</code> functionality, which gives
  * nice extra boost for speed.
+ *<p>
+ * Content of direct {@link ByteBuffer}s is compressed in place, accessed by
+ * its memory address (after checking that range to compress is within the buffer).
  * 
  * @author Tatu Saloranta (tatu.saloranta@iki.fi)
  */
@@ -38,6 +44,13 @@ public abstract class UnsafeChunkEncoder
 
     static final long BYTE_ARRAY_OFFSET = unsafe.arrayBaseOffset(byte[].class);
 
+    /**
+     * Offset of the field of {@link Buffer} that contains memory address of
+     * direct buffers; -1 if not found, in which case content of direct buffers
+     * is copied for compression.
+     */
+    static final long BUFFER_ADDRESS_OFFSET = _bufferAddressOffset();
+
     UnsafeChunkEncoder(int totalLength) {
         super(totalLength);
     }
@@ -54,12 +67,48 @@ public abstract class UnsafeChunkEncoder
         super(totalLength, bufferRecycler, bogus);
     }
 
+    UnsafeChunkEncoder(int totalLength, BufferRecycler bufferRecycler, CompressionLevel level, boolean allocateBuffer) {
+        super(totalLength, bufferRecycler, level, allocateBuffer);
+    }
+
+    /**
+     * Overridden to compress content of direct buffers without copying it.
+     */
+    @Override
+    protected int tryCompress(ByteBuffer in, int inPos, int inEnd, byte[] out, int outPos)
+    {
+        if (in.hasArray() || !in.isDirect() || BUFFER_ADDRESS_OFFSET < 0L) {
+            return super.tryCompress(in, inPos, inEnd, out, outPos);
+        }
+        // Sanity checks; otherwise if any of the arguments are invalid `Unsafe` might corrupt memory
+        _checkBufferIndices(in, inPos, inEnd);
+        _checkArrayIndices(out, outPos, out.length);
+        _checkOutputLength(inEnd - inPos, out.length - outPos);
+        return _tryCompress(null, unsafe.getLong(in, BUFFER_ADDRESS_OFFSET), inPos, inEnd, out, outPos);
+    }
+
+    /**
+     * Method that does actual compression; input is accessed using given base object
+     * (array, or null for direct buffers) and offset (or address) of index 0.
+     * Caller must check that input range is valid.
+     */
+    abstract int _tryCompress(Object in, long inOffset, int inPos, int inEnd, byte[] out, int outPos);
+
     /*
     ///////////////////////////////////////////////////////////////////////
     // Shared helper methods
     ///////////////////////////////////////////////////////////////////////
      */
 
+    private static long _bufferAddressOffset()
+    {
+        try {
+            return unsafe.objectFieldOffset(Buffer.class.getDeclaredField("address"));
+        } catch (Exception e) {
+            return -1L;
+        }
+    }
+
     /**
      * @param start start index, inclusive
      * @param end end index, exclusive
@@ -70,6 +119,12 @@ public abstract class UnsafeChunkEncoder
         }
     }
 
+    static void _checkBufferIndices(ByteBuffer buffer, int start, int end) {
+        if (start < 0 || end < start || end > buffer.limit()) {
+            throw new IndexOutOfBoundsException();
+        }
+    }
+
     static void _checkOutputLength(int inputLen, int outputLen) {
         int maxEncoded = inputLen + ((inputLen + 31) >> 5);
 
@@ -78,7 +133,7 @@ public abstract class UnsafeChunkEncoder
         }
     }
 
-    final static int _copyPartialLiterals(byte[] in, int inPos, byte[] out, int outPos,
+    final static int _copyPartialLiterals(Object in, long inOffset, int inPos, byte[] out, int outPos,
             int literals)
     {
         if (out.length - outPos < literals + 1) {
@@ -90,7 +145,7 @@ public abstract class UnsafeChunkEncoder
         // Here use of Unsafe is clear win:
 //        System.arraycopy(in, inPos-literals, out, outPos, literals);
 
-        long rawInPtr = BYTE_ARRAY_OFFSET + inPos - literals;
+        long rawInPtr = inOffset + inPos - literals;
         long rawOutPtr= BYTE_ARRAY_OFFSET + outPos;
 
         switch (literals >> 3) {
@@ -107,20 +162,19 @@ public abstract class UnsafeChunkEncoder
             rawInPtr += 8;
             rawOutPtr += 8;
         }
-        int left = (literals & 7);
-        if (left > 0) {
-            System.arraycopy(in, (int) (rawInPtr - BYTE_ARRAY_OFFSET), out, (int) (rawOutPtr - BYTE_ARRAY_OFFSET), left);
+        for (int left = (literals & 7); left > 0; --left) {
+            unsafe.putByte(out, rawOutPtr++, unsafe.getByte(in, rawInPtr++));
         }
 
         return outPos+literals;
     }
 
-    final static int _copyLongLiterals(byte[] in, int inPos, byte[] out, int outPos,
+    final static int _copyLongLiterals(Object in, long inOffset, int inPos, byte[] out, int outPos,
             int literals)
     {
         inPos -= literals;
 
-        long rawInPtr = BYTE_ARRAY_OFFSET + inPos;
+        long rawInPtr = inOffset + inPos;
         long rawOutPtr = BYTE_ARRAY_OFFSET + outPos;
         
         while (literals >= LZFChunk.MAX_LITERAL) {
@@ -145,12 +199,12 @@ public abstract class UnsafeChunkEncoder
             literals -= LZFChunk.MAX_LITERAL;
         }
         if (literals > 0) {
-            return _copyPartialLiterals(in, inPos+literals, out, outPos, literals);
+            return _copyPartialLiterals(in, inOffset, inPos+literals, out, outPos, literals);
         }
         return outPos;
     }
     
-    final static int _copyFullLiterals(byte[] in, int inPos, byte[] out, int outPos)
+    final static int _copyFullLiterals(Object in, long inOffset, int inPos, byte[] out, int outPos)
     {
         if (out.length - outPos < 32 + 1) {
             throw new IllegalArgumentException("Not enough space in output array");
@@ -159,7 +213,7 @@ public abstract class UnsafeChunkEncoder
         // literals == 32
         out[outPos++] = (byte) 31;
 
-        long rawInPtr = BYTE_ARRAY_OFFSET + inPos - 32;
+        long rawInPtr = inOffset + inPos - 32;
         long rawOutPtr = BYTE_ARRAY_OFFSET + outPos;
     
         unsafe.putLong(out, rawOutPtr, unsafe.getLong(in, rawInPtr));
@@ -176,31 +230,27 @@ public abstract class UnsafeChunkEncoder
         return (outPos + 32);
     }
 
-    final static int _handleTail(byte[] in, int inPos, int inEnd, byte[] out, int outPos,
+    final static int _handleTail(Object in, long inOffset, int inPos, int inEnd, byte[] out, int outPos,
             int literals)
     {
         while (inPos < inEnd) {
             ++inPos;
             ++literals;
             if (literals == LZFChunk.MAX_LITERAL) {
-                out[outPos++] = (byte) (literals-1); // <= out[outPos - literals - 1] = MAX_LITERAL_MINUS_1;
-                System.arraycopy(in, inPos-literals, out, outPos, literals);
-                outPos += literals;
+                outPos = _copyFullLiterals(in, inOffset, inPos, out, outPos);
                 literals = 0;
             }
         }
         if (literals > 0) {
-            out[outPos++] = (byte) (literals - 1);
-            System.arraycopy(in, inPos-literals, out, outPos, literals);
-            outPos += literals;
+            outPos = _copyPartialLiterals(in, inOffset, inPos, out, outPos, literals);
         }
         return outPos;
     }
 
-    final static int _findTailMatchLength(final byte[] in, int ptr1, int ptr2, final int maxPtr1)
+    final static int _findTailMatchLength(final Object in, final long inOffset, int ptr1, int ptr2, final int maxPtr1)
     {
         final int start1 = ptr1;
-        while (ptr1 < maxPtr1 && in[ptr1] == in[ptr2]) {
+        while (ptr1 < maxPtr1 && unsafe.getByte(in, inOffset + ptr1) == unsafe.getByte(in, inOffset + ptr2)) {
             ++ptr1;
             ++ptr2;
         }
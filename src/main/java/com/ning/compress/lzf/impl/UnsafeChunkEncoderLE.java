@@ -1,6 +1,7 @@
 package com.ning.compress.lzf.impl;
 
 import com.ning.compress.BufferRecycler;
+import com.ning.compress.lzf.CompressionLevel;
 import com.ning.compress.lzf.LZFChunk;
 
 /**
@@ -26,6 +27,10 @@ public final class UnsafeChunkEncoderLE
         super(totalLength, bufferRecycler, bogus);
     }
 
+    public UnsafeChunkEncoderLE(int totalLength, BufferRecycler bufferRecycler, CompressionLevel level, boolean allocateBuffer) {
+        super(totalLength, bufferRecycler, level, allocateBuffer);
+    }
+
     @Override
     protected int tryCompress(byte[] in, int inPos, int inEnd, byte[] out, int outPos)
     {
@@ -33,16 +38,23 @@ public final class UnsafeChunkEncoderLE
         _checkArrayIndices(in, inPos, inEnd);
         _checkArrayIndices(out, outPos, out.length);
         _checkOutputLength(inEnd - inPos, out.length - outPos);
+        return _tryCompress(in, BYTE_ARRAY_OFFSET, inPos, inEnd, out, outPos);
+    }
 
+    @Override
+    int _tryCompress(final Object in, final long inOffset, int inPos, int inEnd, byte[] out, int outPos)
+    {
         final int[] hashTable = _hashTable;
         int literals = 0;
         inEnd -= TAIL_LENGTH;
         final int firstPos = inPos; // so that we won't have back references across block boundary
 
-        int seen = _getInt(in, inPos) >> 16;
-        
+        int seen = _getInt(in, inOffset + inPos) >> 16;
+        final int skipShift = _skipShift;
+        int misses = 0; // consecutive positions without match, for skip acceleration
+
         while (inPos < inEnd) {
-            seen = (seen << 8) + (in[inPos + 2] & 255);
+            seen = (seen << 8) + (unsafe.getByte(in, inOffset + inPos + 2) & 255);
 
             int off = hash(seen);
             int ref = hashTable[off];
@@ -52,23 +64,37 @@ public final class UnsafeChunkEncoderLE
             if ((ref >= inPos) // can't refer forward (i.e. leftovers)
                     || (ref < firstPos) // or to previous block
                     || (off = inPos - ref) > MAX_OFF
-                    || ((seen << 8) != _getShifted3Bytes(in, ref))) {
-                ++inPos;
-                ++literals;
-                if (literals == LZFChunk.MAX_LITERAL) {
-                    outPos = _copyFullLiterals(in, inPos, out, outPos);
-                    literals = 0;
+                    || ((seen << 8) != _getShifted3Bytes(in, inOffset, ref))) {
+                int step = 1 + (++misses >> skipShift);
+                if (step == 1) {
+                    ++inPos;
+                    ++literals;
+                    if (literals == LZFChunk.MAX_LITERAL) {
+                        outPos = _copyFullLiterals(in, inOffset, inPos, out, outPos);
+                        literals = 0;
+                    }
+                    continue;
+                }
+                // Skip acceleration: no matches for a while, so step over more positions at once
+                step = Math.min(step, inEnd - inPos);
+                inPos += step;
+                literals += step;
+                while (literals >= LZFChunk.MAX_LITERAL) {
+                    literals -= LZFChunk.MAX_LITERAL;
+                    outPos = _copyFullLiterals(in, inOffset, inPos - literals, out, outPos);
                 }
+                seen = _getInt(in, inOffset + inPos) >> 16;
                 continue;
             }
+            misses = 0;
 
             if (literals > 0) {
-                outPos = _copyPartialLiterals(in, inPos, out, outPos, literals);
+                outPos = _copyPartialLiterals(in, inOffset, inPos, out, outPos, literals);
                 literals = 0;
             }
             // match
             final int maxLen = Math.min(MAX_REF, inEnd - inPos + 2);
-            int len = _findMatchLength(in, ref+3, inPos+3, ref+maxLen);
+            int len = _findMatchLength(in, inOffset, ref+3, inPos+3, ref+maxLen);
             
             --off; // was off by one earlier
             if (len < 7) {
@@ -79,7 +105,7 @@ public final class UnsafeChunkEncoderLE
             }
             out[outPos++] = (byte) off;
             inPos += len;
-            seen = _getInt(in, inPos);
+            seen = _getInt(in, inOffset + inPos);
             hashTable[hash(seen >> 8)] = inPos;
             ++inPos;
             hashTable[hash(seen)] = inPos;
@@ -90,23 +116,24 @@ public final class UnsafeChunkEncoderLE
             throw new IllegalStateException("Internal error: consumed input past end, `inPos` > "+(inEnd + TAIL_LENGTH));
         }
         // offline the tail handling
-        return _handleTail(in, inPos, inEnd+TAIL_LENGTH, out, outPos, literals);
+        return _handleTail(in, inOffset, inPos, inEnd+TAIL_LENGTH, out, outPos, literals);
     }
 
-    private final static int _getInt(final byte[] in, final int inPos) {
-        return Integer.reverseBytes(unsafe.getInt(in, BYTE_ARRAY_OFFSET + inPos));
+    private final static int _getInt(final Object in, final long address) {
+        return Integer.reverseBytes(unsafe.getInt(in, address));
     }
 
     /**
      * Reads 3 bytes, shifted to the left by 8.
      */
-    private static int _getShifted3Bytes(byte[] in, int inPos) {
+    private static int _getShifted3Bytes(Object in, long inOffset, int inPos) {
         // For inPos 0 have to read bytes manually to avoid Unsafe out-of-bounds access at `inPos - 1`
         // But for higher inPos values can use Unsafe to read as int and discard first byte
         if (inPos == 0) {
-            return ((in[0] & 0xFF) << 24) | ((in[1] & 0xFF) << 16) | ((in[2] & 0xFF) << 8);
+            return ((unsafe.getByte(in, inOffset) & 0xFF) << 24) | ((unsafe.getByte(in, inOffset + 1) & 0xFF) << 16)
+                    | ((unsafe.getByte(in, inOffset + 2) & 0xFF) << 8);
         } else {
-            return _getInt(in, inPos - 1) << 8;
+            return _getInt(in, inOffset + inPos - 1) << 8;
         }
     }
 
@@ -116,38 +143,38 @@ public final class UnsafeChunkEncoderLE
     ///////////////////////////////////////////////////////////////////////
      */
     
-    private final static int _findMatchLength(final byte[] in, int ptr1, int ptr2, final int maxPtr1)
+    private final static int _findMatchLength(final Object in, final long inOffset, int ptr1, int ptr2, final int maxPtr1)
     {
         // Expect at least 8 bytes to check for fast case; offline others
         if ((ptr1 + 8) >= maxPtr1) { // rare case, offline
-            return _findTailMatchLength(in, ptr1, ptr2, maxPtr1);
+            return _findTailMatchLength(in, inOffset, ptr1, ptr2, maxPtr1);
         }
         // short matches common, so start with specialized comparison
         // NOTE: we know that we have 4 bytes of slack before end, so this is safe:
-        int i1 = unsafe.getInt(in, BYTE_ARRAY_OFFSET + ptr1);
-        int i2 = unsafe.getInt(in, BYTE_ARRAY_OFFSET + ptr2);
+        int i1 = unsafe.getInt(in, inOffset + ptr1);
+        int i2 = unsafe.getInt(in, inOffset + ptr2);
         if (i1 != i2) {
             return 1 + _leadingBytes(i1, i2);
         }
         ptr1 += 4;
         ptr2 += 4;
 
-        i1 = unsafe.getInt(in, BYTE_ARRAY_OFFSET + ptr1);
-        i2 = unsafe.getInt(in, BYTE_ARRAY_OFFSET + ptr2);
+        i1 = unsafe.getInt(in, inOffset + ptr1);
+        i2 = unsafe.getInt(in, inOffset + ptr2);
         if (i1 != i2) {
             return 5 + _leadingBytes(i1, i2);
         }
-        return _findLongMatchLength(in, ptr1+4, ptr2+4, maxPtr1);
+        return _findLongMatchLength(in, inOffset, ptr1+4, ptr2+4, maxPtr1);
     }
 
-    private final static int _findLongMatchLength(final byte[] in, int ptr1, int ptr2, final int maxPtr1)
+    private final static int _findLongMatchLength(final Object in, final long inOffset, int ptr1, int ptr2, final int maxPtr1)
     {
         final int base = ptr1 - 9;
         // and then just loop with longs if we get that far
         final int longEnd = maxPtr1-8;
         while (ptr1 <= longEnd) {
-            long l1 = unsafe.getLong(in, BYTE_ARRAY_OFFSET + ptr1);
-            long l2 = unsafe.getLong(in, BYTE_ARRAY_OFFSET + ptr2);
+            long l1 = unsafe.getLong(in, inOffset + ptr1);
+            long l2 = unsafe.getLong(in, inOffset + ptr2);
             if (l1 != l2) {
                 return ptr1 - base + _leadingBytes(l1, l2);
             }
@@ -155,7 +182,7 @@ public final class UnsafeChunkEncoderLE
             ptr2 += 8;
         }
         // or, if running out of runway, handle last bytes with loop-de-loop...
-        while (ptr1 < maxPtr1 && in[ptr1] == in[ptr2]) {
+        while (ptr1 < maxPtr1 && unsafe.getByte(in, inOffset + ptr1) == unsafe.getByte(in, inOffset + ptr2)) {
             ++ptr1;
             ++ptr2;
         }
@@ -12,6 +12,7 @@
 package com.ning.compress.lzf.impl;
 
 import com.ning.compress.BufferRecycler;
+import com.ning.compress.lzf.CompressionLevel;
 import java.nio.ByteOrder;
 
 
@@ -54,4 +55,20 @@ public final class UnsafeChunkEncoders
         }
         return new UnsafeChunkEncoderBE(totalLength, bufferRecycler, false);
     }
+
+    public static UnsafeChunkEncoder createEncoder(int totalLength, BufferRecycler bufferRecycler,
+            CompressionLevel level) {
+        if (LITTLE_ENDIAN) {
+            return new UnsafeChunkEncoderLE(totalLength, bufferRecycler, level, true);
+        }
+        return new UnsafeChunkEncoderBE(totalLength, bufferRecycler, level, true);
+    }
+
+    public static UnsafeChunkEncoder createNonAllocatingEncoder(int totalLength, BufferRecycler bufferRecycler,
+            CompressionLevel level) {
+        if (LITTLE_ENDIAN) {
+            return new UnsafeChunkEncoderLE(totalLength, bufferRecycler, level, false);
+        }
+        return new UnsafeChunkEncoderBE(totalLength, bufferRecycler, level, false);
+    }
 }
@@ -2,6 +2,7 @@ package com.ning.compress.lzf.impl;
 
 import com.ning.compress.BufferRecycler;
 import com.ning.compress.lzf.ChunkEncoder;
+import com.ning.compress.lzf.CompressionLevel;
 import com.ning.compress.lzf.LZFChunk;
 
 public class VanillaChunkEncoder
@@ -40,6 +41,21 @@ public class VanillaChunkEncoder
         super(totalLength, bufferRecycler, bogus);
     }
 
+    /**
+     * Constructor used for encoders of specific {@link CompressionLevel}.
+     *
+     * @param totalLength Total encoded length; used for calculating size
+     *   of hash table to use
+     * @param bufferRecycler The BufferRecycler instance
+     * @param level Compression level that determines maximum hash table size
+     * @param allocateBuffer Whether to allocate encoding buffer (true) or
+     *   not (false), latter for cases where caller always passes output buffer
+     */
+    public VanillaChunkEncoder(int totalLength, BufferRecycler bufferRecycler, CompressionLevel level,
+            boolean allocateBuffer) {
+        super(totalLength, bufferRecycler, level, allocateBuffer);
+    }
+
     public static VanillaChunkEncoder nonAllocatingEncoder(int totalLength) {
         return new VanillaChunkEncoder(totalLength, true);
     }
@@ -70,7 +86,11 @@ public class VanillaChunkEncoder
         int literals = 0;
         inEnd -= TAIL_LENGTH;
         final int firstPos = inPos; // so that we won't have back references across block boundary
-        
+        final int skipShift = _skipShift;
+        // Beyond this many consecutive misses, more than one position is skipped at a time
+        final int skipThreshold = (1 << skipShift) - 1;
+        int misses = 0;
+
         while (inPos < inEnd) {
             byte p2 = in[inPos + 2];
             // next
@@ -86,15 +106,23 @@ public class VanillaChunkEncoder
                     || in[ref+2] != p2 // must match hash
                     || in[ref+1] != (byte) (seen >> 8)
                     || in[ref] != (byte) (seen >> 16)) {
-                out[outPos++] = in[inPos++];
-                literals++;
-                if (literals == LZFChunk.MAX_LITERAL) {
-                    out[outPos - 33] = (byte) 31; // <= out[outPos - literals - 1] = MAX_LITERAL_MINUS_1;
-                    literals = 0;
-                    outPos++; // To leave one byte for literal-length indicator
+                // Skip acceleration: if no matches for a while, step over more positions at once
+                int step = Math.min(1 + (++misses >> skipShift), inEnd - inPos);
+                do {
+                    out[outPos++] = in[inPos++];
+                    literals++;
+                    if (literals == LZFChunk.MAX_LITERAL) {
+                        out[outPos - 33] = (byte) 31; // <= out[outPos - literals - 1] = MAX_LITERAL_MINUS_1;
+                        literals = 0;
+                        outPos++; // To leave one byte for literal-length indicator
+                    }
+                } while (--step > 0);
+                if (misses > skipThreshold) {
+                    seen = first(in, inPos);
                 }
                 continue;
             }
+            misses = 0;
             // match
             int maxLen = inEnd - inPos + 2;
             if (maxLen > MAX_REF) {
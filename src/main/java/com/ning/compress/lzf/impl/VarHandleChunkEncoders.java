@@ -0,0 +1,106 @@
+/* Licensed under the Apache License, Version 2.0 (the "License"); you may not use this
+ * file except in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under
+ * the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS
+ * OF ANY KIND, either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+
+package com.ning.compress.lzf.impl;
+
+import java.lang.reflect.Constructor;
+
+import com.ning.compress.BufferRecycler;
+import com.ning.compress.lzf.ChunkEncoder;
+import com.ning.compress.lzf.CompressionLevel;
+
+/**
+ * Helper class for constructing <code>VarHandleChunkEncoder</code> instances:
+ * encoder class is only included (as a multi-release jar entry) for Java 9 and
+ * above, so it has to be loaded dynamically. On Java 8 (or if loading fails for
+ * some other reason), {@link #isAvailable()} returns <code>false</code>.
+ *<p>
+ * If Vector API (module <code>jdk.incubator.vector</code>) is available at runtime,
+ * on Java 16 and above, <code>VectorChunkEncoder</code> is used instead.
+ *
+ * @since 1.2.1
+ */
+public final class VarHandleChunkEncoders
+{
+    private final static String VECTOR_ENCODER_CLASS = "com.ning.compress.lzf.impl.VectorChunkEncoder";
+
+    private final static String ENCODER_CLASS = "com.ning.compress.lzf.impl.VarHandleChunkEncoder";
+
+    private final static Constructor<? extends ChunkEncoder> ALLOCATING_CTOR;
+
+    private final static Constructor<? extends ChunkEncoder> NON_ALLOCATING_CTOR;
+
+    private final static Constructor<? extends ChunkEncoder> LEVEL_CTOR;
+
+    static {
+        Constructor<? extends ChunkEncoder> alloc = null;
+        Constructor<? extends ChunkEncoder> nonAlloc = null;
+        Constructor<? extends ChunkEncoder> level = null;
+        Class<? extends ChunkEncoder> impl = null;
+        try {
+            // Vector API accelerated one only loads if incubator module is included
+            impl = Class.forName(VECTOR_ENCODER_CLASS).asSubclass(ChunkEncoder.class);
+        } catch (Throwable t) { }
+        try {
+            if (impl == null) {
+                impl = Class.forName(ENCODER_CLASS).asSubclass(ChunkEncoder.class);
+            }
+            alloc = impl.getConstructor(Integer.TYPE, BufferRecycler.class);
+            nonAlloc = impl.getConstructor(Integer.TYPE, BufferRecycler.class, Boolean.TYPE);
+            level = impl.getConstructor(Integer.TYPE, BufferRecycler.class, CompressionLevel.class, Boolean.TYPE);
+        } catch (Throwable t) {
+            alloc = nonAlloc = level = null;
+        }
+        ALLOCATING_CTOR = alloc;
+        NON_ALLOCATING_CTOR = nonAlloc;
+        LEVEL_CTOR = level;
+    }
+
+    private VarHandleChunkEncoders() { }
+
+    /**
+     * @return True if VarHandle-based encoder can be used on current platform
+     */
+    public static boolean isAvailable() {
+        return (LEVEL_CTOR != null);
+    }
+
+    public static ChunkEncoder createEncoder(int totalLength, BufferRecycler bufferRecycler) {
+        return _construct(ALLOCATING_CTOR, totalLength, bufferRecycler);
+    }
+
+    public static ChunkEncoder createNonAllocatingEncoder(int totalLength, BufferRecycler bufferRecycler) {
+        return _construct(NON_ALLOCATING_CTOR, totalLength, bufferRecycler, Boolean.TRUE);
+    }
+
+    public static ChunkEncoder createEncoder(int totalLength, BufferRecycler bufferRecycler,
+            CompressionLevel level) {
+        return _construct(LEVEL_CTOR, totalLength, bufferRecycler, level, Boolean.TRUE);
+    }
+
+    public static ChunkEncoder createNonAllocatingEncoder(int totalLength, BufferRecycler bufferRecycler,
+            CompressionLevel level) {
+        return _construct(LEVEL_CTOR, totalLength, bufferRecycler, level, Boolean.FALSE);
+    }
+
+    private static ChunkEncoder _construct(Constructor<? extends ChunkEncoder> ctor, Object... args)
+    {
+        if (ctor == null) {
+            throw new IllegalStateException("VarHandle-based ChunkEncoder not available (requires Java 9+)");
+        }
+        try {
+            return ctor.newInstance(args);
+        } catch (Exception e) {
+            throw new IllegalStateException("Failed to construct VarHandle-based ChunkEncoder ("
+                    +e.getClass().getName()+"): "+e.getMessage(), e);
+        }
+    }
+}
@@ -1,39 +1,108 @@
 package com.ning.compress.lzf.parallel;
 
-import java.util.concurrent.BlockingDeque;
-import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
+ * Bounded pool of blocks. Blocks are kept in an array of slots, taken and
+ * returned using CAS (starting from a random slot, to reduce contention),
+ * so that neither getting nor releasing a block allocates or locks;
+ * a semaphore counts available blocks, so that threads only block
+ * (for backpressure) when pool is empty.
+ *
  * @author C&eacute;drik LIME
  */
 class BlockManager {
-    /* used as a blocking Stack (FIFO) */
-    private final BlockingDeque<byte[]> blockPool;
+    private final AtomicReferenceArray<byte[]> slots;
+
+    /* number of blocks in slots: acquired before taking a block, released after returning one */
+    private final Semaphore available;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder waitNanos = new LongAdder();
 
     public BlockManager(int blockPoolSize, int blockSize) {
-//        log.debug("Using block pool size of " + blockPoolSize);
-        blockPool = new LinkedBlockingDeque<byte[]>(blockPoolSize);
+        slots = new AtomicReferenceArray<byte[]>(blockPoolSize);
         for (int i = 0; i < blockPoolSize; ++i) {
-            blockPool.addFirst(new byte[blockSize]);
+            slots.set(i, new byte[blockSize]);
         }
+        available = new Semaphore(blockPoolSize);
     }
 
-    public byte[] getBlockFromPool() {
-        byte[] block = null;
-        try {
-            block = blockPool.takeFirst();
-        } catch (InterruptedException e) {
-        	throw new RuntimeException(e);
+    /**
+     * Method for getting a block from the pool, waiting if none is available.
+     */
+    public byte[] getBlockFromPool() throws InterruptedException {
+        if (available.tryAcquire()) {
+            hits.increment();
+        } else {
+            misses.increment();
+            final long start = System.nanoTime();
+            try {
+                available.acquire();
+            } finally {
+                waitNanos.add(System.nanoTime() - start);
+            }
+        }
+        // having a permit, there is a block for us (although possibly not yet in slot
+        // if others are racing for the same slots)
+        final int size = slots.length();
+        int i = ThreadLocalRandom.current().nextInt(size);
+        while (true) {
+            byte[] block = slots.get(i);
+            if (block != null && slots.compareAndSet(i, block, null)) {
+                return block;
+            }
+            if (++i == size) {
+                i = 0;
+            }
         }
-        return block;
     }
 
     public void releaseBlockToPool(byte[] block) {
 //        Arrays.fill(block, (byte)0);
-        try {
-            blockPool.putLast(block);
-        } catch (InterruptedException e) {
-        	throw new RuntimeException(e);
+        // usually there are no more blocks than slots, so there is an empty slot (although
+        // possibly not found on first pass if others are racing for same slots); but callers
+        // may have had to replace a block (when interrupted), in which case pool may be full
+        final int size = slots.length();
+        int i = ThreadLocalRandom.current().nextInt(size);
+        while (true) {
+            if (slots.get(i) == null && slots.compareAndSet(i, null, block)) {
+                available.release();
+                return;
+            }
+            if (++i == size) {
+                // permits never exceed number of blocks in slots: if all are available, pool is full
+                if (available.availablePermits() >= size) {
+                    return; // so extra block is simply dropped
+                }
+                i = 0;
+                Thread.yield();
+            }
         }
     }
+
+    /**
+     * @return Number of times a block was available right away
+     */
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    /**
+     * @return Number of times caller had to wait for a block to become available
+     */
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    /**
+     * @return Total time (in nanoseconds) callers have waited for blocks
+     */
+    public long getWaitNanos() {
+        return waitNanos.sum();
+    }
 }
@@ -1,50 +1,115 @@
 package com.ning.compress.lzf.parallel;
 
-import java.util.concurrent.Callable;
+import java.nio.ByteBuffer;
 
 import com.ning.compress.lzf.ChunkEncoder;
+import com.ning.compress.lzf.CompressionLevel;
 import com.ning.compress.lzf.LZFChunk;
 import com.ning.compress.lzf.util.ChunkEncoderFactory;
 
 /**
+ * Task that compresses a single block; once done, hands itself back to the
+ * stream, which writes compressed chunks in order.
+ *<p>
+ * Encoded content is appended in the block itself, after input: compressed chunks,
+ * as well as headers of non-compressed chunks, whose content is written from input
+ * as is. Result is a sequence of buffers to write, without assembling chunks.
+ *
  * @author C&eacute;drik LIME
  */
-class CompressTask implements Callable<LZFChunk> {
-	private static final ThreadLocal<ChunkEncoder> ENCODER = new ThreadLocal<ChunkEncoder>() {
+class CompressTask implements Runnable {
+	/* one encoder per compression level, lazily constructed; discarded along with the worker thread */
+	private static final ThreadLocal<ChunkEncoder[]> ENCODERS = new ThreadLocal<ChunkEncoder[]>() {
 		@Override
-		protected ChunkEncoder initialValue() {
-			return ChunkEncoderFactory.optimalInstance();
+		protected ChunkEncoder[] initialValue() {
+			return new ChunkEncoder[CompressionLevel.values().length];
 		}
 	};
 
 	protected byte[] data;
 	protected int offset, length;
-	protected BlockManager blockManager;
+	/* offset in block after which encoded content is appended */
+	protected final int encodedOffset;
+	protected CompressionLevel level;
+	protected final long sequence;
+	protected final PLZFOutputStream caller;
 
-	public CompressTask(byte[] input, int offset, int length, BlockManager blockManager) {
+	/* results: either buffers to write (slices of block), or failure */
+	protected ByteBuffer[] result;
+	protected int resultCount;
+	protected RuntimeException failure;
+
+	/* timings (in nanoseconds), for adaptive sizing of context */
+	private final long submitted;
+	protected long queueNanos, compressNanos;
+
+	public CompressTask(byte[] input, int offset, int length, int encodedOffset, CompressionLevel level,
+			long sequence, PLZFOutputStream caller) {
 		super();
 		this.data = input;
 		this.offset = offset;
 		this.length = length;
-		this.blockManager = blockManager;
-	}
-	public CompressTask(byte[] input, BlockManager blockManager) {
-		this(input, 0, input.length, blockManager);
+		this.encodedOffset = encodedOffset;
+		this.level = level;
+		this.sequence = sequence;
+		this.caller = caller;
+		submitted = System.nanoTime();
 	}
 
 	/** {@inheritDoc} */
 	@Override
-	public LZFChunk call() {
-		if (data != null) {
-			LZFChunk lzfChunk = ENCODER.get().encodeChunk(data, offset, length);
-			// input data is fully processed, we can now discard it
-			blockManager.releaseBlockToPool(data);
-			return lzfChunk;
-		} else {
-			// cleanup time!
-			ENCODER.remove();
-			return null;
+	public void run() {
+		final long start = System.nanoTime();
+		queueNanos = start - submitted;
+		try {
+			// no level means "store only": fastest possible, when workers can not keep up
+			encode((level == null) ? null : encoder(level));
+		} catch (RuntimeException e) {
+			failure = e;
+		}
+		compressNanos = System.nanoTime() - start;
+		// note: input block is released once compressed content has been written,
+		// to also bound memory used by compressed content
+		caller.completed(sequence, this);
+	}
+
+	private void encode(ChunkEncoder encoder) {
+		final byte[] block = data;
+		final int end = offset + length;
+		// at most header and content buffers per chunk
+		result = new ByteBuffer[2 * ((length + LZFChunk.MAX_CHUNK_LEN - 1) / LZFChunk.MAX_CHUNK_LEN)];
+		int count = 0;
+		int outPtr = encodedOffset;
+		int encodedStart = outPtr; // start of encoded content not yet in result
+		for (int ptr = offset; ptr < end; ) {
+			final int len = Math.min(end - ptr, LZFChunk.MAX_CHUNK_LEN);
+			final int encodedEnd = (encoder == null) ? -1
+					: encoder.appendEncodedIfCompresses(block, 1.0, ptr, len, block, outPtr);
+			// only use compressed chunk if smaller than non-compressed one
+			if (encodedEnd >= 0 && (encodedEnd - outPtr) < (LZFChunk.HEADER_LEN_NOT_COMPRESSED + len)) {
+				outPtr = encodedEnd;
+			} else {
+				outPtr = LZFChunk.appendNonCompressedHeader(len, block, outPtr);
+				result[count++] = ByteBuffer.wrap(block, encodedStart, outPtr - encodedStart);
+				result[count++] = ByteBuffer.wrap(block, ptr, len);
+				encodedStart = outPtr;
+			}
+			ptr += len;
+		}
+		if (outPtr > encodedStart) {
+			result[count++] = ByteBuffer.wrap(block, encodedStart, outPtr - encodedStart);
+		}
+		resultCount = count;
+	}
+
+	private static ChunkEncoder encoder(CompressionLevel level) {
+		ChunkEncoder[] encoders = ENCODERS.get();
+		ChunkEncoder encoder = encoders[level.ordinal()];
+		if (encoder == null) {
+			encoder = ChunkEncoderFactory.optimalInstance(level, LZFChunk.MAX_CHUNK_LEN);
+			encoders[level.ordinal()] = encoder;
 		}
+		return encoder;
 	}
 
 }
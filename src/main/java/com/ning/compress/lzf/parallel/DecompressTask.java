@@ -0,0 +1,44 @@
+package com.ning.compress.lzf.parallel;
+
+import java.util.concurrent.Callable;
+
+import com.ning.compress.lzf.ChunkDecoder;
+
+/**
+ * Task that decodes content of a single compressed chunk; returns block
+ * that contains decoded content.
+ *
+ * @since 1.2.1
+ */
+class DecompressTask implements Callable<byte[]> {
+	protected final ChunkDecoder decoder;
+	protected byte[] input;
+	protected int inputLength;
+	protected BlockManager inputBlockManager;
+	protected byte[] output;
+	protected int outputLength;
+
+	public DecompressTask(ChunkDecoder decoder, byte[] input, int inputLength, BlockManager inputBlockManager,
+			byte[] output, int outputLength) {
+		super();
+		this.decoder = decoder;
+		this.input = input;
+		this.inputLength = inputLength;
+		this.inputBlockManager = inputBlockManager;
+		this.output = output;
+		this.outputLength = outputLength;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public byte[] call() throws Exception {
+		try {
+			decoder.decodeChunk(input, 0, inputLength, output, 0, outputLength);
+		} finally {
+			// input data is fully processed (or failed), we can now discard it
+			inputBlockManager.releaseBlockToPool(input);
+			input = null;
+		}
+		return output;
+	}
+}
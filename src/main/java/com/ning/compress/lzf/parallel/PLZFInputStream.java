@@ -0,0 +1,409 @@
+package com.ning.compress.lzf.parallel;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import com.ning.compress.lzf.ChunkDecoder;
+import com.ning.compress.lzf.LZFChunk;
+import com.ning.compress.lzf.LZFException;
+import com.ning.compress.lzf.util.ChunkDecoderFactory;
+
+/**
+ * Decorator {@link InputStream} implementation that will decompress
+ * LZF encoded content read from the underlying stream, using multiple
+ * threads. Its counterpart is {@link PLZFOutputStream}; but it can read
+ * content written by any LZF encoder.
+ *<p>
+ * Chunk headers and contents are read ahead (by the reading thread) and
+ * compressed chunks are decoded by a pool of worker threads; decoded content
+ * is returned in the original order. Read-ahead is bounded by the number
+ * of blocks in the block pools (see {@link BlockManager}), so memory usage
+ * is limited to about <code>4 * nThreads * 64kB</code>.
+ *<p>
+ * Instances are not thread-safe: only a single thread should read from a stream.
+ *
+ * @see com.ning.compress.lzf.LZFInputStream
+ * @see PLZFOutputStream
+ *
+ * @since 1.2.1
+ */
+public class PLZFInputStream extends FilterInputStream
+{
+    protected final ChunkDecoder _decoder;
+
+    /**
+     * Flag that indicates whether we force full reads (reading of as many
+     * bytes as requested), or 'optimal' reads (up to as many as available,
+     * but at least one). Default is false, meaning that 'optimal' read
+     * is used.
+     */
+    protected boolean _cfgFullReads = false;
+
+    /**
+     * Maximum number of chunks read ahead (ones being or waiting to be decoded,
+     * and decoded ones not yet returned)
+     */
+    protected final int _maxPending;
+
+    /**
+     * Chunks read ahead, in order
+     */
+    protected final ArrayDeque<Future<byte[]>> _pending;
+
+    /**
+     * Uncompressed lengths of chunks in {@link #_pending}, in the same order
+     */
+    protected final ArrayDeque<Integer> _pendingLengths;
+
+    /**
+     * Block that contains decoded content currently being returned, if any
+     */
+    protected byte[] _decodedBytes;
+
+    protected int _bufferPosition = 0;
+
+    protected int _bufferLength = 0;
+
+    /**
+     * Flag set when end of underlying input (or optional end marker) has been reached
+     */
+    protected boolean _inputEnded;
+
+    /**
+     * Flag that indicates if we have already called 'in.close()'
+     * (to avoid calling it multiple times)
+     */
+    protected boolean _inputStreamClosed;
+
+    private final byte[] _header = new byte[LZFChunk.MAX_HEADER_LEN];
+
+    /**
+     * Blocks for compressed content; released by workers after decoding
+     */
+    private final BlockManager inputBlockManager;
+
+    /**
+     * Blocks for decoded content; released by reader after content is returned
+     */
+    private final BlockManager outputBlockManager;
+
+    private final ExecutorService decompressExecutor;
+
+    /*
+    ///////////////////////////////////////////////////////////////////////
+    // Construction, configuration
+    ///////////////////////////////////////////////////////////////////////
+     */
+
+    public PLZFInputStream(final InputStream inputStream) {
+        this(inputStream, PLZFOutputStream.getNThreads());
+    }
+
+    public PLZFInputStream(final InputStream inputStream, boolean fullReads) {
+        this(inputStream, PLZFOutputStream.getNThreads());
+        _cfgFullReads = fullReads;
+    }
+
+    protected PLZFInputStream(final InputStream inputStream, int nThreads) {
+        this(inputStream, nThreads, ChunkDecoderFactory.optimalInstance());
+    }
+
+    protected PLZFInputStream(final InputStream inputStream, int nThreads, ChunkDecoder decoder) {
+        super(inputStream);
+        _decoder = decoder;
+        _maxPending = nThreads * 2;
+        _pending = new ArrayDeque<Future<byte[]>>(_maxPending);
+        _pendingLengths = new ArrayDeque<Integer>(_maxPending);
+        decompressExecutor = new ThreadPoolExecutor(nThreads, nThreads, 60L, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>()); // unbounded
+        ((ThreadPoolExecutor)decompressExecutor).allowCoreThreadTimeOut(true);
+        // this is where the bounds will be enforced: reader holds one output block
+        // in addition to pending ones, so that pool never runs out
+        inputBlockManager = new BlockManager(_maxPending, LZFChunk.MAX_CHUNK_LEN);
+        outputBlockManager = new BlockManager(_maxPending + 1, LZFChunk.MAX_CHUNK_LEN);
+    }
+
+    /**
+     * Method that can be used define whether reads should be "full" or
+     * "optimal": former means that full compressed blocks are read right
+     * away as needed, optimal that only smaller chunks are read at a time,
+     * more being read as needed.
+     */
+    public void setUseFullReads(boolean b) {
+        _cfgFullReads = b;
+    }
+
+    /*
+    ///////////////////////////////////////////////////////////////////////
+    // InputStream impl
+    ///////////////////////////////////////////////////////////////////////
+     */
+
+    /**
+     * Method is overridden to report number of bytes that can now be read
+     * from decoded data buffer, without reading bytes from the underlying
+     * stream.
+     */
+    @Override
+    public int available()
+    {
+        if (_inputStreamClosed) {
+            return 0;
+        }
+        int left = (_bufferLength - _bufferPosition);
+        return (left <= 0) ? 0 : left;
+    }
+
+    @Override
+    public int read() throws IOException
+    {
+        if (!readyBuffer()) {
+            return -1;
+        }
+        return _decodedBytes[_bufferPosition++] & 255;
+    }
+
+    @Override
+    public int read(final byte[] buffer) throws IOException
+    {
+        return read(buffer, 0, buffer.length);
+    }
+
+    @Override
+    public int read(final byte[] buffer, int offset, int length) throws IOException
+    {
+        if (length < 1) {
+            return 0;
+        }
+        if (!readyBuffer()) {
+            return -1;
+        }
+        int chunkLength = Math.min(_bufferLength - _bufferPosition, length);
+        System.arraycopy(_decodedBytes, _bufferPosition, buffer, offset, chunkLength);
+        _bufferPosition += chunkLength;
+
+        if (chunkLength == length || !_cfgFullReads) {
+            return chunkLength;
+        }
+        int totalRead = chunkLength;
+        do {
+            offset += chunkLength;
+            if (!readyBuffer()) {
+                break;
+            }
+            chunkLength = Math.min(_bufferLength - _bufferPosition, (length - totalRead));
+            System.arraycopy(_decodedBytes, _bufferPosition, buffer, offset, chunkLength);
+            _bufferPosition += chunkLength;
+            totalRead += chunkLength;
+        } while (totalRead < length);
+        return totalRead;
+    }
+
+    @Override
+    public long skip(long n) throws IOException
+    {
+        if (n <= 0L) {
+            return 0L;
+        }
+        long skipped = 0L;
+        while (skipped < n && readyBuffer()) {
+            int count = (int) Math.min(_bufferLength - _bufferPosition, n - skipped);
+            _bufferPosition += count;
+            skipped += count;
+        }
+        return skipped;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        if (!_inputStreamClosed) {
+            _inputStreamClosed = true;
+            _bufferPosition = _bufferLength = 0;
+            _decodedBytes = null;
+            // any pending decoding is useless now; blocks are simply dropped
+            _pending.clear();
+            _pendingLengths.clear();
+            decompressExecutor.shutdownNow();
+            super.close();
+        }
+    }
+
+    /*
+    ///////////////////////////////////////////////////////////////////////
+    // Additional public methods
+    ///////////////////////////////////////////////////////////////////////
+     */
+
+    /**
+     * Method that can be used to find underlying {@link InputStream} that
+     * we read from to get LZF encoded data to decode.
+     * Will never return null; although underlying stream may be closed
+     * (if this stream has been closed).
+     */
+    public InputStream getUnderlyingInputStream() {
+        return in;
+    }
+
+    /*
+    ///////////////////////////////////////////////////////////////////////
+    // Internal methods
+    ///////////////////////////////////////////////////////////////////////
+     */
+
+    /**
+     * Fill the uncompressed bytes buffer by taking the next decoded chunk,
+     * after reading ahead as many chunks as possible.
+     *
+     * @return True if there is now at least one byte to read in the buffer; false
+     *   if there is no more content to read
+     */
+    protected boolean readyBuffer() throws IOException
+    {
+        if (_bufferPosition < _bufferLength) {
+            return true;
+        }
+        if (_inputStreamClosed) {
+            return false;
+        }
+        // done with the current block, if any
+        if (_decodedBytes != null) {
+            outputBlockManager.releaseBlockToPool(_decodedBytes);
+            _decodedBytes = null;
+        }
+        while (true) {
+            while (!_inputEnded && _pending.size() < _maxPending) {
+                readChunk();
+            }
+            Future<byte[]> next = _pending.pollFirst();
+            if (next == null) { // all done
+                close();
+                return false;
+            }
+            _bufferLength = _pendingLengths.pollFirst();
+            _decodedBytes = getDecoded(next);
+            _bufferPosition = 0;
+            if (_bufferLength > 0) {
+                return true;
+            }
+            // empty chunk: not legal per se, but handle gracefully
+            outputBlockManager.releaseBlockToPool(_decodedBytes);
+            _decodedBytes = null;
+        }
+    }
+
+    /**
+     * Read the next chunk from underlying stream, and either submit it for decoding
+     * (if compressed), or add as is (if not compressed).
+     */
+    protected void readChunk() throws IOException
+    {
+        final byte[] header = _header;
+        int count = readFully(header, 0, LZFChunk.HEADER_LEN_NOT_COMPRESSED);
+        // clean end, or optional end marker?
+        if (count == 0 || (count == 1 && header[0] == 0)) {
+            _inputEnded = true;
+            return;
+        }
+        if (count < LZFChunk.HEADER_LEN_NOT_COMPRESSED) {
+            throw new LZFException("Corrupt input data: truncated block header");
+        }
+        if (header[0] != LZFChunk.BYTE_Z || header[1] != LZFChunk.BYTE_V) {
+            throw new LZFException("Corrupt input data: did not start with 'ZV' signature bytes");
+        }
+        final int type = header[2];
+        final int len = ((header[3] & 0xFF) << 8) | (header[4] & 0xFF);
+        if (type == LZFChunk.BLOCK_TYPE_NON_COMPRESSED) {
+            // no decoding needed: read directly in output block, as a completed task
+            final byte[] output = getBlock(outputBlockManager);
+            try {
+                readContent(output, len);
+            } catch (IOException e) {
+                outputBlockManager.releaseBlockToPool(output);
+                throw e;
+            }
+            FutureTask<byte[]> task = new FutureTask<byte[]>(new Runnable() {
+                @Override
+                public void run() { }
+            }, output);
+            task.run();
+            _pending.addLast(task);
+            _pendingLengths.addLast(len);
+        } else if (type == LZFChunk.BLOCK_TYPE_COMPRESSED) {
+            if (readFully(header, LZFChunk.HEADER_LEN_NOT_COMPRESSED, 2) < 2) {
+                throw new LZFException("Corrupt input data: truncated block header");
+            }
+            final int uncompLen = ((header[5] & 0xFF) << 8) | (header[6] & 0xFF);
+            final byte[] input = getBlock(inputBlockManager);
+            try {
+                readContent(input, len);
+            } catch (IOException e) {
+                inputBlockManager.releaseBlockToPool(input);
+                throw e;
+            }
+            final byte[] output = getBlock(outputBlockManager);
+            _pending.addLast(decompressExecutor.submit(new DecompressTask(_decoder,
+                    input, len, inputBlockManager, output, uncompLen)));
+            _pendingLengths.addLast(uncompLen);
+        } else {
+            throw new LZFException("Corrupt input data: unrecognized block type "+(type & 0xFF));
+        }
+    }
+
+    protected byte[] getDecoded(Future<byte[]> future) throws IOException
+    {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            throw PLZFOutputStream.interrupted(e);
+        } catch (ExecutionException e) {
+            Throwable t = e.getCause();
+            if (t instanceof IOException) {
+                throw (IOException) t;
+            }
+            throw new IOException(t);
+        }
+    }
+
+    private static byte[] getBlock(BlockManager blockManager) throws IOException
+    {
+        try {
+            return blockManager.getBlockFromPool();
+        } catch (InterruptedException e) {
+            throw PLZFOutputStream.interrupted(e);
+        }
+    }
+
+    private void readContent(byte[] buffer, int len) throws IOException
+    {
+        if (readFully(buffer, 0, len) < len) {
+            throw new LZFException("Corrupt input data: block extends beyond end of input");
+        }
+    }
+
+    private int readFully(byte[] buffer, int offset, int len) throws IOException
+    {
+        int total = 0;
+        while (total < len) {
+            int count = in.read(buffer, offset+total, len-total);
+            if (count < 0) {
+                break;
+            }
+            total += count;
+        }
+        return total;
+    }
+}
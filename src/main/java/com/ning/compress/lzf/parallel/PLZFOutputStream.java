@@ -3,23 +3,26 @@ package com.ning.compress.lzf.parallel;
 import java.io.FilterOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
 import java.lang.management.ManagementFactory;
 import java.lang.management.OperatingSystemMXBean;
+import java.nio.Buffer;
 import java.nio.ByteBuffer;
 import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
 import java.nio.channels.FileChannel.MapMode;
+import java.nio.channels.GatheringByteChannel;
 import java.nio.channels.WritableByteChannel;
-import java.util.ArrayList;
-import java.util.Collection;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
-import java.util.concurrent.LinkedBlockingQueue;
-import java.util.concurrent.ThreadPoolExecutor;
-import java.util.concurrent.TimeUnit;
-
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import com.ning.compress.lzf.CompressionLevel;
 import com.ning.compress.lzf.LZFChunk;
 
 /**
@@ -30,7 +33,19 @@ import com.ning.compress.lzf.LZFChunk;
  * as the opposite.
  * <p>
  * This class uses a parallel implementation to make use of all available cores,
- * modulo system load.
+ * modulo system load. By default each stream has its own threads; alternatively
+ * a {@link ParallelCompressionContext} may be shared by multiple streams, to
+ * bound the total number of threads and amount of memory used.
+ * <p>
+ * Compressed chunks are written in order by worker threads, without a separate
+ * writer thread: whichever worker completes the next chunk to write, writes it,
+ * as well as any following chunks that were already completed.
+ * <p>
+ * Optionally (see {@link #setAdaptiveCompression}) compression level may be
+ * chosen separately for each block, based on state of the pipeline: when
+ * underlying stream is the bottleneck, spare worker time is used for better
+ * compression; and when workers are the bottleneck, faster compression (or
+ * none at all) is used. Either way, output is standard LZF.
  *
  * @author Tatu Saloranta
  * @author C&eacute;drik Lime
@@ -46,15 +61,79 @@ public class PLZFOutputStream extends FilterOutputStream implements WritableByte
     protected byte[] _outputBuffer;
     protected int _position = 0;
 
+    /**
+     * Length of content in blocks; blocks are larger, to also have room for encoded content
+     */
+    private final int _blockSize;
+
+    /**
+     * Channel of the underlying stream, if any, for writing compressed blocks using
+     * gathering writes (see {@link LZFChunk#gatheringChannel}).
+     */
+    private final GatheringByteChannel _channel;
+
     /**
      * Flag that indicates if we have already called '_outputStream.close()'
      * (to avoid calling it multiple times)
      */
     protected boolean _outputStreamClosed;
 
-    private BlockManager blockManager;
-    private final ExecutorService compressExecutor;
-    private final ExecutorService writeExecutor;
+    private final CompressionLevel _compressionLevel;
+
+    /**
+     * Whether compression level is chosen for each block based on state
+     * of the pipeline, instead of always using {@link #_compressionLevel}
+     */
+    protected boolean _adaptiveCompression = false;
+
+    private final ParallelCompressionContext _context;
+
+    /**
+     * Whether {@link #_context} was created by this stream (and is to be closed along with it)
+     */
+    private final boolean _ownsContext;
+
+    /**
+     * Permits for blocks in flight for this stream; each block submitted for
+     * compression (and each pending flush) holds one until written
+     */
+    private final Semaphore blockPermits;
+
+    /**
+     * Ring of completed tasks (compressed blocks, or flush requests) waiting to be
+     * written, indexed by sequence number modulo size; since number of tasks in flight
+     * is limited by {@link #blockPermits}, slots are never overwritten before
+     * being written.
+     */
+    private final AtomicReferenceArray<Object> completedTasks;
+
+    /**
+     * Flag that is set by the thread that writes completed tasks
+     */
+    private final AtomicBoolean writing = new AtomicBoolean();
+
+    /**
+     * Sequence number of next task to write; only modified by thread that
+     * holds {@link #writing}
+     */
+    private volatile long nextToWrite;
+
+    /**
+     * Sequence number of next task to submit; only accessed by calling thread
+     */
+    private long nextSequence;
+
+    /**
+     * Number of compressed blocks waiting to be written
+     */
+    private final AtomicInteger awaitingWrite = new AtomicInteger();
+
+    /**
+     * First failure to write to (or flush) underlying stream, if any: once set,
+     * stream is permanently failed, nothing more is written to underlying stream,
+     * and the failure is reported by all later write, flush and close calls.
+     * Only set by thread that holds {@link #writing}.
+     */
     volatile Exception writeException = null;
 
 
@@ -68,22 +147,86 @@ public class PLZFOutputStream extends FilterOutputStream implements WritableByte
         this(outputStream, DEFAULT_OUTPUT_BUFFER_SIZE, getNThreads());
     }
 
+    /**
+     * @param outputStream Underlying stream to write compressed content to
+     * @param level Compression level to use
+     *
+     * @since 1.2.1
+     */
+    public PLZFOutputStream(final OutputStream outputStream, final CompressionLevel level) {
+        this(outputStream, DEFAULT_OUTPUT_BUFFER_SIZE, getNThreads(), level);
+    }
+
     protected PLZFOutputStream(final OutputStream outputStream, int nThreads) {
         this(outputStream, DEFAULT_OUTPUT_BUFFER_SIZE, nThreads);
     }
 
     protected PLZFOutputStream(final OutputStream outputStream, final int bufferSize, int nThreads) {
+        this(outputStream, bufferSize, nThreads, CompressionLevel.DEFAULT);
+    }
+
+    protected PLZFOutputStream(final OutputStream outputStream, final int bufferSize, int nThreads,
+            final CompressionLevel level) {
+        this(outputStream, new ParallelCompressionContext(ParallelCompressionContext.newExecutor(nThreads),
+                true, nThreads * 2, nThreads * 2, bufferSize),
+                true, level);
+    }
+
+    /**
+     * Constructor for stream that uses given (usually shared) context for
+     * compressing and writing content. Context is not closed when stream is closed.
+     *
+     * @since 1.2.1
+     */
+    public PLZFOutputStream(final OutputStream outputStream, final ParallelCompressionContext context) {
+        this(outputStream, context, CompressionLevel.DEFAULT);
+    }
+
+    /**
+     * @since 1.2.1
+     */
+    public PLZFOutputStream(final OutputStream outputStream, final ParallelCompressionContext context,
+            final CompressionLevel level) {
+        this(outputStream, context, false, level);
+    }
+
+    private PLZFOutputStream(final OutputStream outputStream, final ParallelCompressionContext context,
+            boolean ownsContext, final CompressionLevel level) {
         super(outputStream);
+        _compressionLevel = level;
         _outputStreamClosed = false;
-        compressExecutor = new ThreadPoolExecutor(nThreads, nThreads, 60L, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>()); // unbounded
-        ((ThreadPoolExecutor)compressExecutor).allowCoreThreadTimeOut(true);
-        writeExecutor = Executors.newSingleThreadExecutor(); // unbounded
-        blockManager = new BlockManager(nThreads * 2, bufferSize); // this is where the bounds will be enforced!
-        _outputBuffer = blockManager.getBlockFromPool();
+        _context = context;
+        _ownsContext = ownsContext;
+        blockPermits = new Semaphore(context.getMaxBlocksPerStream());
+        completedTasks = new AtomicReferenceArray<Object>(context.getMaxBlocksPerStream());
+        _blockSize = context.getBlockSize();
+        _channel = LZFChunk.gatheringChannel(outputStream);
+        // note: buffer is not from the pool of the context, since it is not in flight
+        _outputBuffer = context.newBlock();
+        context.streamOpened();
+    }
+
+    /**
+     * Method for enabling or disabling choosing of compression level separately
+     * for each block, based on state of the pipeline: if enabled, blocks are
+     * compressed using {@link CompressionLevel#BEST} when worker threads are idle and
+     * compressed blocks are waiting to be written (that is, underlying stream is
+     * the bottleneck), and using {@link CompressionLevel#FASTEST} (or not compressed
+     * at all) when blocks are waiting for worker threads. Otherwise level given
+     * at construction is used.
+     *<p>
+     * Only has effect if executor was created by {@link ParallelCompressionContext}
+     * (and not given by caller), since its state can not be observed otherwise.
+     *
+     * @since 1.2.1
+     */
+    public PLZFOutputStream setAdaptiveCompression(boolean b) {
+        _adaptiveCompression = b;
+        return this;
     }
 
     protected static int getNThreads() {
-        int nThreads = Runtime.getRuntime().availableProcessors();
+        int nThreads = ParallelCompressionContext.availableProcessors();
         OperatingSystemMXBean jmx = ManagementFactory.getOperatingSystemMXBean();
 
         if (jmx != null) {
@@ -109,7 +252,8 @@ public class PLZFOutputStream extends FilterOutputStream implements WritableByte
     public void write(final int singleByte) throws IOException
     {
         checkNotClosed();
-        if (_position >= _outputBuffer.length) {
+        checkWriteException();
+        if (_position >= _blockSize) {
             writeCompressedBlock();
         }
         _outputBuffer[_position++] = (byte) singleByte;
@@ -119,8 +263,9 @@ public class PLZFOutputStream extends FilterOutputStream implements WritableByte
     public void write(final byte[] buffer, int offset, int length) throws IOException
     {
         checkNotClosed();
+        checkWriteException();
 
-        final int BUFFER_LEN = _outputBuffer.length;
+        final int BUFFER_LEN = _blockSize;
 
         // simple case first: buffering only (for trivially short writes)
         int free = BUFFER_LEN - _position;
@@ -155,7 +300,7 @@ public class PLZFOutputStream extends FilterOutputStream implements WritableByte
     public void write(final InputStream in) throws IOException {
         writeCompressedBlock(); // will flush _outputBuffer
         int read;
-        while ((read = in.read(_outputBuffer)) >= 0) {
+        while ((read = in.read(_outputBuffer, 0, _blockSize)) >= 0) {
             _position = read;
             writeCompressedBlock();
         }
@@ -172,14 +317,15 @@ public class PLZFOutputStream extends FilterOutputStream implements WritableByte
         if (r <= 0) {
             return r;
         }
-        writeCompressedBlock(); // will flush _outputBuffer
+        // note: content must be copied in any case, as blocks are compressed asynchronously
+        // (and caller may reuse buffer as soon as we return)
         if (src.hasArray()) {
-            // direct compression from backing array
-            write(src.array(), src.arrayOffset(), src.limit() - src.arrayOffset());
+            write(src.array(), src.arrayOffset() + src.position(), r);
+            ((Buffer) src).position(src.limit());
         } else {
-            // need to copy to heap array first
+            writeCompressedBlock(); // will flush _outputBuffer
             while (src.hasRemaining()) {
-                int toRead = Math.min(src.remaining(), _outputBuffer.length);
+                int toRead = Math.min(src.remaining(), _blockSize);
                 src.get(_outputBuffer, 0, toRead);
                 _position = toRead;
                 writeCompressedBlock();
@@ -190,12 +336,48 @@ public class PLZFOutputStream extends FilterOutputStream implements WritableByte
 
 
     /**
-     * This <code>flush</code> method does nothing.
+     * Method that will compress and write any buffered content, wait until all
+     * content written so far has been written to the underlying stream, and
+     * then flush the underlying stream. This means that calling this method
+     * reduces parallelism, so it should only be called when needed
+     * (to make content visible to reader).
      */
     @Override
     public void flush() throws IOException
     {
         checkNotClosed();
+        checkWriteException();
+        try {
+            flushAsync().get();
+        } catch (InterruptedException e) {
+            throw interrupted(e);
+        } catch (ExecutionException e) {
+            checkWriteException();
+            Throwable t = e.getCause();
+            throw (t instanceof IOException) ? (IOException) t : new IOException(t);
+        }
+        checkWriteException();
+    }
+
+    /**
+     * Asynchronous variant of {@link #flush}: compresses any buffered content,
+     * and returns a future that is completed once all content written so far
+     * has been written to the underlying stream, and that stream has been flushed;
+     * or completed exceptionally if writing or flushing failed.
+     * Calling thread only blocks if the maximum number of blocks are in flight;
+     * if all content has already been written, flushing is done by calling thread.
+     *
+     * @since 1.2.1
+     */
+    public CompletableFuture<Void> flushAsync() throws IOException
+    {
+        checkNotClosed();
+        writeCompressedBlock();
+        final CompletableFuture<Void> result = new CompletableFuture<Void>();
+        // flush request is written in order, after preceding chunks
+        acquirePermit();
+        completed(nextSequence++, result);
+        return result;
     }
 
     @Override
@@ -206,37 +388,37 @@ public class PLZFOutputStream extends FilterOutputStream implements WritableByte
     @Override
     public void close() throws IOException
     {
-        if (!_outputStreamClosed) {
+        if (_outputStreamClosed) {
+            // failure to write is still reported, as content written is incomplete
+            checkWriteException();
+            return;
+        }
+        try {
             if (_position > 0) {
                 writeCompressedBlock();
             }
-            byte[] buf = _outputBuffer;
-            if (buf != null) {
-                blockManager.releaseBlockToPool(_outputBuffer);
-                _outputBuffer = null;
-            }
-            writeExecutor.shutdown();
+        } finally {
+            // current buffer is just dropped: blocks in flight return to the pool of context
+            _outputBuffer = null;
             try {
-                writeExecutor.awaitTermination(1, TimeUnit.HOURS);
-                // at this point compressExecutor should have no pending tasks: cleanup ThreadLocal's
-                // we don't know how many threads; go to the max for now. This will change once we get a proper configuration bean.
-                int maxThreads = Runtime.getRuntime().availableProcessors();
-                Collection<CompressTask> cleanupTasks = new ArrayList<CompressTask>(maxThreads);
-                for (int i = 0; i < maxThreads; ++i) {
-                    cleanupTasks.add(new CompressTask(null, -1, -1, null));
-                }
-                compressExecutor.invokeAll(cleanupTasks);
-                compressExecutor.shutdown();
-                compressExecutor.awaitTermination(1, TimeUnit.MINUTES);
-            } catch (InterruptedException e) {
-                throw new IOException(e);
+                // wait until all blocks have been written (or skipped, after failure)
+                final int permits = _context.getMaxBlocksPerStream();
+                blockPermits.acquireUninterruptibly(permits);
+                blockPermits.release(permits);
             } finally {
-                super.flush();
-                super.close();
-                _outputStreamClosed = true;
-                compressExecutor.shutdownNow();
-                writeExecutor.shutdownNow();
-                blockManager = null;
+                _context.streamClosed();
+                if (_ownsContext) {
+                    _context.close();
+                }
+                try {
+                    // note: not calling super.close(), which would call flush()
+                    if (writeException == null) {
+                        out.flush();
+                    }
+                    out.close();
+                } finally {
+                    _outputStreamClosed = true;
+                }
                 checkWriteException();
             }
         }
@@ -272,18 +454,174 @@ public class PLZFOutputStream extends FilterOutputStream implements WritableByte
         if (_position == 0) {
             return;
         }
-        Future<LZFChunk> lzfFuture = compressExecutor.submit(new CompressTask(_outputBuffer, 0, _position, blockManager));
-        writeExecutor.execute(new WriteTask(out, lzfFuture, this));
-        _outputBuffer = blockManager.getBlockFromPool();
+        // no point compressing content that will not be written
+        checkWriteException();
+        acquirePermit();
+        try {
+            final CompressionLevel level = _adaptiveCompression ? _adaptiveLevel() : _compressionLevel;
+            _context.getExecutor().execute(new CompressTask(_outputBuffer, 0, _position, _blockSize, level,
+                    nextSequence, this));
+        } catch (RejectedExecutionException e) {
+            blockPermits.release();
+            throw new IOException("Can not compress content, executor shut down", e);
+        }
+        ++nextSequence;
         _position = 0;
+        // may block, if maximum number of blocks are in flight for the context
+        try {
+            _outputBuffer = _context.getBlockManager().getBlockFromPool();
+        } catch (InterruptedException e) {
+            // submitted block is still in use, so need a new one instead (pool will have
+            // one block too many when both are returned, but extra one is then dropped)
+            _outputBuffer = _context.newBlock();
+            throw interrupted(e);
+        }
         checkWriteException();
     }
 
+    /**
+     * @return Compression level to use for next block, based on state of the pipeline;
+     *    null for storing block without compression
+     */
+    protected CompressionLevel _adaptiveLevel() {
+        return selectLevel(_compressionLevel, _context.getQueuedBlockCount(),
+                _context.getIdleThreadCount(), _context.getThreadCount(),
+                awaitingWrite.get(), _context.getMaxBlocksPerStream());
+    }
+
+    static CompressionLevel selectLevel(CompressionLevel base, int queued, int idleThreads,
+            int threads, int awaitingWrite, int maxBlocks)
+    {
+        if (queued < 0 || idleThreads < 0 || threads < 1) { // can not tell
+            return base;
+        }
+        // workers can not keep up: compress faster, or not at all if far behind
+        if (queued >= 2 * threads) {
+            return null;
+        }
+        if (queued >= threads) {
+            return CompressionLevel.FASTEST;
+        }
+        // workers idle, while compressed blocks wait to be written: compress better
+        if (queued == 0 && idleThreads > 0 && awaitingWrite >= Math.max(1, maxBlocks / 2)) {
+            return CompressionLevel.BEST;
+        }
+        return base;
+    }
+
+    private void acquirePermit() throws IOException {
+        try {
+            blockPermits.acquire();
+        } catch (InterruptedException e) {
+            throw interrupted(e);
+        }
+    }
+
+    static InterruptedIOException interrupted(InterruptedException e) {
+        // restore interrupt status for caller to see
+        Thread.currentThread().interrupt();
+        InterruptedIOException ioe = new InterruptedIOException("Interrupted while waiting");
+        ioe.initCause(e);
+        return ioe;
+    }
+
+    /**
+     * Method called when task with given sequence number has completed (either
+     * compression task by worker thread, or flush request by calling thread):
+     * writes completed tasks in order, unless another thread is already doing that.
+     */
+    void completed(long sequence, Object task) {
+        if (task instanceof CompressTask) {
+            awaitingWrite.incrementAndGet();
+        }
+        final int size = completedTasks.length();
+        completedTasks.set((int) (sequence % size), task);
+        while (writing.compareAndSet(false, true)) {
+            try {
+                while (true) {
+                    final int index = (int) (nextToWrite % size);
+                    final Object next = completedTasks.get(index);
+                    if (next == null) {
+                        break;
+                    }
+                    completedTasks.set(index, null);
+                    ++nextToWrite;
+                    writeCompleted(next);
+                }
+            } finally {
+                writing.set(false);
+            }
+            // next task may have completed after we checked, but before we cleared flag
+            if (completedTasks.get((int) (nextToWrite % size)) == null) {
+                break;
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void writeCompleted(Object task) {
+        try {
+            if (task instanceof CompressTask) {
+                final CompressTask compressTask = (CompressTask) task;
+                try {
+                    // after failure, nothing more is written, to avoid corrupt content
+                    if (writeException == null) {
+                        if (compressTask.failure != null) {
+                            throw compressTask.failure;
+                        }
+                        final long start = System.nanoTime();
+                        // compressed chunks and non-compressed content, as slices of the block
+                        final ByteBuffer[] result = compressTask.result;
+                        final int count = compressTask.resultCount;
+                        if (_channel != null) {
+                            LZFChunk.writeFully(_channel, result, 0, count);
+                        } else {
+                            for (int i = 0; i < count; ++i) {
+                                final ByteBuffer bb = result[i];
+                                out.write(bb.array(), bb.position(), bb.remaining());
+                            }
+                        }
+                        _context.blockWritten(compressTask.queueNanos, compressTask.compressNanos,
+                                System.nanoTime() - start);
+                    }
+                } finally {
+                    awaitingWrite.decrementAndGet();
+                    // input data is fully processed, we can now discard it
+                    _context.getBlockManager().releaseBlockToPool(compressTask.data);
+                }
+            } else { // flush request
+                final CompletableFuture<Void> result = (CompletableFuture<Void>) task;
+                try {
+                    Exception e = writeException;
+                    if (e == null) {
+                        out.flush();
+                        result.complete(null);
+                    } else {
+                        result.completeExceptionally(e);
+                    }
+                } catch (Exception e) {
+                    writeException = e;
+                    result.completeExceptionally(e);
+                }
+            }
+        } catch (Exception e) {
+            // only first failure is retained (and reported)
+            if (writeException == null) {
+                writeException = e;
+            }
+        } finally {
+            blockPermits.release();
+        }
+    }
+
+    /**
+     * Method for reporting failure to write to underlying stream, if any; failure
+     * is not cleared, so it is reported by every call after it has occurred.
+     */
     protected void checkWriteException() throws IOException {
-        if (writeException != null) {
-            IOException ioe = (writeException instanceof IOException) ? (IOException) writeException : new IOException(writeException);
-            writeException = null;
-            throw ioe;
+        final Exception e = writeException;
+        if (e != null) {
+            throw (e instanceof IOException) ? (IOException) e : new IOException(e);
         }
     }
 
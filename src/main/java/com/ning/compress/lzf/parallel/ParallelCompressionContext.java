@@ -0,0 +1,401 @@
+package com.ning.compress.lzf.parallel;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.ning.compress.lzf.LZFChunk;
+import com.ning.compress.lzf.LZFEncoder;
+
+/**
+ * Container for resources used by {@link PLZFOutputStream}s: worker threads
+ * (along with their per-thread encoders), and blocks used for buffering content.
+ * A single context may be shared by any number of streams, to limit the number
+ * of threads and amount of memory used, regardless of number of streams.
+ *<p>
+ * Limits are enforced as follows:
+ *<ul>
+ * <li>Total number of blocks in flight (submitted for compression but not yet
+ *   written) across all streams is at most <code>maxBlocksInFlight</code>:
+ *   streams block when no more blocks are available.
+ *  </li>
+ * <li>Number of blocks in flight for a single stream is at most
+ *   <code>maxBlocksPerStream</code>, so that a single busy stream can not
+ *   starve others (since compression tasks are processed in order of submission).
+ *  </li>
+ *</ul>
+ * In addition each stream has a single block for buffering content being written.
+ * Blocks have room for both content to compress and compressed result (so a block
+ * of 64kB of content takes about 131kB), so that compressed content needs no
+ * further allocation or copying before being written.
+ *<p>
+ * Worker threads both compress blocks, and write compressed chunks to streams:
+ * worker that completes the next chunk (in order) of a stream writes it, along
+ * with any following chunks already compressed. Note that this means that a
+ * slow underlying output stream will hold up worker threads.
+ *<p>
+ * Number of worker threads is either fixed, or, for contexts created using
+ * {@link #adaptive}, adjusted at runtime based on measured compression and
+ * write times: workers are added when blocks wait for workers, and removed
+ * when writing to underlying streams is the bottleneck (since additional
+ * workers could not speed things up).
+ *<p>
+ * Context must be closed once it (and streams that use it) are no longer
+ * needed, to stop worker threads; unless executor was passed by caller,
+ * in which case caller is responsible for shutting it down.
+ *
+ * @since 1.2.1
+ */
+public class ParallelCompressionContext implements Closeable
+{
+    private final ExecutorService executor;
+    private final boolean ownsExecutor;
+
+    private final BlockManager blockManager;
+    private final int blockSize;
+
+    /**
+     * Size of block arrays: content, followed by room for encoded content
+     */
+    private final int blockCapacity;
+    private final int maxBlocksPerStream;
+
+    /**
+     * For adaptive contexts, maximum number of threads to use; 0 for fixed-size contexts
+     */
+    private final int maxThreads;
+
+    /* Statistics for adaptive sizing, for current measurement window */
+    private final LongAdder queueNanos = new LongAdder();
+    private final LongAdder compressNanos = new LongAdder();
+    private final LongAdder writeNanos = new LongAdder();
+    private final AtomicInteger windowBlocks = new AtomicInteger();
+
+    private final AtomicInteger activeStreams = new AtomicInteger();
+
+    /**
+     * Number of blocks written between adjustments of number of threads
+     */
+    protected final static int ADAPTIVE_WINDOW = 16;
+
+    /*
+    ///////////////////////////////////////////////////////////////////////
+    // Construction
+    ///////////////////////////////////////////////////////////////////////
+     */
+
+    /**
+     * Constructor for context that uses as many threads as there are available
+     * cores (modulo system load, and limited by cgroup CPU quota, if any),
+     * and allows 4 blocks in flight per thread.
+     */
+    public ParallelCompressionContext() {
+        this(PLZFOutputStream.getNThreads());
+    }
+
+    public ParallelCompressionContext(int nThreads) {
+        this(nThreads, nThreads * 4, nThreads * 2);
+    }
+
+    /**
+     * @param nThreads Number of threads used for compressing and writing
+     * @param maxBlocksInFlight Maximum number of blocks (of 64kB of content each) in flight
+     *   across all streams that use this context
+     * @param maxBlocksPerStream Maximum number of blocks in flight for a single stream
+     */
+    public ParallelCompressionContext(int nThreads, int maxBlocksInFlight, int maxBlocksPerStream) {
+        this(newExecutor(nThreads), true, maxBlocksInFlight, maxBlocksPerStream, LZFChunk.MAX_CHUNK_LEN);
+    }
+
+    /**
+     * Constructor for context that uses given executor, which will not be
+     * shut down when context is closed.
+     *
+     * @param executor Executor used for compressing and writing blocks
+     * @param maxBlocksInFlight Maximum number of blocks (of 64kB of content each) in flight
+     *   across all streams that use this context
+     * @param maxBlocksPerStream Maximum number of blocks in flight for a single stream
+     */
+    public ParallelCompressionContext(ExecutorService executor, int maxBlocksInFlight, int maxBlocksPerStream) {
+        this(executor, false, maxBlocksInFlight, maxBlocksPerStream, LZFChunk.MAX_CHUNK_LEN);
+    }
+
+    ParallelCompressionContext(ExecutorService executor, boolean ownsExecutor,
+            int maxBlocksInFlight, int maxBlocksPerStream, int blockSize) {
+        this(executor, ownsExecutor, maxBlocksInFlight, maxBlocksPerStream, blockSize, 0);
+    }
+
+    private ParallelCompressionContext(ExecutorService executor, boolean ownsExecutor,
+            int maxBlocksInFlight, int maxBlocksPerStream, int blockSize, int maxThreads) {
+        if (maxBlocksInFlight < 1 || maxBlocksPerStream < 1) {
+            throw new IllegalArgumentException("Invalid block limits ("+maxBlocksInFlight+", "+maxBlocksPerStream
+                    +"): must be at least 1");
+        }
+        this.executor = executor;
+        this.ownsExecutor = ownsExecutor;
+        this.blockSize = blockSize;
+        this.maxBlocksPerStream = maxBlocksPerStream;
+        this.maxThreads = maxThreads;
+        blockCapacity = blockSize + LZFEncoder.estimateMaxWorkspaceSize(blockSize);
+        blockManager = new BlockManager(maxBlocksInFlight, blockCapacity); // this is where the bounds will be enforced!
+    }
+
+    /**
+     * Factory method for constructing context that adjusts number of worker threads
+     * at runtime, between 1 and number of available cores (as limited by cgroup CPU
+     * quota, if any).
+     */
+    public static ParallelCompressionContext adaptive() {
+        return adaptive(availableProcessors());
+    }
+
+    /**
+     * Factory method for constructing context that adjusts number of worker threads
+     * at runtime, between 1 and given maximum; starting with 2 threads (if maximum allows).
+     * Maximum number of blocks in flight is 4 per (maximum) thread, same as
+     * with fixed-size contexts.
+     */
+    public static ParallelCompressionContext adaptive(int maxThreads) {
+        if (maxThreads < 1) {
+            throw new IllegalArgumentException("Invalid maximum number of threads ("+maxThreads+"): must be at least 1");
+        }
+        return new ParallelCompressionContext(newExecutor(Math.min(2, maxThreads)), true,
+                maxThreads * 4, maxThreads * 2, LZFChunk.MAX_CHUNK_LEN, maxThreads);
+    }
+
+    static ExecutorService newExecutor(int nThreads) {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(nThreads, nThreads, 60L, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>()); // unbounded
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /*
+    ///////////////////////////////////////////////////////////////////////
+    // Accessors
+    ///////////////////////////////////////////////////////////////////////
+     */
+
+    /**
+     * @return Whether number of threads is adjusted at runtime (see {@link #adaptive})
+     */
+    public boolean isAdaptive() {
+        return maxThreads > 0;
+    }
+
+    /**
+     * @return Current (maximum) number of worker threads, if executor was created
+     *   by this context; -1 if not known
+     */
+    public int getThreadCount() {
+        if (executor instanceof ThreadPoolExecutor) {
+            return ((ThreadPoolExecutor) executor).getMaximumPoolSize();
+        }
+        return -1;
+    }
+
+    /**
+     * @return Number of blocks waiting for a worker thread, if executor was
+     *   created by this context; -1 if not known
+     */
+    int getQueuedBlockCount() {
+        if (executor instanceof ThreadPoolExecutor) {
+            return ((ThreadPoolExecutor) executor).getQueue().size();
+        }
+        return -1;
+    }
+
+    /**
+     * @return Number of worker threads not currently compressing a block, if
+     *   executor was created by this context; -1 if not known
+     */
+    int getIdleThreadCount() {
+        if (executor instanceof ThreadPoolExecutor) {
+            ThreadPoolExecutor pool = (ThreadPoolExecutor) executor;
+            return Math.max(0, pool.getMaximumPoolSize() - pool.getActiveCount());
+        }
+        return -1;
+    }
+
+    public int getMaxBlocksPerStream() {
+        return maxBlocksPerStream;
+    }
+
+    /**
+     * @return Number of times a stream got a block from the pool without waiting
+     */
+    public long getBlockPoolHitCount() {
+        return blockManager.getHitCount();
+    }
+
+    /**
+     * @return Number of times a stream had to wait for a block, because maximum
+     *   number of blocks were in flight
+     */
+    public long getBlockPoolMissCount() {
+        return blockManager.getMissCount();
+    }
+
+    /**
+     * @return Total time (in nanoseconds) streams have waited for blocks
+     */
+    public long getBlockPoolWaitNanos() {
+        return blockManager.getWaitNanos();
+    }
+
+    int getBlockSize() {
+        return blockSize;
+    }
+
+    /**
+     * @return New block (not from the pool), with room for encoded content
+     *    after {@link #getBlockSize} bytes of content
+     */
+    byte[] newBlock() {
+        return new byte[blockCapacity];
+    }
+
+    ExecutorService getExecutor() {
+        return executor;
+    }
+
+    BlockManager getBlockManager() {
+        return blockManager;
+    }
+
+    /*
+    ///////////////////////////////////////////////////////////////////////
+    // Adaptive sizing
+    ///////////////////////////////////////////////////////////////////////
+     */
+
+    void streamOpened() {
+        activeStreams.incrementAndGet();
+    }
+
+    void streamClosed() {
+        activeStreams.decrementAndGet();
+    }
+
+    /**
+     * Method called after a block has been compressed and written, with time
+     * (in nanoseconds) it waited for a worker, and spent compressing and writing.
+     */
+    void blockWritten(long queueTime, long compressTime, long writeTime) {
+        if (maxThreads == 0) {
+            return;
+        }
+        queueNanos.add(queueTime);
+        compressNanos.add(compressTime);
+        writeNanos.add(writeTime);
+        // only one thread gets to see the exact count, and adjust
+        if (windowBlocks.incrementAndGet() == ADAPTIVE_WINDOW) {
+            adjustThreadCount(queueNanos.sumThenReset(), compressNanos.sumThenReset(),
+                    writeNanos.sumThenReset());
+            windowBlocks.set(0);
+        }
+    }
+
+    private void adjustThreadCount(long queueTime, long compressTime, long writeTime)
+    {
+        final ThreadPoolExecutor pool = (ThreadPoolExecutor) executor;
+        final int current = pool.getMaximumPoolSize();
+        // Since writes of a stream are sequential, number of workers that can be kept
+        // busy is limited by how fast compressed content can be written
+        int useful = maxThreads;
+        if (writeTime > 0L) {
+            double limit = Math.ceil(Math.max(1, activeStreams.get()) * (double) compressTime / writeTime);
+            useful = (int) Math.min(maxThreads, Math.max(1.0, limit));
+        }
+        int target = current;
+        if (current > useful) { // write-bound: fewer threads will do
+            target = current - 1;
+        } else if (current < useful && queueTime > compressTime / 2) { // blocks waiting for workers
+            target = current + 1;
+        }
+        target = Math.max(1, Math.min(maxThreads, target));
+        if (target > current) {
+            pool.setMaximumPoolSize(target);
+            pool.setCorePoolSize(target);
+        } else if (target < current) {
+            pool.setCorePoolSize(target);
+            pool.setMaximumPoolSize(target);
+        }
+    }
+
+    /**
+     * Helper method for determining number of processors available: minimum of
+     * what JVM reports, and cgroup (v2 or v1) CPU quota, if any. Quota is checked
+     * separately since older JVMs do not take it into account.
+     */
+    public static int availableProcessors() {
+        int cpus = Runtime.getRuntime().availableProcessors();
+        int quota = -1;
+        try {
+            File cpuMax = new File("/sys/fs/cgroup/cpu.max");
+            if (cpuMax.isFile()) { // cgroup v2
+                quota = cpuLimit(_firstLine(cpuMax));
+            } else {
+                File quotaFile = new File("/sys/fs/cgroup/cpu/cpu.cfs_quota_us");
+                File periodFile = new File("/sys/fs/cgroup/cpu/cpu.cfs_period_us");
+                if (quotaFile.isFile() && periodFile.isFile()) { // cgroup v1
+                    quota = cpuLimit(_firstLine(quotaFile)+" "+_firstLine(periodFile));
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            // can not determine, ignore
+        }
+        return (quota > 0) ? Math.min(cpus, quota) : cpus;
+    }
+
+    /**
+     * @param quotaAndPeriod CPU quota and period, as with cgroup v2 "cpu.max"
+     *   (where "max" or negative quota means no limit)
+     *
+     * @return Number of CPUs quota allows (rounded up); or -1 if no limit
+     */
+    static int cpuLimit(String quotaAndPeriod) {
+        String[] parts = quotaAndPeriod.trim().split("\\s+");
+        if (parts.length != 2 || "max".equals(parts[0])) {
+            return -1;
+        }
+        long quota = Long.parseLong(parts[0]);
+        long period = Long.parseLong(parts[1]);
+        if (quota <= 0L || period <= 0L) {
+            return -1;
+        }
+        return (int) Math.max(1L, (quota + period - 1) / period);
+    }
+
+    private static String _firstLine(File f) throws IOException {
+        List<String> lines = Files.readAllLines(f.toPath(), StandardCharsets.US_ASCII);
+        return lines.isEmpty() ? "" : lines.get(0);
+    }
+
+    /*
+    ///////////////////////////////////////////////////////////////////////
+    // Life-cycle
+    ///////////////////////////////////////////////////////////////////////
+     */
+
+    /**
+     * Method that will shut down executor, if it was created by this context.
+     * Pending tasks are still completed; but context must not be used by
+     * new streams afterwards.
+     */
+    @Override
+    public void close() {
+        if (ownsExecutor) {
+            // threads (and their thread-local encoders) go away once idle
+            executor.shutdown();
+        }
+    }
+}
@@ -14,13 +14,30 @@ import com.ning.compress.lzf.impl.UnsafeChunkDecoder;
  */
 public class ChunkDecoderFactory
 {
+    private final static String VECTOR_DECODER_CLASS = "com.ning.compress.lzf.impl.VectorChunkDecoder";
+
+    private final static String VARHANDLE_DECODER_CLASS = "com.ning.compress.lzf.impl.VarHandleChunkDecoder";
+
     private final static ChunkDecoderFactory _instance;
     static {
         Class<?> impl = null;
         try {
-            // first, try loading optimal one, which uses Sun JDK Unsafe...
-            impl = (Class<?>) Class.forName(UnsafeChunkDecoder.class.getName());
+            // first, try loading optimal one, which uses Vector API (only included for Java 16+,
+            // and only loads if module `jdk.incubator.vector` is available)
+            impl = (Class<?>) Class.forName(VECTOR_DECODER_CLASS);
         } catch (Throwable t) { }
+        if (impl == null) {
+            try {
+                // ... or one that uses VarHandles (only included for Java 9+)
+                impl = (Class<?>) Class.forName(VARHANDLE_DECODER_CLASS);
+            } catch (Throwable t) { }
+        }
+        if (impl == null) {
+            try {
+                // ... or, on Java 8, one that uses Sun JDK Unsafe...
+                impl = (Class<?>) Class.forName(UnsafeChunkDecoder.class.getName());
+            } catch (Throwable t) { }
+        }
         if (impl == null) {
             impl = VanillaChunkDecoder.class;
         }
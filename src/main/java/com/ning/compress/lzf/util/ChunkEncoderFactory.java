@@ -2,14 +2,24 @@ package com.ning.compress.lzf.util;
 
 import com.ning.compress.BufferRecycler;
 import com.ning.compress.lzf.ChunkEncoder;
+import com.ning.compress.lzf.CompressionLevel;
 import com.ning.compress.lzf.LZFChunk;
+import com.ning.compress.lzf.impl.HighRatioChunkEncoder;
+import com.ning.compress.lzf.impl.TaggedHashChunkEncoder;
 import com.ning.compress.lzf.impl.UnsafeChunkEncoders;
+import com.ning.compress.lzf.impl.VarHandleChunkEncoders;
 import com.ning.compress.lzf.impl.VanillaChunkEncoder;
 
 /**
  * Simple helper class used for loading
  * {@link ChunkEncoder} implementations, based on criteria
- * such as "fastest available" or "safe to run anywhere".
+ * such as "fastest available", "safe to run anywhere" or
+ * "best compression ratio".
+ *<p>
+ * "Optimal" instances use <code>VarHandle</code>-based encoder on Java 9 and above
+ * (or Vector API based one on Java 16 and above, if module <code>jdk.incubator.vector</code>
+ * is available); <code>sun.misc.Unsafe</code>-based one on Java 8, and "safe" encoder
+ * if neither is available.
  */
 public class ChunkEncoderFactory
 {
@@ -47,6 +57,9 @@ public class ChunkEncoderFactory
      * @return ChunkEncoder constructed
      */
     public static ChunkEncoder optimalInstance(int totalLength) {
+        if (VarHandleChunkEncoders.isAvailable()) {
+            return VarHandleChunkEncoders.createEncoder(totalLength, BufferRecycler.instance());
+        }
         try {
             return UnsafeChunkEncoders.createEncoder(totalLength);
         } catch (Exception e) {
@@ -63,6 +76,9 @@ public class ChunkEncoderFactory
      * @return ChunkEncoder constructed
      */
     public static ChunkEncoder optimalNonAllocatingInstance(int totalLength) {
+        if (VarHandleChunkEncoders.isAvailable()) {
+            return VarHandleChunkEncoders.createNonAllocatingEncoder(totalLength, BufferRecycler.instance());
+        }
         try {
             return UnsafeChunkEncoders.createNonAllocatingEncoder(totalLength);
         } catch (Exception e) {
@@ -136,6 +152,9 @@ public class ChunkEncoderFactory
      * @return ChunkEncoder constructed
      */
     public static ChunkEncoder optimalInstance(int totalLength, BufferRecycler bufferRecycler) {
+        if (VarHandleChunkEncoders.isAvailable()) {
+            return VarHandleChunkEncoders.createEncoder(totalLength, bufferRecycler);
+        }
         try {
             return UnsafeChunkEncoders.createEncoder(totalLength, bufferRecycler);
         } catch (Exception e) {
@@ -150,6 +169,9 @@ public class ChunkEncoderFactory
      * @return ChunkEncoder constructed
      */
     public static ChunkEncoder optimalNonAllocatingInstance(int totalLength, BufferRecycler bufferRecycler) {
+        if (VarHandleChunkEncoders.isAvailable()) {
+            return VarHandleChunkEncoders.createNonAllocatingEncoder(totalLength, bufferRecycler);
+        }
         try {
             return UnsafeChunkEncoders.createNonAllocatingEncoder(totalLength, bufferRecycler);
         } catch (Exception e) {
@@ -190,4 +212,319 @@ public class ChunkEncoderFactory
     public static ChunkEncoder safeNonAllocatingInstance(int totalLength, BufferRecycler bufferRecycler) {
         return VanillaChunkEncoder.nonAllocatingEncoder(totalLength, bufferRecycler);
     }
+
+    /*
+    ///////////////////////////////////////////////////////////////////////
+    // High-ratio encoders
+    ///////////////////////////////////////////////////////////////////////
+     */
+
+    /**
+     * Convenience method, equivalent to:
+     *<code>
+     *   return highRatioInstance(LZFChunk.MAX_CHUNK_LEN);
+     *</code>
+     *
+     * @return ChunkEncoder constructed
+     */
+    public static ChunkEncoder highRatioInstance() {
+        return highRatioInstance(LZFChunk.MAX_CHUNK_LEN);
+    }
+
+    /**
+     * Method for getting encoder instance that produces smaller output than
+     * "optimal" and "safe" instances, at the cost of slower encoding: it looks
+     * for the longest match instead of the first one (see {@link HighRatioChunkEncoder}).
+     * Output is standard LZF that any decoder can handle.
+     *<p>
+     * Uses a ThreadLocal soft-referenced BufferRecycler instance.
+     *
+     * @param totalLength Expected total length of content to compress; only matters
+     *    for content that is smaller than maximum chunk size (64k), to optimize
+     *    encoding hash tables
+     *
+     * @return ChunkEncoder constructed
+     */
+    public static ChunkEncoder highRatioInstance(int totalLength) {
+        return new HighRatioChunkEncoder(totalLength);
+    }
+
+    /**
+     * Factory method for constructing high-ratio encoder that is always passed buffer
+     * externally, so that it will not (nor need) allocate encoding buffer.
+     *<p>
+     * Uses a ThreadLocal soft-referenced BufferRecycler instance.
+     *
+     * @return ChunkEncoder constructed
+     */
+    public static ChunkEncoder highRatioNonAllocatingInstance(int totalLength) {
+        return HighRatioChunkEncoder.nonAllocatingEncoder(totalLength);
+    }
+
+    /**
+     * Convenience method, equivalent to:
+     *<code>
+     *   return highRatioInstance(LZFChunk.MAX_CHUNK_LEN, bufferRecycler);
+     *</code>
+     *
+     * @return ChunkEncoder constructed
+     */
+    public static ChunkEncoder highRatioInstance(BufferRecycler bufferRecycler) {
+        return highRatioInstance(LZFChunk.MAX_CHUNK_LEN, bufferRecycler);
+    }
+
+    /**
+     * Method for getting encoder instance that produces smaller output than
+     * "optimal" and "safe" instances, at the cost of slower encoding: it looks
+     * for the longest match instead of the first one (see {@link HighRatioChunkEncoder}).
+     * Output is standard LZF that any decoder can handle.
+     *
+     * @param totalLength Expected total length of content to compress; only matters
+     *    for content that is smaller than maximum chunk size (64k), to optimize
+     *    encoding hash tables
+     * @param bufferRecycler The BufferRecycler instance
+     *
+     * @return ChunkEncoder constructed
+     */
+    public static ChunkEncoder highRatioInstance(int totalLength, BufferRecycler bufferRecycler) {
+        return new HighRatioChunkEncoder(totalLength, bufferRecycler);
+    }
+
+    /**
+     * Factory method for constructing high-ratio encoder that is always passed buffer
+     * externally, so that it will not (nor need) allocate encoding buffer.
+     *
+     * @return ChunkEncoder constructed
+     */
+    public static ChunkEncoder highRatioNonAllocatingInstance(int totalLength, BufferRecycler bufferRecycler) {
+        return HighRatioChunkEncoder.nonAllocatingEncoder(totalLength, bufferRecycler);
+    }
+
+    /*
+    ///////////////////////////////////////////////////////////////////////
+    // Encoders for small inputs
+    ///////////////////////////////////////////////////////////////////////
+     */
+
+    /**
+     * Method for getting encoder instance optimized for encoding lots of small
+     * (up to a few kilobytes) inputs with the same instance: only part of hash
+     * table, sized by input length, is used for each chunk
+     * (see {@link TaggedHashChunkEncoder}).
+     * Output is standard LZF that any decoder can handle.
+     *<p>
+     * Uses a ThreadLocal soft-referenced BufferRecycler instance.
+     *
+     * @param totalLength Maximum length of content to compress (at a time); only matters
+     *    for content that is smaller than maximum chunk size (64k), to limit size
+     *    of hash table
+     *
+     * @return ChunkEncoder constructed
+     *
+     * @since 1.2.1
+     */
+    public static ChunkEncoder taggedHashInstance(int totalLength) {
+        return new TaggedHashChunkEncoder(totalLength);
+    }
+
+    /**
+     * Factory method for constructing small-input optimized encoder that is always
+     * passed buffer externally, so that it will not (nor need) allocate encoding buffer.
+     *<p>
+     * Uses a ThreadLocal soft-referenced BufferRecycler instance.
+     *
+     * @return ChunkEncoder constructed
+     *
+     * @since 1.2.1
+     */
+    public static ChunkEncoder taggedHashNonAllocatingInstance(int totalLength) {
+        return TaggedHashChunkEncoder.nonAllocatingEncoder(totalLength);
+    }
+
+    /**
+     * Method for getting encoder instance optimized for encoding lots of small
+     * (up to a few kilobytes) inputs with the same instance: only part of hash
+     * table, sized by input length, is used for each chunk
+     * (see {@link TaggedHashChunkEncoder}).
+     * Output is standard LZF that any decoder can handle.
+     *
+     * @param totalLength Maximum length of content to compress (at a time); only matters
+     *    for content that is smaller than maximum chunk size (64k), to limit size
+     *    of hash table
+     * @param bufferRecycler The BufferRecycler instance
+     *
+     * @return ChunkEncoder constructed
+     *
+     * @since 1.2.1
+     */
+    public static ChunkEncoder taggedHashInstance(int totalLength, BufferRecycler bufferRecycler) {
+        return new TaggedHashChunkEncoder(totalLength, bufferRecycler);
+    }
+
+    /**
+     * Factory method for constructing small-input optimized encoder that is always
+     * passed buffer externally, so that it will not (nor need) allocate encoding buffer.
+     *
+     * @return ChunkEncoder constructed
+     *
+     * @since 1.2.1
+     */
+    public static ChunkEncoder taggedHashNonAllocatingInstance(int totalLength, BufferRecycler bufferRecycler) {
+        return TaggedHashChunkEncoder.nonAllocatingEncoder(totalLength, bufferRecycler);
+    }
+
+    /*
+    ///////////////////////////////////////////////////////////////////////
+    // Encoders for specific compression level
+    ///////////////////////////////////////////////////////////////////////
+     */
+
+    /**
+     * Method to use for getting compressor instance for specified compression
+     * level, using the most optimal available methods for underlying data access.
+     * Levels that only use the first match found (like {@link CompressionLevel#DEFAULT})
+     * use same implementations as {@link #optimalInstance}; levels that search
+     * for the longest match use {@link HighRatioChunkEncoder}.
+     *<p>
+     * Uses a ThreadLocal soft-referenced BufferRecycler instance.
+     *
+     * @param level Compression level to use
+     * @param totalLength Expected total length of content to compress; only matters
+     *    for content that is smaller than maximum chunk size (64k), to optimize
+     *    encoding hash tables
+     *
+     * @return ChunkEncoder constructed
+     */
+    public static ChunkEncoder optimalInstance(CompressionLevel level, int totalLength) {
+        return optimalInstance(level, totalLength, BufferRecycler.instance());
+    }
+
+    /**
+     * Method to use for getting compressor instance for specified compression
+     * level, using the most optimal available methods for underlying data access.
+     *
+     * @param level Compression level to use
+     * @param totalLength Expected total length of content to compress; only matters
+     *    for content that is smaller than maximum chunk size (64k), to optimize
+     *    encoding hash tables
+     * @param bufferRecycler The BufferRecycler instance
+     *
+     * @return ChunkEncoder constructed
+     */
+    public static ChunkEncoder optimalInstance(CompressionLevel level, int totalLength,
+            BufferRecycler bufferRecycler) {
+        if (level.getSearchDepth() > 0) {
+            return new HighRatioChunkEncoder(totalLength, bufferRecycler, level, true);
+        }
+        if (VarHandleChunkEncoders.isAvailable()) {
+            return VarHandleChunkEncoders.createEncoder(totalLength, bufferRecycler, level);
+        }
+        try {
+            return UnsafeChunkEncoders.createEncoder(totalLength, bufferRecycler, level);
+        } catch (Exception e) {
+            return safeInstance(level, totalLength, bufferRecycler);
+        }
+    }
+
+    /**
+     * Factory method for constructing encoder for specified compression level,
+     * that is always passed buffer externally, so that it will not (nor need)
+     * allocate encoding buffer.
+     *<p>
+     * Uses a ThreadLocal soft-referenced BufferRecycler instance.
+     *
+     * @return ChunkEncoder constructed
+     */
+    public static ChunkEncoder optimalNonAllocatingInstance(CompressionLevel level, int totalLength) {
+        return optimalNonAllocatingInstance(level, totalLength, BufferRecycler.instance());
+    }
+
+    /**
+     * Factory method for constructing encoder for specified compression level,
+     * that is always passed buffer externally, so that it will not (nor need)
+     * allocate encoding buffer.
+     *
+     * @return ChunkEncoder constructed
+     */
+    public static ChunkEncoder optimalNonAllocatingInstance(CompressionLevel level, int totalLength,
+            BufferRecycler bufferRecycler) {
+        if (level.getSearchDepth() > 0) {
+            return new HighRatioChunkEncoder(totalLength, bufferRecycler, level, false);
+        }
+        if (VarHandleChunkEncoders.isAvailable()) {
+            return VarHandleChunkEncoders.createNonAllocatingEncoder(totalLength, bufferRecycler, level);
+        }
+        try {
+            return UnsafeChunkEncoders.createNonAllocatingEncoder(totalLength, bufferRecycler, level);
+        } catch (Exception e) {
+            return safeNonAllocatingInstance(level, totalLength, bufferRecycler);
+        }
+    }
+
+    /**
+     * Method that can be used to ensure that a "safe" compressor instance of
+     * specified compression level is loaded.
+     * Safe here means that it should work on any and all Java platforms.
+     *<p>
+     * Uses a ThreadLocal soft-referenced BufferRecycler instance.
+     *
+     * @param level Compression level to use
+     * @param totalLength Expected total length of content to compress; only matters
+     *    for content that is smaller than maximum chunk size (64k), to optimize
+     *    encoding hash tables
+     *
+     * @return ChunkEncoder constructed
+     */
+    public static ChunkEncoder safeInstance(CompressionLevel level, int totalLength) {
+        return safeInstance(level, totalLength, BufferRecycler.instance());
+    }
+
+    /**
+     * Method that can be used to ensure that a "safe" compressor instance of
+     * specified compression level is loaded.
+     * Safe here means that it should work on any and all Java platforms.
+     *
+     * @param level Compression level to use
+     * @param totalLength Expected total length of content to compress; only matters
+     *    for content that is smaller than maximum chunk size (64k), to optimize
+     *    encoding hash tables
+     * @param bufferRecycler The BufferRecycler instance
+     *
+     * @return ChunkEncoder constructed
+     */
+    public static ChunkEncoder safeInstance(CompressionLevel level, int totalLength,
+            BufferRecycler bufferRecycler) {
+        if (level.getSearchDepth() > 0) {
+            return new HighRatioChunkEncoder(totalLength, bufferRecycler, level, true);
+        }
+        return new VanillaChunkEncoder(totalLength, bufferRecycler, level, true);
+    }
+
+    /**
+     * Factory method for constructing "safe" encoder for specified compression level,
+     * that is always passed buffer externally, so that it will not (nor need)
+     * allocate encoding buffer.
+     *<p>
+     * Uses a ThreadLocal soft-referenced BufferRecycler instance.
+     *
+     * @return ChunkEncoder constructed
+     */
+    public static ChunkEncoder safeNonAllocatingInstance(CompressionLevel level, int totalLength) {
+        return safeNonAllocatingInstance(level, totalLength, BufferRecycler.instance());
+    }
+
+    /**
+     * Factory method for constructing "safe" encoder for specified compression level,
+     * that is always passed buffer externally, so that it will not (nor need)
+     * allocate encoding buffer.
+     *
+     * @return ChunkEncoder constructed
+     */
+    public static ChunkEncoder safeNonAllocatingInstance(CompressionLevel level, int totalLength,
+            BufferRecycler bufferRecycler) {
+        if (level.getSearchDepth() > 0) {
+            return new HighRatioChunkEncoder(totalLength, bufferRecycler, level, false);
+        }
+        return new VanillaChunkEncoder(totalLength, bufferRecycler, level, false);
+    }
 }
@@ -1,6 +1,10 @@
 package com.ning.compress.lzf.util;
 
 import java.io.*;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
 
 import com.ning.compress.BufferRecycler;
 import com.ning.compress.lzf.*;
@@ -206,34 +210,45 @@ public class LZFFileInputStream
     @Override
     public int read(byte[] buffer, int offset, int length) throws IOException
     {
-        if (!readyBuffer()) {
-            return -1;
+        if (_inputStreamClosed) {
+            throw new IOException("Input stream closed");
         }
         if (length < 1) {
-            return 0;
-        }
-        // First let's read however much data we happen to have...
-        int chunkLength = Math.min(_bufferLength - _bufferPosition, length);
-        System.arraycopy(_decodedBytes, _bufferPosition, buffer, offset, chunkLength);
-        _bufferPosition += chunkLength;
-
-        if (chunkLength == length || !_cfgFullReads) {
-            return chunkLength;
+            return readyBuffer() ? 0 : -1;
         }
-        // Need more data, then
-        int totalRead = chunkLength;
-        do {
-            offset += chunkLength;
-            if (!readyBuffer()) {
+        int totalRead = 0;
+        while (true) {
+            if (_bufferPosition < _bufferLength) {
+                // First let's read however much data we happen to have...
+                int chunkLength = Math.min(_bufferLength - _bufferPosition, length - totalRead);
+                System.arraycopy(_decodedBytes, _bufferPosition, buffer, offset + totalRead, chunkLength);
+                _bufferPosition += chunkLength;
+                totalRead += chunkLength;
+            } else {
+                if (_inputStreamClosed) {
+                    break;
+                }
+                // then whole chunks directly into caller's buffer, if they fit; partial via our buffer
+                int amount = _decompressor.decodeOrBufferChunk(_wrapper, _inputBuffer,
+                        buffer, offset + totalRead, offset + length, _decodedBytes);
+                if (amount == -1) { // EOF; but return what we got first, if anything
+                    if (totalRead == 0) {
+                        close();
+                    }
+                    break;
+                }
+                if (amount < 0) { // did not fit, copied on next round
+                    _bufferLength = -(amount+1);
+                    _bufferPosition = 0;
+                    continue;
+                }
+                totalRead += amount;
+            }
+            if (totalRead == length || (totalRead > 0 && !_cfgFullReads)) {
                 break;
             }
-            chunkLength = Math.min(_bufferLength - _bufferPosition, (length - totalRead));
-            System.arraycopy(_decodedBytes, _bufferPosition, buffer, offset, chunkLength);
-            _bufferPosition += chunkLength;
-            totalRead += chunkLength;
-        } while (totalRead < length);
-
-        return totalRead;
+        }
+        return (totalRead == 0) ? -1 : totalRead;
     }
 
     /**
@@ -325,23 +340,133 @@ public class LZFFileInputStream
      */
     public int readAndWrite(OutputStream out) throws IOException
     {
-        int total = 0;
+        return (int) transferTo(out);
+    }
 
-        while (readyBuffer()) {
-            int avail = _bufferLength - _bufferPosition;
-            out.write(_decodedBytes, _bufferPosition, avail);
-            _bufferPosition += avail; // to ensure it looks like we consumed it all
-            total += avail;
+    /**
+     * Method that will read and uncompress all remaining data, and write it
+     * using given {@link OutputStream}: compressed chunks are decoded into a
+     * single reused buffer, and content of non-compressed chunks is read directly
+     * into it (so that they cost about the same as copying a file).
+     * Stream is closed once end of input is reached.
+     *
+     * @return Number of bytes written (uncompressed)
+     *
+     * @since 1.2.1
+     */
+    public long transferTo(OutputStream out) throws IOException
+    {
+        if (_inputStreamClosed) {
+            throw new IOException("Input stream closed");
+        }
+        long total = 0L;
+        if (_bufferPosition < _bufferLength) { // first, whatever we have buffered
+            out.write(_decodedBytes, _bufferPosition, _bufferLength - _bufferPosition);
+            total += _bufferLength - _bufferPosition;
+            _bufferPosition = _bufferLength = 0;
+        }
+        while (true) {
+            int len = _decompressor.decodeChunk(_wrapper, _inputBuffer, _decodedBytes);
+            if (len < 0) {
+                close();
+                return total;
+            }
+            out.write(_decodedBytes, 0, len);
+            total += len;
         }
-        return total;
     }
-    
+
+    /**
+     * Method that will read and uncompress all remaining data, and write it
+     * to given (blocking) channel: compressed chunks are decoded into a
+     * single reused buffer; and content of non-compressed chunks is transferred
+     * as is using {@link java.nio.channels.FileChannel#transferTo}, which
+     * (depending on target channel and platform) may avoid copying content
+     * through JVM altogether (such as with socket channels on Linux).
+     * If target does not accept content that way (or file is truncated while
+     * being read), content is copied through a buffer instead.
+     * Stream is closed once end of input is reached.
+     *
+     * @return Number of bytes written (uncompressed)
+     *
+     * @since 1.2.1
+     */
+    public long transferTo(WritableByteChannel out) throws IOException
+    {
+        if (_inputStreamClosed) {
+            throw new IOException("Input stream closed");
+        }
+        long total = 0L;
+        if (_bufferPosition < _bufferLength) {
+            total += _writeFully(out, ByteBuffer.wrap(_decodedBytes, _bufferPosition, _bufferLength - _bufferPosition));
+            _bufferPosition = _bufferLength = 0;
+        }
+        final FileChannel channel = getChannel();
+        final long size = channel.size();
+        while (true) {
+            int amount = _decompressor.decodeCompressedChunk(_wrapper, _inputBuffer, _decodedBytes);
+            if (amount == -1) { // EOF
+                close();
+                return total;
+            }
+            if (amount >= 0) { // compressed, decoded
+                total += _writeFully(out, ByteBuffer.wrap(_decodedBytes, 0, amount));
+                continue;
+            }
+            // non-compressed: header read, payload follows in file
+            final int len = -(amount+2);
+            long pos = channel.position();
+            final long end = pos + len;
+            if (end > size) {
+                throw new LZFException("EOF in "+len+" byte (uncompressed) block: could only read "
+                        +(size - pos)+" bytes");
+            }
+            while (pos < end) {
+                final long count = channel.transferTo(pos, end - pos, out);
+                if (count <= 0L) { // non-blocking target, or truncated file: copy the rest
+                    _copyFully(channel, pos, end, out);
+                    break;
+                }
+                pos += count;
+            }
+            channel.position(end);
+            total += len;
+        }
+    }
+
     /*
     ///////////////////////////////////////////////////////////////////////
     // Internal methods
     ///////////////////////////////////////////////////////////////////////
      */
 
+    /**
+     * Method for copying given range of (non-compressed) chunk content from file
+     * through decode buffer, for cases where it can not be transferred directly.
+     */
+    private void _copyFully(FileChannel in, long pos, long end, WritableByteChannel out) throws IOException
+    {
+        final int len = (int) (end - pos);
+        final ByteBuffer bb = ByteBuffer.wrap(_decodedBytes, 0, len);
+        while (bb.hasRemaining()) {
+            if (in.read(bb, pos + bb.position()) < 0) {
+                throw new LZFException("EOF in uncompressed block: could only read "
+                        +bb.position()+" of remaining "+len+" bytes");
+            }
+        }
+        ((Buffer) bb).flip();
+        _writeFully(out, bb);
+    }
+
+    private static int _writeFully(WritableByteChannel out, ByteBuffer bb) throws IOException
+    {
+        final int len = bb.remaining();
+        while (bb.hasRemaining()) {
+            out.write(bb);
+        }
+        return len;
+    }
+
     /**
      * Fill the uncompressed bytes buffer by reading the underlying inputStream.
      * @throws IOException
@@ -7,6 +7,7 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.Buffer;
 import java.nio.ByteBuffer;
 import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
@@ -15,7 +16,9 @@ import java.nio.channels.WritableByteChannel;
 
 import com.ning.compress.BufferRecycler;
 import com.ning.compress.lzf.ChunkEncoder;
+import com.ning.compress.lzf.CompressionLevel;
 import com.ning.compress.lzf.LZFChunk;
+import com.ning.compress.lzf.LZFChunkIndex;
 import com.ning.compress.lzf.LZFOutputStream;
 
 /**
@@ -59,6 +62,20 @@ public class LZFFileOutputStream extends FileOutputStream implements WritableByt
      */
     private final Wrapper _wrapper;
 
+    /**
+     * Index to add written chunks to, if any.
+     *
+     * @since 1.2.1
+     */
+    protected LZFChunkIndex _chunkIndex;
+
+    /**
+     * File to write chunk index to when closing, if any.
+     *
+     * @since 1.2.1
+     */
+    protected File _indexFile;
+
     /*
     ///////////////////////////////////////////////////////////////////////
     // Construction, configuration
@@ -85,6 +102,34 @@ public class LZFFileOutputStream extends FileOutputStream implements WritableByt
         this(ChunkEncoderFactory.optimalInstance(OUTPUT_BUFFER_SIZE), name, append);
     }
 
+    /**
+     * @since 1.2.1
+     */
+    public LZFFileOutputStream(File file, CompressionLevel level) throws FileNotFoundException {
+        this(ChunkEncoderFactory.optimalInstance(level, OUTPUT_BUFFER_SIZE), file);
+    }
+
+    /**
+     * @since 1.2.1
+     */
+    public LZFFileOutputStream(File file, boolean append, CompressionLevel level) throws FileNotFoundException {
+        this(ChunkEncoderFactory.optimalInstance(level, OUTPUT_BUFFER_SIZE), file, append);
+    }
+
+    /**
+     * @since 1.2.1
+     */
+    public LZFFileOutputStream(String name, CompressionLevel level) throws FileNotFoundException {
+        this(ChunkEncoderFactory.optimalInstance(level, OUTPUT_BUFFER_SIZE), name);
+    }
+
+    /**
+     * @since 1.2.1
+     */
+    public LZFFileOutputStream(String name, boolean append, CompressionLevel level) throws FileNotFoundException {
+        this(ChunkEncoderFactory.optimalInstance(level, OUTPUT_BUFFER_SIZE), name, append);
+    }
+
     public LZFFileOutputStream(ChunkEncoder encoder, File file) throws FileNotFoundException {
         this(encoder, file, encoder.getBufferRecycler());
     }
@@ -184,6 +229,9 @@ public class LZFFileOutputStream extends FileOutputStream implements WritableByt
                 _outputBuffer = null;
                 _recycler.releaseOutputBuffer(buf);
             }
+            if (_indexFile != null) {
+                _chunkIndex.writeTo(_indexFile);
+            }
         }
     }
 
@@ -218,7 +266,7 @@ public class LZFFileOutputStream extends FileOutputStream implements WritableByt
 
         // simple case first: empty _outputBuffer and "big" input buffer: write first full blocks, if any, without copying
         while (_position == 0 && length >= BUFFER_LEN) {
-            _encoder.encodeAndWriteChunk(buffer, offset, BUFFER_LEN, _wrapper);
+            writeChunk(buffer, offset, BUFFER_LEN);
             offset += BUFFER_LEN;
             length -= BUFFER_LEN;
         }
@@ -239,7 +287,7 @@ public class LZFFileOutputStream extends FileOutputStream implements WritableByt
 
         // then write intermediate full blocks, if any, without copying:
         while (length >= BUFFER_LEN) {
-            _encoder.encodeAndWriteChunk(buffer, offset, BUFFER_LEN, _wrapper);
+            writeChunk(buffer, offset, BUFFER_LEN);
             offset += BUFFER_LEN;
             length -= BUFFER_LEN;
         }
@@ -286,17 +334,12 @@ public class LZFFileOutputStream extends FileOutputStream implements WritableByt
             return r;
         }
         writeCompressedBlock(); // will flush _outputBuffer
-        if (src.hasArray()) {
-            // direct compression from backing array
-            write(src.array(), src.arrayOffset(), src.limit() - src.arrayOffset());
-        } else {
-            // need to copy to heap array first
-            while (src.hasRemaining()) {
-                int toRead = Math.min(src.remaining(), _outputBuffer.length);
-                src.get(_outputBuffer, 0, toRead);
-                _position = toRead;
-                writeCompressedBlock();
-            }
+        // then encode directly from the buffer (backing array, or content of direct buffer)
+        while (src.hasRemaining()) {
+            final int len = Math.min(src.remaining(), LZFChunk.MAX_CHUNK_LEN);
+            writeChunk(src, src.position(), len);
+            // (cast for Java 8 compatibility)
+            ((Buffer) src).position(src.position() + len);
         }
         return r;
     }
@@ -320,6 +363,47 @@ public class LZFFileOutputStream extends FileOutputStream implements WritableByt
         return _cfgFinishBlockOnFlush;
     }
 
+    /**
+     * Method for specifying index to add all chunks written to, for
+     * random access to content. Should be called before writing any content,
+     * since offsets are relative to the first chunk written after the call
+     * (and should not be used when appending to an existing file).
+     *
+     * @param index Index to add chunks to; or null to stop indexing
+     *
+     * @since 1.2.1
+     */
+    public LZFFileOutputStream setChunkIndex(LZFChunkIndex index) {
+        _chunkIndex = index;
+        return this;
+    }
+
+    /**
+     * Method for enabling indexing of chunks written (if not yet enabled with
+     * {@link #setChunkIndex}), and specifying file to write the index to when
+     * this stream is closed. Usually file to use is determined using
+     * {@link LZFChunkIndex#indexFileFor}, so that it can be found by
+     * {@link SeekableLZFInputStream}. Should be called before writing any content.
+     *
+     * @since 1.2.1
+     */
+    public LZFFileOutputStream setIndexFile(File indexFile) {
+        if (_chunkIndex == null) {
+            _chunkIndex = new LZFChunkIndex();
+        }
+        _indexFile = indexFile;
+        return this;
+    }
+
+    /**
+     * @return Index chunks are added to, if any
+     *
+     * @since 1.2.1
+     */
+    public LZFChunkIndex getChunkIndex() {
+        return _chunkIndex;
+    }
+
     /**
      * Method that can be used to force completion of the current block,
      * which means that all buffered data will be compressed into an
@@ -353,12 +437,42 @@ public class LZFFileOutputStream extends FileOutputStream implements WritableByt
 
         while (left > 0) {
             int chunkLen = Math.min(LZFChunk.MAX_CHUNK_LEN, left);
-            _encoder.encodeAndWriteChunk(_outputBuffer, offset, chunkLen, _wrapper);
+            writeChunk(_outputBuffer, offset, chunkLen);
             offset += chunkLen;
             left -= chunkLen;
         }
     }
 
+    /**
+     * Compress and write given chunk to the OutputStream, adding it to the
+     * chunk index if one is used
+     *
+     * @since 1.2.1
+     */
+    protected void writeChunk(byte[] buffer, int offset, int len) throws IOException
+    {
+        // note: not written using getChannel(), which would close stream if interrupted
+        final int encodedLen = _encoder.writeEncodedChunk(buffer, offset, len, _wrapper);
+        if (_chunkIndex != null) {
+            _chunkIndex.appendChunk(len, encodedLen);
+        }
+    }
+
+    /**
+     * Compress and write given chunk from given buffer (heap or direct one)
+     * to the OutputStream, adding it to the chunk index if one is used;
+     * position of the buffer is not changed.
+     *
+     * @since 1.2.1
+     */
+    protected void writeChunk(ByteBuffer buffer, int offset, int len) throws IOException
+    {
+        final int encodedLen = _encoder.writeEncodedChunk(buffer, offset, len, _wrapper);
+        if (_chunkIndex != null) {
+            _chunkIndex.appendChunk(len, encodedLen);
+        }
+    }
+
     protected void rawWrite(byte[] buffer, int offset, int length)  throws IOException
     {
         super.write(buffer, offset, length);
@@ -0,0 +1,387 @@
+package com.ning.compress.lzf.util;
+
+import java.io.*;
+import java.nio.Buffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+import com.ning.compress.BufferRecycler;
+import com.ning.compress.lzf.*;
+
+/**
+ * Reader for LZF files that maps the file in memory (using {@link FileChannel#map}),
+ * instead of reading it with {@link FileInputStream} like {@link LZFFileInputStream}
+ * does. Chunk headers are read in place, and chunks decoded directly from
+ * the mapped region into caller's buffers: there are no copies of compressed
+ * content, and no system calls per read. This works best for large files that
+ * are read multiple times (and are thus likely to stay in page cache).
+ *<p>
+ * Since a single mapping can not exceed 2 gigabytes, files are mapped using a
+ * sliding window (of {@link #DEFAULT_WINDOW_SIZE} bytes by default): a new window
+ * is mapped when the next chunk does not fit within the current one.
+ *<p>
+ * Note that JDK does not allow explicit unmapping of buffers: mapped regions are
+ * released when they are garbage collected, which may be well after
+ * {@link #close()} has been called.
+ *<p>
+ * Instances are not thread-safe.
+ *
+ * @since 1.2.1
+ */
+public class MappedLZFFile
+    implements Closeable
+{
+    /**
+     * Default size of regions mapped at a time: 1 gigabyte.
+     */
+    public final static int DEFAULT_WINDOW_SIZE = 1 << 30;
+
+    /**
+     * Minimum window size: must fit a maximum length chunk, including its header.
+     */
+    public final static int MIN_WINDOW_SIZE = LZFChunk.MAX_HEADER_LEN + LZFChunk.MAX_CHUNK_LEN;
+
+    protected final ChunkDecoder _decoder;
+
+    protected final BufferRecycler _recycler;
+
+    protected final FileChannel _channel;
+
+    /**
+     * Length of the (compressed) file
+     */
+    protected final long _fileLength;
+
+    /**
+     * Maximum length of regions to map at a time
+     */
+    protected final int _windowSize;
+
+    /**
+     * Currently mapped region of the file, if any
+     */
+    protected MappedByteBuffer _window;
+
+    /**
+     * Offset of the currently mapped region within file
+     */
+    protected long _windowStart;
+
+    /**
+     * Offset of the next chunk to read within file
+     */
+    protected long _nextChunk;
+
+    /**
+     * Buffer for content of the last chunk, when caller's buffer did not have room
+     * for all of it (allocated lazily)
+     */
+    protected byte[] _decodedBytes;
+
+    /**
+     * The current position (next byte to return) in {@link #_decodedBytes}
+     */
+    protected int _bufferPosition;
+
+    /**
+     * Length of content in {@link #_decodedBytes}
+     */
+    protected int _bufferLength;
+
+    protected boolean _closed;
+
+    /*
+    ///////////////////////////////////////////////////////////////////////
+    // Construction
+    ///////////////////////////////////////////////////////////////////////
+     */
+
+    public MappedLZFFile(File file) throws IOException {
+        this(file, ChunkDecoderFactory.optimalInstance(), BufferRecycler.instance(), DEFAULT_WINDOW_SIZE);
+    }
+
+    public MappedLZFFile(File file, ChunkDecoder decoder) throws IOException {
+        this(file, decoder, BufferRecycler.instance(), DEFAULT_WINDOW_SIZE);
+    }
+
+    /**
+     * @param windowSize Maximum length of regions of the file to map at a time;
+     *    at least {@link #MIN_WINDOW_SIZE}
+     */
+    public MappedLZFFile(File file, ChunkDecoder decoder, BufferRecycler bufferRecycler,
+            int windowSize) throws IOException
+    {
+        if (windowSize < MIN_WINDOW_SIZE) {
+            throw new IllegalArgumentException("Invalid window size ("+windowSize+"): must be at least "+MIN_WINDOW_SIZE);
+        }
+        _decoder = decoder;
+        _recycler = bufferRecycler;
+        _windowSize = windowSize;
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            _channel = raf.getChannel();
+            _fileLength = _channel.size();
+        } catch (IOException | RuntimeException e) {
+            // not to leak file handle, since caller gets no instance to close
+            try {
+                raf.close();
+            } catch (IOException e2) {
+                e.addSuppressed(e2);
+            }
+            throw e;
+        }
+    }
+
+    /*
+    ///////////////////////////////////////////////////////////////////////
+    // Public API
+    ///////////////////////////////////////////////////////////////////////
+     */
+
+    /**
+     * @return Length of the (compressed) file
+     */
+    public long length() {
+        return _fileLength;
+    }
+
+    /**
+     * Method that calculates total uncompressed length of the file, by walking
+     * through all chunk headers (without decoding any content). Does not change
+     * read position.
+     */
+    public long getUncompressedLength() throws IOException
+    {
+        _checkNotClosed();
+        long total = 0L;
+        long offset = 0L;
+        while (true) {
+            int headerLen = _mapHeader(offset);
+            if (headerLen == 0) {
+                break;
+            }
+            final int ptr = (int) (offset - _windowStart);
+            final int len = _uint16(ptr+3);
+            if (headerLen == LZFChunk.HEADER_LEN_COMPRESSED) {
+                total += _uint16(ptr+5);
+            } else {
+                total += len;
+            }
+            offset += headerLen + len;
+        }
+        return total;
+    }
+
+    /**
+     * Method for reading next <code>length</code> bytes of uncompressed content
+     * (or as many as remain, if fewer). Content of chunks is decoded directly into
+     * given buffer, except for the last chunk if there is not enough room for all of
+     * its content.
+     *
+     * @return Number of bytes read; or -1 if end of file was reached
+     */
+    public int read(byte[] buffer, int offset, int length) throws IOException
+    {
+        _checkNotClosed();
+        if (length < 1) {
+            return 0;
+        }
+        int total = 0;
+        // First, leftovers from a chunk decoded earlier
+        if (_bufferPosition < _bufferLength) {
+            total = Math.min(_bufferLength - _bufferPosition, length);
+            System.arraycopy(_decodedBytes, _bufferPosition, buffer, offset, total);
+            _bufferPosition += total;
+        }
+        while (total < length) {
+            final int headerLen = _mapHeader(_nextChunk);
+            if (headerLen == 0) {
+                break;
+            }
+            int ptr = (int) (_nextChunk - _windowStart);
+            final int len = _uint16(ptr+3);
+            final int uncompLen = (headerLen == LZFChunk.HEADER_LEN_COMPRESSED) ? _uint16(ptr+5) : len;
+            // may need to map a new window if the whole chunk is not mapped
+            _mapChunk(_nextChunk, headerLen + len);
+            ptr = (int) (_nextChunk - _windowStart);
+            final int left = length - total;
+            if (uncompLen <= left) { // fits, decode directly
+                _decodeChunk(ptr, headerLen, len, uncompLen, buffer, offset + total);
+                total += uncompLen;
+            } else {
+                if (_decodedBytes == null) {
+                    _decodedBytes = _recycler.allocDecodeBuffer(LZFChunk.MAX_CHUNK_LEN);
+                }
+                _decodeChunk(ptr, headerLen, len, uncompLen, _decodedBytes, 0);
+                System.arraycopy(_decodedBytes, 0, buffer, offset + total, left);
+                _bufferPosition = left;
+                _bufferLength = uncompLen;
+                total += left;
+            }
+            _nextChunk += headerLen + len;
+        }
+        return (total == 0) ? -1 : total;
+    }
+
+    public int read(byte[] buffer) throws IOException {
+        return read(buffer, 0, buffer.length);
+    }
+
+    /**
+     * Method for skipping up to <code>n</code> bytes of uncompressed content.
+     * Full chunks are skipped without decoding, based on their headers.
+     *
+     * @return Number of bytes skipped (less than <code>n</code> only if end of file was reached)
+     */
+    public long skip(long n) throws IOException
+    {
+        _checkNotClosed();
+        if (n <= 0L) {
+            return 0L;
+        }
+        long skipped = 0L;
+        if (_bufferPosition < _bufferLength) {
+            int amount = (int) Math.min(_bufferLength - _bufferPosition, n);
+            _bufferPosition += amount;
+            skipped = amount;
+        }
+        while (skipped < n) {
+            final int headerLen = _mapHeader(_nextChunk);
+            if (headerLen == 0) {
+                break;
+            }
+            int ptr = (int) (_nextChunk - _windowStart);
+            final int len = _uint16(ptr+3);
+            final int uncompLen = (headerLen == LZFChunk.HEADER_LEN_COMPRESSED) ? _uint16(ptr+5) : len;
+            final long left = n - skipped;
+            if (uncompLen > left) { // partial skip, must decode
+                _mapChunk(_nextChunk, headerLen + len);
+                ptr = (int) (_nextChunk - _windowStart);
+                if (_decodedBytes == null) {
+                    _decodedBytes = _recycler.allocDecodeBuffer(LZFChunk.MAX_CHUNK_LEN);
+                }
+                _decodeChunk(ptr, headerLen, len, uncompLen, _decodedBytes, 0);
+                _bufferPosition = (int) left;
+                _bufferLength = uncompLen;
+                skipped = n;
+            } else {
+                skipped += uncompLen;
+            }
+            _nextChunk += headerLen + len;
+        }
+        return skipped;
+    }
+
+    /**
+     * Method for moving read position back to the beginning of the file.
+     */
+    public void rewind() throws IOException
+    {
+        _checkNotClosed();
+        _nextChunk = 0L;
+        _bufferPosition = _bufferLength = 0;
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        if (!_closed) {
+            _closed = true;
+            _window = null;
+            _bufferPosition = _bufferLength = 0;
+            byte[] buf = _decodedBytes;
+            if (buf != null) {
+                _decodedBytes = null;
+                _recycler.releaseDecodeBuffer(buf);
+            }
+            _channel.close();
+        }
+    }
+
+    /*
+    ///////////////////////////////////////////////////////////////////////
+    // Internal methods
+    ///////////////////////////////////////////////////////////////////////
+     */
+
+    /**
+     * Method that ensures that header of the chunk at given offset is mapped,
+     * and validates it.
+     *
+     * @return Length of chunk header; or 0 if end of file was reached
+     */
+    protected int _mapHeader(long offset) throws IOException
+    {
+        final long left = _fileLength - offset;
+        if (left <= 0L) {
+            return 0;
+        }
+        _mapChunk(offset, (int) Math.min(left, LZFChunk.MAX_HEADER_LEN));
+        final int ptr = (int) (offset - _windowStart);
+        // can use optional end marker
+        if (left == 1L && _window.get(ptr) == 0) {
+            return 0;
+        }
+        if (left < LZFChunk.HEADER_LEN_NOT_COMPRESSED) {
+            throw new LZFException("Corrupt input data (at offset "+offset+"): truncated block header");
+        }
+        if (_window.get(ptr) != LZFChunk.BYTE_Z || _window.get(ptr+1) != LZFChunk.BYTE_V) {
+            throw new LZFException("Corrupt input data (at offset "+offset+"): did not start with 'ZV' signature bytes");
+        }
+        final int type = _window.get(ptr+2);
+        final int headerLen;
+        if (type == LZFChunk.BLOCK_TYPE_NON_COMPRESSED) {
+            headerLen = LZFChunk.HEADER_LEN_NOT_COMPRESSED;
+        } else if (type == LZFChunk.BLOCK_TYPE_COMPRESSED) {
+            headerLen = LZFChunk.HEADER_LEN_COMPRESSED;
+        } else {
+            throw new LZFException("Corrupt input data (at offset "+offset+"): unrecognized block type "+(type & 0xFF));
+        }
+        if (left < (headerLen + _uint16(ptr+3))) {
+            throw new LZFException("Corrupt input data (at offset "+offset+"): block extends beyond end of file");
+        }
+        return headerLen;
+    }
+
+    /**
+     * Method that ensures that given region of the file is within the
+     * currently mapped window; and if not, maps a new window starting at
+     * given offset.
+     */
+    protected void _mapChunk(long offset, int length) throws IOException
+    {
+        if (_window != null && offset >= _windowStart
+                && (offset + length) <= (_windowStart + _window.capacity())) {
+            return;
+        }
+        final long size = Math.min((long) _windowSize, _fileLength - offset);
+        _window = _channel.map(FileChannel.MapMode.READ_ONLY, offset, size);
+        _windowStart = offset;
+    }
+
+    /**
+     * @param ptr Index of the chunk (its header) within current window
+     */
+    protected void _decodeChunk(int ptr, int headerLen, int len, int uncompLen, byte[] out, int outPtr)
+        throws IOException
+    {
+        final int inPtr = ptr + headerLen;
+        if (headerLen == LZFChunk.HEADER_LEN_NOT_COMPRESSED) {
+            // (note: position setter called via `Buffer` for Java 8 compatibility)
+            ((Buffer) _window).position(inPtr);
+            _window.get(out, outPtr, len);
+        } else {
+            _decoder.decodeBufferChunk(_window, inPtr, inPtr + len, out, outPtr, outPtr + uncompLen);
+        }
+    }
+
+    protected int _uint16(int ptr) {
+        return ((_window.get(ptr) & 0xFF) << 8) + (_window.get(ptr+1) & 0xFF);
+    }
+
+    protected void _checkNotClosed() throws IOException {
+        if (_closed) {
+            throw new IOException("MappedLZFFile already closed");
+        }
+    }
+}
@@ -0,0 +1,330 @@
+package com.ning.compress.lzf.util;
+
+import java.io.*;
+
+import com.ning.compress.BufferRecycler;
+import com.ning.compress.lzf.*;
+
+/**
+ * {@link InputStream} for reading LZF files that supports random access to content
+ * using {@link #seek(long)}, based on {@link LZFChunkIndex}: chunk that contains
+ * given uncompressed offset is found using binary search, and only that chunk
+ * is read and decoded. This is much faster than sequential skipping (as done by
+ * {@link LZFFileInputStream#skip}) for large files, since it does not need to read
+ * headers of all the chunks before position.
+ *<p>
+ * Index is usually read from the "sidecar" index file (see
+ * {@link LZFChunkIndex#indexFileFor}), written using
+ * {@link LZFFileOutputStream#setIndexFile}; if there is no index file, index is
+ * built when stream is opened, by reading through chunk headers of the file.
+ *<p>
+ * Instances are not thread-safe.
+ *
+ * @since 1.2.1
+ */
+public class SeekableLZFInputStream
+    extends InputStream
+{
+    protected final ChunkDecoder _decoder;
+
+    protected final BufferRecycler _recycler;
+
+    protected final RandomAccessFile _file;
+
+    protected final LZFChunkIndex _index;
+
+    /**
+     * Buffer for reading content of compressed chunks
+     */
+    protected byte[] _inputBuffer;
+
+    protected final byte[] _headerBuffer = new byte[LZFChunk.MAX_HEADER_LEN];
+
+    /**
+     * Buffer for decoded content of the current chunk
+     */
+    protected byte[] _decodedBytes;
+
+    /**
+     * The current position (next byte to return) in {@link #_decodedBytes}
+     */
+    protected int _bufferPosition;
+
+    /**
+     * Length of content in {@link #_decodedBytes}
+     */
+    protected int _bufferLength;
+
+    /**
+     * Index of chunk contained in {@link #_decodedBytes}, if any; -1 if none
+     */
+    protected int _currentChunk = -1;
+
+    /**
+     * Uncompressed offset of the next byte to read
+     */
+    protected long _position;
+
+    /**
+     * Current position of the underlying file, to avoid unnecessary seeks when
+     * reading sequentially
+     */
+    protected long _filePointer;
+
+    protected boolean _closed;
+
+    /*
+    ///////////////////////////////////////////////////////////////////////
+    // Construction
+    ///////////////////////////////////////////////////////////////////////
+     */
+
+    /**
+     * Constructor that will read chunk index from the index file of given LZF file
+     * (as determined by {@link LZFChunkIndex#indexFileFor}), if one exists;
+     * otherwise builds index by reading through the file.
+     */
+    public SeekableLZFInputStream(File file) throws IOException {
+        this(file, _readOrBuildIndex(file), ChunkDecoderFactory.optimalInstance(), BufferRecycler.instance());
+    }
+
+    public SeekableLZFInputStream(File file, LZFChunkIndex index) throws IOException {
+        this(file, index, ChunkDecoderFactory.optimalInstance(), BufferRecycler.instance());
+    }
+
+    public SeekableLZFInputStream(File file, LZFChunkIndex index, ChunkDecoder decoder,
+            BufferRecycler bufferRecycler) throws IOException
+    {
+        _decoder = decoder;
+        _recycler = bufferRecycler;
+        _index = index;
+        _file = new RandomAccessFile(file, "r");
+        // must at least verify that index is not for some other (longer) content
+        if (index.getCompressedLength() > _file.length()) {
+            _file.close();
+            throw new LZFException("Chunk index does not match file '"+file+"': index for "
+                    +index.getCompressedLength()+" bytes, file only has "+_file.length());
+        }
+        _inputBuffer = bufferRecycler.allocInputBuffer(LZFChunk.MAX_CHUNK_LEN);
+        _decodedBytes = bufferRecycler.allocDecodeBuffer(LZFChunk.MAX_CHUNK_LEN);
+    }
+
+    /*
+    ///////////////////////////////////////////////////////////////////////
+    // Seeking
+    ///////////////////////////////////////////////////////////////////////
+     */
+
+    /**
+     * Method for changing read position to given uncompressed offset. Position may
+     * be set beyond end of content, in which case reads will indicate end-of-stream.
+     */
+    public void seek(long position) throws IOException
+    {
+        _checkNotClosed();
+        if (position < 0L) {
+            throw new IllegalArgumentException("Invalid position ("+position+"): can not be negative");
+        }
+        _position = position;
+        // within the current chunk?
+        if (_currentChunk >= 0) {
+            final long chunkStart = _index.getUncompressedOffset(_currentChunk);
+            if (position >= chunkStart && position < chunkStart + _bufferLength) {
+                _bufferPosition = (int) (position - chunkStart);
+                return;
+            }
+        }
+        // if not, chunk to read is determined on next read
+        _bufferPosition = _bufferLength = 0;
+    }
+
+    /**
+     * @return Current read position, as uncompressed offset
+     */
+    public long position() {
+        return _position;
+    }
+
+    /**
+     * @return Uncompressed length of content
+     */
+    public long length() {
+        return _index.getUncompressedLength();
+    }
+
+    public LZFChunkIndex getChunkIndex() {
+        return _index;
+    }
+
+    /*
+    ///////////////////////////////////////////////////////////////////////
+    // InputStream impl
+    ///////////////////////////////////////////////////////////////////////
+     */
+
+    @Override
+    public int available() {
+        return _bufferLength - _bufferPosition;
+    }
+
+    @Override
+    public int read() throws IOException
+    {
+        if (!_readyBuffer()) {
+            return -1;
+        }
+        ++_position;
+        return _decodedBytes[_bufferPosition++] & 255;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException
+    {
+        if (length < 1) {
+            return 0;
+        }
+        int total = 0;
+        while (total < length && _readyBuffer()) {
+            final int count = Math.min(_bufferLength - _bufferPosition, length - total);
+            System.arraycopy(_decodedBytes, _bufferPosition, buffer, offset + total, count);
+            _bufferPosition += count;
+            _position += count;
+            total += count;
+        }
+        return (total == 0) ? -1 : total;
+    }
+
+    /**
+     * Overridden to just move read position (see {@link #seek}), without reading content.
+     */
+    @Override
+    public long skip(long n) throws IOException
+    {
+        _checkNotClosed();
+        if (n <= 0L) {
+            return 0L;
+        }
+        final long left = length() - _position;
+        if (left <= 0L) {
+            return 0L;
+        }
+        final long skipped = Math.min(n, left);
+        seek(_position + skipped);
+        return skipped;
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        if (!_closed) {
+            _closed = true;
+            _bufferPosition = _bufferLength = 0;
+            _currentChunk = -1;
+            byte[] buf = _inputBuffer;
+            if (buf != null) {
+                _inputBuffer = null;
+                _recycler.releaseInputBuffer(buf);
+            }
+            buf = _decodedBytes;
+            if (buf != null) {
+                _decodedBytes = null;
+                _recycler.releaseDecodeBuffer(buf);
+            }
+            _file.close();
+        }
+    }
+
+    /*
+    ///////////////////////////////////////////////////////////////////////
+    // Internal methods
+    ///////////////////////////////////////////////////////////////////////
+     */
+
+    /**
+     * Method that ensures that there is content to read in {@link #_decodedBytes},
+     * by reading and decoding chunk that contains current position if necessary.
+     *
+     * @return True if there is content to read; false if at end of content
+     */
+    protected boolean _readyBuffer() throws IOException
+    {
+        _checkNotClosed();
+        if (_bufferPosition < _bufferLength) {
+            return true;
+        }
+        final int chunk = _index.findChunk(_position);
+        if (chunk < 0) {
+            return false;
+        }
+        _readChunk(chunk);
+        _bufferPosition = (int) (_position - _index.getUncompressedOffset(chunk));
+        return true;
+    }
+
+    protected void _readChunk(int chunk) throws IOException
+    {
+        _currentChunk = -1;
+        final long offset = _index.getCompressedOffset(chunk);
+        final int encodedLen = _index.getCompressedLength(chunk);
+        final int uncompLen = _index.getUncompressedLength(chunk);
+        if (encodedLen < LZFChunk.HEADER_LEN_NOT_COMPRESSED) {
+            throw new LZFException("Corrupt chunk index, chunk #"+chunk+": invalid length ("+encodedLen+")");
+        }
+        if (_filePointer != offset) {
+            _file.seek(offset);
+            _filePointer = offset;
+        }
+        // Read full header (or, for non-compressed chunks, header and 2 bytes of content)
+        final byte[] header = _headerBuffer;
+        final int headerRead = Math.min(LZFChunk.MAX_HEADER_LEN, encodedLen);
+        _readFully(header, 0, headerRead, chunk);
+        if (header[0] != LZFChunk.BYTE_Z || header[1] != LZFChunk.BYTE_V) {
+            throw new LZFException("Corrupt input data, chunk #"+chunk+" (at offset "+offset+"): did not start with 'ZV' signature bytes");
+        }
+        final int type = header[2];
+        final int len = ((header[3] & 0xFF) << 8) | (header[4] & 0xFF);
+        if (type == LZFChunk.BLOCK_TYPE_NON_COMPRESSED
+                && encodedLen == LZFChunk.HEADER_LEN_NOT_COMPRESSED + len && uncompLen == len) {
+            // can read directly in the decode buffer
+            final int inHeader = headerRead - LZFChunk.HEADER_LEN_NOT_COMPRESSED;
+            System.arraycopy(header, LZFChunk.HEADER_LEN_NOT_COMPRESSED, _decodedBytes, 0, inHeader);
+            _readFully(_decodedBytes, inHeader, len - inHeader, chunk);
+        } else if (type == LZFChunk.BLOCK_TYPE_COMPRESSED
+                && encodedLen == LZFChunk.HEADER_LEN_COMPRESSED + len
+                && uncompLen == (((header[5] & 0xFF) << 8) | (header[6] & 0xFF))) {
+            _readFully(_inputBuffer, 0, len, chunk);
+            _decoder.decodeChunk(_inputBuffer, 0, len, _decodedBytes, 0, uncompLen);
+        } else {
+            throw new LZFException("Corrupt input data, chunk #"+chunk+" (at offset "+offset+"): chunk header does not match chunk index");
+        }
+        _bufferLength = uncompLen;
+        _currentChunk = chunk;
+    }
+
+    private void _readFully(byte[] buffer, int offset, int len, int chunk) throws IOException
+    {
+        try {
+            _file.readFully(buffer, offset, len);
+        } catch (EOFException e) {
+            throw new LZFException("Corrupt input data, chunk #"+chunk+": extends beyond end of file");
+        }
+        _filePointer += len;
+    }
+
+    protected void _checkNotClosed() throws IOException {
+        if (_closed) {
+            throw new IOException(getClass().getName()+" already closed");
+        }
+    }
+
+    private static LZFChunkIndex _readOrBuildIndex(File file) throws IOException
+    {
+        File indexFile = LZFChunkIndex.indexFileFor(file);
+        if (indexFile.isFile()) {
+            return LZFChunkIndex.readFrom(indexFile);
+        }
+        try (InputStream in = new FileInputStream(file)) {
+            return LZFChunkIndex.build(in);
+        }
+    }
+}
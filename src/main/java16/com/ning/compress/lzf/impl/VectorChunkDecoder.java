@@ -0,0 +1,352 @@
+package com.ning.compress.lzf.impl;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.VectorSpecies;
+
+import com.ning.compress.lzf.*;
+
+/**
+ * {@link ChunkDecoder} implementation that uses Vector API
+ * (incubating module <code>jdk.incubator.vector</code>, available since Java 16)
+ * for copying literal runs and non-overlapping back-references;
+ * otherwise same as {@link VarHandleChunkDecoder}.
+ *<p>
+ * This class is only included (as a multi-release jar entry) for Java 16 and above,
+ * and only used if module <code>jdk.incubator.vector</code> is available at runtime
+ * (with <code>--add-modules jdk.incubator.vector</code>); should be accessed using
+ * {@link com.ning.compress.lzf.util.ChunkDecoderFactory}.
+ *
+ * @since 1.2.1
+ */
+public class VectorChunkDecoder extends ChunkDecoder
+{
+    // byte order does not matter, as these are only used for copying
+    private final static VarHandle LONG = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.nativeOrder());
+    private final static VarHandle INT = MethodHandles.byteArrayViewVarHandle(int[].class, ByteOrder.nativeOrder());
+
+    // 32-byte vectors if supported by hardware, otherwise 16-byte ones
+    private final static VectorSpecies<Byte> SPECIES = (ByteVector.SPECIES_PREFERRED.length() >= 32)
+            ? ByteVector.SPECIES_256 : ByteVector.SPECIES_128;
+    private final static int VECTOR_LEN = SPECIES.length();
+
+    // decoding from ByteBuffers is delegated, as it is not (yet) vectorized
+    private final static VarHandleChunkDecoder BUFFER_DECODER = new VarHandleChunkDecoder();
+
+    public VectorChunkDecoder() { }
+
+    @Override
+    public final int decodeChunk(final InputStream is, final byte[] inputBuffer, final byte[] outputBuffer)
+        throws IOException
+    {
+        /* note: we do NOT read more than 5 bytes because otherwise might need to shuffle bytes
+         * for output buffer (could perhaps optimize in future?)
+         */
+        int bytesRead = readHeader(is, inputBuffer);
+        if ((bytesRead < HEADER_BYTES)
+                || inputBuffer[0] != LZFChunk.BYTE_Z || inputBuffer[1] != LZFChunk.BYTE_V) {
+            if (bytesRead == 0) { // probably fine, clean EOF
+                return -1;
+            }
+            _reportCorruptHeader();
+        }
+        int type = inputBuffer[2];
+        int compLen = uint16(inputBuffer, 3);
+        if (type == LZFChunk.BLOCK_TYPE_NON_COMPRESSED) { // uncompressed
+            readFully(is, false, outputBuffer, 0, compLen);
+            return compLen;
+        }
+        // compressed
+        readFully(is, true, inputBuffer, 0, 2+compLen); // first 2 bytes are uncompressed length
+        int uncompLen = uint16(inputBuffer, 0);
+        decodeChunk(inputBuffer, 2, 2 + compLen, outputBuffer, 0, uncompLen);
+        return uncompLen;
+    }
+
+    @Override
+    public void decodeChunk(byte[] in, int inPos, byte[] out, int outPos, int outEnd) throws LZFException {
+        decodeChunk(in, inPos, in.length, out, outPos, outEnd);
+    }
+
+    @Override
+    public final void decodeChunk(byte[] in, int inPos, int inEnd, byte[] out, int outPos, int outEnd)
+        throws LZFException
+    {
+        // Sanity checks; accesses are bounds-checked, but need to verify range within arrays too
+        checkArrayIndices(in, inPos, inEnd);
+        checkArrayIndices(out, outPos, outEnd);
+
+        final int outPosStart = outPos;
+
+        // We need to take care of end condition, leave last 32 bytes out
+        final int inputEnd32 = inEnd - 32;
+        final int outputEnd8 = outEnd - 8;
+        final int outputEnd32 = outEnd - 32;
+
+        main_loop:
+        do {
+            int ctrl = in[inPos++] & 255;
+            while (ctrl < LZFChunk.MAX_LITERAL) { // literal run(s)
+                if (outPos > outputEnd32 || inPos > inputEnd32) {
+                    System.arraycopy(in, inPos, out, outPos, ctrl+1);
+                } else {
+                    copyUpTo32(in, inPos, out, outPos, ctrl);
+                }
+                ++ctrl;
+                inPos += ctrl;
+                outPos += ctrl;
+                if (outPos >= outEnd) {
+                    break main_loop;
+                }
+                ctrl = in[inPos++] & 255;
+            }
+            // back reference
+            int len = ctrl >> 5;
+            ctrl = -((ctrl & 0x1f) << 8) - 1;
+            // short back reference? 2 bytes; run lengths of 2 - 8 bytes
+            if (len < 7) {
+                ctrl -= in[inPos++] & 255;
+                if (ctrl < -7 && outPos < outputEnd8) { // non-overlapping? can use efficient bulk copy
+                    if (outPos + ctrl < outPosStart) {
+                        throw new LZFException("Invalid back reference");
+                    }
+                    LONG.set(out, outPos, (long) LONG.get(out, outPos + ctrl));
+                    outPos += len+2;
+                    continue;
+                }
+                // otherwise, byte-by-byte
+                outPos = copyOverlappingShort(out, outPos, ctrl, len);
+                continue;
+            }
+            // long back reference: 3 bytes, length of up to 264 bytes
+            len = (in[inPos++] & 255) + 9;
+            ctrl -= in[inPos++] & 255;
+            // First: ovelapping case can't use default handling, off line.
+            if ((ctrl > -9) || (outPos > outputEnd32)) {
+                outPos = copyOverlappingLong(out, outPos, ctrl, len-9);
+                continue;
+            }
+            // but non-overlapping is simple
+            if (outPos + ctrl < outPosStart) {
+                throw new LZFException("Invalid back reference");
+            }
+            if (len <= 32) {
+                copyUpTo32(out, outPos+ctrl, outPos, len-1);
+                outPos += len;
+                continue;
+            }
+            copyLong(out, outPos+ctrl, outPos, len, outputEnd32);
+            outPos += len;
+        } while (outPos < outEnd);
+
+        // sanity check to guard against corrupt data:
+        if (inPos != inEnd) {
+            throw new LZFException("Corrupt data: unexpected input amount was consumed");
+        }
+        if (outPos != outEnd) {
+            throw new LZFException("Corrupt data: overrun in decompress, input offset "+inPos+", output offset "+outPos);
+        }
+    }
+
+    @Override
+    public void decodeBufferChunk(ByteBuffer in, int inPos, int inEnd, byte[] out, int outPos, int outEnd)
+        throws LZFException
+    {
+        if (in.hasArray()) {
+            final int offset = in.arrayOffset();
+            decodeChunk(in.array(), offset + inPos, offset + inEnd, out, outPos, outEnd);
+        } else {
+            BUFFER_DECODER.decodeBufferChunk(in, inPos, inEnd, out, outPos, outEnd);
+        }
+    }
+
+    @Override
+    public void decodeBufferChunk(ByteBuffer in, int inPos, int inEnd, ByteBuffer out, int outPos, int outEnd)
+        throws LZFException
+    {
+        BUFFER_DECODER.decodeBufferChunk(in, inPos, inEnd, out, outPos, outEnd);
+    }
+
+    @Override
+    public int skipOrDecodeChunk(final InputStream is, final byte[] inputBuffer,
+            final byte[] outputBuffer, final long maxToSkip)
+        throws IOException
+    {
+        int bytesRead = readHeader(is, inputBuffer);
+        if ((bytesRead < HEADER_BYTES)
+                || inputBuffer[0] != LZFChunk.BYTE_Z || inputBuffer[1] != LZFChunk.BYTE_V) {
+            if (bytesRead == 0) { // probably fine, clean EOF
+                return -1;
+            }
+            _reportCorruptHeader();
+        }
+        int type = inputBuffer[2];
+        int compLen = uint16(inputBuffer, 3);
+        if (type == LZFChunk.BLOCK_TYPE_NON_COMPRESSED) { // uncompressed, simple
+            if (compLen <= maxToSkip) {
+                skipFully(is, compLen);
+                return compLen;
+            }
+            readFully(is, false, outputBuffer, 0, compLen);
+            return -(compLen+1);
+        }
+        // compressed: need 2 more bytes to know uncompressed length...
+        readFully(is, true, inputBuffer, 0, 2);
+        int uncompLen = uint16(inputBuffer, 0);
+        // can we just skip it wholesale?
+        if (uncompLen <= maxToSkip) { // awesome: skip N physical compressed bytes, which mean M logical (uncomp) bytes
+            skipFully(is, compLen);
+            return uncompLen;
+        }
+        // otherwise, read and uncompress the chunk normally
+        readFully(is, true, inputBuffer, 2, compLen); // first 2 bytes are uncompressed length
+        decodeChunk(inputBuffer, 2, 2 + compLen, outputBuffer, 0, uncompLen);
+        return -(uncompLen+1);
+    }
+    
+    /*
+    ///////////////////////////////////////////////////////////////////////
+    // Internal methods
+    ///////////////////////////////////////////////////////////////////////
+     */
+
+    /**
+     * @param start start index, inclusive
+     * @param end end index, exclusive
+     */
+    private static void checkArrayIndices(byte[] array, int start, int end) {
+        if (start < 0 || end < start || end > array.length) {
+            throw new ArrayIndexOutOfBoundsException();
+        }
+    }
+
+    private final int copyOverlappingShort(final byte[] out, int outPos, final int offset, int len)
+    {
+        out[outPos] = out[outPos++ + offset];
+        out[outPos] = out[outPos++ + offset];
+        switch (len) {
+        case 6:
+            out[outPos] = out[outPos++ + offset];
+        case 5:
+            out[outPos] = out[outPos++ + offset];
+        case 4:
+            out[outPos] = out[outPos++ + offset];
+        case 3:
+            out[outPos] = out[outPos++ + offset];
+        case 2:
+            out[outPos] = out[outPos++ + offset];
+        case 1:
+            out[outPos] = out[outPos++ + offset];
+        }
+        return outPos;
+    }
+
+    private final static int copyOverlappingLong(final byte[] out, int outPos, final int offset, int len)
+    {
+        // otherwise manual copy: so first just copy 9 bytes we know are needed
+        out[outPos] = out[outPos++ + offset];
+        out[outPos] = out[outPos++ + offset];
+        out[outPos] = out[outPos++ + offset];
+        out[outPos] = out[outPos++ + offset];
+        out[outPos] = out[outPos++ + offset];
+        out[outPos] = out[outPos++ + offset];
+        out[outPos] = out[outPos++ + offset];
+        out[outPos] = out[outPos++ + offset];
+        out[outPos] = out[outPos++ + offset];
+
+        // then loop
+        // Odd: after extensive profiling, looks like magic number
+        // for unrolling is 4: with 8 performance is worse (even
+        // bit less than with no unrolling).
+        len += outPos;
+        final int end = len - 3;
+        while (outPos < end) {
+            out[outPos] = out[outPos++ + offset];
+            out[outPos] = out[outPos++ + offset];
+            out[outPos] = out[outPos++ + offset];
+            out[outPos] = out[outPos++ + offset];
+        }
+        switch  (len - outPos) {
+        case 3:
+            out[outPos] = out[outPos++ + offset];
+        case 2:
+            out[outPos] = out[outPos++ + offset];
+        case 1:
+            out[outPos] = out[outPos++ + offset];
+        }
+        return outPos;
+    }
+
+    private final static void copyUpTo32(byte[] buffer, int inputIndex, int outputIndex, int lengthMinusOne)
+    {
+        // Vectors can only be used if source does not overlap with vector-sized destination
+        if ((outputIndex - inputIndex) < VECTOR_LEN) {
+            copyUpTo32WithLongs(buffer, inputIndex, outputIndex, lengthMinusOne);
+            return;
+        }
+        for (int i = 0; i <= lengthMinusOne; i += VECTOR_LEN) {
+            ByteVector.fromArray(SPECIES, buffer, inputIndex+i).intoArray(buffer, outputIndex+i);
+        }
+    }
+
+    private final static void copyUpTo32WithLongs(byte[] buffer, int inputIndex, int outputIndex, int lengthMinusOne)
+    {
+        LONG.set(buffer, outputIndex, (long) LONG.get(buffer, inputIndex));
+        if (lengthMinusOne > 7) {
+            LONG.set(buffer, outputIndex+8, (long) LONG.get(buffer, inputIndex+8));
+            if (lengthMinusOne > 15) {
+                LONG.set(buffer, outputIndex+16, (long) LONG.get(buffer, inputIndex+16));
+                if (lengthMinusOne > 23) {
+                    LONG.set(buffer, outputIndex+24, (long) LONG.get(buffer, inputIndex+24));
+                }
+            }
+        }
+    }
+
+    private final static void copyUpTo32(byte[] in, int inputIndex, byte[] out, int outputIndex, int lengthMinusOne)
+    {
+        for (int i = 0; i <= lengthMinusOne; i += VECTOR_LEN) {
+            ByteVector.fromArray(SPECIES, in, inputIndex+i).intoArray(out, outputIndex+i);
+        }
+    }
+
+    private final static void copyLong(byte[] buffer, int inputIndex, int outputIndex, int length,
+            int outputEnd32)
+    {
+        if ((outputIndex + length) > outputEnd32) {
+            copyLongTail(buffer, inputIndex, outputIndex, length);
+            return;
+        }
+        if ((outputIndex - inputIndex) >= VECTOR_LEN) {
+            // may copy up to VECTOR_LEN-1 bytes past the end; fine, as we have 32 bytes of room
+            for (int i = 0; i < length; i += VECTOR_LEN) {
+                ByteVector.fromArray(SPECIES, buffer, inputIndex+i).intoArray(buffer, outputIndex+i);
+            }
+            return;
+        }
+        while (length >= 8) {
+            LONG.set(buffer, outputIndex, (long) LONG.get(buffer, inputIndex));
+            inputIndex += 8;
+            outputIndex += 8;
+            length -= 8;
+        }
+        if (length > 4) {
+            LONG.set(buffer, outputIndex, (long) LONG.get(buffer, inputIndex));
+        } else if (length > 0) {
+            INT.set(buffer, outputIndex, (int) INT.get(buffer, inputIndex));
+        }
+    }
+
+    private final static void copyLongTail(byte[] buffer, int inputIndex, int outputIndex, int length)
+    {
+        for (final int inEnd = inputIndex + length; inputIndex < inEnd; ) {
+            buffer[outputIndex++] = buffer[inputIndex++];
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package com.ning.compress.lzf.impl;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+import com.ning.compress.BufferRecycler;
+import com.ning.compress.lzf.ChunkEncoder;
+import com.ning.compress.lzf.CompressionLevel;
+
+/**
+ * {@link ChunkEncoder} implementation that uses Vector API
+ * (incubating module <code>jdk.incubator.vector</code>, available since Java 16)
+ * for finding length of long back-references, and copying full literal runs;
+ * otherwise same as {@link VarHandleChunkEncoder}, with identical output.
+ * Helps most with highly redundant content (like logs) where long matches dominate.
+ *<p>
+ * This class is only included (as a multi-release jar entry) for Java 16 and above,
+ * and only used if module <code>jdk.incubator.vector</code> is available at runtime
+ * (with <code>--add-modules jdk.incubator.vector</code>); should be accessed using
+ * {@link VarHandleChunkEncoders} or {@link com.ning.compress.lzf.util.ChunkEncoderFactory}.
+ *
+ * @since 1.2.1
+ */
+public final class VectorChunkEncoder
+    extends VarHandleChunkEncoder
+{
+    // 32-byte vectors if supported by hardware, otherwise 16-byte ones
+    private final static VectorSpecies<Byte> SPECIES = (ByteVector.SPECIES_PREFERRED.length() >= 32)
+            ? ByteVector.SPECIES_256 : ByteVector.SPECIES_128;
+    private final static int VECTOR_LEN = SPECIES.length();
+
+    public VectorChunkEncoder(int totalLength) {
+        super(totalLength);
+    }
+
+    public VectorChunkEncoder(int totalLength, boolean bogus) {
+        super(totalLength, bogus);
+    }
+
+    public VectorChunkEncoder(int totalLength, BufferRecycler bufferRecycler) {
+        super(totalLength, bufferRecycler);
+    }
+
+    public VectorChunkEncoder(int totalLength, BufferRecycler bufferRecycler, boolean bogus) {
+        super(totalLength, bufferRecycler, bogus);
+    }
+
+    public VectorChunkEncoder(int totalLength, BufferRecycler bufferRecycler, CompressionLevel level, boolean allocateBuffer) {
+        super(totalLength, bufferRecycler, level, allocateBuffer);
+    }
+
+    /*
+    ///////////////////////////////////////////////////////////////////////
+    // Overridden internal methods
+    ///////////////////////////////////////////////////////////////////////
+     */
+
+    @Override
+    protected int _copyFullLiterals(byte[] in, int inPos, byte[] out, int outPos)
+    {
+        // literals == 32
+        out[outPos++] = (byte) 31;
+        inPos -= 32;
+
+        for (int i = 0; i < 32; i += VECTOR_LEN) {
+            ByteVector.fromArray(SPECIES, in, inPos+i).intoArray(out, outPos+i);
+        }
+        return (outPos + 32);
+    }
+
+    @Override
+    protected int _findLongMatchLength(final byte[] in, int ptr1, int ptr2, final int maxPtr1)
+    {
+        final int start1 = ptr1;
+        // compare full vectors as long as we can...
+        final int vectorEnd = maxPtr1-VECTOR_LEN;
+        while (ptr1 <= vectorEnd) {
+            ByteVector v1 = ByteVector.fromArray(SPECIES, in, ptr1);
+            ByteVector v2 = ByteVector.fromArray(SPECIES, in, ptr2);
+            int diff = v1.compare(VectorOperators.NE, v2).firstTrue();
+            if (diff < VECTOR_LEN) {
+                return ptr1 - start1 + 9 + diff;
+            }
+            ptr1 += VECTOR_LEN;
+            ptr2 += VECTOR_LEN;
+        }
+        // then longs (and bytes) for what is left
+        return ptr1 - start1 + super._findLongMatchLength(in, ptr1, ptr2, maxPtr1);
+    }
+}
@@ -0,0 +1,570 @@
+package com.ning.compress;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Base class for {@link Flow.Processor} implementations that compress or uncompress
+ * a stream of {@link ByteBuffer}s, by feeding them to a "push" mode
+ * {@link Compressor} or {@link Uncompressor}, and passing on content it sends
+ * to {@link DataHandler} (this processor).
+ *<p>
+ * Output is collected in heap buffers of chunk size, taken from a bounded pool,
+ * and emitted only as requested by subscriber. More input is requested from
+ * upstream (one buffer at a time) only when there is room for more output, and
+ * input is fed to codec in slices, so that amount of buffered output stays bounded
+ * (by pool size, plus output of one slice) even for highly compressed content.
+ * No method blocks: all work is done by whichever thread signals processor, one
+ * thread at a time.
+ *<p>
+ * Buffers passed to subscriber are owned by it; but it may pass them back with
+ * {@link #release} once done, to be reused for later output.
+ *<p>
+ * Sub-classes may override {@link #handleData} to return <code>false</code>, to
+ * indicate that no more content is needed: if so, upstream subscription is cancelled,
+ * and output produced so far is emitted, followed by completion.
+ *<p>
+ * Processor accepts a single subscriber; and is to be subscribed to a single publisher.
+ *<p>
+ * This class is only included (as a multi-release jar entry) for Java 9 and above.
+ *
+ * @since 1.2.1
+ */
+public abstract class CodecProcessor
+    implements Flow.Processor<ByteBuffer, ByteBuffer>, DataHandler
+{
+    /**
+     * Default maximum number of output buffers to keep queued (and pooled)
+     */
+    public final static int DEFAULT_MAX_BUFFERS = 4;
+
+    /**
+     * Maximum number of bytes of input to feed to codec at a time
+     */
+    protected final static int FEED_SLICE_LENGTH = 8192;
+
+    protected final int _bufferSize;
+
+    protected final int _maxBuffers;
+
+    /*
+    ///////////////////////////////////////////////////////////////////////
+    // State shared with signalling threads
+    ///////////////////////////////////////////////////////////////////////
+     */
+
+    /**
+     * Pool of released output buffers, at most {@link #_maxBuffers}
+     */
+    protected final Queue<ByteBuffer> _pool = new ConcurrentLinkedQueue<ByteBuffer>();
+
+    protected final AtomicInteger _pooled = new AtomicInteger();
+
+    /**
+     * Buffers received from upstream, not yet fed to codec
+     */
+    protected final Queue<ByteBuffer> _inputs = new ConcurrentLinkedQueue<ByteBuffer>();
+
+    /**
+     * Number of buffers requested by subscriber, not yet emitted
+     */
+    protected final AtomicLong _requested = new AtomicLong();
+
+    /**
+     * Counter used to ensure that only one thread processes content at a time,
+     * and that signals received while doing so are not missed
+     */
+    protected final AtomicInteger _wip = new AtomicInteger();
+
+    protected volatile Flow.Subscription _upstream;
+
+    protected volatile Flow.Subscriber<? super ByteBuffer> _downstream;
+
+    /**
+     * Flag set once a subscriber has subscribed, to reject any others
+     */
+    protected boolean _subscribed;
+
+    /**
+     * Flag set when more input has been requested from upstream, but not yet received
+     */
+    protected volatile boolean _inputRequested;
+
+    protected volatile boolean _upstreamDone;
+
+    /**
+     * Flag set once no more input is accepted (processing has ended, or handler
+     * indicated it needs no more content): upstream subscription has been cancelled
+     * (or will be, if only received later), and any further signals from it are ignored
+     */
+    protected volatile boolean _inputClosed;
+
+    protected volatile boolean _cancelled;
+
+    protected volatile Throwable _error;
+
+    /*
+    ///////////////////////////////////////////////////////////////////////
+    // State only accessed while processing
+    ///////////////////////////////////////////////////////////////////////
+     */
+
+    /**
+     * Output buffers ready to be emitted
+     */
+    protected final ArrayDeque<ByteBuffer> _ready = new ArrayDeque<ByteBuffer>();
+
+    /**
+     * Output buffer being filled, if any
+     */
+    protected ByteBuffer _current;
+
+    /**
+     * Input buffer being fed to codec, if any
+     */
+    protected ByteBuffer _input;
+
+    /**
+     * Buffer used for feeding content of direct input buffers, if any
+     */
+    protected byte[] _inputCopy;
+
+    /**
+     * Flag set once codec has been completed (or released)
+     */
+    protected boolean _finished;
+
+    protected boolean _terminated;
+
+    /*
+    ///////////////////////////////////////////////////////////////////////
+    // Construction
+    ///////////////////////////////////////////////////////////////////////
+     */
+
+    /**
+     * @param bufferSize Size of output buffers
+     * @param maxBuffers Maximum number of output buffers to queue, before
+     *    requesting more input; as well as to keep pooled for reuse
+     */
+    protected CodecProcessor(int bufferSize, int maxBuffers)
+    {
+        if (maxBuffers < 1) {
+            throw new IllegalArgumentException("maxBuffers must be positive, was "+maxBuffers);
+        }
+        _bufferSize = bufferSize;
+        _maxBuffers = maxBuffers;
+    }
+
+    /*
+    ///////////////////////////////////////////////////////////////////////
+    // Abstract methods for sub-classes
+    ///////////////////////////////////////////////////////////////////////
+     */
+
+    /**
+     * Method called to feed input to codec; which will pass results to
+     * {@link #handleData}.
+     *
+     * @return True if codec can accept more input; false if handler
+     *   indicated that no more content is needed
+     */
+    protected abstract boolean feed(byte[] data, int offset, int len) throws IOException;
+
+    /**
+     * Method called once all input has been fed (or processing was aborted),
+     * to complete processing of codec and release its resources.
+     */
+    protected abstract void finish() throws IOException;
+
+    /*
+    ///////////////////////////////////////////////////////////////////////
+    // Additional public methods
+    ///////////////////////////////////////////////////////////////////////
+     */
+
+    /**
+     * Method that subscriber may call to pass back a buffer it received, once
+     * it no longer needs it, so that it can be reused for output. Buffers are
+     * only retained if pool is not yet full; others are simply dropped.
+     */
+    public void release(ByteBuffer buffer)
+    {
+        if (buffer.capacity() != _bufferSize || !buffer.hasArray() || buffer.isReadOnly()) {
+            return;
+        }
+        if (_pooled.incrementAndGet() > _maxBuffers) {
+            _pooled.decrementAndGet();
+            return;
+        }
+        buffer.clear();
+        _pool.offer(buffer);
+    }
+
+    /*
+    ///////////////////////////////////////////////////////////////////////
+    // Flow.Publisher implementation
+    ///////////////////////////////////////////////////////////////////////
+     */
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super ByteBuffer> subscriber)
+    {
+        Objects.requireNonNull(subscriber);
+        boolean first;
+        synchronized (this) {
+            first = !_subscribed;
+            _subscribed = true;
+        }
+        if (first) {
+            subscriber.onSubscribe(new Subscription());
+            // only set after call, so that nothing is emitted before it
+            _downstream = subscriber;
+            drain();
+            return;
+        }
+        subscriber.onSubscribe(new Flow.Subscription() {
+            @Override
+            public void request(long n) { }
+            @Override
+            public void cancel() { }
+        });
+        subscriber.onError(new IllegalStateException(getClass().getName()+" only supports a single subscriber"));
+    }
+
+    /*
+    ///////////////////////////////////////////////////////////////////////
+    // Flow.Subscriber implementation
+    ///////////////////////////////////////////////////////////////////////
+     */
+
+    @Override
+    public void onSubscribe(Flow.Subscription subscription)
+    {
+        Objects.requireNonNull(subscription);
+        synchronized (this) {
+            if (_upstream != null) {
+                subscription.cancel();
+                return;
+            }
+            _upstream = subscription;
+        }
+        // may have been cancelled before subscribing
+        if (_inputClosed) {
+            subscription.cancel();
+            return;
+        }
+        drain();
+    }
+
+    @Override
+    public void onNext(ByteBuffer item)
+    {
+        Objects.requireNonNull(item);
+        if (_inputClosed) {
+            return;
+        }
+        _inputs.offer(item);
+        _inputRequested = false;
+        drain();
+    }
+
+    @Override
+    public void onError(Throwable t)
+    {
+        Objects.requireNonNull(t);
+        if (_inputClosed) {
+            return;
+        }
+        if (_error == null) {
+            _error = t;
+        }
+        _upstreamDone = true;
+        drain();
+    }
+
+    @Override
+    public void onComplete()
+    {
+        if (_inputClosed) {
+            return;
+        }
+        _upstreamDone = true;
+        drain();
+    }
+
+    /*
+    ///////////////////////////////////////////////////////////////////////
+    // DataHandler implementation
+    ///////////////////////////////////////////////////////////////////////
+     */
+
+    @Override
+    public boolean handleData(byte[] buffer, int offset, int len)
+    {
+        if (_cancelled || _terminated) {
+            return false;
+        }
+        while (len > 0) {
+            ByteBuffer curr = _current;
+            // keep pieces (like chunks) in one buffer, if they would fit
+            if (curr != null && curr.remaining() < len && curr.position() > 0) {
+                _emitCurrent();
+                curr = null;
+            }
+            if (curr == null) {
+                _current = curr = _allocBuffer();
+            }
+            final int amount = Math.min(len, curr.remaining());
+            curr.put(buffer, offset, amount);
+            offset += amount;
+            len -= amount;
+            if (!curr.hasRemaining()) {
+                _emitCurrent();
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public void allDataHandled() { }
+
+    /*
+    ///////////////////////////////////////////////////////////////////////
+    // Internal methods
+    ///////////////////////////////////////////////////////////////////////
+     */
+
+    /**
+     * Method called after any signal, to do whatever processing is possible:
+     * emit output as requested, feed input while there is room for output,
+     * and request more input once all has been fed. Only one thread at a time
+     * does processing; signals received while doing so just cause another round.
+     */
+    protected final void drain()
+    {
+        if (_wip.getAndIncrement() != 0) {
+            return;
+        }
+        int missed = 1;
+        do {
+            _process();
+            missed = _wip.addAndGet(-missed);
+        } while (missed != 0);
+    }
+
+    private void _process()
+    {
+        while (!_terminated) {
+            if (_cancelled) {
+                _terminate(true);
+                return;
+            }
+            final Flow.Subscriber<? super ByteBuffer> down = _downstream;
+            if (down == null) { // nothing to do before having subscriber
+                return;
+            }
+            Throwable error = _error;
+            if (error != null) {
+                _terminate(!_upstreamDone);
+                down.onError(error);
+                return;
+            }
+            // First: emit whatever has been requested
+            final long requested = _requested.get();
+            long emitted = 0L;
+            while (emitted != requested && !_ready.isEmpty() && !_cancelled) {
+                down.onNext(_ready.poll());
+                ++emitted;
+            }
+            if (emitted != 0L && requested != Long.MAX_VALUE) {
+                _requested.addAndGet(-emitted);
+            }
+            if (_cancelled || _error != null) {
+                continue;
+            }
+            if (_ready.size() >= _maxBuffers) { // need to wait for demand
+                return;
+            }
+            // Then: feed more input, if we have some
+            if (_input == null) {
+                _input = _inputs.poll();
+            }
+            try {
+                if (_input != null) {
+                    if (!_feedSlice()) {
+                        _closeInput();
+                    }
+                    continue;
+                }
+                if (_upstreamDone || _inputClosed) {
+                    if (!_finished) {
+                        _finished = true;
+                        finish();
+                        if (_current != null) {
+                            _emitCurrent();
+                        }
+                        continue;
+                    }
+                    if (_ready.isEmpty()) {
+                        _terminate(false);
+                        down.onComplete();
+                    }
+                    return;
+                }
+            } catch (Throwable t) {
+                _error = t;
+                continue;
+            }
+            // Waiting for input: pass on partial output, if subscriber is waiting for it
+            if (_current != null && _current.position() > 0
+                    && _ready.isEmpty() && _requested.get() > 0L) {
+                _emitCurrent();
+                continue;
+            }
+            final Flow.Subscription up = _upstream;
+            if (up != null && !_inputRequested) {
+                _inputRequested = true;
+                up.request(1L);
+            }
+            return;
+        }
+    }
+
+    /**
+     * @return True if more input may be fed; false if handler indicated
+     *   it needs no more content
+     */
+    private boolean _feedSlice() throws IOException
+    {
+        final ByteBuffer in = _input;
+        final int len = Math.min(in.remaining(), FEED_SLICE_LENGTH);
+        boolean more = true;
+        if (len > 0) {
+            final int pos = in.position();
+            if (in.hasArray()) {
+                more = feed(in.array(), in.arrayOffset() + pos, len);
+                in.position(pos + len);
+            } else {
+                byte[] b = _inputCopy;
+                if (b == null) {
+                    _inputCopy = b = new byte[FEED_SLICE_LENGTH];
+                }
+                in.get(b, 0, len);
+                more = feed(b, 0, len);
+            }
+        }
+        if (!in.hasRemaining()) {
+            _input = null;
+        }
+        return more;
+    }
+
+    /**
+     * Method called when no more input is to be accepted, before all of it
+     * has been received: cancels upstream subscription and drops input not
+     * yet fed.
+     */
+    private void _closeInput()
+    {
+        _inputClosed = true;
+        final Flow.Subscription up = _upstream;
+        if (up != null) {
+            up.cancel();
+        }
+        _input = null;
+        _inputs.clear();
+    }
+
+    /**
+     * Method called once processing ends, due to completion, error or cancellation:
+     * releases codec and drops any output not yet emitted.
+     */
+    private void _terminate(boolean cancelUpstream)
+    {
+        _terminated = true;
+        if (cancelUpstream && !_inputClosed) {
+            _closeInput();
+        }
+        _inputClosed = true;
+        if (!_finished) {
+            _finished = true;
+            try { // to release resources; output (or errors for incomplete content) not needed
+                finish();
+            } catch (Exception e) { }
+        }
+        _ready.clear();
+        _current = null;
+        _input = null;
+        _inputs.clear();
+        _inputCopy = null;
+    }
+
+    private ByteBuffer _allocBuffer()
+    {
+        ByteBuffer b = _pool.poll();
+        if (b == null) {
+            return ByteBuffer.allocate(_bufferSize);
+        }
+        _pooled.decrementAndGet();
+        return b;
+    }
+
+    private void _emitCurrent()
+    {
+        final ByteBuffer b = _current;
+        _current = null;
+        b.flip();
+        _ready.add(b);
+    }
+
+    private void _addRequested(long n)
+    {
+        while (true) {
+            final long curr = _requested.get();
+            if (curr == Long.MAX_VALUE) {
+                return;
+            }
+            long total = curr + n;
+            if (total < 0L) {
+                total = Long.MAX_VALUE;
+            }
+            if (_requested.compareAndSet(curr, total)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Subscription given to subscriber of processor
+     */
+    private final class Subscription implements Flow.Subscription
+    {
+        @Override
+        public void request(long n)
+        {
+            if (n <= 0L) {
+                if (_error == null) {
+                    _error = new IllegalArgumentException("Non-positive number of items requested: "+n);
+                }
+            } else {
+                _addRequested(n);
+            }
+            drain();
+        }
+
+        @Override
+        public void cancel()
+        {
+            _cancelled = true;
+            drain();
+        }
+    }
+}
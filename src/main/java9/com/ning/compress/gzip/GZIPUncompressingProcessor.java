@@ -0,0 +1,45 @@
+package com.ning.compress.gzip;
+
+import java.io.IOException;
+
+import com.ning.compress.BufferRecycler;
+import com.ning.compress.CodecProcessor;
+
+/**
+ * {@link java.util.concurrent.Flow.Processor} that uncompresses GZIP content
+ * it receives, by feeding it to a {@link GZIPUncompressor}.
+ *<p>
+ * This class is only included (as a multi-release jar entry) for Java 9 and above.
+ *
+ * @since 1.2.1
+ */
+public class GZIPUncompressingProcessor extends CodecProcessor
+{
+    protected final GZIPUncompressor _uncompressor;
+
+    public GZIPUncompressingProcessor() {
+        this(DEFAULT_MAX_BUFFERS);
+    }
+
+    /**
+     * @param maxBuffers Maximum number of output buffers to queue, before
+     *    requesting more input; as well as to keep pooled for reuse
+     */
+    public GZIPUncompressingProcessor(int maxBuffers)
+    {
+        super(GZIPUncompressor.DECODE_BUFFER_SIZE, maxBuffers);
+        // processing may be done by any thread, so can not use thread-local recyclers
+        _uncompressor = new GZIPUncompressor(this, GZIPUncompressor.DEFAULT_CHUNK_SIZE,
+                new BufferRecycler(), new GZIPRecycler());
+    }
+
+    @Override
+    protected boolean feed(byte[] data, int offset, int len) throws IOException {
+        return _uncompressor.feedCompressedData(data, offset, len);
+    }
+
+    @Override
+    protected void finish() throws IOException {
+        _uncompressor.complete();
+    }
+}
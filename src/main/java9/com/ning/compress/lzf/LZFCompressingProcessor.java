@@ -0,0 +1,51 @@
+package com.ning.compress.lzf;
+
+import java.io.IOException;
+
+import com.ning.compress.BufferRecycler;
+import com.ning.compress.CodecProcessor;
+import com.ning.compress.lzf.util.ChunkEncoderFactory;
+
+/**
+ * {@link java.util.concurrent.Flow.Processor} that compresses content it receives
+ * using LZF, by feeding it to a {@link LZFCompressor}. Each buffer emitted contains
+ * one or more complete chunks; content is buffered until a full chunk is available
+ * (or all content has been received).
+ *<p>
+ * This class is only included (as a multi-release jar entry) for Java 9 and above.
+ *
+ * @see LZFUncompressingProcessor
+ *
+ * @since 1.2.1
+ */
+public class LZFCompressingProcessor extends CodecProcessor
+{
+    protected final LZFCompressor _compressor;
+
+    public LZFCompressingProcessor() {
+        this(CompressionLevel.DEFAULT, DEFAULT_MAX_BUFFERS);
+    }
+
+    /**
+     * @param maxBuffers Maximum number of output buffers to queue, before
+     *    requesting more input; as well as to keep pooled for reuse
+     */
+    public LZFCompressingProcessor(CompressionLevel level, int maxBuffers)
+    {
+        super(LZFChunk.MAX_HEADER_LEN + LZFChunk.MAX_CHUNK_LEN, maxBuffers);
+        // processing may be done by any thread, so can not use thread-local recycler
+        final BufferRecycler recycler = new BufferRecycler();
+        _compressor = new LZFCompressor(this,
+                ChunkEncoderFactory.optimalInstance(level, LZFChunk.MAX_CHUNK_LEN, recycler), recycler);
+    }
+
+    @Override
+    protected boolean feed(byte[] data, int offset, int len) throws IOException {
+        return _compressor.feedUncompressedData(data, offset, len);
+    }
+
+    @Override
+    protected void finish() throws IOException {
+        _compressor.complete();
+    }
+}
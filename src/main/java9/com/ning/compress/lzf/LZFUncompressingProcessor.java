@@ -0,0 +1,50 @@
+package com.ning.compress.lzf;
+
+import java.io.IOException;
+
+import com.ning.compress.BufferRecycler;
+import com.ning.compress.CodecProcessor;
+import com.ning.compress.lzf.util.ChunkDecoderFactory;
+
+/**
+ * {@link java.util.concurrent.Flow.Processor} that uncompresses LZF content
+ * it receives, by feeding it to a {@link LZFUncompressor}. Buffers emitted contain
+ * uncompressed content of one chunk (or less, for non-compressed chunks split
+ * across input buffers).
+ *<p>
+ * This class is only included (as a multi-release jar entry) for Java 9 and above.
+ *
+ * @see LZFCompressingProcessor
+ *
+ * @since 1.2.1
+ */
+public class LZFUncompressingProcessor extends CodecProcessor
+{
+    protected final LZFUncompressor _uncompressor;
+
+    public LZFUncompressingProcessor() {
+        this(DEFAULT_MAX_BUFFERS);
+    }
+
+    /**
+     * @param maxBuffers Maximum number of output buffers to queue, before
+     *    requesting more input; as well as to keep pooled for reuse
+     */
+    public LZFUncompressingProcessor(int maxBuffers)
+    {
+        super(LZFChunk.MAX_CHUNK_LEN, maxBuffers);
+        // processing may be done by any thread, so can not use thread-local recycler
+        _uncompressor = new LZFUncompressor(this, ChunkDecoderFactory.optimalInstance(),
+                new BufferRecycler());
+    }
+
+    @Override
+    protected boolean feed(byte[] data, int offset, int len) throws IOException {
+        return _uncompressor.feedCompressedData(data, offset, len);
+    }
+
+    @Override
+    protected void finish() throws IOException {
+        _uncompressor.complete();
+    }
+}
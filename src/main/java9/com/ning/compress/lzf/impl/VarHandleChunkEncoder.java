@@ -0,0 +1,523 @@
+package com.ning.compress.lzf.impl;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import com.ning.compress.BufferRecycler;
+import com.ning.compress.lzf.ChunkEncoder;
+import com.ning.compress.lzf.CompressionLevel;
+import com.ning.compress.lzf.LZFChunk;
+
+/**
+ * {@link ChunkEncoder} implementation that uses byte array view
+ * {@link VarHandle}s (available since Java 9) for multi-byte reads and writes.
+ * Algorithm is the same as that of {@link UnsafeChunkEncoderLE} (and output
+ * identical to that of other standard encoders), but without need for
+ * <code>sun.misc.Unsafe</code>; and since accesses are bounds-checked by JVM,
+ * invalid arguments can not corrupt memory.
+ *<p>
+ * Content of direct {@link ByteBuffer}s is compressed in place, using
+ * {@link ByteBuffer} view {@link VarHandle}s.
+ *<p>
+ * This class is only included (as a multi-release jar entry) for Java 9 and above,
+ * and should be accessed using {@link VarHandleChunkEncoders} or
+ * {@link com.ning.compress.lzf.util.ChunkEncoderFactory}.
+ * Copying of full literal runs, and finding length of long matches, can be
+ * overridden by sub-classes (see <code>VectorChunkEncoder</code>).
+ *
+ * @since 1.2.1
+ */
+public class VarHandleChunkEncoder
+    extends ChunkEncoder
+{
+    // Byte order of reads does not matter for copying; for comparisons,
+    // Big-Endian ints match "seen" values, and Little-Endian longs make it
+    // easy to find the first differing byte
+    private final static VarHandle INT_BE = MethodHandles.byteArrayViewVarHandle(int[].class, ByteOrder.BIG_ENDIAN);
+    private final static VarHandle INT_LE = MethodHandles.byteArrayViewVarHandle(int[].class, ByteOrder.LITTLE_ENDIAN);
+    private final static VarHandle LONG_LE = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+    // and same for reading input from (direct) ByteBuffers
+    private final static VarHandle BUFFER_INT_BE = MethodHandles.byteBufferViewVarHandle(int[].class, ByteOrder.BIG_ENDIAN);
+    private final static VarHandle BUFFER_INT_LE = MethodHandles.byteBufferViewVarHandle(int[].class, ByteOrder.LITTLE_ENDIAN);
+    private final static VarHandle BUFFER_LONG_LE = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+
+    public VarHandleChunkEncoder(int totalLength) {
+        super(totalLength);
+    }
+
+    public VarHandleChunkEncoder(int totalLength, boolean bogus) {
+        super(totalLength, bogus);
+    }
+
+    public VarHandleChunkEncoder(int totalLength, BufferRecycler bufferRecycler) {
+        super(totalLength, bufferRecycler);
+    }
+
+    public VarHandleChunkEncoder(int totalLength, BufferRecycler bufferRecycler, boolean bogus) {
+        super(totalLength, bufferRecycler, bogus);
+    }
+
+    public VarHandleChunkEncoder(int totalLength, BufferRecycler bufferRecycler, CompressionLevel level, boolean allocateBuffer) {
+        super(totalLength, bufferRecycler, level, allocateBuffer);
+    }
+
+    /*
+    ///////////////////////////////////////////////////////////////////////
+    // Abstract method implementations
+    ///////////////////////////////////////////////////////////////////////
+     */
+
+    @Override
+    protected int tryCompress(byte[] in, int inPos, int inEnd, byte[] out, int outPos)
+    {
+        final int[] hashTable = _hashTable;
+        int literals = 0;
+        inEnd -= TAIL_LENGTH;
+        final int firstPos = inPos; // so that we won't have back references across block boundary
+
+        int seen = _getInt(in, inPos) >> 16;
+        final int skipShift = _skipShift;
+        int misses = 0; // consecutive positions without match, for skip acceleration
+
+        while (inPos < inEnd) {
+            seen = (seen << 8) + (in[inPos + 2] & 255);
+
+            int off = hash(seen);
+            int ref = hashTable[off];
+            hashTable[off] = inPos;
+
+            // First expected common case: no back-ref (for whatever reason)
+            if ((ref >= inPos) // can't refer forward (i.e. leftovers)
+                    || (ref < firstPos) // or to previous block
+                    || (off = inPos - ref) > MAX_OFF
+                    || ((seen << 8) != (_getInt(in, ref) & 0xFFFFFF00))) {
+                int step = 1 + (++misses >> skipShift);
+                if (step == 1) {
+                    ++inPos;
+                    ++literals;
+                    if (literals == LZFChunk.MAX_LITERAL) {
+                        outPos = _copyFullLiterals(in, inPos, out, outPos);
+                        literals = 0;
+                    }
+                    continue;
+                }
+                // Skip acceleration: no matches for a while, so step over more positions at once
+                step = Math.min(step, inEnd - inPos);
+                inPos += step;
+                literals += step;
+                while (literals >= LZFChunk.MAX_LITERAL) {
+                    literals -= LZFChunk.MAX_LITERAL;
+                    outPos = _copyFullLiterals(in, inPos - literals, out, outPos);
+                }
+                seen = _getInt(in, inPos) >> 16;
+                continue;
+            }
+            misses = 0;
+
+            if (literals > 0) {
+                outPos = _copyPartialLiterals(in, inPos, out, outPos, literals);
+                literals = 0;
+            }
+            // match
+            final int maxLen = Math.min(MAX_REF, inEnd - inPos + 2);
+            int len = _findMatchLength(in, ref+3, inPos+3, ref+maxLen);
+
+            --off; // was off by one earlier
+            if (len < 7) {
+                out[outPos++] = (byte) ((off >> 8) + (len << 5));
+            } else {
+                out[outPos++] = (byte) ((off >> 8) + (7 << 5));
+                out[outPos++] = (byte) (len - 7);
+            }
+            out[outPos++] = (byte) off;
+            inPos += len;
+            seen = _getInt(in, inPos);
+            hashTable[hash(seen >> 8)] = inPos;
+            ++inPos;
+            hashTable[hash(seen)] = inPos;
+            ++inPos;
+        }
+        // Should never happen but verify:
+        if (inPos > inEnd + TAIL_LENGTH) {
+            throw new IllegalStateException("Internal error: consumed input past end, `inPos` > "+(inEnd + TAIL_LENGTH));
+        }
+        // offline the tail handling
+        return _handleTail(in, inPos, inEnd+TAIL_LENGTH, out, outPos, literals);
+    }
+
+    /**
+     * Overridden to compress content of direct buffers without copying it;
+     * same as {@link #tryCompress(byte[], int, int, byte[], int)} except for
+     * accessing input.
+     */
+    @Override
+    protected int tryCompress(ByteBuffer in, int inPos, int inEnd, byte[] out, int outPos)
+    {
+        if (in.hasArray()) {
+            return super.tryCompress(in, inPos, inEnd, out, outPos);
+        }
+        // accesses are bounds-checked, but better fail before modifying anything
+        if (inPos < 0 || inEnd < inPos || inEnd > in.limit()) {
+            throw new IndexOutOfBoundsException();
+        }
+        final int[] hashTable = _hashTable;
+        int literals = 0;
+        inEnd -= TAIL_LENGTH;
+        final int firstPos = inPos; // so that we won't have back references across block boundary
+
+        int seen = _getInt(in, inPos) >> 16;
+        final int skipShift = _skipShift;
+        int misses = 0; // consecutive positions without match, for skip acceleration
+
+        while (inPos < inEnd) {
+            seen = (seen << 8) + (in.get(inPos + 2) & 255);
+
+            int off = hash(seen);
+            int ref = hashTable[off];
+            hashTable[off] = inPos;
+
+            // First expected common case: no back-ref (for whatever reason)
+            if ((ref >= inPos) // can't refer forward (i.e. leftovers)
+                    || (ref < firstPos) // or to previous block
+                    || (off = inPos - ref) > MAX_OFF
+                    || ((seen << 8) != (_getInt(in, ref) & 0xFFFFFF00))) {
+                int step = 1 + (++misses >> skipShift);
+                if (step == 1) {
+                    ++inPos;
+                    ++literals;
+                    if (literals == LZFChunk.MAX_LITERAL) {
+                        outPos = _copyFullLiterals(in, inPos, out, outPos);
+                        literals = 0;
+                    }
+                    continue;
+                }
+                // Skip acceleration: no matches for a while, so step over more positions at once
+                step = Math.min(step, inEnd - inPos);
+                inPos += step;
+                literals += step;
+                while (literals >= LZFChunk.MAX_LITERAL) {
+                    literals -= LZFChunk.MAX_LITERAL;
+                    outPos = _copyFullLiterals(in, inPos - literals, out, outPos);
+                }
+                seen = _getInt(in, inPos) >> 16;
+                continue;
+            }
+            misses = 0;
+
+            if (literals > 0) {
+                outPos = _copyPartialLiterals(in, inPos, out, outPos, literals);
+                literals = 0;
+            }
+            // match
+            final int maxLen = Math.min(MAX_REF, inEnd - inPos + 2);
+            int len = _findMatchLength(in, ref+3, inPos+3, ref+maxLen);
+
+            --off; // was off by one earlier
+            if (len < 7) {
+                out[outPos++] = (byte) ((off >> 8) + (len << 5));
+            } else {
+                out[outPos++] = (byte) ((off >> 8) + (7 << 5));
+                out[outPos++] = (byte) (len - 7);
+            }
+            out[outPos++] = (byte) off;
+            inPos += len;
+            seen = _getInt(in, inPos);
+            hashTable[hash(seen >> 8)] = inPos;
+            ++inPos;
+            hashTable[hash(seen)] = inPos;
+            ++inPos;
+        }
+        // Should never happen but verify:
+        if (inPos > inEnd + TAIL_LENGTH) {
+            throw new IllegalStateException("Internal error: consumed input past end, `inPos` > "+(inEnd + TAIL_LENGTH));
+        }
+        // offline the tail handling
+        return _handleTail(in, inPos, inEnd+TAIL_LENGTH, out, outPos, literals);
+    }
+
+    /*
+    ///////////////////////////////////////////////////////////////////////
+    // Internal methods
+    ///////////////////////////////////////////////////////////////////////
+     */
+
+    private final static int _getInt(final byte[] in, final int inPos) {
+        return (int) INT_BE.get(in, inPos);
+    }
+
+    private final static void _copyLong(byte[] in, int inPos, byte[] out, int outPos) {
+        LONG_LE.set(out, outPos, (long) LONG_LE.get(in, inPos));
+    }
+
+    private final static int _copyPartialLiterals(byte[] in, int inPos, byte[] out, int outPos,
+            int literals)
+    {
+        out[outPos++] = (byte) (literals-1);
+        inPos -= literals;
+
+        switch (literals >> 3) {
+        case 3:
+            _copyLong(in, inPos, out, outPos);
+            inPos += 8;
+            outPos += 8;
+        case 2:
+            _copyLong(in, inPos, out, outPos);
+            inPos += 8;
+            outPos += 8;
+        case 1:
+            _copyLong(in, inPos, out, outPos);
+            inPos += 8;
+            outPos += 8;
+        }
+        int left = (literals & 7);
+        if (left > 0) {
+            System.arraycopy(in, inPos, out, outPos, left);
+            outPos += left;
+        }
+        return outPos;
+    }
+
+    /**
+     * Method for copying a full run of literals (32 bytes ending at <code>inPos</code>),
+     * preceded by its length marker.
+     *
+     * @return Output position after copied literals
+     */
+    protected int _copyFullLiterals(byte[] in, int inPos, byte[] out, int outPos)
+    {
+        // literals == 32
+        out[outPos++] = (byte) 31;
+        inPos -= 32;
+
+        _copyLong(in, inPos, out, outPos);
+        _copyLong(in, inPos+8, out, outPos+8);
+        _copyLong(in, inPos+16, out, outPos+16);
+        _copyLong(in, inPos+24, out, outPos+24);
+        return (outPos + 32);
+    }
+
+    private final static int _handleTail(byte[] in, int inPos, int inEnd, byte[] out, int outPos,
+            int literals)
+    {
+        while (inPos < inEnd) {
+            ++inPos;
+            ++literals;
+            if (literals == LZFChunk.MAX_LITERAL) {
+                out[outPos++] = (byte) (literals-1); // <= out[outPos - literals - 1] = MAX_LITERAL_MINUS_1;
+                System.arraycopy(in, inPos-literals, out, outPos, literals);
+                outPos += literals;
+                literals = 0;
+            }
+        }
+        if (literals > 0) {
+            out[outPos++] = (byte) (literals - 1);
+            System.arraycopy(in, inPos-literals, out, outPos, literals);
+            outPos += literals;
+        }
+        return outPos;
+    }
+
+    /*
+    ///////////////////////////////////////////////////////////////////////
+    // Internal methods, ByteBuffer input
+    ///////////////////////////////////////////////////////////////////////
+     */
+
+    private final static int _getInt(final ByteBuffer in, final int inPos) {
+        return (int) BUFFER_INT_BE.get(in, inPos);
+    }
+
+    private final static void _copyLong(ByteBuffer in, int inPos, byte[] out, int outPos) {
+        LONG_LE.set(out, outPos, (long) BUFFER_LONG_LE.get(in, inPos));
+    }
+
+    private final static int _copyPartialLiterals(ByteBuffer in, int inPos, byte[] out, int outPos,
+            int literals)
+    {
+        out[outPos++] = (byte) (literals-1);
+        inPos -= literals;
+
+        switch (literals >> 3) {
+        case 3:
+            _copyLong(in, inPos, out, outPos);
+            inPos += 8;
+            outPos += 8;
+        case 2:
+            _copyLong(in, inPos, out, outPos);
+            inPos += 8;
+            outPos += 8;
+        case 1:
+            _copyLong(in, inPos, out, outPos);
+            inPos += 8;
+            outPos += 8;
+        }
+        for (int left = (literals & 7); left > 0; --left) {
+            out[outPos++] = in.get(inPos++);
+        }
+        return outPos;
+    }
+
+    private final static int _copyFullLiterals(ByteBuffer in, int inPos, byte[] out, int outPos)
+    {
+        // literals == 32
+        out[outPos++] = (byte) 31;
+        inPos -= 32;
+
+        _copyLong(in, inPos, out, outPos);
+        _copyLong(in, inPos+8, out, outPos+8);
+        _copyLong(in, inPos+16, out, outPos+16);
+        _copyLong(in, inPos+24, out, outPos+24);
+        return (outPos + 32);
+    }
+
+    private final static int _handleTail(ByteBuffer in, int inPos, int inEnd, byte[] out, int outPos,
+            int literals)
+    {
+        while (inPos < inEnd) {
+            ++inPos;
+            ++literals;
+            if (literals == LZFChunk.MAX_LITERAL) {
+                outPos = _copyFullLiterals(in, inPos, out, outPos);
+                literals = 0;
+            }
+        }
+        if (literals > 0) {
+            outPos = _copyPartialLiterals(in, inPos, out, outPos, literals);
+        }
+        return outPos;
+    }
+
+    private final static int _findMatchLength(final ByteBuffer in, int ptr1, int ptr2, final int maxPtr1)
+    {
+        // Expect at least 8 bytes to check for fast case; offline others
+        if ((ptr1 + 8) >= maxPtr1) { // rare case, offline
+            return _findTailMatchLength(in, ptr1, ptr2, maxPtr1);
+        }
+        // short matches common, so start with specialized comparison
+        int i1 = (int) BUFFER_INT_LE.get(in, ptr1);
+        int i2 = (int) BUFFER_INT_LE.get(in, ptr2);
+        if (i1 != i2) {
+            return 1 + _leadingBytes(i1, i2);
+        }
+        ptr1 += 4;
+        ptr2 += 4;
+
+        i1 = (int) BUFFER_INT_LE.get(in, ptr1);
+        i2 = (int) BUFFER_INT_LE.get(in, ptr2);
+        if (i1 != i2) {
+            return 5 + _leadingBytes(i1, i2);
+        }
+        // and then just loop with longs if we get that far
+        ptr1 += 4;
+        ptr2 += 4;
+        final int base = ptr1 - 9;
+        final int longEnd = maxPtr1-8;
+        while (ptr1 <= longEnd) {
+            long l1 = (long) BUFFER_LONG_LE.get(in, ptr1);
+            long l2 = (long) BUFFER_LONG_LE.get(in, ptr2);
+            if (l1 != l2) {
+                return ptr1 - base + _leadingBytes(l1, l2);
+            }
+            ptr1 += 8;
+            ptr2 += 8;
+        }
+        // or, if running out of runway, handle last bytes with loop-de-loop...
+        while (ptr1 < maxPtr1 && in.get(ptr1) == in.get(ptr2)) {
+            ++ptr1;
+            ++ptr2;
+        }
+        return ptr1 - base;
+    }
+
+    private final static int _findTailMatchLength(final ByteBuffer in, int ptr1, int ptr2, final int maxPtr1)
+    {
+        final int start1 = ptr1;
+        while (ptr1 < maxPtr1 && in.get(ptr1) == in.get(ptr2)) {
+            ++ptr1;
+            ++ptr2;
+        }
+        return ptr1 - start1 + 1;
+    }
+
+    /*
+    ///////////////////////////////////////////////////////////////////////
+    // Methods for finding length of a back-reference
+    ///////////////////////////////////////////////////////////////////////
+     */
+
+    private final int _findMatchLength(final byte[] in, int ptr1, int ptr2, final int maxPtr1)
+    {
+        // Expect at least 8 bytes to check for fast case; offline others
+        if ((ptr1 + 8) >= maxPtr1) { // rare case, offline
+            return _findTailMatchLength(in, ptr1, ptr2, maxPtr1);
+        }
+        // short matches common, so start with specialized comparison
+        int i1 = (int) INT_LE.get(in, ptr1);
+        int i2 = (int) INT_LE.get(in, ptr2);
+        if (i1 != i2) {
+            return 1 + _leadingBytes(i1, i2);
+        }
+        ptr1 += 4;
+        ptr2 += 4;
+
+        i1 = (int) INT_LE.get(in, ptr1);
+        i2 = (int) INT_LE.get(in, ptr2);
+        if (i1 != i2) {
+            return 5 + _leadingBytes(i1, i2);
+        }
+        return _findLongMatchLength(in, ptr1+4, ptr2+4, maxPtr1);
+    }
+
+    /**
+     * Method for finding length of a match once 8 bytes before <code>ptr1</code>
+     * (and <code>ptr2</code>) are known to match.
+     *
+     * @return Number of matching bytes starting 8 bytes before <code>ptr1</code>,
+     *    plus one (as expected by {@link #tryCompress})
+     */
+    protected int _findLongMatchLength(final byte[] in, int ptr1, int ptr2, final int maxPtr1)
+    {
+        final int base = ptr1 - 9;
+        // and then just loop with longs if we get that far
+        final int longEnd = maxPtr1-8;
+        while (ptr1 <= longEnd) {
+            long l1 = (long) LONG_LE.get(in, ptr1);
+            long l2 = (long) LONG_LE.get(in, ptr2);
+            if (l1 != l2) {
+                return ptr1 - base + _leadingBytes(l1, l2);
+            }
+            ptr1 += 8;
+            ptr2 += 8;
+        }
+        // or, if running out of runway, handle last bytes with loop-de-loop...
+        while (ptr1 < maxPtr1 && in[ptr1] == in[ptr2]) {
+            ++ptr1;
+            ++ptr2;
+        }
+        return ptr1 - base;
+    }
+
+    private final static int _findTailMatchLength(final byte[] in, int ptr1, int ptr2, final int maxPtr1)
+    {
+        final int start1 = ptr1;
+        while (ptr1 < maxPtr1 && in[ptr1] == in[ptr2]) {
+            ++ptr1;
+            ++ptr2;
+        }
+        return ptr1 - start1 + 1;
+    }
+
+    /* Since values are read as Little-Endian, first byte is the lowest one,
+     * so need to calculate trailing zeroes
+     */
+
+    private final static int _leadingBytes(int i1, int i2) {
+        return Integer.numberOfTrailingZeros(i1 ^ i2) >> 3;
+    }
+
+    private final static int _leadingBytes(long l1, long l2) {
+        return Long.numberOfTrailingZeros(l1 ^ l2) >> 3;
+    }
+}
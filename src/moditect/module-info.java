@@ -2,6 +2,8 @@
 module com.ning.compress.lzf {
     requires transitive java.xml;
     requires jdk.unsupported;
+    // Only needed for optional Vector API based codecs (Java 16+)
+    requires static jdk.incubator.vector;
 
     exports com.ning.compress;
     exports com.ning.compress.gzip;
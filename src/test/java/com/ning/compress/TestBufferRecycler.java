@@ -0,0 +1,70 @@
+package com.ning.compress;
+
+import com.ning.compress.lzf.ChunkEncoder;
+import com.ning.compress.lzf.LZFChunk;
+import com.ning.compress.lzf.LZFEncoder;
+import com.ning.compress.lzf.util.ChunkEncoderFactory;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestBufferRecycler extends BaseForTests
+{
+    @Test
+    public void testWorkspaceBuffer()
+    {
+        BufferRecycler recycler = new BufferRecycler();
+        // buffers for a few chunks are retained...
+        final int chunksSize = LZFEncoder.estimateMaxWorkspaceSize(3 * LZFChunk.MAX_CHUNK_LEN);
+        byte[] buf = recycler.allocWorkspaceBuffer(chunksSize);
+        recycler.releaseWorkspaceBuffer(buf);
+        assertSame(buf, recycler.allocWorkspaceBuffer(1000));
+        recycler.releaseWorkspaceBuffer(buf);
+
+        // as are ones for large input, separately
+        final int largeSize = LZFEncoder.estimateMaxWorkspaceSize(1000000);
+        byte[] large = recycler.allocWorkspaceBuffer(largeSize);
+        assertNotSame(buf, large);
+        recycler.releaseWorkspaceBuffer(large);
+        assertSame(buf, recycler.allocWorkspaceBuffer(chunksSize));
+        assertSame(large, recycler.allocWorkspaceBuffer(largeSize));
+        recycler.releaseWorkspaceBuffer(large);
+        // and small requests do not take large buffer if smaller one is available
+        recycler.releaseWorkspaceBuffer(buf);
+        assertSame(buf, recycler.allocWorkspaceBuffer(1000));
+        assertSame(large, recycler.allocWorkspaceBuffer(1000));
+
+        // but not ones above configured maximum size
+        recycler = new BufferRecycler(500000);
+        large = recycler.allocWorkspaceBuffer(largeSize);
+        recycler.releaseWorkspaceBuffer(large);
+        assertNotSame(large, recycler.allocWorkspaceBuffer(largeSize));
+        assertTrue(BufferRecycler.DEFAULT_MAX_WORKSPACE_BUFFER >= largeSize);
+    }
+
+    @Test
+    public void testLargeEncode() throws Exception
+    {
+        // encoding large input reuses workspace buffer for subsequent encodes
+        final byte[] input = constructFluff(10000000);
+        final BufferRecycler recycler = new BufferRecycler();
+        final ChunkEncoder enc = ChunkEncoderFactory.optimalInstance(input.length, recycler);
+        byte[] workspace;
+        try (LZFEncoder.EncodedLease lease = LZFEncoder.encodeLeased(enc, input, 0, input.length)) {
+            workspace = lease.getBuffer();
+            assertArrayEquals(input, uncompress(lease.toByteArray()));
+        }
+        assertArrayEquals(input, uncompress(LZFEncoder.encode(enc, input, 0, input.length)));
+        try (LZFEncoder.EncodedLease lease = LZFEncoder.encodeLeased(enc, input, 0, input.length)) {
+            assertSame(workspace, lease.getBuffer());
+        }
+        enc.close();
+
+        // (including with thread-local recycler)
+        assertArrayEquals(input, uncompress(LZFEncoder.encode(input)));
+        workspace = BufferRecycler.instance().allocWorkspaceBuffer(input.length);
+        BufferRecycler.instance().releaseWorkspaceBuffer(workspace);
+        assertArrayEquals(input, uncompress(LZFEncoder.encode(input)));
+        assertSame(workspace, BufferRecycler.instance().allocWorkspaceBuffer(input.length));
+    }
+}
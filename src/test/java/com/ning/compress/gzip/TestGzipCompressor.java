@@ -0,0 +1,122 @@
+package com.ning.compress.gzip;
+
+import java.io.*;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
+
+import com.ning.compress.BaseForTests;
+import com.ning.compress.DataHandler;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestGzipCompressor extends BaseForTests
+{
+    @Test
+    public void testSimpleSmall1by1() throws IOException
+    {
+        byte[] fluff = constructFluff(4000);
+        Collector co = new Collector();
+        GZIPCompressor comp = new GZIPCompressor(co);
+        for (int i = 0; i < fluff.length; ++i) {
+            assertTrue(comp.feedUncompressedData(fluff, i, 1));
+        }
+        comp.complete();
+        assertTrue(co.completed);
+        assertArrayEquals(fluff, gunzip(co.getBytes()));
+    }
+
+    @Test
+    public void testBiggerVarLength() throws IOException
+    {
+        byte[] fluff = constructFluff(400000);
+        System.arraycopy(constructUncompressable(200000), 0, fluff, 150000, 200000);
+        Random rnd = new Random(123);
+        for (int maxSize : new int[] { 7, 1000, 150000 }) {
+            Collector co = new Collector();
+            GZIPCompressor comp = new GZIPCompressor(co);
+            for (int i = 0, end = fluff.length; i < end; ) {
+                int size = Math.min(end-i, 1+rnd.nextInt(maxSize));
+                comp.feedUncompressedData(fluff, i, size);
+                i += size;
+            }
+            comp.complete();
+            byte[] gzipped = co.getBytes();
+            assertArrayEquals(fluff, gunzip(gzipped));
+            // and must be readable by push-mode counterpart as well
+            Collector unco = new Collector();
+            GZIPUncompressor uncomp = new GZIPUncompressor(unco);
+            uncomp.feedCompressedData(gzipped, 0, gzipped.length);
+            uncomp.complete();
+            assertArrayEquals(fluff, unco.getBytes());
+        }
+    }
+
+    @Test
+    public void testFlush() throws IOException
+    {
+        byte[] fluff = constructFluff(100000);
+        Collector co = new Collector();
+        GZIPCompressor comp = new GZIPCompressor(co);
+        comp.feedUncompressedData(fluff, 0, 5000);
+        assertTrue(comp.flush());
+        // all data fed so far can be uncompressed (although stream is not complete)
+        Collector unco = new Collector();
+        GZIPUncompressor uncomp = new GZIPUncompressor(unco);
+        byte[] partial = co.getBytes();
+        uncomp.feedCompressedData(partial, 0, partial.length);
+        assertArrayEquals(Arrays.copyOf(fluff, 5000), unco.getBytes());
+
+        comp.feedUncompressedData(fluff, 5000, fluff.length - 5000);
+        comp.complete();
+        assertArrayEquals(fluff, gunzip(co.getBytes()));
+        assertThrows(IOException.class, () -> comp.flush());
+    }
+
+    @Test
+    public void testEmpty() throws IOException
+    {
+        Collector co = new Collector();
+        GZIPCompressor comp = new GZIPCompressor(co);
+        comp.complete();
+        assertEquals(0, gunzip(co.getBytes()).length);
+    }
+
+    @Test
+    public void testTerminate() throws IOException
+    {
+        byte[] fluff = constructUncompressable(300000);
+        Collector co = new Collector();
+        co.maxCalls = 1;
+        GZIPCompressor comp = new GZIPCompressor(co);
+        assertFalse(comp.feedUncompressedData(fluff, 0, fluff.length));
+        assertFalse(comp.feedUncompressedData(fluff, 0, 10));
+        comp.complete();
+        assertEquals(1, co.calls);
+        assertTrue(co.completed);
+    }
+
+    private byte[] gunzip(byte[] gzipped) throws IOException {
+        return readAll(new GZIPInputStream(new ByteArrayInputStream(gzipped)));
+    }
+
+    private final static class Collector implements DataHandler
+    {
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        int calls;
+        int maxCalls = Integer.MAX_VALUE;
+        boolean completed;
+
+        @Override
+        public boolean handleData(byte[] buffer, int offset, int len) throws IOException {
+            bytes.write(buffer, offset, len);
+            return ++calls < maxCalls;
+        }
+        @Override
+        public void allDataHandled() throws IOException {
+            completed = true;
+        }
+        public byte[] getBytes() { return bytes.toByteArray(); }
+    }
+}
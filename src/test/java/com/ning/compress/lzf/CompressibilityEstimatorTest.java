@@ -0,0 +1,77 @@
+package com.ning.compress.lzf;
+
+import java.io.ByteArrayOutputStream;
+
+import com.ning.compress.BaseForTests;
+import com.ning.compress.lzf.util.ChunkEncoderFactory;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CompressibilityEstimatorTest extends BaseForTests
+{
+    @Test
+    public void testEstimates() throws Exception
+    {
+        CompressibilityEstimator est = new CompressibilityEstimator();
+        byte[] random = constructUncompressable(60000);
+        assertTrue(est.estimateRatio(random, 0, random.length) >= 1.0);
+        assertFalse(est.mayCompress(random, 0, random.length, 1.0));
+        assertFalse(est.mayCompress(random, 0, random.length, 0.8));
+        // but callers may accept a bit of expansion, too
+        assertTrue(est.mayCompress(random, 0, random.length, 1.1));
+
+        byte[] fluff = constructFluff(60000);
+        double ratio = est.estimateRatio(fluff, 0, fluff.length);
+        assertTrue(ratio < 0.8, "Estimated ratio "+ratio+" too high");
+        assertTrue(est.mayCompress(fluff, 0, fluff.length, 1.0));
+        assertTrue(est.mayCompress(fluff, 0, fluff.length, 0.7));
+        assertFalse(est.mayCompress(fluff, 0, fluff.length, 0.2));
+
+        // with offsets too
+        byte[] mixed = new byte[random.length + fluff.length];
+        System.arraycopy(random, 0, mixed, 0, random.length);
+        System.arraycopy(fluff, 0, mixed, random.length, fluff.length);
+        assertFalse(est.mayCompress(mixed, 0, random.length, 1.0));
+        assertTrue(est.mayCompress(mixed, random.length, fluff.length, 1.0));
+
+        // and short content is always considered compressible
+        assertTrue(est.mayCompress(random, 0, 100, 1.0));
+    }
+
+    @Test
+    public void testInvalidArguments()
+    {
+        CompressibilityEstimator est = new CompressibilityEstimator();
+        byte[] data = new byte[1000];
+        assertThrows(ArrayIndexOutOfBoundsException.class, () -> est.estimateRatio(data, -1, 10));
+        assertThrows(ArrayIndexOutOfBoundsException.class, () -> est.estimateRatio(data, 500, 501));
+        assertThrows(IllegalArgumentException.class, () -> new CompressibilityEstimator(0, 4, 0.1));
+        assertThrows(IllegalArgumentException.class, () -> new CompressibilityEstimator(1024, 0, 0.1));
+    }
+
+    @Test
+    public void testWithEncoder() throws Exception
+    {
+        final byte[] random = constructUncompressable(60000);
+        ChunkEncoder enc = ChunkEncoderFactory.optimalInstance()
+                .setCompressibilityEstimator(new CompressibilityEstimator());
+
+        // stored as is, without trying compression
+        LZFChunk chunk = enc.encodeChunk(random, 0, random.length);
+        assertEquals(random.length + LZFChunk.HEADER_LEN_NOT_COMPRESSED, chunk.length());
+        assertNull(enc.encodeChunkIfCompresses(random, 0, random.length, 0.9));
+        byte[] buf = new byte[LZFEncoder.estimateMaxWorkspaceSize(random.length)];
+        assertEquals(-1, enc.appendEncodedIfCompresses(random, 0.9, 0, random.length, buf, 0));
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        assertFalse(enc.encodeAndWriteChunkIfCompresses(random, 0, random.length, bytes, 0.9));
+        assertEquals(0, bytes.size());
+
+        // and compressible content is compressed same as without estimator
+        final byte[] fluff = constructFluff(60000);
+        byte[] comp = LZFEncoder.encode(enc, fluff, 0, fluff.length);
+        assertArrayEquals(LZFEncoder.encode(fluff), comp);
+        assertArrayEquals(fluff, uncompress(comp));
+        enc.close();
+    }
+}
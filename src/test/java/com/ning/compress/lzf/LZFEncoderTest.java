@@ -1,7 +1,11 @@
 package com.ning.compress.lzf;
 
 import java.io.*;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
 import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import com.ning.compress.BaseForTests;
 import com.ning.compress.lzf.impl.UnsafeChunkEncoder;
@@ -100,6 +104,8 @@ public class LZFEncoderTest extends BaseForTests
         byte[] source = constructUncompressable(4000);
         _testNonCompressableChunksSingle(source, ChunkEncoderFactory.safeInstance());
         _testNonCompressableChunksSingle(source, ChunkEncoderFactory.optimalInstance());
+        _testNonCompressableChunksSingle(source, ChunkEncoderFactory.optimalInstance()
+                .setCompressibilityEstimator(new CompressibilityEstimator()));
     }
     
     private void _testNonCompressableChunksSingle(byte[] source, ChunkEncoder encoder) throws Exception
@@ -125,6 +131,9 @@ public class LZFEncoderTest extends BaseForTests
         
         _testConditionalCompression(ChunkEncoderFactory.safeInstance(), input);
         _testConditionalCompression(ChunkEncoderFactory.optimalInstance(), input);
+        // estimator should not prevent compression here either
+        _testConditionalCompression(ChunkEncoderFactory.optimalInstance()
+                .setCompressibilityEstimator(new CompressibilityEstimator()), input);
     }
 
     private void _testConditionalCompression(ChunkEncoder enc, final byte[] input) throws IOException
@@ -167,6 +176,246 @@ public class LZFEncoderTest extends BaseForTests
         assertNull(chunk);
     }
 
+    @Test
+    public void testHighRatioEncoder() throws Exception
+    {
+        // let's do bit over 256k, to get multiple chunks
+        byte[] source = constructFluff(4 * 0xFFFF + 4000);
+        ChunkEncoder enc = ChunkEncoderFactory.highRatioInstance(source.length);
+        byte[] comp = LZFEncoder.encode(enc, source, 0, source.length);
+        enc.close();
+
+        // should compress better than default encoder
+        byte[] compStd = LZFEncoder.encode(source);
+        assertTrue(comp.length < compStd.length,
+                "Expected less than "+compStd.length+" bytes, got "+comp.length);
+
+        // and be decodable by all decoders
+        assertArrayEquals(source, uncompress(comp));
+        assertArrayEquals(source, LZFDecoder.decode(comp));
+
+        // non-allocating variant must produce identical output
+        byte[] buffer = new byte[LZFEncoder.estimateMaxWorkspaceSize(source.length)];
+        enc = ChunkEncoderFactory.highRatioNonAllocatingInstance(source.length);
+        int compLen = LZFEncoder.appendEncoded(enc, source, 0, source.length, buffer, 0);
+        enc.close();
+        assertArrayEquals(comp, Arrays.copyOf(buffer, compLen));
+    }
+
+    @Test
+    public void testTaggedHashEncoder() throws Exception
+    {
+        // Same encoder used for lots of inputs of different sizes (and from different arrays)
+        ChunkEncoder enc = ChunkEncoderFactory.taggedHashInstance(LZFChunk.MAX_CHUNK_LEN);
+        byte[] fluff = constructFluff(300000);
+        byte[] random = constructUncompressable(5000);
+        int totalLen = 0, vanillaLen = 0;
+        for (int i = 0; i < 400; ++i) {
+            int len = 1 + ((i * 997) % ((i % 10 == 0) ? 200000 : 4000));
+            byte[] input = (i % 13 == 0) ? Arrays.copyOf(random, Math.min(len, random.length))
+                    : Arrays.copyOfRange(fluff, i * 71, i * 71 + len);
+            byte[] comp = LZFEncoder.encode(enc, input, 0, input.length);
+            assertArrayEquals(input, uncompress(comp));
+            totalLen += comp.length;
+            vanillaLen += LZFEncoder.safeEncode(input).length;
+        }
+        // should compress about as well as regular encoders
+        assertTrue(totalLen < vanillaLen + (vanillaLen >> 5), "Expected about "+vanillaLen+" bytes, got "+totalLen);
+
+        // and non-allocating variant should produce same output
+        byte[] input = Arrays.copyOf(fluff, 2000);
+        byte[] buffer = new byte[LZFEncoder.estimateMaxWorkspaceSize(input.length)];
+        ChunkEncoder enc2 = ChunkEncoderFactory.taggedHashNonAllocatingInstance(LZFChunk.MAX_CHUNK_LEN);
+        int compLen = LZFEncoder.appendEncoded(enc2, input, 0, input.length, buffer, 0);
+        assertArrayEquals(LZFEncoder.encode(enc, input, 0, input.length), Arrays.copyOf(buffer, compLen));
+        enc.close();
+        enc2.close();
+    }
+
+    @Test
+    public void testCompressionLevels() throws Exception
+    {
+        byte[] source = constructFluff(4 * 0xFFFF + 4000);
+        int defaultLen = LZFEncoder.encode(source, CompressionLevel.DEFAULT).length;
+
+        for (CompressionLevel level : CompressionLevel.values()) {
+            byte[] comp = LZFEncoder.encode(source, level);
+            assertArrayEquals(source, uncompress(comp), "Level "+level);
+
+            // "safe" and non-allocating variants must produce identical output
+            ChunkEncoder enc = ChunkEncoderFactory.safeInstance(level, source.length);
+            assertArrayEquals(comp, LZFEncoder.encode(enc, source, 0, source.length), "Level "+level);
+            enc.close();
+            byte[] buffer = new byte[LZFEncoder.estimateMaxWorkspaceSize(source.length)];
+            int compLen = LZFEncoder.appendEncoded(source, 0, source.length, buffer, 0, level);
+            assertArrayEquals(comp, Arrays.copyOf(buffer, compLen), "Level "+level);
+
+            if (level.getSearchDepth() > 0) {
+                assertTrue(comp.length < defaultLen, "Level "+level+": expected less than "+defaultLen+" bytes, got "+comp.length);
+            }
+        }
+    }
+
+    @Test
+    public void testEncodeViaWorkspace() throws Exception
+    {
+        byte[] source = constructFluff(5 * 0xFFFF + 4000);
+        System.arraycopy(constructUncompressable(100000), 0, source, 70000, 100000);
+        // must be identical to encoding chunk by chunk
+        ChunkEncoder enc = ChunkEncoderFactory.optimalInstance(source.length);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        for (int offset = 0; offset < source.length; offset += 0xFFFF) {
+            bytes.write(enc.encodeChunk(source, offset, Math.min(0xFFFF, source.length - offset)).getData());
+        }
+        byte[] comp = LZFEncoder.encode(enc, source, 0, source.length);
+        assertArrayEquals(bytes.toByteArray(), comp);
+        // and workspace is recycled, so second round must work the same
+        assertArrayEquals(comp, LZFEncoder.encode(enc, source, 0, source.length));
+        enc.close();
+
+        // as well as leased variant
+        LZFEncoder.EncodedLease lease = LZFEncoder.encodeLeased(source, 0, source.length);
+        assertEquals(comp.length, lease.getLength());
+        assertTrue(lease.getBuffer().length >= comp.length);
+        assertArrayEquals(comp, Arrays.copyOf(lease.getBuffer(), lease.getLength()));
+        assertArrayEquals(comp, lease.toByteArray());
+        lease.close();
+        lease.close();
+        assertThrows(IllegalStateException.class, () -> lease.getBuffer());
+        try (LZFEncoder.EncodedLease lease2 = LZFEncoder.encodeLeased(source, 100, 1000)) {
+            assertArrayEquals(Arrays.copyOfRange(source, 100, 1100),
+                    uncompress(lease2.getBuffer(), 0, lease2.getLength()));
+        }
+    }
+
+    @Test
+    public void testParallelEncode() throws Exception
+    {
+        // multiple segments (of 16 chunks), including partial last one, and uncompressable parts
+        byte[] source = constructFluff(40 * 0xFFFF + 3000);
+        System.arraycopy(constructUncompressable(200000), 0, source, 1000000, 200000);
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        try {
+            for (CompressionLevel level : new CompressionLevel[] { CompressionLevel.FASTEST, CompressionLevel.DEFAULT }) {
+                byte[] comp = LZFEncoder.parallelEncode(source, 0, source.length, level, executor);
+                // chunks are encoded independently, so must be identical to serial encoding
+                assertArrayEquals(LZFEncoder.encode(source, level), comp, "Level "+level);
+            }
+            assertArrayEquals(LZFEncoder.encode(source), LZFEncoder.parallelEncode(source, executor));
+            // and offset within input
+            byte[] comp = LZFEncoder.parallelEncode(source, 12345, 2000000, CompressionLevel.DEFAULT, executor);
+            assertArrayEquals(Arrays.copyOfRange(source, 12345, 12345 + 2000000), uncompress(comp));
+        } finally {
+            executor.shutdown();
+        }
+        // single segment, and default executor
+        byte[] small = constructFluff(5000);
+        assertArrayEquals(LZFEncoder.encode(small), LZFEncoder.parallelEncode(small));
+        assertArrayEquals(LZFEncoder.encode(source), LZFEncoder.parallelEncode(source));
+    }
+
+    @Test
+    public void testSkipAcceleration() throws Exception
+    {
+        // Mix of incompressible and compressible sections, so that skipping both
+        // kicks in and gets reset
+        byte[] source = new byte[3 * 0xFFFF];
+        byte[] random = constructUncompressable(source.length);
+        byte[] fluff = constructFluff(source.length);
+        for (int i = 0; i < source.length; i += 5000) {
+            System.arraycopy(((i / 5000) % 2 == 0) ? random : fluff, i, source, i, Math.min(5000, source.length - i));
+        }
+        for (byte[] input : new byte[][] { random, source }) {
+            byte[] plain = LZFEncoder.encode(input, CompressionLevel.DEFAULT);
+            for (CompressionLevel level : new CompressionLevel[] { CompressionLevel.FAST, CompressionLevel.FASTEST }) {
+                assertTrue(level.getSkipStrength() > 0);
+                byte[] comp = LZFEncoder.encode(input, level);
+                assertArrayEquals(input, uncompress(comp), "Level "+level);
+                ChunkEncoder enc = ChunkEncoderFactory.safeInstance(level, input.length);
+                assertArrayEquals(comp, LZFEncoder.encode(enc, input, 0, input.length), "Level "+level);
+                enc.close();
+                // may lose some matches, but not many
+                assertTrue(comp.length < plain.length + (plain.length >> 4));
+            }
+        }
+    }
+
+    @Test
+    public void testByteBuffers() throws Exception
+    {
+        byte[] source = constructFluff(150000);
+        final int offset = 7;
+        for (boolean directSrc : new boolean[] { false, true }) {
+            for (boolean directDst : new boolean[] { false, true }) {
+                ByteBuffer src = directSrc ? ByteBuffer.allocateDirect(offset + source.length)
+                        : ByteBuffer.allocate(offset + source.length);
+                src.position(offset);
+                src.put(source);
+                src.position(offset);
+                int maxLen = LZFEncoder.estimateMaxWorkspaceSize(source.length);
+                ByteBuffer dst = directDst ? ByteBuffer.allocateDirect(offset + maxLen)
+                        : ByteBuffer.allocate(offset + maxLen);
+                dst.position(offset);
+
+                int compLen = LZFEncoder.encode(src, dst);
+                assertFalse(src.hasRemaining());
+                assertEquals(offset + compLen, dst.position());
+                byte[] comp = new byte[compLen];
+                dst.position(offset);
+                dst.get(comp);
+                assertArrayEquals(source, uncompress(comp));
+
+                // and with too little room, should fail without consuming more than fits
+                src.position(offset);
+                dst.clear();
+                dst.limit(compLen / 2);
+                assertThrows(BufferOverflowException.class, () -> LZFEncoder.safeEncode(src, dst));
+            }
+        }
+    }
+
+    @Test
+    public void testDirectBufferInput() throws Exception
+    {
+        // mix of compressible and non-compressible content
+        byte[] source = constructFluff(3 * LZFChunk.MAX_CHUNK_LEN);
+        System.arraycopy(constructUncompressable(LZFChunk.MAX_CHUNK_LEN), 0, source, LZFChunk.MAX_CHUNK_LEN,
+                LZFChunk.MAX_CHUNK_LEN);
+        final int offset = 5;
+        ByteBuffer direct = ByteBuffer.allocateDirect(offset + source.length);
+        direct.position(offset);
+        direct.put(source);
+        for (ChunkEncoder enc : new ChunkEncoder[] {
+                ChunkEncoderFactory.safeInstance(), ChunkEncoderFactory.optimalInstance(),
+                new UnsafeChunkEncoderLE(LZFChunk.MAX_CHUNK_LEN), new UnsafeChunkEncoderBE(LZFChunk.MAX_CHUNK_LEN) }) {
+            for (int ptr = 0; ptr < source.length; ptr += LZFChunk.MAX_CHUNK_LEN) {
+                final int len = Math.min(LZFChunk.MAX_CHUNK_LEN, source.length - ptr);
+                byte[] exp = enc.encodeChunk(source, ptr, len).getData();
+
+                // encoded content must be identical to that from array input
+                byte[] buffer = new byte[3 + LZFEncoder.estimateMaxWorkspaceSize(len)];
+                int end = enc.appendEncodedChunk(direct, offset + ptr, len, buffer, 3);
+                assertArrayEquals(exp, Arrays.copyOfRange(buffer, 3, end), enc.getClass().getSimpleName());
+
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                assertEquals(exp.length, enc.writeEncodedChunk(direct, offset + ptr, len, bytes));
+                assertArrayEquals(exp, bytes.toByteArray());
+
+                // as well as when encoding from direct buffer to direct buffer
+                ByteBuffer src = direct.duplicate();
+                src.limit(offset + ptr + len).position(offset + ptr);
+                ByteBuffer dst = ByteBuffer.allocateDirect(exp.length);
+                assertEquals(exp.length, enc.encodeChunk(src, dst));
+                assertFalse(src.hasRemaining());
+                assertFalse(dst.hasRemaining());
+                dst.flip();
+                byte[] actual = new byte[exp.length];
+                dst.get(actual);
+                assertArrayEquals(exp, actual);
+            }
+        }
+    }
+
     @Test
     public void testUnsafeValidation() {
         _testUnsafeValidation(new UnsafeChunkEncoderBE(10));
@@ -187,5 +436,16 @@ public class LZFEncoderTest extends BaseForTests
         assertThrows(ArrayIndexOutOfBoundsException.class, () -> encoder.tryCompress(array, goodStart, array.length + 1, array, goodStart));
         assertThrows(ArrayIndexOutOfBoundsException.class, () -> encoder.tryCompress(array, goodStart, goodEnd, array, -1));
         assertThrows(ArrayIndexOutOfBoundsException.class, () -> encoder.tryCompress(array, goodStart, goodEnd, array, array.length + 1));
+
+        // and input from direct buffer
+        final ChunkEncoder enc = encoder;
+        ByteBuffer buffer = ByteBuffer.allocateDirect(10);
+        assertThrows(NullPointerException.class, () -> enc.tryCompress(buffer, goodStart, goodEnd, null, goodStart));
+        assertThrows(IndexOutOfBoundsException.class, () -> enc.tryCompress(buffer, -1, goodEnd, array, goodStart));
+        assertThrows(IndexOutOfBoundsException.class, () -> enc.tryCompress(buffer, goodStart, goodStart - 1, array, goodStart));
+        assertThrows(IndexOutOfBoundsException.class, () -> enc.tryCompress(buffer, goodStart, buffer.capacity() + 1, array, goodStart));
+        buffer.limit(goodEnd - 1);
+        assertThrows(IndexOutOfBoundsException.class, () -> enc.tryCompress(buffer, goodStart, goodEnd, array, goodStart));
+        assertThrows(ArrayIndexOutOfBoundsException.class, () -> enc.tryCompress(buffer, goodStart, goodStart, array, -1));
     }
 }
@@ -0,0 +1,179 @@
+package com.ning.compress.lzf;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import com.ning.compress.BaseForTests;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestLZFChannels extends BaseForTests
+{
+    private byte[] input() {
+        byte[] input = constructFluff(400000);
+        // with some content that does not compress (written as is)
+        System.arraycopy(constructUncompressable(150000), 0, input, 100000, 150000);
+        return input;
+    }
+
+    @Test
+    public void testStreamRoundTrip() throws Exception
+    {
+        final byte[] input = input();
+        for (boolean direct : new boolean[] { false, true }) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (LZFWritableChannel out = new LZFWritableChannel(Channels.newChannel(bytes))) {
+                _write(out, input, direct);
+            }
+            byte[] comp = bytes.toByteArray();
+            // must be compatible with other decoders
+            assertArrayEquals(input, uncompress(comp));
+            assertArrayEquals(input, readAll(new LZFInputStream(new ByteArrayInputStream(comp))));
+            // as well as read back with varying buffer sizes
+            assertArrayEquals(input, _read(Channels.newChannel(new ByteArrayInputStream(comp)), direct));
+        }
+        // and read content from other encoders
+        byte[] comp = compress(input);
+        assertArrayEquals(input, _read(Channels.newChannel(new ByteArrayInputStream(comp)), false));
+    }
+
+    @Test
+    public void testFileRoundTrip() throws Exception
+    {
+        final byte[] input = input();
+        Path file = Files.createTempFile("lzf-channel", ".lzf");
+        try {
+            // file channel supports gathering writes
+            try (LZFWritableChannel out = new LZFWritableChannel(FileChannel.open(file, StandardOpenOption.WRITE))) {
+                _write(out, input, true);
+                out.finishBlock();
+                _write(out, input, false);
+            }
+            byte[] comp = Files.readAllBytes(file);
+            byte[] result = uncompress(comp);
+            assertEquals(2 * input.length, result.length);
+            assertArrayEquals(input, Arrays.copyOf(result, input.length));
+            assertArrayEquals(input, Arrays.copyOfRange(result, input.length, result.length));
+
+            try (LZFReadableChannel in = new LZFReadableChannel(FileChannel.open(file))) {
+                ByteBuffer bb = ByteBuffer.allocate(result.length + 1);
+                while (in.read(bb) >= 0) { }
+                assertEquals(result.length, bb.position());
+                assertArrayEquals(result, Arrays.copyOf(bb.array(), result.length));
+                // no content left
+                assertEquals(-1, in.read(ByteBuffer.allocate(10)));
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void testBufferReuse() throws Exception
+    {
+        final byte[] input = input();
+        // encoder has no buffer of its own, so channel gets recycled one
+        LZFWritableChannel out = new LZFWritableChannel(Channels.newChannel(new ByteArrayOutputStream()));
+        final byte[] encodeBuffer = out._encodeBuffer;
+        _write(out, input, false);
+        out.close();
+        for (int i = 0; i < 3; ++i) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            out = new LZFWritableChannel(Channels.newChannel(bytes), CompressionLevel.FAST);
+            assertSame(encodeBuffer, out._encodeBuffer);
+            _write(out, input, true);
+            out.close();
+            assertArrayEquals(input, uncompress(bytes.toByteArray()));
+        }
+    }
+
+    @Test
+    public void testClosed() throws Exception
+    {
+        LZFWritableChannel out = new LZFWritableChannel(Channels.newChannel(new ByteArrayOutputStream()));
+        assertTrue(out.isOpen());
+        out.close();
+        assertFalse(out.isOpen());
+        assertThrows(ClosedChannelException.class, () -> out.write(ByteBuffer.allocate(10)));
+        // close is idempotent
+        out.close();
+
+        LZFReadableChannel in = new LZFReadableChannel(Channels.newChannel(new ByteArrayInputStream(new byte[0])));
+        assertEquals(-1, in.read(ByteBuffer.allocate(10)));
+        in.close();
+        assertFalse(in.isOpen());
+        assertThrows(ClosedChannelException.class, () -> in.read(ByteBuffer.allocate(10)));
+    }
+
+    @Test
+    public void testCorrupt() throws Exception
+    {
+        final byte[] comp = compress(input());
+        // truncated content
+        final ReadableByteChannel truncated = Channels.newChannel(new ByteArrayInputStream(comp, 0, comp.length - 100));
+        assertThrows(LZFException.class, () -> _read(truncated, false));
+        // bad signature
+        final byte[] bad = Arrays.copyOf(comp, comp.length);
+        bad[1] = 'X';
+        assertThrows(LZFException.class, () -> _read(Channels.newChannel(new ByteArrayInputStream(bad)), false));
+    }
+
+    /*
+    ///////////////////////////////////////////////////////////////////////
+    // Helper methods
+    ///////////////////////////////////////////////////////////////////////
+     */
+
+    private void _write(LZFWritableChannel out, byte[] input, boolean direct) throws IOException
+    {
+        // mix of small writes, and ones that span multiple chunks
+        final int[] sizes = new int[] { 1, 100, 70000, 3, 200000, 65535 };
+        int offset = 0;
+        for (int i = 0; offset < input.length; ++i) {
+            final int len = Math.min(sizes[i % sizes.length], input.length - offset);
+            ByteBuffer bb;
+            if (direct) {
+                bb = ByteBuffer.allocateDirect(len);
+                bb.put(input, offset, len);
+                bb.flip();
+            } else { // with offset, to ensure backing array is used correctly
+                bb = ByteBuffer.wrap(input, offset - (offset % 7), len + (offset % 7)).slice();
+                bb.position(offset % 7);
+            }
+            assertEquals(len, out.write(bb));
+            assertFalse(bb.hasRemaining());
+            offset += len;
+        }
+    }
+
+    private byte[] _read(ReadableByteChannel channel, boolean direct) throws IOException
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final int[] sizes = new int[] { 1, 7, 100000, 65535, 300 };
+        try (LZFReadableChannel in = new LZFReadableChannel(channel)) {
+            for (int i = 0; ; ++i) {
+                final int size = sizes[i % sizes.length];
+                ByteBuffer bb = direct ? ByteBuffer.allocateDirect(size) : ByteBuffer.allocate(size);
+                int count = in.read(bb);
+                if (count < 0) {
+                    break;
+                }
+                assertEquals(count, bb.position());
+                bb.flip();
+                byte[] b = new byte[count];
+                bb.get(b);
+                bytes.write(b);
+            }
+        }
+        return bytes.toByteArray();
+    }
+}
@@ -0,0 +1,123 @@
+package com.ning.compress.lzf;
+
+import java.io.*;
+import java.util.Arrays;
+import java.util.Random;
+
+import com.ning.compress.BaseForTests;
+import com.ning.compress.DataHandler;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestLZFCompressor extends BaseForTests
+{
+    @Test
+    public void testSimpleSmall1by1() throws IOException
+    {
+        byte[] fluff = constructFluff(4000);
+        Collector co = new Collector();
+        LZFCompressor comp = new LZFCompressor(co);
+        for (int i = 0; i < fluff.length; ++i) {
+            assertTrue(comp.feedUncompressedData(fluff, i, 1));
+        }
+        comp.complete();
+        assertTrue(co.completed);
+        // same as compressing in one go
+        assertArrayEquals(LZFEncoder.encode(fluff), co.getBytes());
+    }
+
+    @Test
+    public void testBiggerVarLength() throws IOException
+    {
+        byte[] fluff = constructFluff(400000);
+        System.arraycopy(constructUncompressable(100000), 0, fluff, 150000, 100000);
+        Random rnd = new Random(123);
+        for (int maxSize : new int[] { 7, 1000, 150000 }) {
+            Collector co = new Collector();
+            LZFCompressor comp = new LZFCompressor(co, CompressionLevel.FAST);
+            for (int i = 0, end = fluff.length; i < end; ) {
+                int size = Math.min(end-i, 1+rnd.nextInt(maxSize));
+                comp.feedUncompressedData(fluff, i, size);
+                i += size;
+            }
+            comp.complete();
+            assertArrayEquals(fluff, LZFDecoder.decode(co.getBytes()));
+            // with each call containing a single chunk
+            assertEquals(co.calls, (fluff.length + LZFChunk.MAX_CHUNK_LEN - 1) / LZFChunk.MAX_CHUNK_LEN);
+        }
+    }
+
+    @Test
+    public void testFlush() throws IOException
+    {
+        byte[] fluff = constructFluff(100000);
+        Collector co = new Collector();
+        LZFCompressor comp = new LZFCompressor(co);
+        comp.feedUncompressedData(fluff, 0, 5000);
+        assertEquals(0, co.calls);
+        assertTrue(comp.flush());
+        // all data fed so far can be uncompressed
+        assertArrayEquals(Arrays.copyOf(fluff, 5000), LZFDecoder.decode(co.getBytes()));
+        // nothing to flush
+        comp.flush();
+        assertEquals(1, co.calls);
+        comp.feedUncompressedData(fluff, 5000, fluff.length - 5000);
+        comp.complete();
+        assertArrayEquals(fluff, LZFDecoder.decode(co.getBytes()));
+        assertThrows(IOException.class, () -> comp.feedUncompressedData(fluff, 0, 1));
+    }
+
+    @Test
+    public void testTerminate() throws IOException
+    {
+        byte[] fluff = constructFluff(300000);
+        Collector co = new Collector();
+        co.maxCalls = 2;
+        LZFCompressor comp = new LZFCompressor(co);
+        assertFalse(comp.feedUncompressedData(fluff, 0, fluff.length));
+        assertFalse(comp.feedUncompressedData(fluff, 0, 10));
+        comp.complete();
+        assertEquals(2, co.calls);
+        assertTrue(co.completed);
+    }
+
+    @Test
+    public void testBufferReuse() throws IOException
+    {
+        byte[] fluff = constructFluff(100000);
+        // encoder has no buffer of its own, so compressor gets recycled one
+        Collector co = new Collector();
+        LZFCompressor comp = new LZFCompressor(co);
+        final byte[] encodeBuffer = comp._encodeBuffer;
+        comp.feedUncompressedData(fluff, 0, fluff.length);
+        comp.complete();
+        for (int i = 0; i < 3; ++i) {
+            co = new Collector();
+            comp = new LZFCompressor(co, CompressionLevel.FAST);
+            assertSame(encodeBuffer, comp._encodeBuffer);
+            comp.feedUncompressedData(fluff, 0, fluff.length);
+            comp.complete();
+            assertArrayEquals(fluff, LZFDecoder.decode(co.getBytes()));
+        }
+    }
+
+    private final static class Collector implements DataHandler
+    {
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        int calls;
+        int maxCalls = Integer.MAX_VALUE;
+        boolean completed;
+
+        @Override
+        public boolean handleData(byte[] buffer, int offset, int len) throws IOException {
+            bytes.write(buffer, offset, len);
+            return ++calls < maxCalls;
+        }
+        @Override
+        public void allDataHandled() throws IOException {
+            completed = true;
+        }
+        public byte[] getBytes() { return bytes.toByteArray(); }
+    }
+}
@@ -1,7 +1,12 @@
 package com.ning.compress.lzf;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ReadOnlyBufferException;
 import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import com.ning.compress.BaseForTests;
 import com.ning.compress.lzf.impl.UnsafeChunkDecoder;
@@ -9,7 +14,9 @@ import com.ning.compress.lzf.util.ChunkDecoderFactory;
 import org.junit.jupiter.api.Test;
 
 import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 public class TestLZFDecoder extends BaseForTests
 {
@@ -31,6 +38,50 @@ public class TestLZFDecoder extends BaseForTests
         _testChunks(ChunkDecoderFactory.optimalInstance());
     }
 
+    @Test
+    public void testByteBuffers() throws IOException {
+        _testByteBuffers(ChunkDecoderFactory.safeInstance());
+        _testByteBuffers(ChunkDecoderFactory.optimalInstance());
+    }
+
+    @Test
+    public void testParallelDecode() throws IOException {
+        // multiple segments (of 16 chunks), mix of compressed and non-compressed chunks
+        byte[] fluff = constructFluff(40 * 0xFFFF + 3000);
+        System.arraycopy(constructUncompressable(200000), 0, fluff, 1000000, 200000);
+        byte[] comp = compress(fluff);
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        try {
+            assertArrayEquals(fluff, LZFDecoder.parallelDecode(comp, executor));
+            assertArrayEquals(fluff, LZFDecoder.parallelDecode(ChunkDecoderFactory.safeInstance(),
+                    comp, 0, comp.length, executor));
+            // with offset, and optional end marker
+            byte[] padded = new byte[comp.length + 4];
+            System.arraycopy(comp, 0, padded, 3, comp.length);
+            assertArrayEquals(fluff, LZFDecoder.parallelDecode(LZFDecoder.fastDecoder(),
+                    padded, 3, comp.length + 1, executor));
+            // corrupt or truncated input must be reported
+            assertThrows(LZFException.class, () -> LZFDecoder.parallelDecode(
+                    Arrays.copyOf(comp, comp.length - 1), executor));
+            // (header of a chunk in second segment)
+            byte[] corrupt = comp.clone();
+            int ptr = 0;
+            for (int i = 0; i < 20; ++i) {
+                int len = ((corrupt[ptr+3] & 0xFF) << 8) | (corrupt[ptr+4] & 0xFF);
+                ptr += len + ((corrupt[ptr+2] == LZFChunk.BLOCK_TYPE_COMPRESSED) ? 7 : 5);
+            }
+            corrupt[ptr+1] = 'X';
+            assertThrows(LZFException.class, () -> LZFDecoder.parallelDecode(corrupt, executor));
+        } finally {
+            executor.shutdown();
+        }
+        // single segment, and default executor
+        byte[] small = constructFluff(5000);
+        assertArrayEquals(small, LZFDecoder.parallelDecode(compress(small)));
+        assertArrayEquals(fluff, LZFDecoder.parallelDecode(comp));
+        assertArrayEquals(new byte[0], LZFDecoder.parallelDecode(new byte[0]));
+    }
+
     @Test
     public void testUnsafeValidation() {
         UnsafeChunkDecoder decoder = new UnsafeChunkDecoder();
@@ -50,12 +101,93 @@ public class TestLZFDecoder extends BaseForTests
         assertThrows(ArrayIndexOutOfBoundsException.class, () -> decoder.decodeChunk(array, goodStart, goodEnd, array, goodStart, array.length + 1));
     }
 
+    @Test
+    public void testUnsafeBufferValidation() throws IOException {
+        UnsafeChunkDecoder decoder = new UnsafeChunkDecoder();
+
+        ByteBuffer in = ByteBuffer.allocateDirect(10);
+        ByteBuffer out = ByteBuffer.allocateDirect(10);
+        int goodStart = 2;
+        int goodEnd = 5;
+        assertThrows(IndexOutOfBoundsException.class, () -> decoder.decodeBufferChunk(in, -1, goodEnd, out, goodStart, goodEnd));
+        assertThrows(IndexOutOfBoundsException.class, () -> decoder.decodeBufferChunk(in, goodStart, goodStart - 1, out, goodStart, goodEnd));
+        assertThrows(IndexOutOfBoundsException.class, () -> decoder.decodeBufferChunk(in, goodStart, in.capacity() + 1, out, goodStart, goodEnd));
+        assertThrows(IndexOutOfBoundsException.class, () -> decoder.decodeBufferChunk(in, goodStart, goodEnd, out, -1, goodEnd));
+        assertThrows(IndexOutOfBoundsException.class, () -> decoder.decodeBufferChunk(in, goodStart, goodEnd, out, goodStart, out.capacity() + 1));
+        out.limit(goodEnd - 1);
+        assertThrows(IndexOutOfBoundsException.class, () -> decoder.decodeBufferChunk(in, goodStart, goodEnd, out, goodStart, goodEnd));
+        out.clear();
+        assertThrows(ReadOnlyBufferException.class,
+                () -> decoder.decodeBufferChunk(in, goodStart, goodEnd, out.asReadOnlyBuffer(), goodStart, goodEnd));
+
+        // back reference before start of output must be caught, for direct buffers too
+        // (either as corrupt content, or by bounds checks)
+        byte[] chunk = new byte[] { 0, 'a', 0x20, 0x04 };
+        ByteBuffer corrupt = ByteBuffer.allocateDirect(chunk.length);
+        corrupt.put(chunk);
+        Exception e = assertThrows(Exception.class, () -> decoder.decodeBufferChunk(corrupt, 0, chunk.length, out, 0, 4));
+        assertTrue(e instanceof LZFException || e instanceof IndexOutOfBoundsException, "Unexpected failure: "+e);
+
+        // and valid content decodes the same from direct buffers as from arrays
+        byte[] fluff = constructFluff(50000);
+        byte[] comp = compress(fluff);
+        ByteBuffer src = ByteBuffer.allocateDirect(comp.length);
+        src.put(comp).flip();
+        ByteBuffer dst = ByteBuffer.allocateDirect(fluff.length);
+        assertEquals(fluff.length, decoder.decode(src, dst));
+        dst.flip();
+        byte[] result = new byte[fluff.length];
+        dst.get(result);
+        assertArrayEquals(fluff, result);
+    }
+
     /*
     ///////////////////////////////////////////////////////////////////////
     // Second-level test methods
     ///////////////////////////////////////////////////////////////////////
      */
 
+    private void _testByteBuffers(ChunkDecoder decoder) throws IOException
+    {
+        // mix of compressed and non-compressed chunks
+        byte[] fluff = constructFluff(150000);
+        byte[] random = constructUncompressable(80000);
+        byte[] orig = new byte[fluff.length + random.length];
+        System.arraycopy(fluff, 0, orig, 0, fluff.length);
+        System.arraycopy(random, 0, orig, fluff.length, random.length);
+        byte[] compressed = compress(orig);
+        final int offset = 3;
+
+        for (boolean directSrc : new boolean[] { false, true }) {
+            for (boolean directDst : new boolean[] { false, true }) {
+                ByteBuffer src = _buffer(directSrc, offset + compressed.length);
+                src.position(offset);
+                src.put(compressed);
+                src.position(offset);
+                ByteBuffer dst = _buffer(directDst, offset + orig.length);
+                dst.position(offset);
+
+                assertEquals(orig.length, decoder.decode(src, dst));
+                assertEquals(offset + compressed.length, src.position());
+                assertEquals(offset + orig.length, dst.position());
+                byte[] result = new byte[orig.length];
+                dst.position(offset);
+                dst.get(result);
+                assertArrayEquals(orig, result);
+
+                // and if there is not enough room, should fail
+                src.position(offset);
+                dst.clear();
+                dst.limit(orig.length - 1);
+                assertThrows(LZFException.class, () -> decoder.decode(src, dst));
+            }
+        }
+    }
+
+    private ByteBuffer _buffer(boolean direct, int size) {
+        return direct ? ByteBuffer.allocateDirect(size) : ByteBuffer.allocate(size);
+    }
+
     private void _testSimple(ChunkDecoder decoder) throws IOException
     {
         byte[] orig = "Another trivial test".getBytes(StandardCharsets.UTF_8);
@@ -1,7 +1,9 @@
 package com.ning.compress.lzf;
 
 import java.io.*;
+import java.nio.channels.Channels;
 import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 import java.util.Random;
 import java.security.SecureRandom;
 
@@ -112,6 +114,34 @@ public class TestLZFInputStream extends BaseForTests
         doTestIncremental(false);
     }
 
+    // Big reads are decoded directly into caller's buffer; must mix properly with buffered ones
+    @Test
+    public void testMixedReadSizes() throws Exception
+    {
+        byte[] fluff = constructFluff(900000);
+        System.arraycopy(constructUncompressable(200000), 0, fluff, 300000, 200000);
+        byte[] comp = LZFEncoder.encode(fluff);
+        final int[] sizes = new int[] { 100000, 7, 70000, 65535, 1, 300000, 12345 };
+        for (boolean fullReads : new boolean[] { true, false }) {
+            LZFInputStream in = new LZFInputStream(new ByteArrayInputStream(comp), fullReads);
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(fluff.length);
+            byte[] buffer = new byte[300000 + 10];
+            for (int i = 0; ; ++i) {
+                int count = in.read(buffer, 10, sizes[i % sizes.length]);
+                if (count < 0) {
+                    break;
+                }
+                assertTrue(count > 0);
+                if (fullReads) { // only last read may be short
+                    assertTrue(count == sizes[i % sizes.length] || bytes.size() + count == fluff.length);
+                }
+                bytes.write(buffer, 10, count);
+            }
+            in.close();
+            assertArrayEquals(fluff, bytes.toByteArray());
+        }
+    }
+
     @Test 
     public void testReadAndWrite() throws Exception
     {
@@ -125,6 +155,27 @@ public class TestLZFInputStream extends BaseForTests
         assertArrayEquals(fluff, actual);
     }
 
+    @Test
+    public void testTransferTo() throws Exception
+    {
+        byte[] fluff = constructFluff(300000);
+        System.arraycopy(constructUncompressable(100000), 0, fluff, 50000, 100000);
+        byte[] comp = LZFEncoder.encode(fluff);
+        LZFInputStream in = new LZFInputStream(new ByteArrayInputStream(comp));
+        assertEquals(fluff[0], (byte) in.read());
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(fluff.length);
+        assertEquals(fluff.length - 1, in.transferTo(bytes));
+        assertArrayEquals(Arrays.copyOfRange(fluff, 1, fluff.length), bytes.toByteArray());
+        assertEquals(-1, in.read());
+        in.close();
+
+        in = new LZFInputStream(new ByteArrayInputStream(comp));
+        bytes = new ByteArrayOutputStream(fluff.length);
+        assertEquals(fluff.length, in.transferTo(Channels.newChannel(bytes)));
+        assertArrayEquals(fluff, bytes.toByteArray());
+        in.close();
+    }
+
     // Mostly for [Issue#19]
     @Test
     public void testLongSkips() throws Exception
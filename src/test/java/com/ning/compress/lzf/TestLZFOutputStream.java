@@ -2,12 +2,19 @@ package com.ning.compress.lzf;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
 import java.nio.charset.StandardCharsets;
 
 import org.junit.jupiter.api.BeforeEach;
 
 import com.ning.compress.BaseForTests;
+import com.ning.compress.lzf.util.ChunkEncoderFactory;
 import org.junit.jupiter.api.Test;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -110,6 +117,119 @@ public class TestLZFOutputStream extends BaseForTests
         verifyOutputStream(bos, input);
     }
 
+    @Test
+    public void testWriteByteBuffer() throws Exception
+    {
+        final int offset = 99;
+        final int len = 100000;
+        ByteBuffer heap = ByteBuffer.wrap(bytesToWrite, offset, len);
+        ByteBuffer direct = ByteBuffer.allocateDirect(len);
+        direct.put(bytesToWrite, offset, len);
+        direct.flip();
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        LZFOutputStream os = new LZFOutputStream(bos);
+        os.write(heap);
+        os.write(direct);
+        os.close();
+        // contents must have been consumed
+        assertFalse(heap.hasRemaining());
+        assertFalse(direct.hasRemaining());
+
+        byte[] compareBytes = new byte[2 * len];
+        System.arraycopy(bytesToWrite, offset, compareBytes, 0, len);
+        System.arraycopy(bytesToWrite, offset, compareBytes, len, len);
+        verifyOutputStream(bos, compareBytes);
+    }
+
+    @Test
+    public void testGatheringWrites() throws Exception
+    {
+        // mix of chunks that compress, and ones that do not
+        byte[] input = new byte[5 * LZFChunk.MAX_CHUNK_LEN + 1000];
+        for (int offset = 0; offset < input.length; offset += 2 * LZFChunk.MAX_CHUNK_LEN) {
+            System.arraycopy(bytesToWrite, 0, input, offset, Math.min(LZFChunk.MAX_CHUNK_LEN, input.length - offset));
+        }
+        for (int offset = LZFChunk.MAX_CHUNK_LEN; offset < input.length; offset += 2 * LZFChunk.MAX_CHUNK_LEN) {
+            System.arraycopy(nonEncodableBytesToWrite, offset, input, offset,
+                    Math.min(LZFChunk.MAX_CHUNK_LEN, input.length - offset));
+        }
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        try (OutputStream os = new LZFOutputStream(bos)) {
+            os.write(input);
+        }
+        final byte[] expected = bos.toByteArray();
+        assertArrayEquals(input, uncompress(expected));
+        // direct buffers are encoded in place, with same result
+        ByteBuffer direct = ByteBuffer.allocateDirect(input.length);
+        direct.put(input).flip();
+        bos = new ByteArrayOutputStream();
+        try (LZFOutputStream os = new LZFOutputStream(bos)) {
+            os.write(direct.duplicate());
+        }
+        assertArrayEquals(expected, bos.toByteArray());
+
+        File file = File.createTempFile("lzf-gather", ".lzf");
+        try {
+            // (channels of file streams are not used, being interruptible)
+            FileOutputStream fos = new FileOutputStream(file);
+            assertNull(LZFChunk.gatheringChannel(fos));
+            fos.close();
+
+            // but channels can be written directly by encoder, with same result
+            ChunkEncoder encoder = ChunkEncoderFactory.optimalInstance();
+            int total = 0;
+            try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                for (int offset = 0; offset < input.length; offset += LZFChunk.MAX_CHUNK_LEN) {
+                    total += encoder.writeEncodedChunk(input, offset,
+                            Math.min(LZFChunk.MAX_CHUNK_LEN, input.length - offset), channel);
+                }
+            }
+            assertEquals(expected.length, total);
+            assertArrayEquals(expected, Files.readAllBytes(file.toPath()));
+            // including from direct buffer
+            total = 0;
+            try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                for (int offset = 0; offset < input.length; offset += LZFChunk.MAX_CHUNK_LEN) {
+                    total += encoder.writeEncodedChunk(direct, offset,
+                            Math.min(LZFChunk.MAX_CHUNK_LEN, input.length - offset), channel);
+                }
+            }
+            assertEquals(expected.length, total);
+            assertArrayEquals(expected, Files.readAllBytes(file.toPath()));
+        } finally {
+            file.delete();
+        }
+        assertNull(LZFChunk.gatheringChannel(bos));
+    }
+
+    @Test
+    public void testWriteFileWhenInterrupted() throws Exception
+    {
+        // non-compressible content, written as non-compressed chunks
+        byte[] input = new byte[2 * LZFChunk.MAX_CHUNK_LEN];
+        System.arraycopy(nonEncodableBytesToWrite, 0, input, 0, LZFChunk.MAX_CHUNK_LEN);
+        System.arraycopy(bytesToWrite, 0, input, LZFChunk.MAX_CHUNK_LEN, LZFChunk.MAX_CHUNK_LEN);
+        File file = File.createTempFile("lzf-interrupt", ".lzf");
+        try {
+            // interrupt status must not affect writing to file stream (or close it)
+            try (OutputStream os = new LZFOutputStream(new FileOutputStream(file))) {
+                Thread.currentThread().interrupt();
+                try {
+                    os.write(input, 0, LZFChunk.MAX_CHUNK_LEN);
+                    os.flush();
+                    os.write(input, LZFChunk.MAX_CHUNK_LEN, LZFChunk.MAX_CHUNK_LEN);
+                } finally {
+                    assertTrue(Thread.interrupted());
+                }
+            }
+            assertArrayEquals(input, uncompress(Files.readAllBytes(file.toPath())));
+        } finally {
+            file.delete();
+        }
+    }
+
     private void verifyOutputStream(ByteArrayOutputStream bos, byte[] reference) throws Exception
     {
         ByteArrayInputStream bis = new ByteArrayInputStream(bos.toByteArray());
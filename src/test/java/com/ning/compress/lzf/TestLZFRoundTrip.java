@@ -113,6 +113,10 @@ public class TestLZFRoundTrip
         decoder = new UnsafeChunkDecoder();
         _testCollision(encoder, decoder, b1, 0, b1.length);
         _testCollision(encoder, decoder, b2, off, b2.length - off);
+
+        encoder = ChunkEncoderFactory.taggedHashInstance(LZFChunk.MAX_CHUNK_LEN);
+        _testCollision(encoder, decoder, b1, 0, b1.length);
+        _testCollision(encoder, decoder, b2, off, b2.length - off);
    }
 
    private void _testCollision(ChunkEncoder encoder, ChunkDecoder decoder, byte[] bytes, int offset, int length) throws IOException
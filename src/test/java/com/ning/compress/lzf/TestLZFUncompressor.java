@@ -9,6 +9,7 @@ import com.ning.compress.UncompressorOutputStream;
 import org.junit.jupiter.api.Test;
 
 import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 
 public class TestLZFUncompressor extends BaseForTests
 {
@@ -96,14 +97,50 @@ public class TestLZFUncompressor extends BaseForTests
         assertArrayEquals(fluff, result);
     }
 
+    @Test
+    public void testHandlerStops() throws IOException
+    {
+        // compressed chunks first, then non-compressed ones
+        byte[] data = new byte[6 * LZFChunk.MAX_CHUNK_LEN];
+        System.arraycopy(constructFluff(3 * LZFChunk.MAX_CHUNK_LEN), 0, data, 0, 3 * LZFChunk.MAX_CHUNK_LEN);
+        System.arraycopy(constructUncompressable(3 * LZFChunk.MAX_CHUNK_LEN), 0, data,
+                3 * LZFChunk.MAX_CHUNK_LEN, 3 * LZFChunk.MAX_CHUNK_LEN);
+        byte[] comp = LZFEncoder.encode(data);
+
+        // no more content must be passed once handler returns false; either for compressed...
+        for (int chunks : new int[] { 2, 4 }) { // ... or non-compressed chunk
+            Collector co = new Collector(chunks * LZFChunk.MAX_CHUNK_LEN);
+            LZFUncompressor uncomp = new LZFUncompressor(co);
+            assertFalse(uncomp.feedCompressedData(comp, 0, comp.length));
+            assertFalse(uncomp.feedCompressedData(comp, 0, comp.length));
+            uncomp.complete();
+            byte[] exp = new byte[chunks * LZFChunk.MAX_CHUNK_LEN];
+            System.arraycopy(data, 0, exp, 0, exp.length);
+            assertArrayEquals(exp, co.getBytes());
+        }
+    }
+
     private final static class Collector implements DataHandler
     {
         private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
 
+        private final int limit;
+
+        public Collector() {
+            this(Integer.MAX_VALUE);
+        }
+
+        /**
+         * @param limit Number of bytes after which no more content is needed
+         */
+        public Collector(int limit) {
+            this.limit = limit;
+        }
+
         @Override
         public boolean handleData(byte[] buffer, int offset, int len) throws IOException {
             bytes.write(buffer, offset, len);
-            return true;
+            return bytes.size() < limit;
         }
         @Override
         public void allDataHandled() throws IOException { }
@@ -0,0 +1,106 @@
+package com.ning.compress.lzf.parallel;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestBlockManager
+{
+    @Test
+    public void testSimple() throws Exception
+    {
+        BlockManager blocks = new BlockManager(3, 100);
+        Set<byte[]> seen = Collections.newSetFromMap(new IdentityHashMap<byte[], Boolean>());
+        for (int i = 0; i < 3; ++i) {
+            byte[] block = blocks.getBlockFromPool();
+            assertEquals(100, block.length);
+            assertTrue(seen.add(block));
+        }
+        assertEquals(3L, blocks.getHitCount());
+        assertEquals(0L, blocks.getMissCount());
+        for (byte[] block : seen) {
+            blocks.releaseBlockToPool(block);
+        }
+        for (int i = 0; i < 3; ++i) {
+            assertTrue(seen.contains(blocks.getBlockFromPool()));
+        }
+        // and with pool empty, must wait for release
+        final byte[] released = seen.iterator().next();
+        Thread t = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(50L);
+                } catch (InterruptedException e) { }
+                blocks.releaseBlockToPool(released);
+            }
+        };
+        t.start();
+        assertSame(released, blocks.getBlockFromPool());
+        t.join();
+        assertEquals(1L, blocks.getMissCount());
+        assertTrue(blocks.getWaitNanos() > 0L);
+
+        // waiting can be interrupted
+        Thread.currentThread().interrupt();
+        assertThrows(InterruptedException.class, () -> blocks.getBlockFromPool());
+    }
+
+    @Test
+    public void testReleaseToFullPool() throws Exception
+    {
+        BlockManager blocks = new BlockManager(2, 10);
+        byte[] first = blocks.getBlockFromPool();
+        // block replacing one still in use (after interrupt): pool has one too many
+        blocks.releaseBlockToPool(new byte[10]);
+        blocks.releaseBlockToPool(first);
+        Set<byte[]> seen = Collections.newSetFromMap(new IdentityHashMap<byte[], Boolean>());
+        for (int i = 0; i < 2; ++i) {
+            assertTrue(seen.add(blocks.getBlockFromPool()));
+        }
+        // and extra block is not left in pool either
+        Thread.currentThread().interrupt();
+        assertThrows(InterruptedException.class, () -> blocks.getBlockFromPool());
+    }
+
+    @Test
+    public void testConcurrent() throws Exception
+    {
+        final BlockManager blocks = new BlockManager(4, 10);
+        final int THREADS = 8;
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            List<Future<Void>> results = new ArrayList<Future<Void>>();
+            for (int i = 0; i < THREADS; ++i) {
+                final byte id = (byte) i;
+                results.add(executor.submit(() -> {
+                    for (int round = 0; round < 5000; ++round) {
+                        byte[] block = blocks.getBlockFromPool();
+                        // no one else may use the block at the same time
+                        Arrays.fill(block, id);
+                        Thread.yield();
+                        for (byte b : block) {
+                            assertEquals(id, b);
+                        }
+                        blocks.releaseBlockToPool(block);
+                    }
+                    return null;
+                }));
+            }
+            for (Future<Void> result : results) {
+                result.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+        assertEquals(THREADS * 5000L, blocks.getHitCount() + blocks.getMissCount());
+        // all blocks must be back in the pool
+        Set<byte[]> seen = Collections.newSetFromMap(new IdentityHashMap<byte[], Boolean>());
+        for (int i = 0; i < 4; ++i) {
+            assertTrue(seen.add(blocks.getBlockFromPool()));
+        }
+    }
+}
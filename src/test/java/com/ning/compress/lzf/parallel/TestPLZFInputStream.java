@@ -0,0 +1,103 @@
+package com.ning.compress.lzf.parallel;
+
+import java.io.*;
+import java.util.Arrays;
+
+import com.ning.compress.BaseForTests;
+import com.ning.compress.lzf.LZFException;
+import com.ning.compress.lzf.LZFOutputStream;
+import com.ning.compress.lzf.util.ChunkDecoderFactory;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestPLZFInputStream extends BaseForTests
+{
+    @Test
+    public void testRoundTrip() throws Exception
+    {
+        byte[] input = _input();
+        // both from parallel, and regular (with non-compressed chunks) output streams
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (PLZFOutputStream out = new PLZFOutputStream(bytes)) {
+            out.write(input);
+        }
+        assertArrayEquals(input, readAll(new PLZFInputStream(new ByteArrayInputStream(bytes.toByteArray()))));
+        byte[] comp = _compress(input);
+        assertArrayEquals(input, readAll(new PLZFInputStream(new ByteArrayInputStream(comp))));
+        // with a single thread, to exercise block pool bounds
+        assertArrayEquals(input, readAll(new PLZFInputStream(new ByteArrayInputStream(comp), 1)));
+        // and with optional end marker
+        byte[] withMarker = Arrays.copyOf(comp, comp.length + 1);
+        assertArrayEquals(input, readAll(new PLZFInputStream(new ByteArrayInputStream(withMarker), 2)));
+        // as well as empty content
+        assertEquals(-1, new PLZFInputStream(new ByteArrayInputStream(new byte[0])).read());
+    }
+
+    @Test
+    public void testReadsAndSkip() throws Exception
+    {
+        byte[] input = _input();
+        byte[] comp = _compress(input);
+
+        // full reads must return as much as requested
+        try (PLZFInputStream in = new PLZFInputStream(new ByteArrayInputStream(comp), true)) {
+            byte[] buffer = new byte[200000];
+            assertEquals(buffer.length, in.read(buffer));
+            assertArrayEquals(Arrays.copyOf(input, buffer.length), buffer);
+            assertEquals(input[buffer.length] & 0xFF, in.read());
+            assertEquals(100000L, in.skip(100000L));
+            assertEquals(input[300001] & 0xFF, in.read());
+            assertEquals(input.length - 300002L, in.skip(input.length));
+            assertEquals(-1, in.read(buffer));
+        }
+        // optimal reads up to end of chunk
+        try (PLZFInputStream in = new PLZFInputStream(new ByteArrayInputStream(comp), 3,
+                ChunkDecoderFactory.safeInstance())) {
+            byte[] buffer = new byte[100000];
+            int count = in.read(buffer);
+            assertTrue(count > 0 && count < buffer.length);
+            assertArrayEquals(Arrays.copyOf(input, count), Arrays.copyOf(buffer, count));
+        }
+    }
+
+    @Test
+    public void testCorrupt() throws Exception
+    {
+        byte[] comp = _compress(_input());
+        // truncated
+        final byte[] truncated = Arrays.copyOf(comp, comp.length - 100);
+        try (PLZFInputStream in = new PLZFInputStream(new ByteArrayInputStream(truncated))) {
+            assertThrows(LZFException.class, () -> readAll(in));
+        }
+        // corrupt content of a compressed chunk: failure reported from decoding thread
+        // (back-references before start of content)
+        final byte[] corrupt = comp.clone();
+        assertEquals(1, corrupt[2]);
+        Arrays.fill(corrupt, 7, 20, (byte) 0xFF);
+        try (PLZFInputStream in = new PLZFInputStream(new ByteArrayInputStream(corrupt), 2,
+                ChunkDecoderFactory.safeInstance())) {
+            assertThrows(IOException.class, () -> readAll(in));
+        }
+    }
+
+    private byte[] _input()
+    {
+        // mix of compressible and incompressible content, to get both kinds of chunks
+        byte[] fluff = constructFluff(500000);
+        System.arraycopy(constructUncompressable(150000), 0, fluff, 200000, 150000);
+        return fluff;
+    }
+
+    private byte[] _compress(byte[] input) throws IOException
+    {
+        // write in pieces, so that there are chunks of different lengths
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (LZFOutputStream out = new LZFOutputStream(bytes)) {
+            out.write(input, 0, 1000);
+            out.flush();
+            out.write(input, 1000, input.length - 1000);
+        }
+        return bytes.toByteArray();
+    }
+}
@@ -0,0 +1,369 @@
+package com.ning.compress.lzf.parallel;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import com.ning.compress.BaseForTests;
+import com.ning.compress.lzf.CompressionLevel;
+import com.ning.compress.lzf.LZFChunk;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestPLZFOutputStream extends BaseForTests
+{
+    @Test
+    public void testSimple() throws Exception
+    {
+        byte[] input = constructFluff(400000);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (PLZFOutputStream out = new PLZFOutputStream(bytes, 1000, 2)) {
+            out.write(input, 0, 100);
+            out.write(input[100]);
+            out.write(input, 101, input.length - 101);
+        }
+        assertArrayEquals(input, uncompress(bytes.toByteArray()));
+    }
+
+    @Test
+    public void testBlockSlices() throws Exception
+    {
+        // blocks of multiple chunks, some of which do not compress
+        byte[] input = constructFluff(700000);
+        System.arraycopy(constructUncompressable(150000), 0, input, 100000, 150000);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (PLZFOutputStream out = new PLZFOutputStream(bytes, 200000, 2)) {
+            out.write(input);
+        }
+        final byte[] comp = bytes.toByteArray();
+        assertArrayEquals(input, uncompress(comp));
+
+        // and same, to a file
+        File file = File.createTempFile("plzf", ".lzf");
+        try {
+            try (PLZFOutputStream out = new PLZFOutputStream(new FileOutputStream(file), 200000, 2)) {
+                out.write(input);
+            }
+            assertArrayEquals(comp, Files.readAllBytes(file.toPath()));
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testFlush() throws Exception
+    {
+        byte[] input = constructFluff(300000);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        PLZFOutputStream out = new PLZFOutputStream(bytes, 30000, 2);
+        // after flush, all content written so far must be in the underlying stream
+        out.write(input, 0, 200000);
+        out.flush();
+        assertArrayEquals(Arrays.copyOf(input, 200000), uncompress(bytes.toByteArray()));
+        out.write(input, 200000, 10);
+        out.flush();
+        assertArrayEquals(Arrays.copyOf(input, 200010), uncompress(bytes.toByteArray()));
+        // and same with async variant
+        out.write(input, 200010, input.length - 200010);
+        CompletableFuture<Void> f = out.flushAsync();
+        f.get();
+        assertArrayEquals(input, uncompress(bytes.toByteArray()));
+        // nothing to flush
+        out.flush();
+        out.close();
+        assertArrayEquals(input, uncompress(bytes.toByteArray()));
+        assertThrows(IOException.class, () -> out.flush());
+
+        // failure to write (or flush) must be reported
+        final PLZFOutputStream failing = new PLZFOutputStream(new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                throw new IOException("Failed");
+            }
+        }, 1000, 1);
+        failing.write(input, 0, 100);
+        assertThrows(IOException.class, () -> failing.flush());
+        // failure is permanent: content written is incomplete
+        assertThrows(IOException.class, () -> failing.close());
+        final PLZFOutputStream failingFlush = new PLZFOutputStream(new ByteArrayOutputStream() {
+            @Override
+            public void flush() throws IOException {
+                throw new IOException("Failed");
+            }
+        }, 1000, 1);
+        failingFlush.write(input, 0, 100);
+        assertThrows(ExecutionException.class, () -> failingFlush.flushAsync().get());
+        assertThrows(IOException.class, () -> failingFlush.close());
+    }
+
+    @Test
+    public void testWriteFailure() throws Exception
+    {
+        final byte[] input = constructFluff(300000);
+        // sink that fails once when asked to, and then accepts content again
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final AtomicBoolean failNext = new AtomicBoolean();
+        final OutputStream sink = new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                write(new byte[] { (byte) b }, 0, 1);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                if (failNext.getAndSet(false)) {
+                    throw new IOException("Failed");
+                }
+                bytes.write(b, off, len);
+            }
+        };
+        try (ParallelCompressionContext context = new ParallelCompressionContext(2, 2, 2)) {
+            PLZFOutputStream out = new PLZFOutputStream(sink, context);
+            out.write(input, 0, 100000);
+            out.flush();
+            final int written = bytes.size();
+            failNext.set(true);
+            out.write(input, 100000, 100000);
+            IOException e = assertThrows(IOException.class, () -> out.flush());
+            // all later calls must fail with the first failure; and nothing more is written
+            assertThrows(IOException.class, () -> out.write(input, 200000, 10));
+            assertThrows(IOException.class, () -> out.write(input[0]));
+            assertThrows(IOException.class, () -> out.flush());
+            IOException closeFail = assertThrows(IOException.class, () -> out.close());
+            assertSame(e, closeFail);
+            assertThrows(IOException.class, () -> out.close());
+            assertEquals(written, bytes.size());
+            assertArrayEquals(Arrays.copyOf(input, 100000), uncompress(bytes.toByteArray()));
+
+            // blocks of failed stream must have been returned to the pool of context
+            ByteArrayOutputStream bytes2 = new ByteArrayOutputStream();
+            try (PLZFOutputStream out2 = new PLZFOutputStream(bytes2, context)) {
+                out2.write(input);
+            }
+            assertArrayEquals(input, uncompress(bytes2.toByteArray()));
+        }
+    }
+
+    @Test
+    public void testSharedContext() throws Exception
+    {
+        final byte[] input = constructFluff(300000);
+        System.arraycopy(constructUncompressable(70000), 0, input, 100000, 70000);
+        // more streams than blocks in flight, written concurrently and interleaved
+        try (final ParallelCompressionContext context = new ParallelCompressionContext(2, 3, 2)) {
+            ExecutorService writers = Executors.newFixedThreadPool(4);
+            try {
+                List<Future<byte[]>> results = new ArrayList<Future<byte[]>>();
+                for (int i = 0; i < 8; ++i) {
+                    results.add(writers.submit(() -> {
+                        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                        try (PLZFOutputStream out = new PLZFOutputStream(bytes, context, CompressionLevel.FAST)) {
+                            for (int offset = 0; offset < input.length; offset += 17000) {
+                                out.write(input, offset, Math.min(17000, input.length - offset));
+                            }
+                        }
+                        return bytes.toByteArray();
+                    }));
+                }
+                for (Future<byte[]> result : results) {
+                    assertArrayEquals(input, uncompress(result.get()));
+                }
+            } finally {
+                writers.shutdown();
+            }
+            // and single-threaded, with multiple streams open at the same time
+            ByteArrayOutputStream bytes1 = new ByteArrayOutputStream();
+            ByteArrayOutputStream bytes2 = new ByteArrayOutputStream();
+            PLZFOutputStream out1 = new PLZFOutputStream(bytes1, context);
+            PLZFOutputStream out2 = new PLZFOutputStream(bytes2, context);
+            for (int offset = 0; offset < input.length; offset += 50000) {
+                int len = Math.min(50000, input.length - offset);
+                out1.write(input, offset, len);
+                out2.write(input, offset, len);
+            }
+            out1.close();
+            out2.close();
+            assertArrayEquals(input, uncompress(bytes1.toByteArray()));
+            assertArrayEquals(input, uncompress(bytes2.toByteArray()));
+            // every block submitted needs a replacement from the pool
+            assertTrue(context.getBlockPoolHitCount() + context.getBlockPoolMissCount() >= 8 * 4);
+        }
+    }
+
+    @Test
+    public void testInterruptWaitingForBlock() throws Exception
+    {
+        final byte[] input = constructFluff(2 * LZFChunk.MAX_CHUNK_LEN);
+        final CountDownLatch writing = new CountDownLatch(1);
+        final CountDownLatch unblock = new CountDownLatch(1);
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream() {
+            @Override
+            public synchronized void write(byte[] b, int off, int len) {
+                writing.countDown();
+                try {
+                    unblock.await();
+                } catch (InterruptedException e) { }
+                super.write(b, off, len);
+            }
+        };
+        ExecutorService writer = Executors.newSingleThreadExecutor();
+        try (ParallelCompressionContext context = new ParallelCompressionContext(1, 1, 4)) {
+            final PLZFOutputStream out = new PLZFOutputStream(bytes, context);
+            // first block is blocked in write; second one waits for a block from pool
+            out.write(input, 0, LZFChunk.MAX_CHUNK_LEN);
+            assertTrue(writing.await(10, TimeUnit.SECONDS));
+            final AtomicReference<Thread> writerThread = new AtomicReference<Thread>();
+            Future<?> second = writer.submit(() -> {
+                writerThread.set(Thread.currentThread());
+                out.write(input, LZFChunk.MAX_CHUNK_LEN, LZFChunk.MAX_CHUNK_LEN);
+                return null;
+            });
+            while (context.getBlockPoolMissCount() == 0L) {
+                Thread.sleep(1L);
+            }
+            writerThread.get().interrupt();
+            try {
+                second.get(10, TimeUnit.SECONDS);
+                fail("Should have been interrupted");
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof InterruptedIOException, "Unexpected failure: "+e.getCause());
+            }
+            // once both blocks have been written, stream must close (and not leave worker stuck)
+            unblock.countDown();
+            writer.submit(() -> {
+                Thread.interrupted();
+                out.close();
+                return null;
+            }).get(10, TimeUnit.SECONDS);
+            assertArrayEquals(input, uncompress(bytes.toByteArray()));
+        } finally {
+            writer.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testAdaptive() throws Exception
+    {
+        final byte[] input = constructFluff(1000000);
+        try (ParallelCompressionContext context = ParallelCompressionContext.adaptive(4)) {
+            assertTrue(context.isAdaptive());
+            assertEquals(2, context.getThreadCount());
+            // with slow writes, more threads would not help: must shrink down to one
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream() {
+                @Override
+                public synchronized void write(byte[] b, int off, int len) {
+                    try {
+                        Thread.sleep(2L);
+                    } catch (InterruptedException e) { }
+                    super.write(b, off, len);
+                }
+            };
+            try (PLZFOutputStream out = new PLZFOutputStream(bytes, context)) {
+                for (int i = 0; i < 4; ++i) {
+                    out.write(input);
+                }
+            }
+            assertEquals(1, context.getThreadCount());
+            byte[] result = uncompress(bytes.toByteArray());
+            assertEquals(4 * input.length, result.length);
+            assertArrayEquals(input, Arrays.copyOf(result, input.length));
+        }
+        try (ParallelCompressionContext context = new ParallelCompressionContext(2)) {
+            assertFalse(context.isAdaptive());
+        }
+        assertThrows(IllegalArgumentException.class, () -> ParallelCompressionContext.adaptive(0));
+    }
+
+    @Test
+    public void testAdaptiveCompression() throws Exception
+    {
+        final byte[] input = constructFluff(600000);
+        System.arraycopy(constructUncompressable(70000), 0, input, 100000, 70000);
+        // slow sink (better compression chosen), as well as fast one
+        for (final long delay : new long[] { 2L, 0L }) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream() {
+                @Override
+                public synchronized void write(byte[] b, int off, int len) {
+                    if (delay > 0L) {
+                        try {
+                            Thread.sleep(delay);
+                        } catch (InterruptedException e) { }
+                    }
+                    super.write(b, off, len);
+                }
+            };
+            try (PLZFOutputStream out = new PLZFOutputStream(bytes, 20000, 2).setAdaptiveCompression(true)) {
+                for (int offset = 0; offset < input.length; offset += 7000) {
+                    out.write(input, offset, Math.min(7000, input.length - offset));
+                }
+            }
+            assertArrayEquals(input, uncompress(bytes.toByteArray()));
+        }
+    }
+
+    @Test
+    public void testSelectLevel() throws Exception
+    {
+        final CompressionLevel base = CompressionLevel.DEFAULT;
+        // unknown executor state: as configured
+        assertSame(base, PLZFOutputStream.selectLevel(base, -1, -1, -1, 4, 4));
+        // blocks waiting for workers
+        assertNull(PLZFOutputStream.selectLevel(base, 8, 0, 4, 0, 8));
+        assertSame(CompressionLevel.FASTEST, PLZFOutputStream.selectLevel(base, 4, 0, 4, 0, 8));
+        // idle workers, blocks waiting to be written
+        assertSame(CompressionLevel.BEST, PLZFOutputStream.selectLevel(base, 0, 2, 4, 4, 8));
+        assertSame(base, PLZFOutputStream.selectLevel(base, 0, 2, 4, 1, 8));
+        assertSame(base, PLZFOutputStream.selectLevel(base, 1, 0, 4, 4, 8));
+    }
+
+    @Test
+    public void testCpuLimit() throws Exception
+    {
+        assertEquals(-1, ParallelCompressionContext.cpuLimit("max 100000"));
+        assertEquals(-1, ParallelCompressionContext.cpuLimit("-1 100000"));
+        assertEquals(2, ParallelCompressionContext.cpuLimit("200000 100000\n"));
+        assertEquals(3, ParallelCompressionContext.cpuLimit("250000  100000"));
+        assertEquals(1, ParallelCompressionContext.cpuLimit("50000 100000"));
+        int cpus = ParallelCompressionContext.availableProcessors();
+        assertTrue(cpus >= 1 && cpus <= Runtime.getRuntime().availableProcessors());
+    }
+
+    @Test
+    public void testCallerExecutors() throws Exception
+    {
+        byte[] input = constructFluff(200000);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            ParallelCompressionContext context = new ParallelCompressionContext(executor, 4, 2);
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (PLZFOutputStream out = new PLZFOutputStream(bytes, context)) {
+                out.write(input);
+            }
+            context.close();
+            assertArrayEquals(input, uncompress(bytes.toByteArray()));
+            // executor is not owned by context, so must still be usable
+            assertFalse(executor.isShutdown());
+            assertThrows(IllegalArgumentException.class,
+                    () -> new ParallelCompressionContext(executor, 0, 2));
+        } finally {
+            executor.shutdown();
+        }
+        // but with executor shut down, writes must fail
+        PLZFOutputStream out = new PLZFOutputStream(new ByteArrayOutputStream(),
+                new ParallelCompressionContext(executor, 4, 2));
+        out.write(input, 0, 100);
+        assertThrows(IOException.class, () -> out.flush());
+    }
+}
@@ -1,15 +1,24 @@
 package com.ning.compress.lzf.util;
 
 import java.io.*;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.Arrays;
 
 import com.ning.compress.BaseForTests;
+import com.ning.compress.lzf.LZFException;
+import com.ning.compress.lzf.LZFOutputStream;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.io.TempDir;
 
 import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 public class TestFileStreams extends BaseForTests
 {
@@ -40,6 +49,133 @@ public class TestFileStreams extends BaseForTests
         }
     }
 
+    @Test
+    public void testMixedReadSizes() throws Exception
+    {
+        File f = tempDir.resolve("lzf-test-mixed.lzf").toFile();
+        byte[] input = constructFluff(400000);
+        System.arraycopy(constructUncompressable(100000), 0, input, 100000, 100000);
+        try (LZFFileOutputStream out = new LZFFileOutputStream(f)) {
+            out.write(input);
+        }
+        // big reads are decoded directly into caller's buffer, small ones buffered
+        final int[] sizes = new int[] { 70000, 3, 200000, 65535, 1000 };
+        for (boolean fullReads : new boolean[] { true, false }) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(input.length);
+            try (LZFFileInputStream in = new LZFFileInputStream(f)) {
+                in.setUseFullReads(fullReads);
+                byte[] buffer = new byte[200000];
+                int count;
+                for (int i = 0; (count = in.read(buffer, 0, sizes[i % sizes.length])) >= 0; ++i) {
+                    bytes.write(buffer, 0, count);
+                }
+            }
+            assertArrayEquals(input, bytes.toByteArray());
+        }
+    }
+
+    @Test
+    public void testTransferTo() throws Exception
+    {
+        File f = tempDir.resolve("lzf-test-transfer.lzf").toFile();
+        // mix of compressed and non-compressed (passed through as is) chunks
+        byte[] input = constructFluff(400000);
+        System.arraycopy(constructUncompressable(150000), 0, input, 100000, 150000);
+        try (LZFFileOutputStream out = new LZFFileOutputStream(f)) {
+            out.write(input);
+        }
+        // first to a file
+        File copy = tempDir.resolve("lzf-test-transfer.txt").toFile();
+        try (LZFFileInputStream in = new LZFFileInputStream(f);
+                FileOutputStream out = new FileOutputStream(copy)) {
+            // including partially read content
+            assertEquals(1000, in.read(new byte[1000]));
+            assertEquals(input.length - 1000, in.transferTo(out));
+        }
+        assertArrayEquals(Arrays.copyOfRange(input, 1000, input.length), Files.readAllBytes(copy.toPath()));
+        // then to a non-file stream, and channel
+        try (LZFFileInputStream in = new LZFFileInputStream(f)) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            assertEquals(input.length, in.transferTo(bytes));
+            assertArrayEquals(input, bytes.toByteArray());
+        }
+        try (LZFFileInputStream in = new LZFFileInputStream(f)) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            assertEquals(input.length, in.transferTo(Channels.newChannel(bytes)));
+            assertArrayEquals(input, bytes.toByteArray());
+        }
+        // and truncated input must be reported
+        byte[] comp = Files.readAllBytes(f.toPath());
+        Files.write(f.toPath(), Arrays.copyOf(comp, comp.length - 10));
+        try (LZFFileInputStream in = new LZFFileInputStream(f)) {
+            assertThrows(IOException.class, () -> in.transferTo(Channels.newChannel(new ByteArrayOutputStream())));
+        }
+    }
+
+    @Test
+    public void testTransferToFallback() throws Exception
+    {
+        final File f = tempDir.resolve("lzf-test-fallback.lzf").toFile();
+        // ending with non-compressed chunks
+        byte[] input = constructFluff(300000);
+        System.arraycopy(constructUncompressable(150000), 0, input, 150000, 150000);
+        try (LZFFileOutputStream out = new LZFFileOutputStream(f)) {
+            out.write(input);
+        }
+        final byte[] comp = Files.readAllBytes(f.toPath());
+        // target that does not accept content from direct buffers (which transfer uses)
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final WritableByteChannel heapOnly = new WritableByteChannel() {
+            final WritableByteChannel ch = Channels.newChannel(bytes);
+
+            @Override
+            public int write(ByteBuffer src) throws IOException {
+                return src.hasArray() ? ch.write(src) : 0;
+            }
+
+            @Override
+            public boolean isOpen() {
+                return true;
+            }
+
+            @Override
+            public void close() { }
+        };
+        try (LZFFileInputStream in = new LZFFileInputStream(f)) {
+            assertEquals(input.length, in.transferTo(heapOnly));
+        }
+        assertArrayEquals(input, bytes.toByteArray());
+
+        // and file truncated while being transferred
+        final WritableByteChannel truncating = new WritableByteChannel() {
+            boolean truncated;
+
+            @Override
+            public int write(ByteBuffer src) throws IOException {
+                if (!truncated) {
+                    truncated = true;
+                    try (RandomAccessFile raf = new RandomAccessFile(f, "rw")) {
+                        raf.setLength(comp.length - 10);
+                    }
+                }
+                final int count = src.remaining();
+                src.position(src.limit());
+                return count;
+            }
+
+            @Override
+            public boolean isOpen() {
+                return true;
+            }
+
+            @Override
+            public void close() { }
+        };
+        try (LZFFileInputStream in = new LZFFileInputStream(f)) {
+            assertThrows(LZFException.class, () -> in.transferTo(truncating));
+        }
+    }
+
     @Test 
     public void testReadAndWrite() throws Exception
     {
@@ -57,4 +193,35 @@ public class TestFileStreams extends BaseForTests
         byte[] actual = bytes.toByteArray();
         assertArrayEquals(fluff, actual);
     }
+
+    @Test
+    public void testWriteChunks() throws Exception
+    {
+        byte[] input = constructFluff(300000);
+        System.arraycopy(constructUncompressable(140000), 0, input, 70000, 140000);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (LZFOutputStream out = new LZFOutputStream(bytes)) {
+            out.write(input);
+        }
+        byte[] expected = bytes.toByteArray();
+
+        File f = tempDir.resolve("lzf-test-chunks.lzf").toFile();
+        try (LZFFileOutputStream out = new LZFFileOutputStream(f)) {
+            out.write(input);
+        }
+        assertArrayEquals(expected, Files.readAllBytes(f.toPath()));
+
+        // interrupt status must not affect writing (channel of file would be closed)
+        try (LZFFileOutputStream out = new LZFFileOutputStream(f)) {
+            Thread.currentThread().interrupt();
+            try {
+                out.write(input, 0, 100000);
+                out.flush();
+                out.write(input, 100000, input.length - 100000);
+            } finally {
+                assertTrue(Thread.interrupted());
+            }
+        }
+        assertArrayEquals(input, uncompress(Files.readAllBytes(f.toPath())));
+    }
 }
@@ -0,0 +1,113 @@
+package com.ning.compress.lzf.util;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import com.ning.compress.BaseForTests;
+import com.ning.compress.BufferRecycler;
+import com.ning.compress.lzf.ChunkDecoder;
+import com.ning.compress.lzf.LZFException;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestMappedLZFFile extends BaseForTests
+{
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void testRead() throws Exception
+    {
+        byte[] input = _input();
+        File f = _write(input);
+        for (ChunkDecoder decoder : new ChunkDecoder[] {
+                ChunkDecoderFactory.safeInstance(), ChunkDecoderFactory.optimalInstance() }) {
+            // use both default, and minimum window sizes (to test remapping)
+            for (int windowSize : new int[] { MappedLZFFile.DEFAULT_WINDOW_SIZE, MappedLZFFile.MIN_WINDOW_SIZE }) {
+                try (MappedLZFFile mapped = new MappedLZFFile(f, decoder, new BufferRecycler(), windowSize)) {
+                    assertEquals(f.length(), mapped.length());
+                    assertEquals(input.length, mapped.getUncompressedLength());
+                    // first, all at once
+                    byte[] result = new byte[input.length + 100];
+                    assertEquals(input.length, mapped.read(result));
+                    assertArrayEquals(input, Arrays.copyOf(result, input.length));
+                    assertEquals(-1, mapped.read(result));
+
+                    // then with reads shorter than chunks
+                    mapped.rewind();
+                    ByteArrayOutputStream bytes = new ByteArrayOutputStream(input.length);
+                    byte[] buffer = new byte[7000];
+                    int count;
+                    while ((count = mapped.read(buffer, 0, buffer.length)) > 0) {
+                        bytes.write(buffer, 0, count);
+                    }
+                    assertArrayEquals(input, bytes.toByteArray());
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testSkip() throws Exception
+    {
+        byte[] input = _input();
+        File f = _write(input);
+        try (MappedLZFFile mapped = new MappedLZFFile(f)) {
+            // skip part of first chunk, then multiple chunks
+            assertEquals(100L, mapped.skip(100L));
+            byte[] buffer = new byte[50];
+            assertEquals(50, mapped.read(buffer));
+            assertArrayEquals(Arrays.copyOfRange(input, 100, 150), buffer);
+            assertEquals(200000L, mapped.skip(200000L));
+            assertEquals(50, mapped.read(buffer));
+            assertArrayEquals(Arrays.copyOfRange(input, 200150, 200200), buffer);
+            // and skipping past end should only skip what is left
+            assertEquals(input.length - 200200L, mapped.skip(input.length));
+            assertEquals(-1, mapped.read(buffer));
+        }
+    }
+
+    @Test
+    public void testEmptyAndCorrupt() throws Exception
+    {
+        File f = _write(new byte[0]);
+        try (MappedLZFFile mapped = new MappedLZFFile(f)) {
+            assertEquals(0L, mapped.getUncompressedLength());
+            assertEquals(-1, mapped.read(new byte[10]));
+        }
+        // truncated last chunk
+        byte[] comp = compress(_input());
+        File f2 = tempDir.resolve("truncated.lzf").toFile();
+        Files.write(f2.toPath(), Arrays.copyOf(comp, comp.length - 10));
+        try (MappedLZFFile mapped = new MappedLZFFile(f2)) {
+            assertThrows(LZFException.class, () -> mapped.getUncompressedLength());
+        }
+        assertThrows(IllegalArgumentException.class,
+                () -> new MappedLZFFile(f, ChunkDecoderFactory.safeInstance(), new BufferRecycler(), 1000));
+    }
+
+    private byte[] _input()
+    {
+        // mix of compressible and incompressible content, to get both kinds of chunks
+        byte[] fluff = constructFluff(300000);
+        byte[] random = constructUncompressable(100000);
+        byte[] input = new byte[fluff.length + random.length];
+        System.arraycopy(fluff, 0, input, 0, 150000);
+        System.arraycopy(random, 0, input, 150000, random.length);
+        System.arraycopy(fluff, 150000, input, 150000 + random.length, fluff.length - 150000);
+        return input;
+    }
+
+    private File _write(byte[] input) throws IOException
+    {
+        File f = tempDir.resolve("mapped-test.lzf").toFile();
+        try (LZFFileOutputStream out = new LZFFileOutputStream(f)) {
+            out.write(input);
+        }
+        return f;
+    }
+}
@@ -0,0 +1,147 @@
+package com.ning.compress.lzf.util;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+
+import com.ning.compress.BaseForTests;
+import com.ning.compress.lzf.*;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestSeekableLZFInputStream extends BaseForTests
+{
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void testIndexFromFileOutputStream() throws Exception
+    {
+        byte[] input = _input();
+        File f = tempDir.resolve("seekable.lzf").toFile();
+        try (LZFFileOutputStream out = new LZFFileOutputStream(f)) {
+            out.setIndexFile(LZFChunkIndex.indexFileFor(f));
+            // mix of write calls, to get chunks of various lengths
+            out.write(input, 0, 1000);
+            out.flush();
+            out.write(input, 1000, 200000);
+            out.write(input, 201000, input.length - 201000);
+        }
+        assertTrue(LZFChunkIndex.indexFileFor(f).isFile());
+        // content must still be readable as regular LZF
+        assertArrayEquals(input, uncompress(Files.readAllBytes(f.toPath())));
+
+        LZFChunkIndex index = LZFChunkIndex.readFrom(LZFChunkIndex.indexFileFor(f));
+        assertEquals(input.length, index.getUncompressedLength());
+        assertEquals(f.length(), index.getCompressedLength());
+        // and must match one built from content
+        try (InputStream in = new FileInputStream(f)) {
+            _verifySame(index, LZFChunkIndex.build(in));
+        }
+        _verifySeeks(f, input);
+    }
+
+    @Test
+    public void testIndexFromOutputStream() throws Exception
+    {
+        byte[] input = _input();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        LZFChunkIndex index = new LZFChunkIndex();
+        try (LZFOutputStream out = new LZFOutputStream(bytes)) {
+            out.setChunkIndex(index);
+            out.write(input, 0, 70000);
+            out.write(java.nio.ByteBuffer.wrap(input, 70000, input.length - 70000));
+        }
+        byte[] comp = bytes.toByteArray();
+        assertEquals(input.length, index.getUncompressedLength());
+        assertEquals(comp.length, index.getCompressedLength());
+        _verifySame(index, LZFChunkIndex.build(new ByteArrayInputStream(comp)));
+
+        // and serialization round-trip
+        ByteArrayOutputStream serialized = new ByteArrayOutputStream();
+        index.writeTo(serialized);
+        _verifySame(index, LZFChunkIndex.readFrom(new ByteArrayInputStream(serialized.toByteArray())));
+
+        // without index file, index is built when opening
+        File f = tempDir.resolve("no-index.lzf").toFile();
+        Files.write(f.toPath(), comp);
+        _verifySeeks(f, input);
+    }
+
+    @Test
+    public void testFindChunk() throws Exception
+    {
+        LZFChunkIndex index = new LZFChunkIndex();
+        assertEquals(-1, index.findChunk(0L));
+        index.appendChunk(100, 50);
+        index.appendChunk(0, 5);
+        index.appendChunk(200, 80);
+        assertEquals(3, index.size());
+        assertEquals(-1, index.findChunk(-1L));
+        assertEquals(0, index.findChunk(0L));
+        assertEquals(0, index.findChunk(99L));
+        // empty chunk must be skipped
+        assertEquals(2, index.findChunk(100L));
+        assertEquals(2, index.findChunk(299L));
+        assertEquals(-1, index.findChunk(300L));
+        assertEquals(55L, index.getCompressedOffset(2));
+
+        assertThrows(LZFException.class, () -> LZFChunkIndex.readFrom(new ByteArrayInputStream(new byte[8])));
+    }
+
+    private void _verifySeeks(File f, byte[] input) throws IOException
+    {
+        // sequential read first
+        assertArrayEquals(input, readAll(new SeekableLZFInputStream(f)));
+        try (SeekableLZFInputStream in = new SeekableLZFInputStream(f)) {
+            assertEquals(input.length, in.length());
+            Random rnd = new Random(123);
+            byte[] buffer = new byte[3000];
+            for (int i = 0; i < 200; ++i) {
+                final int pos = rnd.nextInt(input.length);
+                in.seek(pos);
+                assertEquals(pos, in.position());
+                if ((i & 1) == 0) {
+                    assertEquals(input[pos] & 0xFF, in.read());
+                } else {
+                    int count = in.read(buffer);
+                    int expCount = Math.min(buffer.length, input.length - pos);
+                    assertEquals(expCount, count);
+                    assertArrayEquals(Arrays.copyOfRange(input, pos, pos + expCount),
+                            Arrays.copyOf(buffer, count));
+                }
+            }
+            // skipping is also seeking
+            in.seek(10L);
+            assertEquals(100000L, in.skip(100000L));
+            assertEquals(input[100010] & 0xFF, in.read());
+            // as is seeking past end
+            in.seek(input.length + 10L);
+            assertEquals(-1, in.read());
+            assertEquals(0L, in.skip(10L));
+        }
+    }
+
+    private void _verifySame(LZFChunkIndex exp, LZFChunkIndex act)
+    {
+        assertEquals(exp.size(), act.size());
+        for (int i = 0; i < exp.size(); ++i) {
+            assertEquals(exp.getUncompressedOffset(i), act.getUncompressedOffset(i));
+            assertEquals(exp.getCompressedOffset(i), act.getCompressedOffset(i));
+        }
+        assertEquals(exp.getUncompressedLength(), act.getUncompressedLength());
+        assertEquals(exp.getCompressedLength(), act.getCompressedLength());
+    }
+
+    private byte[] _input()
+    {
+        byte[] fluff = constructFluff(400000);
+        byte[] random = constructUncompressable(70000);
+        System.arraycopy(random, 0, fluff, 100000, random.length);
+        return fluff;
+    }
+}
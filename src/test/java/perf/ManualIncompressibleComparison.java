@@ -0,0 +1,149 @@
+package perf;
+
+import java.io.*;
+import java.util.Arrays;
+import java.util.Random;
+
+import com.ning.compress.lzf.*;
+import com.ning.compress.lzf.util.ChunkEncoderFactory;
+
+/**
+ * Simple manual performance micro-benchmark that compares compression speed
+ * (and resulting size) of different {@link CompressionLevel}s, mostly to see
+ * effect of skip acceleration on random and mixed-entropy content
+ * (with alternating blocks of random and compressible data).
+ * Optionally a file may be given as additional input.
+ */
+public class ManualIncompressibleComparison
+{
+    protected final static int INPUT_LENGTH = 1000 * 1000;
+
+    // 50 megs per test
+    protected final static int REPS = 50;
+
+    protected final static CompressionLevel[] LEVELS = new CompressionLevel[] {
+        CompressionLevel.DEFAULT, CompressionLevel.FAST, CompressionLevel.FASTEST
+    };
+
+    private void test(String[] names, byte[][] docs) throws Exception
+    {
+        final int DOC_COUNT = docs.length;
+        final int TYPES = LEVELS.length;
+        final int WARMUP_ROUNDS = 5;
+        final long[][] times = new long[DOC_COUNT][TYPES];
+        final int[][] sizes = new int[DOC_COUNT][TYPES];
+        int maxLen = 0;
+        for (byte[] doc : docs) {
+            maxLen = Math.max(maxLen, doc.length);
+        }
+        final byte[] WORKSPACE = new byte[LZFEncoder.estimateMaxWorkspaceSize(maxLen)];
+        final ChunkEncoder[] encoders = new ChunkEncoder[TYPES];
+        for (int i = 0; i < TYPES; ++i) {
+            encoders[i] = ChunkEncoderFactory.optimalNonAllocatingInstance(LEVELS[i], LZFChunk.MAX_CHUNK_LEN);
+        }
+
+        int roundsDone = 0;
+        for (int roundTotal = 0; ; ++roundTotal) {
+            try {  Thread.sleep(100L); } catch (InterruptedException ie) { }
+            final int round = (roundTotal % TYPES);
+            final ChunkEncoder enc = encoders[round];
+
+            for (int i = 0; i < DOC_COUNT; ++i) {
+                final byte[] input = docs[i];
+                final long start = System.currentTimeMillis();
+                int reps = REPS;
+                int bytes = 0;
+                while (--reps >= 0) {
+                    bytes = LZFEncoder.appendEncoded(enc, input, 0, input.length, WORKSPACE, 0);
+                }
+                long msecs = System.currentTimeMillis() - start;
+                sizes[i][round] = bytes;
+                // skip first rounds to let results stabilize
+                if (roundsDone >= WARMUP_ROUNDS) {
+                    times[i][round] += msecs;
+                }
+                System.out.printf("Test '%s' [%s: %d -> %d bytes] -> %d msecs\n",
+                        LEVELS[round], names[i], input.length, bytes, msecs);
+            }
+            if (round == TYPES-1) {
+                ++roundsDone;
+                if ((roundsDone % 3) == 0 && roundsDone > WARMUP_ROUNDS) {
+                    _printResults(roundsDone - WARMUP_ROUNDS, names, docs, times, sizes);
+                }
+            }
+        }
+    }
+
+    protected void _printResults(int rounds, String[] names, byte[][] docs,
+            long[][] times, int[][] sizes)
+    {
+        System.out.printf("Averages after %d rounds:\n", rounds);
+        for (int i = 0; i < names.length; ++i) {
+            System.out.printf("  %s:", names[i]);
+            for (int type = 0; type < LEVELS.length; ++type) {
+                double msecs = times[i][type] / (double) rounds;
+                double bytes = (double) REPS * docs[i].length;
+                // msecs-to-seconds, x1000; bytes to megabytes, /1M
+                System.out.printf(" %s %.1f MB/s (%.1f%%)", LEVELS[type], (bytes / msecs) / 1000.0,
+                        100.0 * sizes[i][type] / docs[i].length);
+            }
+            System.out.println();
+        }
+    }
+
+    protected static byte[] randomContent(Random rnd, int length) {
+        byte[] result = new byte[length];
+        rnd.nextBytes(result);
+        return result;
+    }
+
+    protected static byte[] mixedContent(Random rnd, int length, int blockLength)
+    {
+        // Alternate blocks of random bytes and repetitive text
+        byte[] result = new byte[length];
+        byte[] text = "Lorem ipsum dolor sit amet, consectetur adipiscing elit; ".getBytes();
+        for (int i = 0; i < length; ++i) {
+            result[i] = text[i % text.length];
+        }
+        for (int i = 0; i < length; i += blockLength+blockLength) {
+            int end = Math.min(length, i+blockLength);
+            for (int j = i; j < end; ++j) {
+                result[j] = (byte) rnd.nextInt();
+            }
+        }
+        return result;
+    }
+
+    public static void main(String[] args) throws Exception
+    {
+        if (args.length > 1) {
+            System.err.println("Usage: java ... [file]");
+            System.exit(1);
+        }
+        Random rnd = new Random(123);
+        String[] names = new String[] { "random", "mixed-4k", "mixed-64k", null };
+        byte[][] docs = new byte[][] {
+            randomContent(rnd, INPUT_LENGTH),
+            mixedContent(rnd, INPUT_LENGTH, 4096),
+            mixedContent(rnd, INPUT_LENGTH, LZFChunk.MAX_CHUNK_LEN),
+            null
+        };
+        if (args.length == 0) {
+            names = Arrays.copyOf(names, 3);
+            docs = Arrays.copyOf(docs, 3);
+        } else {
+            File f = new File(args[0]);
+            names[3] = f.getName();
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream((int) f.length());
+            byte[] buffer = new byte[4000];
+            int count;
+            FileInputStream in = new FileInputStream(f);
+            while ((count = in.read(buffer)) > 0) {
+                bytes.write(buffer, 0, count);
+            }
+            in.close();
+            docs[3] = bytes.toByteArray();
+        }
+        new ManualIncompressibleComparison().test(names, docs);
+    }
+}
@@ -0,0 +1,143 @@
+package perf;
+
+import java.io.*;
+import java.util.Random;
+
+import com.ning.compress.BufferRecycler;
+import com.ning.compress.lzf.*;
+import com.ning.compress.lzf.impl.UnsafeChunkDecoder;
+import com.ning.compress.lzf.impl.UnsafeChunkEncoders;
+import com.ning.compress.lzf.util.ChunkDecoderFactory;
+import com.ning.compress.lzf.util.ChunkEncoderFactory;
+
+/**
+ * Simple manual performance micro-benchmark that compares compression and
+ * decompression speed of "optimal" codecs (as selected by factories) with
+ * <code>Unsafe</code>-based and "safe" ones, using highly redundant log-like
+ * content where long back-references dominate (or given file).
+ *<p>
+ * Run with and without <code>--add-modules jdk.incubator.vector</code>
+ * (and multi-release jar in classpath) to compare Vector API
+ * based codecs with VarHandle-based ones.
+ */
+public class ManualLogCompressComparison
+{
+    protected final static int INPUT_LENGTH = 4 * 1000 * 1000;
+
+    protected final static int REPS = 10;
+
+    protected final static String[] NAMES = new String[] { "Optimal", "Unsafe", "Vanilla" };
+
+    private void test(byte[] input) throws Exception
+    {
+        final int TYPES = NAMES.length;
+        final int WARMUP_ROUNDS = 5;
+        final long[] encTimes = new long[TYPES];
+        final long[] decTimes = new long[TYPES];
+        final ChunkEncoder[] encoders = new ChunkEncoder[] {
+                ChunkEncoderFactory.optimalInstance(new BufferRecycler()),
+                UnsafeChunkEncoders.createEncoder(LZFChunk.MAX_CHUNK_LEN, new BufferRecycler()),
+                ChunkEncoderFactory.safeInstance(new BufferRecycler())
+        };
+        final ChunkDecoder[] decoders = new ChunkDecoder[] {
+                ChunkDecoderFactory.optimalInstance(),
+                new UnsafeChunkDecoder(),
+                ChunkDecoderFactory.safeInstance()
+        };
+        System.out.printf("Using '%s' and '%s' as optimal codecs; input %d bytes\n",
+                encoders[0].getClass().getSimpleName(), decoders[0].getClass().getSimpleName(),
+                input.length);
+        final byte[] encoded = LZFEncoder.encode(input);
+        final byte[] decoded = new byte[input.length];
+
+        int roundsDone = 0;
+        for (int roundTotal = 0; ; ++roundTotal) {
+            try {  Thread.sleep(100L); } catch (InterruptedException ie) { }
+            final int round = (roundTotal % TYPES);
+
+            long start = System.currentTimeMillis();
+            int reps = REPS;
+            int bytes = 0;
+            while (--reps >= 0) {
+                bytes = LZFEncoder.encode(encoders[round], input, 0, input.length).length;
+            }
+            final long encMsecs = System.currentTimeMillis() - start;
+
+            start = System.currentTimeMillis();
+            reps = REPS;
+            while (--reps >= 0) {
+                decoders[round].decode(encoded, 0, encoded.length, decoded);
+            }
+            final long decMsecs = System.currentTimeMillis() - start;
+            // skip first rounds to let results stabilize
+            if (roundsDone >= WARMUP_ROUNDS) {
+                encTimes[round] += encMsecs;
+                decTimes[round] += decMsecs;
+            }
+            System.out.printf("Test '%s' [%d -> %d bytes] -> encode %d, decode %d msecs\n",
+                    NAMES[round], input.length, bytes, encMsecs, decMsecs);
+            if (round == TYPES-1) {
+                ++roundsDone;
+                if ((roundsDone % 3) == 0 && roundsDone > WARMUP_ROUNDS) {
+                    _printResults(roundsDone - WARMUP_ROUNDS, input.length, encTimes, decTimes);
+                }
+            }
+        }
+    }
+
+    protected void _printResults(int rounds, int length, long[] encTimes, long[] decTimes)
+    {
+        System.out.printf("Averages after %d rounds:\n", rounds);
+        double bytes = (double) REPS * length;
+        for (int type = 0; type < NAMES.length; ++type) {
+            // msecs-to-seconds, x1000; bytes to megabytes, /1M
+            System.out.printf("  %s: encode %.1f MB/s, decode %.1f MB/s\n", NAMES[type],
+                    (bytes / (encTimes[type] / (double) rounds)) / 1000.0,
+                    (bytes / (decTimes[type] / (double) rounds)) / 1000.0);
+        }
+    }
+
+    protected static byte[] logContent(Random rnd, int length)
+    {
+        // Lines with mostly fixed content, varying just by timestamp and some ids
+        final String[] templates = new String[] {
+            "INFO  [http-nio-8080-exec-%d] c.n.service.RequestHandler - Request completed: GET /api/v1/items?page=%d status=200 elapsed=%dms\n",
+            "DEBUG [http-nio-8080-exec-%d] c.n.service.CacheManager - Cache lookup for key 'item:%d' hit, entry age %d seconds\n",
+            "WARN  [scheduler-%d] c.n.service.HealthChecker - Backend 'db-replica-%d' slow to respond, latency %dms over threshold\n"
+        };
+        StringBuilder sb = new StringBuilder(length + 200);
+        long timestamp = 1700000000000L;
+        while (sb.length() < length) {
+            timestamp += rnd.nextInt(50);
+            sb.append("2023-11-14 ").append(timestamp % 86400000L).append(' ');
+            sb.append(String.format(templates[rnd.nextInt(templates.length)],
+                    rnd.nextInt(8), rnd.nextInt(100), rnd.nextInt(500)));
+        }
+        sb.setLength(length);
+        return sb.toString().getBytes();
+    }
+
+    public static void main(String[] args) throws Exception
+    {
+        if (args.length > 1) {
+            System.err.println("Usage: java ... [file]");
+            System.exit(1);
+        }
+        byte[] input;
+        if (args.length == 0) {
+            input = logContent(new Random(123), INPUT_LENGTH);
+        } else {
+            File f = new File(args[0]);
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream((int) f.length());
+            byte[] buffer = new byte[4000];
+            int count;
+            FileInputStream in = new FileInputStream(f);
+            while ((count = in.read(buffer)) > 0) {
+                bytes.write(buffer, 0, count);
+            }
+            in.close();
+            input = bytes.toByteArray();
+        }
+        new ManualLogCompressComparison().test(input);
+    }
+}
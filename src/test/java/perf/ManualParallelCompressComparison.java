@@ -0,0 +1,124 @@
+package perf;
+
+import java.io.*;
+
+import com.ning.compress.lzf.*;
+import com.ning.compress.lzf.parallel.PLZFOutputStream;
+import com.ning.compress.lzf.parallel.ParallelCompressionContext;
+
+/**
+ * Simple manual performance micro-benchmark that compares compression speed of
+ * {@link PLZFOutputStream} using different numbers of threads, against
+ * single-threaded {@link LZFOutputStream}, as well as adaptive context
+ * (see {@link ParallelCompressionContext#adaptive}). Content is written in small pieces,
+ * to a stream that just discards it.
+ */
+public class ManualParallelCompressComparison
+{
+    protected final static int[] THREAD_COUNTS = new int[] { 4, 16, 64 };
+
+    // Size of individual writes
+    protected final static int WRITE_LENGTH = 8000;
+
+    private void test(byte[] input) throws Exception
+    {
+        final int TYPES = THREAD_COUNTS.length + 2;
+        final int WARMUP_ROUNDS = 3;
+        final int REPS = Math.max(1, (20 * 1000 * 1000) / input.length);
+        final long[] times = new long[TYPES];
+        // contexts (and their threads) are reused across rounds
+        final ParallelCompressionContext[] contexts = new ParallelCompressionContext[TYPES - 1];
+        for (int i = 0; i < THREAD_COUNTS.length; ++i) {
+            contexts[i] = new ParallelCompressionContext(THREAD_COUNTS[i]);
+        }
+        contexts[TYPES - 2] = ParallelCompressionContext.adaptive();
+
+        int roundsDone = 0;
+        for (int roundTotal = 0; ; ++roundTotal) {
+            try {  Thread.sleep(100L); } catch (InterruptedException ie) { }
+            final int round = (roundTotal % TYPES);
+            final String desc = _desc(round, contexts);
+            final long start = System.currentTimeMillis();
+            long size = 0L;
+            for (int rep = 0; rep < REPS; ++rep) {
+                NopOutputStream sink = new NopOutputStream();
+                OutputStream out = (round == 0) ? new LZFOutputStream(sink)
+                        : new PLZFOutputStream(sink, contexts[round-1]);
+                for (int offset = 0; offset < input.length; offset += WRITE_LENGTH) {
+                    out.write(input, offset, Math.min(WRITE_LENGTH, input.length - offset));
+                }
+                out.close();
+                size = sink.size;
+            }
+            long msecs = System.currentTimeMillis() - start;
+            // skip first rounds to let results stabilize
+            if (roundsDone >= WARMUP_ROUNDS) {
+                times[round] += msecs;
+            }
+            System.out.printf("Test '%s' [%d bytes] -> %d msecs\n", desc, size, msecs);
+            if (round == TYPES-1) {
+                ++roundsDone;
+                if ((roundsDone % 3) == 0 && roundsDone > WARMUP_ROUNDS) {
+                    _printResults(roundsDone - WARMUP_ROUNDS, times, (long) REPS * input.length, contexts);
+                }
+            }
+        }
+    }
+
+    protected String _desc(int type, ParallelCompressionContext[] contexts)
+    {
+        if (type == 0) {
+            return "LZFOutputStream";
+        }
+        if (type > THREAD_COUNTS.length) {
+            return "PLZF/adaptive("+contexts[type-1].getThreadCount()+")";
+        }
+        return "PLZF/"+THREAD_COUNTS[type-1];
+    }
+
+    protected void _printResults(int rounds, long[] times, long bytesPerRound,
+            ParallelCompressionContext[] contexts)
+    {
+        System.out.printf("Averages after %d rounds:", rounds);
+        for (int type = 0; type < times.length; ++type) {
+            double msecs = times[type] / (double) rounds;
+            String desc = _desc(type, contexts);
+            // msecs-to-seconds, x1000; bytes to megabytes, /1M
+            System.out.printf(" %s %.1f MB/s", desc, (bytesPerRound / msecs) / 1000.0);
+        }
+        System.out.println();
+    }
+
+    final static class NopOutputStream extends OutputStream
+    {
+        public long size;
+
+        @Override
+        public void write(int b) {
+            ++size;
+        }
+
+        @Override
+        public void write(byte[] b, int offset, int len) {
+            size += len;
+        }
+    }
+
+    public static void main(String[] args) throws Exception
+    {
+        if (args.length != 1) {
+            System.err.println("Usage: java ... [file]");
+            System.exit(1);
+        }
+        File f = new File(args[0]);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream((int) f.length());
+        byte[] buffer = new byte[4000];
+        int count;
+        FileInputStream in = new FileInputStream(f);
+        while ((count = in.read(buffer)) > 0) {
+            bytes.write(buffer, 0, count);
+        }
+        in.close();
+        new ManualParallelCompressComparison().test(bytes.toByteArray());
+    }
+}
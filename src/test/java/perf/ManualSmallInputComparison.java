@@ -0,0 +1,113 @@
+package perf;
+
+import java.io.*;
+
+import com.ning.compress.BufferRecycler;
+import com.ning.compress.lzf.*;
+import com.ning.compress.lzf.util.ChunkEncoderFactory;
+
+/**
+ * Simple manual performance micro-benchmark that compares compression speed of
+ * encoders when encoding lots of small messages, each encoder instance being
+ * used for many messages; mostly to see effect of per-chunk hash table sizing of
+ * {@link com.ning.compress.lzf.impl.TaggedHashChunkEncoder}.
+ * Messages are slices of given file, and are encoded using a set of encoders
+ * (as if used by multiple threads or connections), so that their hash tables
+ * do not all fit in CPU caches.
+ */
+public class ManualSmallInputComparison
+{
+    protected final static int[] MESSAGE_LENGTHS = new int[] { 256, 1024, 4096, 65535 };
+
+    // 20 megs per test
+    protected final static int BYTES_PER_TEST = 20 * 1000 * 1000;
+
+    // Messages to rotate through, to avoid always encoding same bytes
+    protected final static int MESSAGE_COUNT = 61;
+
+    // Number of encoders of each type to rotate through
+    protected final static int ENCODER_COUNT = 64;
+
+    protected final static String[] NAMES = new String[] { "Unsafe", "Vanilla", "TaggedHash" };
+
+    private void test(byte[] content) throws Exception
+    {
+        final int TYPES = NAMES.length;
+        final int WARMUP_ROUNDS = 5;
+        final long[][] times = new long[MESSAGE_LENGTHS.length][TYPES];
+        final byte[] WORKSPACE = new byte[LZFEncoder.estimateMaxWorkspaceSize(LZFChunk.MAX_CHUNK_LEN)];
+        // Encoders are reused for all messages, as with "small message" use cases;
+        // each with its own recycler, to get separate hash tables
+        final ChunkEncoder[][] encoders = new ChunkEncoder[TYPES][ENCODER_COUNT];
+        for (int i = 0; i < ENCODER_COUNT; ++i) {
+            encoders[0][i] = ChunkEncoderFactory.optimalNonAllocatingInstance(LZFChunk.MAX_CHUNK_LEN,
+                    new BufferRecycler());
+            encoders[1][i] = ChunkEncoderFactory.safeNonAllocatingInstance(LZFChunk.MAX_CHUNK_LEN,
+                    new BufferRecycler());
+            encoders[2][i] = ChunkEncoderFactory.taggedHashNonAllocatingInstance(LZFChunk.MAX_CHUNK_LEN,
+                    new BufferRecycler());
+        }
+
+        int roundsDone = 0;
+        for (int roundTotal = 0; ; ++roundTotal) {
+            try {  Thread.sleep(100L); } catch (InterruptedException ie) { }
+            final int round = (roundTotal % TYPES);
+            final ChunkEncoder[] encs = encoders[round];
+
+            for (int i = 0; i < MESSAGE_LENGTHS.length; ++i) {
+                final int msgLen = Math.min(MESSAGE_LENGTHS[i], content.length);
+                final int step = Math.max(1, (content.length - msgLen) / MESSAGE_COUNT);
+                final long start = System.currentTimeMillis();
+                int reps = BYTES_PER_TEST / msgLen;
+                while (--reps >= 0) {
+                    final int offset = (reps % MESSAGE_COUNT) * step;
+                    encs[reps % ENCODER_COUNT].appendEncodedChunk(content, offset, msgLen, WORKSPACE, 0);
+                }
+                long msecs = System.currentTimeMillis() - start;
+                // skip first rounds to let results stabilize
+                if (roundsDone >= WARMUP_ROUNDS) {
+                    times[i][round] += msecs;
+                }
+                System.out.printf("Test '%s' [%d bytes] -> %d msecs\n", NAMES[round], msgLen, msecs);
+            }
+            if (round == TYPES-1) {
+                ++roundsDone;
+                if ((roundsDone % 3) == 0 && roundsDone > WARMUP_ROUNDS) {
+                    _printResults(roundsDone - WARMUP_ROUNDS, times);
+                }
+            }
+        }
+    }
+
+    protected void _printResults(int rounds, long[][] times)
+    {
+        System.out.printf("Averages after %d rounds:\n", rounds);
+        for (int i = 0; i < MESSAGE_LENGTHS.length; ++i) {
+            System.out.printf("  %d bytes:", MESSAGE_LENGTHS[i]);
+            for (int type = 0; type < NAMES.length; ++type) {
+                double msecs = times[i][type] / (double) rounds;
+                // msecs-to-seconds, x1000; bytes to megabytes, /1M
+                System.out.printf(" %s %.1f MB/s", NAMES[type], (BYTES_PER_TEST / msecs) / 1000.0);
+            }
+            System.out.println();
+        }
+    }
+
+    public static void main(String[] args) throws Exception
+    {
+        if (args.length != 1) {
+            System.err.println("Usage: java ... [file]");
+            System.exit(1);
+        }
+        File f = new File(args[0]);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream((int) f.length());
+        byte[] buffer = new byte[4000];
+        int count;
+        FileInputStream in = new FileInputStream(f);
+        while ((count = in.read(buffer)) > 0) {
+            bytes.write(buffer, 0, count);
+        }
+        in.close();
+        new ManualSmallInputComparison().test(bytes.toByteArray());
+    }
+}
@@ -0,0 +1,246 @@
+package com.ning.compress;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Flow;
+
+/**
+ * Base class for tests of {@link CodecProcessor} implementations: contains
+ * simple synchronous publisher and subscriber, which record signals they get.
+ */
+public abstract class BaseForFlowTests extends BaseForTests
+{
+    /**
+     * Method for splitting given content into buffers of varying lengths
+     * (and alternating heap and direct buffers)
+     */
+    protected List<ByteBuffer> slices(byte[] data, int maxLength)
+    {
+        List<ByteBuffer> result = new ArrayList<ByteBuffer>();
+        int offset = 0;
+        int len = 1;
+        while (offset < data.length) {
+            final int amount = Math.min(len, data.length - offset);
+            ByteBuffer b;
+            if ((result.size() & 1) == 0) {
+                // also offset within backing array
+                b = ByteBuffer.wrap(new byte[amount + 2], 1, amount).slice();
+            } else {
+                b = ByteBuffer.allocateDirect(amount);
+            }
+            b.put(data, offset, amount);
+            b.flip();
+            result.add(b);
+            offset += amount;
+            len = (len * 3 + 7) % maxLength + 1;
+        }
+        return result;
+    }
+
+    /**
+     * Publisher that emits given buffers synchronously, as requested,
+     * to a single subscriber; optionally followed by an error.
+     */
+    protected static class ListPublisher implements Flow.Publisher<ByteBuffer>
+    {
+        protected final List<ByteBuffer> _items;
+
+        protected final Throwable _failure;
+
+        protected Flow.Subscriber<? super ByteBuffer> _subscriber;
+
+        protected int _index;
+
+        protected long _requested;
+
+        protected long _totalRequested;
+
+        protected boolean _emitting, _done;
+
+        public volatile boolean cancelled;
+
+        public ListPublisher(List<ByteBuffer> items) {
+            this(items, null);
+        }
+
+        public ListPublisher(List<ByteBuffer> items, Throwable failure) {
+            _items = items;
+            _failure = failure;
+        }
+
+        public int size() {
+            return _items.size();
+        }
+
+        /**
+         * @return Number of items emitted so far
+         */
+        public synchronized int emitted() {
+            return _index;
+        }
+
+        public synchronized long totalRequested() {
+            return _totalRequested;
+        }
+
+        @Override
+        public void subscribe(Flow.Subscriber<? super ByteBuffer> subscriber)
+        {
+            _subscriber = subscriber;
+            subscriber.onSubscribe(new Flow.Subscription() {
+                @Override
+                public void request(long n) {
+                    synchronized (ListPublisher.this) {
+                        _requested += n;
+                        _totalRequested += n;
+                    }
+                    _emit();
+                }
+
+                @Override
+                public void cancel() {
+                    cancelled = true;
+                }
+            });
+            _emit();
+        }
+
+        protected void _emit()
+        {
+            // (requests are made by subscriber when handling items; avoid recursion)
+            synchronized (this) {
+                if (_emitting) {
+                    return;
+                }
+                _emitting = true;
+            }
+            while (true) {
+                ByteBuffer item = null;
+                boolean finish = false;
+                synchronized (this) {
+                    if (cancelled || _done) {
+                        _emitting = false;
+                        return;
+                    }
+                    if (_index == _items.size()) {
+                        _done = finish = true;
+                    } else if (_requested > 0L) {
+                        --_requested;
+                        item = _items.get(_index++);
+                    } else {
+                        _emitting = false;
+                        return;
+                    }
+                }
+                if (finish) {
+                    if (_failure == null) {
+                        _subscriber.onComplete();
+                    } else {
+                        _subscriber.onError(_failure);
+                    }
+                } else {
+                    _subscriber.onNext(item);
+                }
+            }
+        }
+    }
+
+    /**
+     * Subscriber that collects content of all buffers it receives, requesting
+     * given number of them initially (more can be requested explicitly)
+     */
+    protected static class CollectingSubscriber implements Flow.Subscriber<ByteBuffer>
+    {
+        protected final long _initialRequest;
+
+        protected final CodecProcessor _releaseTo;
+
+        protected final ByteArrayOutputStream _bytes = new ByteArrayOutputStream();
+
+        protected final List<ByteBuffer> _buffers = new ArrayList<ByteBuffer>();
+
+        protected final CountDownLatch _done = new CountDownLatch(1);
+
+        public volatile Flow.Subscription subscription;
+
+        public volatile boolean completed;
+
+        public volatile Throwable error;
+
+        public volatile int signalsAfterDone;
+
+        public CollectingSubscriber() {
+            this(Long.MAX_VALUE, null);
+        }
+
+        /**
+         * @param releaseTo Processor to pass buffers back to, once copied, if any
+         */
+        public CollectingSubscriber(long initialRequest, CodecProcessor releaseTo) {
+            _initialRequest = initialRequest;
+            _releaseTo = releaseTo;
+        }
+
+        public synchronized byte[] bytes() {
+            return _bytes.toByteArray();
+        }
+
+        public synchronized List<ByteBuffer> buffers() {
+            return new ArrayList<ByteBuffer>(_buffers);
+        }
+
+        public synchronized int count() {
+            return _buffers.size();
+        }
+
+        public void await() throws InterruptedException {
+            _done.await();
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription s) {
+            subscription = s;
+            if (_initialRequest > 0L) {
+                s.request(_initialRequest);
+            }
+        }
+
+        @Override
+        public void onNext(ByteBuffer item)
+        {
+            synchronized (this) {
+                if (_done.getCount() == 0) {
+                    ++signalsAfterDone;
+                }
+                _buffers.add(item);
+                byte[] b = new byte[item.remaining()];
+                item.get(b);
+                _bytes.write(b, 0, b.length);
+            }
+            if (_releaseTo != null) {
+                _releaseTo.release(item);
+            }
+        }
+
+        @Override
+        public void onError(Throwable t) {
+            if (_done.getCount() == 0) {
+                ++signalsAfterDone;
+            }
+            error = t;
+            _done.countDown();
+        }
+
+        @Override
+        public void onComplete() {
+            if (_done.getCount() == 0) {
+                ++signalsAfterDone;
+            }
+            completed = true;
+            _done.countDown();
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package com.ning.compress.gzip;
+
+import java.io.*;
+import java.util.Arrays;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import com.ning.compress.BaseForFlowTests;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestGzipUncompressingProcessor extends BaseForFlowTests
+{
+    @Test
+    public void testRoundTrip() throws IOException
+    {
+        byte[] mixed = constructFluff(400000);
+        System.arraycopy(constructUncompressable(100000), 0, mixed, 150000, 100000);
+        for (byte[] orig : new byte[][] { new byte[0], constructFluff(100), mixed }) {
+            final byte[] comp = gzipAll(orig);
+            GZIPUncompressingProcessor proc = new GZIPUncompressingProcessor();
+            CollectingSubscriber sub = new CollectingSubscriber(Long.MAX_VALUE, proc);
+            proc.subscribe(sub);
+            new ListPublisher(slices(comp, 10000)).subscribe(proc);
+
+            assertTrue(sub.completed);
+            assertNull(sub.error);
+            // must match what JDK decoder produces
+            assertArrayEquals(readAll(new GZIPInputStream(new ByteArrayInputStream(comp))), sub.bytes());
+            assertArrayEquals(orig, sub.bytes());
+        }
+    }
+
+    @Test
+    public void testBoundedRequests() throws IOException
+    {
+        final byte[] orig = new byte[50 * GZIPUncompressor.DECODE_BUFFER_SIZE];
+        GZIPUncompressingProcessor proc = new GZIPUncompressingProcessor(2);
+        CollectingSubscriber sub = new CollectingSubscriber(0L, null);
+        proc.subscribe(sub);
+        ListPublisher pub = new ListPublisher(slices(gzipAll(orig), 20));
+        pub.subscribe(proc);
+
+        assertEquals(0, sub.count());
+        final int emitted = pub.emitted();
+        assertTrue(emitted > 0 && emitted < pub.size() / 5,
+                "Unexpected number of input buffers consumed: "+emitted+"/"+pub.size());
+        sub.subscription.request(3);
+        assertEquals(3, sub.count());
+        assertFalse(sub.completed);
+        assertTrue(pub.emitted() < pub.size() / 2);
+
+        sub.subscription.request(Long.MAX_VALUE);
+        assertTrue(sub.completed);
+        assertArrayEquals(orig, sub.bytes());
+        assertFalse(pub.cancelled);
+    }
+
+    @Test
+    public void testCancel() throws IOException
+    {
+        final byte[] orig = constructFluff(20 * GZIPUncompressor.DECODE_BUFFER_SIZE);
+        GZIPUncompressingProcessor proc = new GZIPUncompressingProcessor();
+        CollectingSubscriber sub = new CollectingSubscriber(1L, null);
+        proc.subscribe(sub);
+        ListPublisher pub = new ListPublisher(slices(gzipAll(orig), 1000));
+        pub.subscribe(proc);
+
+        assertEquals(1, sub.count());
+        sub.subscription.cancel();
+        assertTrue(pub.cancelled);
+        final int emitted = pub.emitted();
+        sub.subscription.request(10);
+        assertEquals(1, sub.count());
+        assertEquals(emitted, pub.emitted());
+        assertFalse(sub.completed);
+        assertNull(sub.error);
+        byte[] result = sub.bytes();
+        assertArrayEquals(Arrays.copyOf(orig, result.length), result);
+    }
+
+    @Test
+    public void testErrors() throws IOException
+    {
+        final byte[] orig = constructFluff(200000);
+        final byte[] comp = gzipAll(orig);
+
+        // error from upstream is passed as is
+        final IOException fail = new IOException("Test failure");
+        GZIPUncompressingProcessor proc = new GZIPUncompressingProcessor();
+        CollectingSubscriber sub = new CollectingSubscriber();
+        proc.subscribe(sub);
+        ListPublisher pub = new ListPublisher(slices(comp, 1000), fail);
+        pub.subscribe(proc);
+        assertSame(fail, sub.error);
+        assertFalse(sub.completed);
+
+        // corrupt content fails, and cancels upstream
+        byte[] corrupt = comp.clone();
+        corrupt[1] = 0; // invalid header signature
+        proc = new GZIPUncompressingProcessor();
+        sub = new CollectingSubscriber();
+        proc.subscribe(sub);
+        pub = new ListPublisher(slices(corrupt, 1000));
+        pub.subscribe(proc);
+        assertTrue(sub.error instanceof GZIPException, "Unexpected error: "+sub.error);
+        assertTrue(pub.cancelled);
+        assertEquals(2, pub.emitted()); // (first slice is just one byte)
+        assertFalse(sub.completed);
+
+        // as does truncated content, once all has been received
+        proc = new GZIPUncompressingProcessor();
+        sub = new CollectingSubscriber();
+        proc.subscribe(sub);
+        new ListPublisher(slices(Arrays.copyOf(comp, comp.length - 3), 1000)).subscribe(proc);
+        assertTrue(sub.error instanceof GZIPException, "Unexpected error: "+sub.error);
+        assertFalse(sub.completed);
+    }
+
+    @Test
+    public void testHandlerStops() throws IOException
+    {
+        final byte[] orig = constructFluff(500000);
+        final int limit = 100000;
+        GZIPUncompressingProcessor proc = new GZIPUncompressingProcessor() {
+            private int _total;
+
+            @Override
+            public boolean handleData(byte[] buffer, int offset, int len) {
+                boolean more = super.handleData(buffer, offset, len);
+                _total += len;
+                return more && (_total < limit);
+            }
+        };
+        CollectingSubscriber sub = new CollectingSubscriber();
+        proc.subscribe(sub);
+        ListPublisher pub = new ListPublisher(slices(gzipAll(orig), 1000));
+        pub.subscribe(proc);
+
+        assertTrue(pub.cancelled);
+        assertTrue(pub.emitted() < pub.size());
+        // no error for incomplete content, since handler asked to stop
+        assertTrue(sub.completed);
+        assertNull(sub.error);
+        byte[] result = sub.bytes();
+        assertTrue(result.length >= limit && result.length < orig.length);
+        assertArrayEquals(Arrays.copyOf(orig, result.length), result);
+    }
+
+    /*
+    ///////////////////////////////////////////////////////////////////////
+    // Helper methods
+    ///////////////////////////////////////////////////////////////////////
+     */
+
+    private byte[] gzipAll(byte[] input) throws IOException
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(16 + input.length>>2);
+        GZIPOutputStream gz = new GZIPOutputStream(bytes);
+        gz.write(input);
+        gz.close();
+        return bytes.toByteArray();
+    }
+}
@@ -0,0 +1,328 @@
+package com.ning.compress.lzf;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.SubmissionPublisher;
+
+import com.ning.compress.BaseForFlowTests;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestLZFProcessors extends BaseForFlowTests
+{
+    @Test
+    public void testCompressRoundTrip() throws IOException
+    {
+        for (byte[] orig : _inputs()) {
+            LZFCompressingProcessor proc = new LZFCompressingProcessor();
+            CollectingSubscriber sub = new CollectingSubscriber();
+            proc.subscribe(sub);
+            ListPublisher pub = new ListPublisher(slices(orig, 20000));
+            pub.subscribe(proc);
+
+            assertTrue(sub.completed);
+            assertNull(sub.error);
+            byte[] comp = sub.bytes();
+            assertArrayEquals(orig, readAll(new LZFInputStream(new ByteArrayInputStream(comp))));
+            assertArrayEquals(orig, LZFDecoder.decode(comp));
+            // every buffer must consist of complete chunks
+            for (ByteBuffer b : sub.buffers()) {
+                b.rewind();
+                byte[] chunks = new byte[b.remaining()];
+                b.get(chunks);
+                LZFDecoder.decode(chunks);
+            }
+        }
+    }
+
+    @Test
+    public void testUncompressRoundTrip() throws IOException
+    {
+        for (byte[] orig : _inputs()) {
+            LZFUncompressingProcessor proc = new LZFUncompressingProcessor();
+            CollectingSubscriber sub = new CollectingSubscriber();
+            proc.subscribe(sub);
+            // (note: encoder does not accept empty content; which is encoded as nothing)
+            byte[] comp = (orig.length == 0) ? orig : compress(orig);
+            new ListPublisher(slices(comp, 20000)).subscribe(proc);
+
+            assertTrue(sub.completed);
+            assertNull(sub.error);
+            assertArrayEquals(orig, sub.bytes());
+        }
+        // and then chained, with all compression levels
+        byte[] orig = _inputs().get(2);
+        for (CompressionLevel level : CompressionLevel.values()) {
+            LZFCompressingProcessor comp = new LZFCompressingProcessor(level, 2);
+            LZFUncompressingProcessor uncomp = new LZFUncompressingProcessor(3);
+            CollectingSubscriber sub = new CollectingSubscriber();
+            uncomp.subscribe(sub);
+            comp.subscribe(uncomp);
+            new ListPublisher(slices(orig, 100000)).subscribe(comp);
+
+            assertTrue(sub.completed);
+            assertArrayEquals(orig, sub.bytes());
+        }
+    }
+
+    @Test
+    public void testBoundedRequests() throws IOException
+    {
+        // highly compressed content, to check that input is only requested as needed
+        final byte[] orig = new byte[40 * LZFChunk.MAX_CHUNK_LEN];
+        final int maxBuffers = 2;
+        LZFUncompressingProcessor proc = new LZFUncompressingProcessor(maxBuffers);
+        CollectingSubscriber sub = new CollectingSubscriber(0L, null);
+        proc.subscribe(sub);
+        ListPublisher pub = new ListPublisher(slices(compress(orig), 50));
+        pub.subscribe(proc);
+
+        // nothing requested by subscriber, but some output may be buffered: up to
+        // 'maxBuffers' chunks, plus one being filled (and input is requested one by one)
+        assertEquals(0, sub.count());
+        final int emitted = pub.emitted();
+        assertTrue(emitted > 0 && emitted < 4 * pub.size() / 40,
+                "Unexpected number of input buffers consumed: "+emitted+"/"+pub.size());
+        assertTrue(pub.totalRequested() - emitted <= 1L);
+
+        sub.subscription.request(1);
+        assertEquals(1, sub.count());
+        sub.subscription.request(2);
+        assertEquals(3, sub.count());
+        assertFalse(sub.completed);
+        // input needed for buffered output only, not for all content
+        assertTrue(pub.emitted() < 7 * pub.size() / 40);
+        for (ByteBuffer b : sub.buffers()) {
+            assertEquals(LZFChunk.MAX_CHUNK_LEN, b.position());
+        }
+
+        sub.subscription.request(Long.MAX_VALUE);
+        assertTrue(sub.completed);
+        assertEquals(40, sub.count());
+        assertArrayEquals(orig, sub.bytes());
+        assertFalse(pub.cancelled);
+    }
+
+    @Test
+    public void testCancel() throws IOException
+    {
+        final byte[] orig = constructFluff(20 * LZFChunk.MAX_CHUNK_LEN);
+        LZFUncompressingProcessor proc = new LZFUncompressingProcessor();
+        CollectingSubscriber sub = new CollectingSubscriber(2L, null);
+        proc.subscribe(sub);
+        ListPublisher pub = new ListPublisher(slices(compress(orig), 1000));
+        pub.subscribe(proc);
+
+        assertEquals(2, sub.count());
+        assertFalse(pub.cancelled);
+        final int emitted = pub.emitted();
+        sub.subscription.cancel();
+        assertTrue(pub.cancelled);
+
+        // no more signals downstream, nor input requested
+        sub.subscription.request(10);
+        assertEquals(2, sub.count());
+        assertEquals(emitted, pub.emitted());
+        assertFalse(sub.completed);
+        assertNull(sub.error);
+        assertArrayEquals(Arrays.copyOf(orig, 2 * LZFChunk.MAX_CHUNK_LEN), sub.bytes());
+    }
+
+    @Test
+    public void testCancelBeforeUpstream() throws IOException
+    {
+        LZFCompressingProcessor proc = new LZFCompressingProcessor();
+        CollectingSubscriber sub = new CollectingSubscriber();
+        proc.subscribe(sub);
+        sub.subscription.cancel();
+
+        // upstream subscription received later must be cancelled right away
+        ListPublisher pub = new ListPublisher(slices(constructFluff(1000), 100));
+        pub.subscribe(proc);
+        assertTrue(pub.cancelled);
+        assertEquals(0, pub.emitted());
+        assertEquals(0, sub.count());
+        assertFalse(sub.completed);
+        assertNull(sub.error);
+    }
+
+    @Test
+    public void testUpstreamError() throws IOException
+    {
+        final IOException fail = new IOException("Test failure");
+        final byte[] orig = constructFluff(3 * LZFChunk.MAX_CHUNK_LEN);
+        LZFUncompressingProcessor proc = new LZFUncompressingProcessor();
+        CollectingSubscriber sub = new CollectingSubscriber();
+        proc.subscribe(sub);
+        ListPublisher pub = new ListPublisher(slices(compress(orig), 5000), fail);
+        pub.subscribe(proc);
+
+        assertSame(fail, sub.error);
+        assertFalse(sub.completed);
+        assertFalse(pub.cancelled);
+        assertEquals(0, sub.signalsAfterDone);
+        // whatever was emitted must be valid content
+        byte[] result = sub.bytes();
+        assertArrayEquals(Arrays.copyOf(orig, result.length), result);
+    }
+
+    @Test
+    public void testCorruptInput() throws IOException
+    {
+        final byte[] orig = constructFluff(5 * LZFChunk.MAX_CHUNK_LEN);
+        final byte[] comp = compress(orig);
+
+        // invalid chunk header in the middle
+        byte[] corrupt = comp.clone();
+        int ptr = 0;
+        for (int i = 0; i < 2; ++i) {
+            int len = ((corrupt[ptr+3] & 0xFF) << 8) | (corrupt[ptr+4] & 0xFF);
+            ptr += len + ((corrupt[ptr+2] == LZFChunk.BLOCK_TYPE_COMPRESSED) ? 7 : 5);
+        }
+        corrupt[ptr+1] = 'X';
+        LZFUncompressingProcessor proc = new LZFUncompressingProcessor();
+        CollectingSubscriber sub = new CollectingSubscriber();
+        proc.subscribe(sub);
+        ListPublisher pub = new ListPublisher(slices(corrupt, 1000));
+        pub.subscribe(proc);
+        assertTrue(sub.error instanceof LZFException, "Unexpected error: "+sub.error);
+        assertTrue(pub.cancelled);
+        assertTrue(pub.emitted() < pub.size());
+        assertFalse(sub.completed);
+
+        // and then truncated content: noticed only at the end
+        proc = new LZFUncompressingProcessor();
+        sub = new CollectingSubscriber();
+        proc.subscribe(sub);
+        pub = new ListPublisher(slices(Arrays.copyOf(comp, comp.length - 10), 1000));
+        pub.subscribe(proc);
+        assertTrue(sub.error instanceof LZFException, "Unexpected error: "+sub.error);
+        assertFalse(pub.cancelled);
+        assertFalse(sub.completed);
+    }
+
+    @Test
+    public void testHandlerStops() throws IOException
+    {
+        final byte[] orig = constructFluff(20 * LZFChunk.MAX_CHUNK_LEN);
+        final int limit = 3 * LZFChunk.MAX_CHUNK_LEN + 100;
+        // sub-class that only needs limited amount of content
+        LZFUncompressingProcessor proc = new LZFUncompressingProcessor() {
+            private int _total;
+
+            @Override
+            public boolean handleData(byte[] buffer, int offset, int len) {
+                boolean more = super.handleData(buffer, offset, len);
+                _total += len;
+                return more && (_total < limit);
+            }
+        };
+        CollectingSubscriber sub = new CollectingSubscriber();
+        proc.subscribe(sub);
+        ListPublisher pub = new ListPublisher(slices(compress(orig), 1000));
+        pub.subscribe(proc);
+        assertTrue(pub.cancelled);
+        assertTrue(pub.emitted() < pub.size());
+        // content handled so far is emitted, followed by completion
+        assertTrue(sub.completed);
+        assertNull(sub.error);
+        byte[] result = sub.bytes();
+        assertEquals(4 * LZFChunk.MAX_CHUNK_LEN, result.length);
+        assertArrayEquals(Arrays.copyOf(orig, result.length), result);
+        assertEquals(0, sub.signalsAfterDone);
+    }
+
+    @Test
+    public void testSubscriptionChecks() throws IOException
+    {
+        LZFCompressingProcessor proc = new LZFCompressingProcessor();
+        CollectingSubscriber sub = new CollectingSubscriber(0L, null);
+        proc.subscribe(sub);
+
+        // only one subscriber allowed
+        CollectingSubscriber sub2 = new CollectingSubscriber();
+        proc.subscribe(sub2);
+        assertTrue(sub2.error instanceof IllegalStateException);
+        assertNull(sub.error);
+
+        // non-positive requests are errors, which also cancel upstream
+        ListPublisher pub = new ListPublisher(slices(constructUncompressable(20 * LZFChunk.MAX_CHUNK_LEN), 1000));
+        pub.subscribe(proc);
+        sub.subscription.request(0L);
+        assertTrue(sub.error instanceof IllegalArgumentException);
+        assertTrue(pub.cancelled);
+        assertEquals(0, sub.count());
+
+        // as are second upstream subscriptions
+        proc = new LZFCompressingProcessor();
+        new ListPublisher(slices(constructFluff(100), 10)).subscribe(proc);
+        ListPublisher pub2 = new ListPublisher(slices(constructFluff(100), 10));
+        pub2.subscribe(proc);
+        assertTrue(pub2.cancelled);
+    }
+
+    @Test
+    public void testBufferReuse() throws IOException
+    {
+        final byte[] orig = constructFluff(30 * LZFChunk.MAX_CHUNK_LEN);
+        final LZFUncompressingProcessor proc = new LZFUncompressingProcessor(2);
+        CollectingSubscriber sub = new CollectingSubscriber(Long.MAX_VALUE, proc);
+        proc.subscribe(sub);
+        new ListPublisher(slices(compress(orig), 10000)).subscribe(proc);
+
+        assertTrue(sub.completed);
+        assertArrayEquals(orig, sub.bytes());
+        Set<ByteBuffer> distinct = Collections.newSetFromMap(new IdentityHashMap<ByteBuffer,Boolean>());
+        distinct.addAll(sub.buffers());
+        assertEquals(30, sub.count());
+        assertTrue(distinct.size() <= 3, "Too many buffers allocated: "+distinct.size());
+    }
+
+    @Test
+    public void testAsyncPublisher() throws Exception
+    {
+        final byte[] orig = _inputs().get(2);
+        final ExecutorService executor = Executors.newFixedThreadPool(3);
+        try {
+            LZFCompressingProcessor comp = new LZFCompressingProcessor(CompressionLevel.FAST, 2);
+            LZFUncompressingProcessor uncomp = new LZFUncompressingProcessor(2);
+            CollectingSubscriber sub = new CollectingSubscriber(Long.MAX_VALUE, uncomp);
+            uncomp.subscribe(sub);
+            comp.subscribe(uncomp);
+            try (SubmissionPublisher<ByteBuffer> pub = new SubmissionPublisher<ByteBuffer>(executor, 4)) {
+                pub.subscribe(comp);
+                for (ByteBuffer b : slices(orig, 30000)) {
+                    pub.submit(b);
+                }
+            }
+            sub.await();
+            assertNull(sub.error);
+            assertTrue(sub.completed);
+            assertArrayEquals(orig, sub.bytes());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /*
+    ///////////////////////////////////////////////////////////////////////
+    // Helper methods
+    ///////////////////////////////////////////////////////////////////////
+     */
+
+    private List<byte[]> _inputs()
+    {
+        List<byte[]> inputs = new ArrayList<byte[]>();
+        inputs.add(new byte[0]);
+        inputs.add(constructFluff(100));
+        // mix of compressible and incompressible content
+        byte[] mixed = constructFluff(500000);
+        System.arraycopy(constructUncompressable(100000), 0, mixed, 200000, 100000);
+        inputs.add(mixed);
+        return inputs;
+    }
+}
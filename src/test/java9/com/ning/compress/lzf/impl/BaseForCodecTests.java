@@ -0,0 +1,291 @@
+package com.ning.compress.lzf.impl;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+import com.ning.compress.BaseForTests;
+import com.ning.compress.lzf.*;
+import com.ning.compress.lzf.util.ChunkDecoderFactory;
+import com.ning.compress.lzf.util.ChunkEncoderFactory;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.function.Executable;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Shared round-trip and corrupt-input tests for codecs that are only included
+ * in multi-release jar, verified against "safe" codecs: since output of all
+ * standard encoders is identical, encoded content must match byte-by-byte,
+ * and decoders must either decode corrupt content exactly like safe one does,
+ * or fail. As with other decoders, failure may be either {@link LZFException}
+ * or (since accesses are bounds-checked) {@link IndexOutOfBoundsException}.
+ */
+public abstract class BaseForCodecTests extends BaseForTests
+{
+    private final static String[] RESOURCES = new String[] {
+        "/shakespeare/hamlet.xml", "/shakespeare/macbeth.xml", "/binary/help.bin", "/binary/word.doc"
+    };
+
+    /**
+     * Levels that use codecs being tested (ones with longer match search use
+     * {@link HighRatioChunkEncoder} instead)
+     */
+    private final static CompressionLevel[] LEVELS = new CompressionLevel[] {
+        CompressionLevel.FASTEST, CompressionLevel.FAST, CompressionLevel.DEFAULT
+    };
+
+    protected abstract ChunkEncoder encoder(int totalLength, CompressionLevel level, boolean allocateBuffer);
+
+    protected abstract ChunkDecoder decoder();
+
+    /*
+    ///////////////////////////////////////////////////////////////////////
+    // Round-trip tests
+    ///////////////////////////////////////////////////////////////////////
+     */
+
+    @Test
+    public void testSmallInputs() throws IOException
+    {
+        byte[] fluff = constructFluff(100);
+        for (int len = 1; len <= fluff.length; ++len) {
+            _verifyRoundTrip(Arrays.copyOf(fluff, len));
+        }
+        _verifyRoundTrip(new byte[1000]);
+    }
+
+    @Test
+    public void testLongerInputs() throws IOException
+    {
+        _verifyRoundTrip(constructFluff(300000));
+        _verifyRoundTrip(constructUncompressable(200000));
+        // and then a mix of compressed and non-compressed chunks
+        byte[] mixed = constructFluff(5 * LZFChunk.MAX_CHUNK_LEN);
+        System.arraycopy(constructUncompressable(100000), 0, mixed, 70000, 100000);
+        _verifyRoundTrip(mixed);
+    }
+
+    @Test
+    public void testResources() throws IOException
+    {
+        for (String resource : RESOURCES) {
+            try (InputStream in = getClass().getResourceAsStream(resource)) {
+                assertNotNull(in, "Missing test resource "+resource);
+                _verifyRoundTrip(readAll(in));
+            }
+        }
+    }
+
+    @Test
+    public void testByteBuffers() throws IOException
+    {
+        byte[] orig = constructFluff(150000);
+        System.arraycopy(constructUncompressable(30000), 0, orig, 80000, 30000);
+        final int offset = 3;
+        for (CompressionLevel level : LEVELS) {
+            final byte[] exp = LZFEncoder.encode(ChunkEncoderFactory.safeInstance(level, orig.length),
+                    orig, 0, orig.length);
+            // all combinations of heap and direct input and output
+            for (int mode = 0; mode < 4; ++mode) {
+                final boolean directIn = (mode & 1) != 0;
+                final boolean directOut = (mode & 2) != 0;
+                ByteBuffer src = _buffer(directIn, offset + orig.length);
+                src.position(offset);
+                src.put(orig);
+                src.position(offset);
+                ByteBuffer dst = _buffer(directOut, offset + exp.length + 100);
+                dst.position(offset);
+                ChunkEncoder enc = encoder(orig.length, level, true);
+                while (src.hasRemaining()) {
+                    enc.encodeChunk(src, dst);
+                }
+                assertEquals(offset + exp.length, dst.position());
+                ByteBuffer encoded = dst.duplicate();
+                encoded.flip();
+                encoded.position(offset);
+                byte[] actual = new byte[exp.length];
+                encoded.duplicate().get(actual);
+                assertArrayEquals(exp, actual, "Encoded content differs (level "+level+", mode "+mode+")");
+
+                // decode into the other kind of buffer as well
+                for (boolean directResult : new boolean[] { false, true }) {
+                    ByteBuffer result = _buffer(directResult, offset + orig.length);
+                    result.position(offset);
+                    assertEquals(orig.length, decoder().decode(encoded.duplicate(), result));
+                    result.flip();
+                    result.position(offset);
+                    byte[] decoded = new byte[orig.length];
+                    result.get(decoded);
+                    assertArrayEquals(orig, decoded);
+                }
+            }
+        }
+    }
+
+    /*
+    ///////////////////////////////////////////////////////////////////////
+    // Corrupt input tests
+    ///////////////////////////////////////////////////////////////////////
+     */
+
+    @Test
+    public void testInvalidBackReference()
+    {
+        // one literal byte, followed by 3-byte back reference 5 bytes back
+        final byte[] chunk = new byte[] { 'Z', 'V', LZFChunk.BLOCK_TYPE_COMPRESSED,
+                0, 4, 0, 4, 0, 'a', 0x20, 0x04 };
+        _verifyCorrupt(() -> decoder().decode(chunk));
+        _verifyCorrupt(() -> decoder().decodeChunk(chunk, 7, chunk.length, new byte[4], 0, 4));
+        // and same with long back reference, past start of output
+        final byte[] longChunk = new byte[] { 'Z', 'V', LZFChunk.BLOCK_TYPE_COMPRESSED,
+                0, 36, 0, 42, 31, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16,
+                17, 18, 19, 20, 21, 22, 23, 24, 25, 26, 27, 28, 29, 30, 31, 32, (byte) 0xE0, 1, 39 };
+        _verifyCorrupt(() -> decoder().decode(longChunk));
+    }
+
+    @Test
+    public void testTruncatedInput() throws IOException
+    {
+        byte[] orig = constructFluff(100000);
+        final byte[] comp = LZFEncoder.encode(encoder(orig.length, CompressionLevel.DEFAULT, true),
+                orig, 0, orig.length);
+        for (int len : new int[] { 1, 3, 6, comp.length / 2, comp.length - 1 }) {
+            final byte[] truncated = Arrays.copyOf(comp, len);
+            _verifyCorrupt(() -> decoder().decode(truncated));
+            _verifyCorrupt(() -> readAll(new LZFInputStream(decoder(), new ByteArrayInputStream(truncated))));
+        }
+    }
+
+    @Test
+    public void testWrongLength() throws IOException
+    {
+        byte[] orig = constructFluff(1000);
+        final byte[] comp = LZFEncoder.encode(encoder(orig.length, CompressionLevel.DEFAULT, true),
+                orig, 0, orig.length);
+        assertEquals(LZFChunk.BLOCK_TYPE_COMPRESSED, comp[2]);
+        // claiming shorter or longer uncompressed length must fail
+        for (int diff : new int[] { -1, 1, 100 }) {
+            final byte[] corrupt = comp.clone();
+            int len = orig.length + diff;
+            corrupt[5] = (byte) (len >> 8);
+            corrupt[6] = (byte) len;
+            _verifyCorrupt(() -> decoder().decode(corrupt));
+            _verifyCorrupt(() -> readAll(new LZFInputStream(decoder(), new ByteArrayInputStream(corrupt))));
+        }
+        // as well as output range that does not match
+        _verifyCorrupt(() -> decoder().decodeChunk(comp, 7, comp.length,
+                new byte[orig.length + 10], 0, orig.length + 10));
+        _verifyCorrupt(() -> decoder().decodeChunk(comp, 7, comp.length - 1,
+                new byte[orig.length], 0, orig.length));
+    }
+
+    @Test
+    public void testRandomCorruption() throws IOException
+    {
+        final ChunkDecoder safe = ChunkDecoderFactory.safeInstance();
+        final ChunkDecoder dec = decoder();
+        final Random rnd = new Random(123);
+        byte[] orig = constructFluff(20000);
+        final byte[] comp = LZFEncoder.encode(encoder(orig.length, CompressionLevel.DEFAULT, true),
+                orig, 0, orig.length);
+
+        for (int round = 0; round < 3000; ++round) {
+            byte[] corrupt = comp.clone();
+            for (int i = 1 + rnd.nextInt(3); i > 0; --i) {
+                // leave chunk header alone, most of the time
+                int index = (rnd.nextInt(10) == 0) ? rnd.nextInt(corrupt.length)
+                        : 7 + rnd.nextInt(corrupt.length - 7);
+                corrupt[index] = (byte) rnd.nextInt();
+            }
+            byte[] exp;
+            try {
+                exp = safe.decode(corrupt);
+            } catch (LZFException | IndexOutOfBoundsException e) {
+                exp = null;
+            }
+            try {
+                byte[] actual = dec.decode(corrupt);
+                assertNotNull(exp, "Should have failed to decode corrupt content (round "+round+")");
+                assertArrayEquals(exp, actual, "Corrupt content decoded differently (round "+round+")");
+            } catch (LZFException | IndexOutOfBoundsException e) {
+                assertNull(exp, "Failed to decode content safe decoder accepts (round "+round+"): "+e);
+            }
+            // and same from direct buffer into direct buffer
+            ByteBuffer in = ByteBuffer.allocateDirect(corrupt.length);
+            in.put(corrupt).flip();
+            ByteBuffer out = ByteBuffer.allocateDirect(orig.length + 100);
+            try {
+                dec.decode(in, out);
+                assertNotNull(exp, "Should have failed to decode corrupt buffer (round "+round+")");
+                out.flip();
+                byte[] actual = new byte[out.remaining()];
+                out.get(actual);
+                assertArrayEquals(exp, actual, "Corrupt buffer decoded differently (round "+round+")");
+            } catch (LZFException | IndexOutOfBoundsException e) {
+                assertNull(exp, "Failed to decode buffer safe decoder accepts (round "+round+"): "+e);
+            }
+        }
+    }
+
+    /*
+    ///////////////////////////////////////////////////////////////////////
+    // Helper methods
+    ///////////////////////////////////////////////////////////////////////
+     */
+
+    private void _verifyRoundTrip(byte[] orig) throws IOException
+    {
+        for (CompressionLevel level : LEVELS) {
+            final byte[] exp = LZFEncoder.encode(ChunkEncoderFactory.safeInstance(level, orig.length),
+                    orig, 0, orig.length);
+            ChunkEncoder enc = encoder(orig.length, level, true);
+            byte[] comp = LZFEncoder.encode(enc, orig, 0, orig.length);
+            assertArrayEquals(exp, comp, "Encoded content differs (level "+level+", "+orig.length+" bytes)");
+            // also with offset, to catch issues with positions
+            byte[] padded = new byte[orig.length + 10];
+            System.arraycopy(orig, 0, padded, 5, orig.length);
+            assertArrayEquals(exp, LZFEncoder.encode(enc, padded, 5, orig.length));
+            // and non-allocating one, with caller-provided output buffer
+            byte[] buffer = new byte[3 + LZFEncoder.estimateMaxWorkspaceSize(orig.length)];
+            int end = LZFEncoder.appendEncoded(encoder(orig.length, level, false),
+                    padded, 5, orig.length, buffer, 3);
+            assertArrayEquals(exp, Arrays.copyOfRange(buffer, 3, end));
+        }
+        final byte[] comp = compress(orig);
+        final ChunkDecoder dec = decoder();
+        assertArrayEquals(orig, dec.decode(comp));
+        byte[] padded = new byte[comp.length + 10];
+        System.arraycopy(comp, 0, padded, 3, comp.length);
+        assertArrayEquals(orig, dec.decode(padded, 3, comp.length));
+        // and streaming decode, including skipping
+        assertArrayEquals(orig, readAll(new LZFInputStream(dec, new ByteArrayInputStream(comp))));
+        if (orig.length > 1) {
+            try (LZFInputStream in = new LZFInputStream(dec, new ByteArrayInputStream(comp))) {
+                final int skip = orig.length / 2;
+                int skipped = 0;
+                while (skipped < skip) {
+                    skipped += (int) in.skip(skip - skipped);
+                }
+                assertEquals(orig[skip] & 0xFF, in.read());
+            }
+        }
+    }
+
+    private static void _verifyCorrupt(Executable decode)
+    {
+        try {
+            decode.execute();
+            fail("Should have failed to decode corrupt content");
+        } catch (IOException | IndexOutOfBoundsException e) {
+            ; // fine: LZFException or one of bounds checks
+        } catch (Throwable t) {
+            fail("Unexpected failure for corrupt content: "+t);
+        }
+    }
+
+    private static ByteBuffer _buffer(boolean direct, int len) {
+        return direct ? ByteBuffer.allocateDirect(len) : ByteBuffer.allocate(len);
+    }
+}
@@ -0,0 +1,61 @@
+package com.ning.compress.lzf.impl;
+
+import com.ning.compress.BufferRecycler;
+import com.ning.compress.lzf.ChunkDecoder;
+import com.ning.compress.lzf.ChunkEncoder;
+import com.ning.compress.lzf.CompressionLevel;
+import com.ning.compress.lzf.util.ChunkDecoderFactory;
+import com.ning.compress.lzf.util.ChunkEncoderFactory;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for codecs that factories choose by default: Vector API based ones if
+ * module <code>jdk.incubator.vector</code> is available (build runs these tests
+ * both with and without it, on Java 16+), otherwise VarHandle-based ones.
+ * Vector API classes are only referenced by name so that this test can be
+ * compiled and run without the module.
+ */
+public class TestOptimalCodecs extends BaseForCodecTests
+{
+    /**
+     * System property set by build for test execution that adds Vector API module,
+     * to verify that module is actually available.
+     */
+    private final static String PROP_EXPECT_VECTOR = "com.ning.compress.test.vectorApi";
+
+    @Override
+    protected ChunkEncoder encoder(int totalLength, CompressionLevel level, boolean allocateBuffer) {
+        if (allocateBuffer) {
+            return ChunkEncoderFactory.optimalInstance(level, totalLength, new BufferRecycler());
+        }
+        return ChunkEncoderFactory.optimalNonAllocatingInstance(level, totalLength, new BufferRecycler());
+    }
+
+    @Override
+    protected ChunkDecoder decoder() {
+        return ChunkDecoderFactory.optimalInstance();
+    }
+
+    @Test
+    public void testImplementations()
+    {
+        final boolean vectorModule = ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent();
+        if (Boolean.getBoolean(PROP_EXPECT_VECTOR)) {
+            assertTrue(vectorModule, "Module jdk.incubator.vector should be available");
+        }
+        // Vector API based codecs are only included when building with Java 16+
+        final boolean vectorCodecs = getClass().getResource("VectorChunkDecoder.class") != null;
+        final String exp = (vectorModule && vectorCodecs) ? "Vector" : "VarHandle";
+
+        assertTrue(VarHandleChunkEncoders.isAvailable());
+        assertEquals(exp+"ChunkDecoder", decoder().getClass().getSimpleName());
+        assertEquals(exp+"ChunkEncoder", ChunkEncoderFactory.optimalInstance().getClass().getSimpleName());
+        for (CompressionLevel level : new CompressionLevel[] {
+                CompressionLevel.FASTEST, CompressionLevel.FAST, CompressionLevel.DEFAULT }) {
+            assertEquals(exp+"ChunkEncoder", encoder(1000, level, true).getClass().getSimpleName());
+            assertEquals(exp+"ChunkEncoder", encoder(1000, level, false).getClass().getSimpleName());
+        }
+    }
+}
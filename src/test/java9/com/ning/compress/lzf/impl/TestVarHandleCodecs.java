@@ -0,0 +1,39 @@
+package com.ning.compress.lzf.impl;
+
+import com.ning.compress.BufferRecycler;
+import com.ning.compress.lzf.ChunkDecoder;
+import com.ning.compress.lzf.ChunkEncoder;
+import com.ning.compress.lzf.CompressionLevel;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Tests for VarHandle-based codecs, which are the default ones on Java 9 and above
+ * (unless Vector API module is added).
+ */
+public class TestVarHandleCodecs extends BaseForCodecTests
+{
+    @Override
+    protected ChunkEncoder encoder(int totalLength, CompressionLevel level, boolean allocateBuffer) {
+        return new VarHandleChunkEncoder(totalLength, BufferRecycler.instance(), level, allocateBuffer);
+    }
+
+    @Override
+    protected ChunkDecoder decoder() {
+        return new VarHandleChunkDecoder();
+    }
+
+    @Test
+    public void testValidation() {
+        final VarHandleChunkDecoder decoder = new VarHandleChunkDecoder();
+        final byte[] array = new byte[10];
+        assertThrows(NullPointerException.class, () -> decoder.decodeChunk(null, 2, 5, array, 2, 5));
+        assertThrows(NullPointerException.class, () -> decoder.decodeChunk(array, 2, 5, null, 2, 5));
+        assertThrows(ArrayIndexOutOfBoundsException.class, () -> decoder.decodeChunk(array, -1, 5, array, 2, 5));
+        assertThrows(ArrayIndexOutOfBoundsException.class, () -> decoder.decodeChunk(array, 2, 1, array, 2, 5));
+        assertThrows(ArrayIndexOutOfBoundsException.class, () -> decoder.decodeChunk(array, 2, 11, array, 2, 5));
+        assertThrows(ArrayIndexOutOfBoundsException.class, () -> decoder.decodeChunk(array, 2, 5, array, -1, 5));
+        assertThrows(ArrayIndexOutOfBoundsException.class, () -> decoder.decodeChunk(array, 2, 5, array, 2, 11));
+    }
+}